@@ -1,8 +1,12 @@
 package fiji.plugin.trackmate;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
@@ -19,6 +23,13 @@ import fiji.plugin.trackmate.tracking.TrackableObjectCollection;
  * through user manual editing and automatic processing. To avoid conflicting
  * accesses to the data, some specialized methods had to be created, hopefully
  * built in coherent sets.
+ * <p>
+ * The methods that modify the model are synchronized on the model instance,
+ * and the listeners are notified of the changes while holding its monitor, so
+ * that they never see a concurrent modification. A slow listener therefore
+ * blocks the other threads that edit the model until it returns. A listener
+ * may itself edit the model; its events are dispatched after it returns.
+ * Listeners may be added or removed while events are being dispatched.
  *
  * @author Jean-Yves Tinevez <tinevez@pasteur.fr> - 2010-2013
  */
@@ -84,6 +95,19 @@ public class Model< T extends TrackableObject< T >>
 	 */
 	private final HashSet< Integer > eventCache = new HashSet< Integer >();
 
+	/**
+	 * The events of the transactions that closed, waiting to be dispatched to
+	 * the listeners. A transaction that closes while the events of a previous
+	 * one are being dispatched, from a listener, queues its events after them.
+	 */
+	private final ArrayDeque< ModelChangeEvent< T >> pendingEvents = new ArrayDeque< ModelChangeEvent< T >>();
+
+	/**
+	 * Whether the pending events are currently being dispatched, so that
+	 * listeners receive the events in the order the transactions closed.
+	 */
+	private boolean dispatching = false;
+
 	// OTHERS
 
 	/** The logger to append processes messages */
@@ -97,10 +121,12 @@ public class Model< T extends TrackableObject< T >>
 
 	/**
 	 * The list of listeners listening to model content change, that is, changes
-	 * in {@link #spots}, {@link #filteredSpots} and {@link #trackGraph}.
+	 * in {@link #spots}, {@link #filteredSpots} and {@link #trackGraph}. It is
+	 * a copy-on-write set, so that listeners can be added or removed while
+	 * events are dispatched.
 	 */
 	Set< ModelChangeListener< T >> modelChangeListeners =
-			new LinkedHashSet< ModelChangeListener< T >>();
+			new CopyOnWriteArraySet< ModelChangeListener< T >>();
 
 	/*
 	 * CONSTRUCTOR
@@ -271,6 +297,12 @@ public class Model< T extends TrackableObject< T >>
 							updateLevel + "." );
 	}
 
+	/**
+	 * Closes a transaction. When the outermost transaction closes, the
+	 * listeners are notified of the changes made during it, while holding the
+	 * model monitor, before this method returns. When it is called from a
+	 * listener, the events are dispatched after that listener returns.
+	 */
 	public synchronized void endUpdate()
 	{
 		updateLevel--;
@@ -278,13 +310,14 @@ public class Model< T extends TrackableObject< T >>
 			System.out
 					.println( "[TrackMateModel] #endUpdate: decreasing update level to " +
 							updateLevel + "." );
-		if ( updateLevel == 0 )
-		{
-			if ( DEBUG )
-				System.out
-						.println( "[TrackMateModel] #endUpdate: update level is 0, calling flushUpdate()." );
-			flushUpdate();
-		}
+		if ( updateLevel != 0 ) { return; }
+
+		if ( DEBUG )
+			System.out
+					.println( "[TrackMateModel] #endUpdate: update level is 0, calling flushUpdate()." );
+		flushUpdate();
+		if ( dispatching ) { return; }
+		dispatchEvents();
 	}
 
 	/*
@@ -298,15 +331,18 @@ public class Model< T extends TrackableObject< T >>
 	 *            if <code>true</code>, model listeners will be notified with a
 	 *            {@link ModelChangeEvent#TRACKS_COMPUTED} event.
 	 */
-	public void clearTracks( final boolean doNotify )
+	public synchronized void clearTracks( final boolean doNotify )
 	{
-		trackModel.clear();
-		if ( doNotify )
+		beginUpdate();
+		try
 		{
-			final ModelChangeEvent< T > event =
-					new ModelChangeEvent< T >( this, ModelChangeEvent.TRACKS_COMPUTED );
-			for ( final ModelChangeListener< T > listener : modelChangeListeners )
-				listener.modelChanged( event );
+			trackModel.clear();
+			if ( doNotify )
+				eventCache.add( ModelChangeEvent.TRACKS_COMPUTED );
+		}
+		finally
+		{
+			endUpdate();
 		}
 	}
 
@@ -332,17 +368,20 @@ public class Model< T extends TrackableObject< T >>
 	 *            if <code>true</code>, model listeners will be notified with a
 	 *            {@link ModelChangeEvent#TRACKS_COMPUTED} event.
 	 */
-	public void setTracks(
+	public synchronized void setTracks(
 			final SimpleWeightedGraph< T, DefaultWeightedEdge > graph,
 			final boolean doNotify )
 	{
-		trackModel.setGraph( graph );
-		if ( doNotify )
+		beginUpdate();
+		try
 		{
-			final ModelChangeEvent< T > event =
-					new ModelChangeEvent< T >( this, ModelChangeEvent.TRACKS_COMPUTED );
-			for ( final ModelChangeListener< T > listener : modelChangeListeners )
-				listener.modelChanged( event );
+			trackModel.from( graph );
+			if ( doNotify )
+				eventCache.add( ModelChangeEvent.TRACKS_COMPUTED );
+		}
+		finally
+		{
+			endUpdate();
 		}
 	}
 
@@ -367,15 +406,18 @@ public class Model< T extends TrackableObject< T >>
 	 *            if <code>true</code>, model listeners will be notified with a
 	 *            {@link ModelChangeEvent#SPOTS_COMPUTED} event.
 	 */
-	public void clearSpots( final boolean doNotify )
+	public synchronized void clearSpots( final boolean doNotify )
 	{
-		spots.clear();
-		if ( doNotify )
+		beginUpdate();
+		try
+		{
+			spots.clear();
+			if ( doNotify )
+				eventCache.add( ModelChangeEvent.SPOTS_COMPUTED );
+		}
+		finally
 		{
-			final ModelChangeEvent< T > event =
-					new ModelChangeEvent< T >( this, ModelChangeEvent.SPOTS_COMPUTED );
-			for ( final ModelChangeListener< T > listener : modelChangeListeners )
-				listener.modelChanged( event );
+			endUpdate();
 		}
 	}
 
@@ -388,16 +430,19 @@ public class Model< T extends TrackableObject< T >>
 	 * @param spots
 	 *            the {@link SpotCollection} to set.
 	 */
-	public void setSpots( final TrackableObjectCollection< T > spots,
+	public synchronized void setSpots( final TrackableObjectCollection< T > spots,
 			final boolean doNotify )
 	{
-		this.spots = spots;
-		if ( doNotify )
+		beginUpdate();
+		try
+		{
+			this.spots = spots;
+			if ( doNotify )
+				eventCache.add( ModelChangeEvent.SPOTS_COMPUTED );
+		}
+		finally
 		{
-			final ModelChangeEvent< T > event =
-					new ModelChangeEvent< T >( this, ModelChangeEvent.SPOTS_COMPUTED );
-			for ( final ModelChangeListener< T > listener : modelChangeListeners )
-				listener.modelChanged( event );
+			endUpdate();
 		}
 	}
 
@@ -730,12 +775,157 @@ public class Model< T extends TrackableObject< T >>
 		return oldvis;
 	}
 
+	/*
+	 * BULK MODEL CHANGE METHODS
+	 */
+
+	/**
+	 * Adds several spots to the collections managed by this model, each to the
+	 * frame returned by its {@link TrackableObject#frame()} method, and mark
+	 * them as visible.
+	 * <p>
+	 * This method opens its own transaction, so that listeners are notified
+	 * with a single {@link ModelChangeEvent#MODEL_MODIFIED} event when it
+	 * returns, or when the enclosing transaction closes if it is called within
+	 * one.
+	 *
+	 * @param spotsToAdd
+	 *            the spots to add.
+	 */
+	public synchronized void bulkAddSpots( final Collection< T > spotsToAdd )
+	{
+		beginUpdate();
+		try
+		{
+			for ( final T spot : spotsToAdd )
+			{
+				spots.add( spot, spot.frame() );
+			}
+			spotsAdded.addAll( spotsToAdd ); // TRANSACTION
+			trackModel.addSpots( spotsToAdd );
+		}
+		finally
+		{
+			endUpdate();
+		}
+	}
+
+	/**
+	 * Removes several spots, and the edges that touch them, from the
+	 * collections managed by this model. Spots that cannot be found are
+	 * ignored. The tracks they belonged to are updated in one pass, after all
+	 * the spots are removed, instead of after each removed edge as with
+	 * {@link #removeSpot(TrackableObject)}.
+	 * <p>
+	 * This method opens its own transaction, so that listeners are notified
+	 * with a single {@link ModelChangeEvent#MODEL_MODIFIED} event when it
+	 * returns, or when the enclosing transaction closes if it is called within
+	 * one.
+	 *
+	 * @param spotsToRemove
+	 *            the spots to remove.
+	 * @return the number of spots removed.
+	 */
+	public synchronized int bulkRemoveSpots( final Collection< T > spotsToRemove )
+	{
+		beginUpdate();
+		try
+		{
+			final List< T > removed = new ArrayList< T >( spotsToRemove.size() );
+			for ( final T spot : spotsToRemove )
+			{
+				if ( spots.remove( spot, spot.frame() ) )
+				{
+					removed.add( spot );
+				}
+			}
+			spotsRemoved.addAll( removed ); // TRANSACTION
+			trackModel.removeSpots( removed );
+			return removed.size();
+		}
+		finally
+		{
+			endUpdate();
+		}
+	}
+
+	/**
+	 * Creates several edges in bulk. The edges are specified by the index of
+	 * their source and target in a list of spots. Spots that are not yet in
+	 * the model graph are added to it, but not to the spot collection. The
+	 * tracks touched by the new edges are updated in one pass, after all the
+	 * edges are added, instead of after each edge as with
+	 * {@link #addEdge(TrackableObject, TrackableObject, double)}.
+	 * <p>
+	 * This method opens its own transaction, so that listeners are notified
+	 * with a single {@link ModelChangeEvent#MODEL_MODIFIED} event when it
+	 * returns, or when the enclosing transaction closes if it is called within
+	 * one.
+	 *
+	 * @param vertices
+	 *            the spots the edges are built upon.
+	 * @param sources
+	 *            the index, in the vertices list, of the source of each edge.
+	 * @param targets
+	 *            the index, in the vertices list, of the target of each edge.
+	 * @param weights
+	 *            the weight of each edge.
+	 * @return the edges created, in the order of the parameter arrays. An
+	 *         element is <code>null</code> if there was already an edge
+	 *         between its source and target.
+	 */
+	public synchronized DefaultWeightedEdge[] bulkAddEdges( final List< T > vertices, final int[] sources, final int[] targets, final double[] weights )
+	{
+		if ( sources.length != targets.length || sources.length != weights.length ) { throw new IllegalArgumentException( "The source, target and weight arrays must have the same length. Got " + sources.length + ", " + targets.length + " and " + weights.length + "." ); }
+		beginUpdate();
+		try
+		{
+			return trackModel.addEdges( vertices, sources, targets, weights );
+		}
+		finally
+		{
+			endUpdate();
+		}
+	}
+
 	/*
 	 * PRIVATE METHODS
 	 */
 
 	/**
-	 * Fire events. Regenerate fields derived from the filtered graph.
+	 * Dispatches the pending events to the listeners, in order, until there
+	 * are none left. Must be called while holding the model monitor.
+	 */
+	private void dispatchEvents()
+	{
+		dispatching = true;
+		try
+		{
+			ModelChangeEvent< T > event;
+			while ( null != ( event = pendingEvents.poll() ) )
+			{
+				if ( DEBUG )
+				{
+					System.out.println( "[TrackMateModel] #dispatchEvents(): firing event with ID " +
+							event.getEventID() + " to " + modelChangeListeners );
+				}
+				for ( final ModelChangeListener< T > listener : modelChangeListeners )
+				{
+					listener.modelChanged( event );
+				}
+			}
+		}
+		finally
+		{
+			// If a listener threw an exception, the next transaction dispatches
+			// the remaining events.
+			dispatching = false;
+		}
+	}
+
+	/**
+	 * Builds the events of the transaction that just closed and queues them
+	 * for dispatch. Must be called while holding the model monitor.
 	 */
 	private void flushUpdate()
 	{
@@ -843,30 +1033,21 @@ public class Model< T extends TrackableObject< T >>
 				if ( DEBUG )
 				{
 					System.out
-							.println( "[TrackMateModel] #flushUpdate(): firing model modified event" );
-					System.out.println( "[TrackMateModel] to " + modelChangeListeners );
-				}
-				for ( final ModelChangeListener< T > listener : modelChangeListeners )
-				{
-					listener.modelChanged( event );
+							.println( "[TrackMateModel] #flushUpdate(): queuing model modified event" );
 				}
+				pendingEvents.add( event );
 			}
 
-			// Fire events stored in the event cache
+			// Queue events stored in the event cache
 			for ( final int eventID : eventCache )
 			{
 				if ( DEBUG )
 				{
 					System.out
-							.println( "[TrackMateModel] #flushUpdate(): firing event with ID " +
+							.println( "[TrackMateModel] #flushUpdate(): queuing event with ID " +
 									eventID );
 				}
-				final ModelChangeEvent< T > cachedEvent =
-						new ModelChangeEvent< T >( this, eventID );
-				for ( final ModelChangeListener< T > listener : modelChangeListeners )
-				{
-					listener.modelChanged( cachedEvent );
-				}
+				pendingEvents.add( new ModelChangeEvent< T >( this, eventID ) );
 			}
 		}
 		finally
@@ -1,5 +1,9 @@
 package fiji.plugin.trackmate;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -9,25 +13,20 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.jgrapht.Graph;
-import org.jgrapht.UndirectedGraph;
+import org.jgrapht.Graphs;
 import org.jgrapht.VertexFactory;
 import org.jgrapht.alg.DijkstraShortestPath;
-import org.jgrapht.event.ConnectedComponentTraversalEvent;
-import org.jgrapht.event.EdgeTraversalEvent;
 import org.jgrapht.event.GraphEdgeChangeEvent;
 import org.jgrapht.event.GraphListener;
 import org.jgrapht.event.GraphVertexChangeEvent;
-import org.jgrapht.event.TraversalListener;
-import org.jgrapht.event.TraversalListenerAdapter;
-import org.jgrapht.event.VertexTraversalEvent;
 import org.jgrapht.graph.AsUnweightedGraph;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.ListenableUndirectedGraph;
 import org.jgrapht.graph.SimpleDirectedWeightedGraph;
 import org.jgrapht.graph.SimpleWeightedGraph;
-import org.jgrapht.traverse.BreadthFirstIterator;
 import org.jgrapht.traverse.DepthFirstIterator;
 import org.jgrapht.traverse.GraphIterator;
 
@@ -38,7 +37,6 @@ import fiji.plugin.trackmate.graph.TimeDirectedNeighborIndex;
 import fiji.plugin.trackmate.graph.TimeDirectedSortedDepthFirstIterator;
 import fiji.plugin.trackmate.tracking.TrackableObject;
 import fiji.plugin.trackmate.util.AlphanumComparator;
-import fiji.plugin.trackmate.util.TMUtils;
 
 /**
  * A component of {@link Model} specialized for tracks
@@ -123,6 +121,32 @@ public class TrackModel< T extends TrackableObject< T >>
 
 	private final Iterator< String > nameGenerator = new DefaultNameGenerator();
 
+	/**
+	 * The track IDs sorted by track name, then by ID. It is updated each time
+	 * a track name is set or removed, so that the IDs need not be sorted again
+	 * when they are queried. It is also the lock for the two views below.
+	 */
+	private final TreeSet< NamedTrack > nameIndex = new TreeSet< NamedTrack >();
+
+	/**
+	 * The entries of the {@link #nameIndex}, by track ID.
+	 */
+	private final Map< Integer, NamedTrack > nameIndexEntries = new HashMap< Integer, NamedTrack >();
+
+	/**
+	 * The unmodifiable view of all the sorted track IDs returned by
+	 * {@link #trackIDs(boolean)}. <code>null</code> if it must be rebuilt
+	 * after a name change.
+	 */
+	private Set< Integer > sortedTrackIDs;
+
+	/**
+	 * The unmodifiable view of the visible sorted track IDs returned by
+	 * {@link #trackIDs(boolean)}. <code>null</code> if it must be rebuilt
+	 * after a name or visibility change.
+	 */
+	private Set< Integer > sortedVisibleTrackIDs;
+
 	/*
 	 * Constructors -----------------------------------------------------------
 	 */
@@ -153,13 +177,7 @@ public class TrackModel< T extends TrackableObject< T >>
 	 */
 	void setGraph( final SimpleWeightedGraph< T, DefaultWeightedEdge > graph )
 	{
-		if ( null != this.graph )
-		{
-			this.graph.removeGraphListener( mgl );
-		}
-		this.graph = new ListenableUndirectedGraph< T, DefaultWeightedEdge >( graph );
-		this.graph.addGraphListener( mgl );
-		init( graph );
+		from( graph );
 	}
 
 	/**
@@ -170,6 +188,124 @@ public class TrackModel< T extends TrackableObject< T >>
 		setGraph( new SimpleWeightedGraph< T, DefaultWeightedEdge >( DefaultWeightedEdge.class ) );
 	}
 
+	/**
+	 * Replaces the content of this model by the tracks found in the specified
+	 * graph, typically the output of a tracker. The connected components are
+	 * found in bulk, with a union-find over the edges of the graph, in a time
+	 * almost linear in the number of spots and edges. The graph is neither
+	 * traversed nor are its edges added one by one. Components made of a
+	 * single spot are not tracks. All the new tracks are made visible and are
+	 * given a default name.
+	 * <p>
+	 * Track IDs are given in the order in which the graph iterates over the
+	 * first spot of each component.
+	 *
+	 * @param graph
+	 *            the graph to parse for tracks.
+	 */
+	public void from( final SimpleWeightedGraph< T, DefaultWeightedEdge > graph )
+	{
+		if ( null != this.graph )
+		{
+			this.graph.removeGraphListener( mgl );
+		}
+		this.graph = new ListenableUndirectedGraph< T, DefaultWeightedEdge >( graph );
+		this.graph.addGraphListener( mgl );
+
+		edgesAdded.clear();
+		edgesModified.clear();
+		edgesRemoved.clear();
+		tracksUpdated.clear();
+
+		visibility = new HashMap< Integer, Boolean >();
+		names = new HashMap< Integer, String >();
+		rebuildNameIndex();
+		IDcounter = 0;
+
+		// Index the spots.
+		final Set< T > vertexSet = graph.vertexSet();
+		final int nVertices = vertexSet.size();
+		final Map< T, Integer > index = new HashMap< T, Integer >( 2 * nVertices );
+		final List< T > vertices = new ArrayList< T >( nVertices );
+		for ( final T v : vertexSet )
+		{
+			index.put( v, Integer.valueOf( vertices.size() ) );
+			vertices.add( v );
+		}
+
+		// Union-find over the edges, by size, with path halving.
+		final int[] parent = new int[ nVertices ];
+		final int[] size = new int[ nVertices ];
+		for ( int i = 0; i < nVertices; i++ )
+		{
+			parent[ i ] = i;
+			size[ i ] = 1;
+		}
+		final Set< DefaultWeightedEdge > edgeSet = graph.edgeSet();
+		for ( final DefaultWeightedEdge edge : edgeSet )
+		{
+			int a = find( parent, index.get( graph.getEdgeSource( edge ) ).intValue() );
+			int b = find( parent, index.get( graph.getEdgeTarget( edge ) ).intValue() );
+			if ( a == b )
+			{
+				continue;
+			}
+			if ( size[ a ] < size[ b ] )
+			{
+				final int tmp = a;
+				a = b;
+				b = tmp;
+			}
+			parent[ b ] = a;
+			size[ a ] += size[ b ];
+		}
+
+		// Give an ID to each component with at least one edge.
+		final int[] rootID = new int[ nVertices ];
+		Arrays.fill( rootID, -1 );
+		final Set< Integer > linkedRoots = new HashSet< Integer >();
+		for ( final DefaultWeightedEdge edge : edgeSet )
+		{
+			linkedRoots.add( Integer.valueOf( find( parent, index.get( graph.getEdgeSource( edge ) ).intValue() ) ) );
+		}
+		connectedVertexSets = new HashMap< Integer, Set< T >>( 2 * linkedRoots.size() );
+		connectedEdgeSets = new HashMap< Integer, Set< DefaultWeightedEdge >>( 2 * linkedRoots.size() );
+		vertexToID = new HashMap< T, Integer >( 2 * nVertices );
+		for ( int i = 0; i < nVertices; i++ )
+		{
+			final int root = find( parent, i );
+			if ( rootID[ root ] < 0 )
+			{
+				// Single spots still consume an ID, as when traversing the graph.
+				rootID[ root ] = IDcounter++;
+				if ( linkedRoots.contains( Integer.valueOf( root ) ) )
+				{
+					final Integer id = Integer.valueOf( rootID[ root ] );
+					connectedVertexSets.put( id, new HashSet< T >( 2 * size[ root ] ) );
+					connectedEdgeSets.put( id, new HashSet< DefaultWeightedEdge >( 2 * size[ root ] ) );
+					putVisibility( id, DEFAULT_VISIBILITY );
+					putName( id, nameGenerator.next() );
+				}
+			}
+			final Integer id = Integer.valueOf( rootID[ root ] );
+			final Set< T > spots = connectedVertexSets.get( id );
+			if ( null != spots )
+			{
+				final T v = vertices.get( i );
+				spots.add( v );
+				vertexToID.put( v, id );
+			}
+		}
+
+		edgeToID = new HashMap< DefaultWeightedEdge, Integer >( 2 * edgeSet.size() );
+		for ( final DefaultWeightedEdge edge : edgeSet )
+		{
+			final Integer id = Integer.valueOf( rootID[ find( parent, index.get( graph.getEdgeSource( edge ) ).intValue() ) ] );
+			connectedEdgeSets.get( id ).add( edge );
+			edgeToID.put( edge, id );
+		}
+	}
+
 	/**
 	 * This method is meant to help building a model from a serialized source,
 	 * such as a saved file. It allows specifying the exact mapping of track IDs
@@ -210,6 +346,7 @@ public class TrackModel< T extends TrackableObject< T >>
 
 		visibility = trackVisibility;
 		names = trackNames;
+		rebuildNameIndex();
 		connectedVertexSets = trackSpots;
 		connectedEdgeSets = trackEdges;
 
@@ -240,6 +377,84 @@ public class TrackModel< T extends TrackableObject< T >>
 
 	}
 
+	/**
+	 * This method is meant to help building a model from a serialized source,
+	 * when only the edges of each track are known. The model content is
+	 * completely replaced by the specified graph, the specified mapping of
+	 * track IDs to the sets of edges, visibility and naming. The spots of each
+	 * track are those at the ends of its edges: they are collected, and all
+	 * the id maps built, in a single pass over the edges, without traversing
+	 * the graph nor adding the edges one by one.
+	 * <p>
+	 * It is the caller responsibility to ensure that the graph and provided
+	 * edge sets are coherent. Unexpected behavior might result otherwise.
+	 *
+	 * @param graph
+	 *            the mother graph for the model.
+	 * @param trackEdges
+	 *            the mapping of track IDs vs the connected components as sets
+	 *            of edges.
+	 * @param trackVisibility
+	 *            the track visibility.
+	 * @param trackNames
+	 *            the track names.
+	 */
+	public void from( final SimpleWeightedGraph< T, DefaultWeightedEdge > graph, final Map< Integer, Set< DefaultWeightedEdge >> trackEdges, final Map< Integer, Boolean > trackVisibility, final Map< Integer, String > trackNames )
+	{
+		if ( null != this.graph )
+		{
+			this.graph.removeGraphListener( mgl );
+		}
+		this.graph = new ListenableUndirectedGraph< T, DefaultWeightedEdge >( graph );
+		this.graph.addGraphListener( mgl );
+
+		edgesAdded.clear();
+		edgesModified.clear();
+		edgesRemoved.clear();
+		tracksUpdated.clear();
+
+		visibility = trackVisibility;
+		names = trackNames;
+		rebuildNameIndex();
+		connectedEdgeSets = trackEdges;
+		connectedVertexSets = new HashMap< Integer, Set< T >>( trackEdges.size() );
+
+		IDcounter = 0;
+		int nEdges = 0;
+		for ( final Set< DefaultWeightedEdge > edges : trackEdges.values() )
+		{
+			nEdges += edges.size();
+		}
+		edgeToID = new HashMap< DefaultWeightedEdge, Integer >( 2 * nEdges );
+		vertexToID = new HashMap< T, Integer >( 2 * nEdges );
+
+		for ( final Integer id : trackEdges.keySet() )
+		{
+			final Set< DefaultWeightedEdge > edges = trackEdges.get( id );
+			final Set< T > spots = new HashSet< T >( 2 * edges.size() + 2 );
+			for ( final DefaultWeightedEdge edge : edges )
+			{
+				edgeToID.put( edge, id );
+				final T source = graph.getEdgeSource( edge );
+				if ( spots.add( source ) )
+				{
+					vertexToID.put( source, id );
+				}
+				final T target = graph.getEdgeTarget( edge );
+				if ( spots.add( target ) )
+				{
+					vertexToID.put( target, id );
+				}
+			}
+			connectedVertexSets.put( id, spots );
+			if ( id > IDcounter )
+			{
+				IDcounter = id;
+			}
+		}
+		IDcounter++;
+	}
+
 	/*
 	 * DEFAULT VISIBILIT METHODS made to be called from the mother model.
 	 */
@@ -287,7 +502,274 @@ public class TrackModel< T extends TrackableObject< T >>
 
 	Boolean setVisibility( final Integer trackID, final boolean visible )
 	{
-		return visibility.put( trackID, Boolean.valueOf( visible ) );
+		return putVisibility( trackID, Boolean.valueOf( visible ) );
+	}
+
+	/**
+	 * Adds the specified spots to the graph, bypassing the graph listener.
+	 * Lonely spots do not belong to any track, so the track index is left
+	 * unchanged.
+	 *
+	 * @param spotsToAdd
+	 *            the spots to add.
+	 */
+	void addSpots( final Collection< T > spotsToAdd )
+	{
+		graph.removeGraphListener( mgl );
+		try
+		{
+			for ( final T spot : spotsToAdd )
+			{
+				graph.addVertex( spot );
+			}
+		}
+		finally
+		{
+			graph.addGraphListener( mgl );
+		}
+	}
+
+	/**
+	 * Adds edges in bulk between the specified spots, then updates the tracks
+	 * they touch in one pass. Spots not yet in the graph are added to it. This
+	 * is equivalent to calling {@link #addEdge(Object, Object, double)} for
+	 * each edge, but bypasses the graph listener, that would update the track
+	 * index after each edge.
+	 *
+	 * @param vertices
+	 *            the spots the edges are built upon.
+	 * @param sources
+	 *            the index, in the vertices list, of the source of each edge.
+	 * @param targets
+	 *            the index, in the vertices list, of the target of each edge.
+	 * @param weights
+	 *            the weight of each edge.
+	 * @return the edges created, in the order of the parameter arrays. An
+	 *         element is <code>null</code> if there was already an edge
+	 *         between its source and target.
+	 */
+	DefaultWeightedEdge[] addEdges( final List< T > vertices, final int[] sources, final int[] targets, final double[] weights )
+	{
+		final DefaultWeightedEdge[] edges = new DefaultWeightedEdge[ sources.length ];
+		final Set< T > touched = new HashSet< T >( 2 * sources.length );
+		final Set< Integer > oldIDs = new HashSet< Integer >();
+
+		graph.removeGraphListener( mgl );
+		try
+		{
+			for ( int i = 0; i < sources.length; i++ )
+			{
+				final T source = vertices.get( sources[ i ] );
+				final T target = vertices.get( targets[ i ] );
+				if ( !graph.containsVertex( source ) )
+				{
+					graph.addVertex( source );
+				}
+				if ( !graph.containsVertex( target ) )
+				{
+					graph.addVertex( target );
+				}
+				final DefaultWeightedEdge edge = graph.addEdge( source, target );
+				if ( null == edge )
+				{
+					continue;
+				}
+				graph.setEdgeWeight( edge, weights[ i ] );
+				edges[ i ] = edge;
+				edgesAdded.add( edge );
+				touched.add( source );
+				touched.add( target );
+			}
+		}
+		finally
+		{
+			graph.addGraphListener( mgl );
+		}
+
+		for ( final T v : touched )
+		{
+			final Integer id = vertexToID.get( v );
+			if ( null != id )
+			{
+				oldIDs.add( id );
+			}
+		}
+		rebuildTracks( touched, oldIDs );
+		return edges;
+	}
+
+	/**
+	 * Removes the specified spots, and the edges that touch them, from the
+	 * graph in bulk, then updates the tracks they belonged to in one pass.
+	 * This is equivalent to calling {@link #removeSpot(Object)} for each spot,
+	 * but bypasses the graph listener, that would update the track index after
+	 * each edge removal.
+	 *
+	 * @param spotsToRemove
+	 *            the spots to remove.
+	 */
+	void removeSpots( final Collection< T > spotsToRemove )
+	{
+		final Set< T > touched = new HashSet< T >();
+		final Set< Integer > oldIDs = new HashSet< Integer >();
+		for ( final T v : spotsToRemove )
+		{
+			final Integer id = vertexToID.remove( v );
+			if ( null != id )
+			{
+				oldIDs.add( id );
+			}
+		}
+
+		graph.removeGraphListener( mgl );
+		try
+		{
+			for ( final T v : spotsToRemove )
+			{
+				if ( !graph.containsVertex( v ) )
+				{
+					continue;
+				}
+				for ( final DefaultWeightedEdge edge : graph.edgesOf( v ) )
+				{
+					edgesRemoved.add( edge );
+					edgeToID.remove( edge );
+					touched.add( Graphs.getOppositeVertex( graph, edge, v ) );
+				}
+				graph.removeVertex( v );
+			}
+		}
+		finally
+		{
+			graph.addGraphListener( mgl );
+		}
+
+		touched.removeAll( spotsToRemove );
+		rebuildTracks( touched, oldIDs );
+	}
+
+	/**
+	 * Rebuilds the tracks that contain the specified spots, after the graph
+	 * was modified without the track index being updated.
+	 * <p>
+	 * The connected component of each spot is traversed once. Each of them
+	 * that has edges becomes a track, that takes the id, the name and the
+	 * visibility of the largest of the former tracks it contains, or is
+	 * visible if one of them was. Components that do not contain any former
+	 * track get a new id, are made visible and given a default name. Former
+	 * tracks that do not have a component any more are removed.
+	 *
+	 * @param seeds
+	 *            the spots whose connected components must be rebuilt.
+	 * @param oldIDs
+	 *            the ids of the former tracks these components were made of.
+	 */
+	private void rebuildTracks( final Set< T > seeds, final Set< Integer > oldIDs )
+	{
+		// Size of the former tracks, before we overwrite them.
+		final Map< Integer, Integer > oldSizes = new HashMap< Integer, Integer >( 2 * oldIDs.size() );
+		for ( final Integer id : oldIDs )
+		{
+			oldSizes.put( id, connectedVertexSets.get( id ).size() );
+		}
+		final Set< Integer > claimed = new HashSet< Integer >( 2 * oldIDs.size() );
+
+		final Set< T > visited = new HashSet< T >( 2 * seeds.size() );
+		final ArrayDeque< T > queue = new ArrayDeque< T >();
+		for ( final T seed : seeds )
+		{
+			if ( visited.contains( seed ) )
+			{
+				continue;
+			}
+
+			// Traverse the component.
+			final Set< T > vs = new HashSet< T >();
+			final Set< DefaultWeightedEdge > es = new HashSet< DefaultWeightedEdge >();
+			visited.add( seed );
+			queue.add( seed );
+			while ( !queue.isEmpty() )
+			{
+				final T v = queue.poll();
+				vs.add( v );
+				for ( final DefaultWeightedEdge edge : graph.edgesOf( v ) )
+				{
+					es.add( edge );
+					final T neighbor = Graphs.getOppositeVertex( graph, edge, v );
+					if ( visited.add( neighbor ) )
+					{
+						queue.add( neighbor );
+					}
+				}
+			}
+
+			if ( es.isEmpty() )
+			{
+				// A solitary vertex has no right to be called a track.
+				vertexToID.remove( seed );
+				continue;
+			}
+
+			// Find the largest former track in this component.
+			Integer nid = null;
+			boolean former = false;
+			boolean visible = false;
+			for ( final T v : vs )
+			{
+				final Integer id = vertexToID.get( v );
+				if ( null == id || !oldIDs.contains( id ) )
+				{
+					continue;
+				}
+				former = true;
+				visible = visible || visibility.get( id );
+				if ( claimed.contains( id ) )
+				{
+					continue;
+				}
+				if ( null == nid || oldSizes.get( id ) > oldSizes.get( nid ) )
+				{
+					nid = id;
+				}
+			}
+			if ( null == nid )
+			{
+				nid = IDcounter++;
+				putName( nid, nameGenerator.next() );
+				if ( !former )
+				{
+					visible = DEFAULT_VISIBILITY;
+				}
+			}
+			claimed.add( nid );
+
+			for ( final T v : vs )
+			{
+				vertexToID.put( v, nid );
+			}
+			for ( final DefaultWeightedEdge edge : es )
+			{
+				edgeToID.put( edge, nid );
+			}
+			connectedVertexSets.put( nid, vs );
+			connectedEdgeSets.put( nid, es );
+			putVisibility( nid, Boolean.valueOf( visible ) );
+			tracksUpdated.add( nid );
+		}
+
+		// Forget the former tracks that disappeared.
+		for ( final Integer id : oldIDs )
+		{
+			if ( claimed.contains( id ) )
+			{
+				continue;
+			}
+			connectedVertexSets.remove( id );
+			connectedEdgeSets.remove( id );
+			removeName( id );
+			removeVisibility( id );
+			tracksUpdated.remove( id );
+		}
 	}
 
 	/*
@@ -440,30 +922,45 @@ public class TrackModel< T extends TrackableObject< T >>
 
 	/**
 	 * Returns the set of track IDs managed by this model, ordered by track
-	 * names (alpha-numerically sorted).
+	 * names (alpha-numerically sorted), then by ID.
+	 * <p>
+	 * The IDs are kept sorted as track names change, and the returned sets are
+	 * cached until the next change of a track name, or of a track visibility
+	 * for visible IDs. Calling this method repeatedly is therefore cheap.
 	 *
 	 * @param visibleOnly
 	 *            if <code>true</code>, only visible track IDs will be returned.
-	 * @return a new set of track IDs.
+	 * @return an unmodifiable set of track IDs, that does not reflect later
+	 *         changes to this model.
 	 */
 	public Set< Integer > trackIDs( final boolean visibleOnly )
 	{
-		final Set< Integer > ids = TMUtils.sortByValue( names, AlphanumComparator.instance ).keySet();
-		if ( !visibleOnly )
-		{
-			return ids;
-		}
-		else
+		synchronized ( nameIndex )
 		{
-			final Set< Integer > vids = new LinkedHashSet< Integer >( ids.size() );
-			for ( final Integer id : ids )
+			if ( null == sortedTrackIDs )
 			{
-				if ( visibility.get( id ) )
+				final Set< Integer > ids = new LinkedHashSet< Integer >( 2 * nameIndex.size() );
+				for ( final NamedTrack entry : nameIndex )
 				{
-					vids.add( id );
+					ids.add( entry.id );
 				}
+				sortedTrackIDs = Collections.unmodifiableSet( ids );
 			}
-			return vids;
+			if ( !visibleOnly ) { return sortedTrackIDs; }
+
+			if ( null == sortedVisibleTrackIDs )
+			{
+				final Set< Integer > vids = new LinkedHashSet< Integer >( 2 * sortedTrackIDs.size() );
+				for ( final Integer id : sortedTrackIDs )
+				{
+					if ( visibility.get( id ) )
+					{
+						vids.add( id );
+					}
+				}
+				sortedVisibleTrackIDs = Collections.unmodifiableSet( vids );
+			}
+			return sortedVisibleTrackIDs;
 		}
 	}
 
@@ -518,7 +1015,7 @@ public class TrackModel< T extends TrackableObject< T >>
 	 */
 	public void setName( final Integer id, final String name )
 	{
-		names.put( id, name );
+		putName( id, name );
 	}
 
 	/**
@@ -596,37 +1093,109 @@ public class TrackModel< T extends TrackableObject< T >>
 	 */
 
 	/**
-	 * Generates initial connected sets in bulk, from a graph. All sets are
-	 * created visible, and are give a default name.
+	 * Returns the root of the union-find set of the specified element, and
+	 * halves the path to it.
 	 */
-	private void init( final UndirectedGraph< T, DefaultWeightedEdge > graph )
+	private static final int find( final int[] parent, final int i )
 	{
-		vertexToID = new HashMap< T, Integer >();
-		edgeToID = new HashMap< DefaultWeightedEdge, Integer >();
-		IDcounter = 0;
-		visibility = new HashMap< Integer, Boolean >();
-		names = new HashMap< Integer, String >();
-		connectedVertexSets = new HashMap< Integer, Set< T >>();
-		connectedEdgeSets = new HashMap< Integer, Set< DefaultWeightedEdge >>();
+		int k = i;
+		while ( parent[ k ] != k )
+		{
+			parent[ k ] = parent[ parent[ k ] ];
+			k = parent[ k ];
+		}
+		return k;
+	}
 
-		edgesAdded.clear();
-		edgesModified.clear();
-		edgesRemoved.clear();
-		tracksUpdated.clear();
+	/*
+	 * TRACK NAME INDEX
+	 */
 
-		final Set< T > vertexSet = graph.vertexSet();
-		if ( vertexSet.size() > 0 )
+	/**
+	 * Sets the name of a track, and updates the name index.
+	 */
+	private void putName( final Integer id, final String name )
+	{
+		synchronized ( nameIndex )
 		{
-			final BreadthFirstIterator< T, DefaultWeightedEdge > i = new BreadthFirstIterator< T, DefaultWeightedEdge >( graph, null );
-			i.addTraversalListener( new MyTraversalListener() );
+			names.put( id, name );
+			final NamedTrack entry = new NamedTrack( id, name );
+			final NamedTrack previous = nameIndexEntries.put( id, entry );
+			if ( null != previous )
+			{
+				nameIndex.remove( previous );
+			}
+			nameIndex.add( entry );
+			sortedTrackIDs = null;
+			sortedVisibleTrackIDs = null;
+		}
+	}
 
-			while ( i.hasNext() )
+	/**
+	 * Removes the name of a track, and updates the name index.
+	 */
+	private void removeName( final Integer id )
+	{
+		synchronized ( nameIndex )
+		{
+			names.remove( id );
+			final NamedTrack previous = nameIndexEntries.remove( id );
+			if ( null != previous )
 			{
-				i.next();
+				nameIndex.remove( previous );
+				sortedTrackIDs = null;
+				sortedVisibleTrackIDs = null;
 			}
 		}
 	}
 
+	/**
+	 * Sets the visibility of a track, and invalidates the view of the visible
+	 * track IDs.
+	 */
+	private Boolean putVisibility( final Integer id, final Boolean visible )
+	{
+		synchronized ( nameIndex )
+		{
+			sortedVisibleTrackIDs = null;
+			return visibility.put( id, visible );
+		}
+	}
+
+	/**
+	 * Removes the visibility of a track, and invalidates the view of the
+	 * visible track IDs.
+	 */
+	private void removeVisibility( final Integer id )
+	{
+		synchronized ( nameIndex )
+		{
+			sortedVisibleTrackIDs = null;
+			visibility.remove( id );
+		}
+	}
+
+	/**
+	 * Rebuilds the name index from scratch, after the {@link #names} map was
+	 * replaced.
+	 */
+	private void rebuildNameIndex()
+	{
+		synchronized ( nameIndex )
+		{
+			nameIndex.clear();
+			nameIndexEntries.clear();
+			for ( final Integer id : names.keySet() )
+			{
+				final NamedTrack entry = new NamedTrack( id, names.get( id ) );
+				nameIndexEntries.put( id, entry );
+				nameIndex.add( entry );
+			}
+			sortedTrackIDs = null;
+			sortedVisibleTrackIDs = null;
+		}
+	}
+
 	/*
 	 * UTILS
 	 */
@@ -763,77 +1332,6 @@ public class TrackModel< T extends TrackableObject< T >>
 	 * Inner Classes
 	 */
 
-	private class MyTraversalListener implements TraversalListener< T, DefaultWeightedEdge >
-	{
-		private Set< T > currentConnectedVertexSet;
-
-		private Set< DefaultWeightedEdge > currentConnectedEdgeSet;
-
-		private Integer ID;
-
-		/**
-		 * Called when after traversing a connected set. Stores it, gives it
-		 * default visibility, and a default name. Discard sets made of 1
-		 * vertices or 0 edges.
-		 */
-		@Override
-		public void connectedComponentFinished( final ConnectedComponentTraversalEvent event )
-		{
-			if ( currentConnectedVertexSet.size() <= 1 || currentConnectedEdgeSet.size() == 0 )
-			{
-				// Forget them
-				for ( final DefaultWeightedEdge e : currentConnectedEdgeSet )
-				{
-					edgeToID.remove( e );
-				}
-				for ( final T v : currentConnectedVertexSet )
-				{
-					vertexToID.remove( v );
-				}
-				return;
-			}
-			// Adds them
-			connectedVertexSets.put( ID, currentConnectedVertexSet );
-			connectedEdgeSets.put( ID, currentConnectedEdgeSet );
-			visibility.put( ID, DEFAULT_VISIBILITY );
-			names.put( ID, nameGenerator.next() );
-		}
-
-		/**
-		 * @see TraversalListenerAdapter#connectedComponentStarted(ConnectedComponentTraversalEvent)
-		 */
-		@Override
-		public void connectedComponentStarted( final ConnectedComponentTraversalEvent e )
-		{
-			currentConnectedVertexSet = new HashSet< T >();
-			currentConnectedEdgeSet = new HashSet< DefaultWeightedEdge >();
-			ID = IDcounter++;
-		}
-
-		/**
-		 * @see TraversalListenerAdapter#vertexTraversed(VertexTraversalEvent)
-		 */
-		@Override
-		public void vertexTraversed( final VertexTraversalEvent< T > event )
-		{
-			final T v = event.getVertex();
-			currentConnectedVertexSet.add( v );
-			vertexToID.put( v, ID );
-		}
-
-		@Override
-		public void edgeTraversed( final EdgeTraversalEvent< T, DefaultWeightedEdge > event )
-		{
-			final DefaultWeightedEdge e = event.getEdge();
-			currentConnectedEdgeSet.add( e );
-			edgeToID.put( e, ID );
-		}
-
-		@Override
-		public void vertexFinished( final VertexTraversalEvent< T > e )
-		{}
-	}
-
 	/**
 	 * This listener class is made to deal with complex changes in the track
 	 * graph.
@@ -899,8 +1397,8 @@ public class TrackModel< T extends TrackableObject< T >>
 				{
 					connectedEdgeSets.remove( id );
 					connectedVertexSets.remove( id );
-					names.remove( id );
-					visibility.remove( id );
+					removeName( id );
+					removeVisibility( id );
 				}
 			}
 		}
@@ -945,57 +1443,45 @@ public class TrackModel< T extends TrackableObject< T >>
 				}
 				else
 				{
-					// They come from different sets.
-
-					// Edges:
-					final Set< DefaultWeightedEdge > ses = connectedEdgeSets.get( sid );
-					final Set< DefaultWeightedEdge > tes = connectedEdgeSets.get( tid );
-					final HashSet< DefaultWeightedEdge > nes = new HashSet< DefaultWeightedEdge >( ses.size() + tes.size() + 1 );
-					nes.addAll( ses );
-					nes.addAll( tes );
-					nes.add( e );
-
-					// Vertices:
+					/*
+					 * They come from different sets. The smallest one, in
+					 * vertices, is appended to the largest one, in place, and
+					 * only the elements of the smallest one change id. This
+					 * way, building a track by adding edges one by one costs
+					 * about n log(n) for n spots, instead of n^2 if we were
+					 * to copy both sets each time.
+					 */
 					final Set< T > svs = connectedVertexSets.get( sid );
 					final Set< T > tvs = connectedVertexSets.get( tid );
-					final HashSet< T > nvs = new HashSet< T >( ses.size() + tes.size() );
-					nvs.addAll( svs );
-					nvs.addAll( tvs );
 
-					Integer nid, rid;
-					if ( nvs.size() > tvs.size() )
+					final Integer nid, rid;
+					if ( tvs.size() > svs.size() )
+					{
+						nid = tid;
+						rid = sid;
+					}
+					else
 					{
 						nid = sid;
 						rid = tid;
-						for ( final T v : tvs )
-						{
-							// Vertices of target set change id
-							vertexToID.put( v, nid );
-						}
-						for ( final DefaultWeightedEdge te : tes )
-						{
-							edgeToID.put( te, nid );
-						}
 					}
-					else
+
+					final Set< T > rvs = connectedVertexSets.remove( rid );
+					for ( final T v : rvs )
 					{
-						nid = tid;
-						rid = sid;
-						for ( final T v : svs )
-						{
-							// Vertices of source set change id
-							vertexToID.put( v, nid );
-						}
-						for ( final DefaultWeightedEdge se : ses )
-						{
-							edgeToID.put( se, nid );
-						}
+						vertexToID.put( v, nid );
+					}
+					connectedVertexSets.get( nid ).addAll( rvs );
+
+					final Set< DefaultWeightedEdge > res = connectedEdgeSets.remove( rid );
+					for ( final DefaultWeightedEdge re : res )
+					{
+						edgeToID.put( re, nid );
 					}
+					final Set< DefaultWeightedEdge > nes = connectedEdgeSets.get( nid );
+					nes.addAll( res );
+					nes.add( e );
 					edgeToID.put( e, nid );
-					connectedVertexSets.put( nid, nvs );
-					connectedVertexSets.remove( rid );
-					connectedEdgeSets.put( nid, nes );
-					connectedEdgeSets.remove( rid );
 
 					// Transaction: we signal that the large id is to be
 					// updated, and forget about the small one
@@ -1005,11 +1491,11 @@ public class TrackModel< T extends TrackableObject< T >>
 					// Visibility: if at least one is visible, the new set is
 					// made visible.
 					final Boolean targetVisibility = visibility.get( sid ) || visibility.get( tid );
-					visibility.put( nid, targetVisibility );
-					visibility.remove( rid );
+					putVisibility( nid, targetVisibility );
+					removeVisibility( rid );
 
 					// Name: the new set gets the name of the largest one.
-					names.remove( rid ); // 'nid' already has the right name.
+					removeName( rid ); // 'nid' already has the right name.
 				}
 
 			}
@@ -1032,9 +1518,9 @@ public class TrackModel< T extends TrackableObject< T >>
 				edgeToID.put( e, nid );
 
 				// Give it visibility
-				visibility.put( nid, Boolean.TRUE );
+				putVisibility( nid, Boolean.TRUE );
 				// and a default name.
-				names.put( nid, nameGenerator.next() );
+				putName( nid, nameGenerator.next() );
 				// Transaction: we mark the new track as updated
 				tracksUpdated.add( nid );
 
@@ -1100,8 +1586,8 @@ public class TrackModel< T extends TrackableObject< T >>
 			{
 				// The set is empty, remove it from the map.
 				connectedEdgeSets.remove( id );
-				names.remove( id );
-				visibility.remove( id );
+				removeName( id );
+				removeVisibility( id );
 				/* We need to remove also the vertices */
 				final Set< T > vertexSet = connectedVertexSets.get( id );
 				// Forget the vertices were in a set
@@ -1122,161 +1608,179 @@ public class TrackModel< T extends TrackableObject< T >>
 			}
 			else
 			{
-				// So there are some edges remaining in the set.
-				// Look at the connected component of its source and target.
-				// Source
-				final HashSet< T > sourceVCS = new HashSet< T >();
-				final HashSet< DefaultWeightedEdge > sourceECS = new HashSet< DefaultWeightedEdge >();
+				/*
+				 * So there are some edges remaining in the set. We need to know
+				 * whether removing the edge split the track in 2. Rather than
+				 * traversing the whole track from both ends of the edge, we
+				 * grow the connected components of its source and target
+				 * alternately, one vertex at a time. The search stops as soon
+				 * as the two meet, or as soon as one of them is exhausted,
+				 * which happens first for the smallest one. The cost is
+				 * therefore proportional to the size of the smallest part,
+				 * which is typically a few spots when a link is removed near
+				 * the end of a large lineage.
+				 */
+				final ComponentSearch< T > targetSearch = new ComponentSearch< T >( graph, graph.getEdgeTarget( e ) );
+				final ComponentSearch< T > sourceSearch = new ComponentSearch< T >( graph, graph.getEdgeSource( e ) );
+				final ComponentSearch< T > smallest;
+				while ( true )
 				{
-					final T source = graph.getEdgeSource( e );
-					// Get its connected set
-					final BreadthFirstIterator< T, DefaultWeightedEdge > i = new BreadthFirstIterator< T, DefaultWeightedEdge >( graph, source );
-					while ( i.hasNext() )
+					/*
+					 * We step the target first, so that on a tie the target is
+					 * found exhausted first, and the source keeps the original
+					 * id.
+					 */
+					if ( targetSearch.isExhausted() )
 					{
-						final T sv = i.next();
-						sourceVCS.add( sv );
-						sourceECS.addAll( graph.edgesOf( sv ) );
+						smallest = targetSearch;
+						break;
 					}
-				}
-				// Target
-				final HashSet< T > targetVCS = new HashSet< T >();
-				final HashSet< DefaultWeightedEdge > targetECS = new HashSet< DefaultWeightedEdge >();
-				{
-					final T target = graph.getEdgeTarget( e );
-					// Get its connected set
-					final BreadthFirstIterator< T, DefaultWeightedEdge > i = new BreadthFirstIterator< T, DefaultWeightedEdge >( graph, target );
-					while ( i.hasNext() )
+					if ( targetSearch.step( sourceSearch ) )
+					{
+						/*
+						 * The two components met: the edge was an "internal"
+						 * edge. Because there is another path that connect its
+						 * source and target, removing it did NOT split the
+						 * track in 2. We therefore need not to re-attribute it.
+						 */
+						tracksUpdated.add( id );
+						return;
+					}
+					if ( sourceSearch.isExhausted() )
 					{
-						final T sv = i.next();
-						targetVCS.add( sv );
-						targetECS.addAll( graph.edgesOf( sv ) );
+						smallest = sourceSearch;
+						break;
+					}
+					if ( sourceSearch.step( targetSearch ) )
+					{
+						tracksUpdated.add( id );
+						return;
 					}
 				}
 
 				/*
-				 * If the two connected components are the same, it means that
-				 * the edge was an "internal" edge: Because there is another
-				 * path that connect its source and target, removing it did NOT
-				 * split the track in 2. We therefore need not to re-attribute
-				 * it.
+				 * Re-attribute the smallest part to a new id. The largest one
+				 * (in vertices) keeps the original id and its name, and we
+				 * only have to remove the smallest part from its sets. The
+				 * small one gets a new id and a new name.
 				 */
-				if ( targetVCS.equals( sourceVCS ) )
-				{
-					tracksUpdated.add( id );
-					connectedEdgeSets.get( id ).remove( e );
-					return;
-				}
 
-				/*
-				 * Re-attribute the found connected sets to the model. The
-				 * largest one (in vertices) gets the original id, the other
-				 * gets a new id. As for names: the largest one keeps its name,
-				 * the small one gets a new name.
-				 */
+				set.removeAll( smallest.edges );
+				connectedVertexSets.get( id ).removeAll( smallest.visited );
+				tracksUpdated.add( id ); // old track has changed
 
-				if ( targetVCS.size() > sourceVCS.size() )
+				if ( smallest.edges.size() > 0 )
 				{
-
-					connectedEdgeSets.put( id, targetECS );
-					connectedVertexSets.put( id, targetVCS ); // they already
-																// have the
-																// right id in
-																// #vertexToId
-					tracksUpdated.add( id ); // old track has changed
-
-					if ( sourceECS.size() > 0 )
+					// the smaller part is still a track
+					final int newid = IDcounter++;
+					connectedEdgeSets.put( newid, smallest.edges );
+					for ( final DefaultWeightedEdge te : smallest.edges )
 					{
-						// the smaller part is still a track
-						final int newid = IDcounter++;
-						connectedEdgeSets.put( newid, sourceECS ); // otherwise
-																	// forget it
-						for ( final DefaultWeightedEdge te : sourceECS )
-						{
-							edgeToID.put( te, newid );
-						}
-						connectedVertexSets.put( newid, sourceVCS );
-						for ( final T tv : sourceVCS )
-						{
-							vertexToID.put( tv, newid );
-						}
-						final Boolean targetVisibility = visibility.get( id );
-						visibility.put( newid, targetVisibility );
-						names.put( newid, nameGenerator.next() );
-						// Transaction: both children tracks are marked for
-						// update.
-						tracksUpdated.add( newid );
-
+						edgeToID.put( te, newid );
 					}
-					else
+					connectedVertexSets.put( newid, smallest.visited );
+					for ( final T tv : smallest.visited )
 					{
-						/*
-						 * Nothing remains from the smallest part. The remaining
-						 * solitary vertex has no right to be called a track.
-						 */
-						final T solitary = sourceVCS.iterator().next();
-						vertexToID.remove( solitary );
+						vertexToID.put( tv, newid );
 					}
-
+					final Boolean targetVisibility = visibility.get( id );
+					putVisibility( newid, targetVisibility );
+					putName( newid, nameGenerator.next() );
+					// Transaction: both children tracks are marked for update.
+					tracksUpdated.add( newid );
 				}
 				else
 				{
+					/*
+					 * Nothing remains from the smallest part. The remaining
+					 * solitary vertex has no right to be called a track.
+					 */
+					final T solitary = smallest.visited.iterator().next();
+					vertexToID.remove( solitary );
+				}
+			}
+		}
 
-					if ( sourceECS.size() > 0 )
-					{
-						// There are still some pieces left. It is worth noting
-						// it.
-						connectedEdgeSets.put( id, sourceECS );
-						connectedVertexSets.put( id, sourceVCS );
-						tracksUpdated.add( id );
+	}
 
-						if ( targetECS.size() > 0 )
-						{
-							// the small part is still a track
-							final int newid = IDcounter++;
-							connectedEdgeSets.put( newid, targetECS );
-							for ( final DefaultWeightedEdge te : targetECS )
-							{
-								edgeToID.put( te, newid );
-							}
-							connectedVertexSets.put( newid, targetVCS );
-							for ( final T v : targetVCS )
-							{
-								vertexToID.put( v, newid );
-							}
-							final Boolean targetVisibility = visibility.get( id );
-							visibility.put( newid, targetVisibility );
-							names.put( newid, nameGenerator.next() );
-							// Transaction: both children tracks are marked for
-							// update.
-							tracksUpdated.add( newid );
-						}
-						else
-						{
-							/*
-							 * Nothing remains from the smallest part. The
-							 * remaining solitary vertex has no right to be
-							 * called a track.
-							 */
-							final T solitary = targetVCS.iterator().next();
-							vertexToID.remove( solitary );
-						}
+	/**
+	 * A breadth-first search of the connected component of a vertex, that can
+	 * be advanced one vertex at a time and interleaved with another search, to
+	 * find out whether the two vertices are connected without traversing more
+	 * than the smallest of their components.
+	 */
+	private static class ComponentSearch< V >
+	{
 
-					}
-					else
-					{
-						// Nothing remains (maybe a solitary vertex) -> forget
-						// about it all.
-						connectedEdgeSets.remove( id );
-						connectedVertexSets.remove( id );
-						names.remove( id );
-						visibility.remove( id );
-						tracksUpdated.remove( id );
-					}
+		private final Graph< V, DefaultWeightedEdge > graph;
+
+		private final HashSet< V > visited = new HashSet< V >();
+
+		private final HashSet< DefaultWeightedEdge > edges = new HashSet< DefaultWeightedEdge >();
 
+		private final ArrayDeque< V > queue = new ArrayDeque< V >();
+
+		private ComponentSearch( final Graph< V, DefaultWeightedEdge > graph, final V start )
+		{
+			this.graph = graph;
+			visited.add( start );
+			queue.add( start );
+		}
+
+		private boolean isExhausted()
+		{
+			return queue.isEmpty();
+		}
+
+		/**
+		 * Visits the edges of the next vertex in the queue.
+		 *
+		 * @param other
+		 *            the search this one is interleaved with.
+		 * @return <code>true</code> if one of the vertices reached was already
+		 *         visited by the other search.
+		 */
+		private boolean step( final ComponentSearch< V > other )
+		{
+			final V v = queue.poll();
+			for ( final DefaultWeightedEdge edge : graph.edgesOf( v ) )
+			{
+				edges.add( edge );
+				final V neighbor = Graphs.getOppositeVertex( graph, edge, v );
+				if ( other.visited.contains( neighbor ) ) { return true; }
+				if ( visited.add( neighbor ) )
+				{
+					queue.add( neighbor );
 				}
 			}
+			return false;
 		}
+	}
 
+	/**
+	 * An entry of the track name index. Track names are split in alphanumeric
+	 * chunks once, when the entry is created, instead of at each comparison.
+	 */
+	private static final class NamedTrack implements Comparable< NamedTrack >
+	{
+
+		private final Integer id;
+
+		private final AlphanumComparator.Key key;
+
+		private NamedTrack( final Integer id, final String name )
+		{
+			this.id = id;
+			this.key = new AlphanumComparator.Key( name );
+		}
+
+		@Override
+		public int compareTo( final NamedTrack other )
+		{
+			final int result = key.compareTo( other.key );
+			if ( result != 0 ) { return result; }
+			return id.compareTo( other.id );
+		}
 	}
 
 	private static class DefaultNameGenerator implements Iterator< String >
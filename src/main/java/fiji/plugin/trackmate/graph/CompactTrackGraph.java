@@ -0,0 +1,491 @@
+package fiji.plugin.trackmate.graph;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.tracking.TrackableObject;
+
+/**
+ * A compact, immutable track graph, where vertices and edges are identified by
+ * <code>int</code> indices and stored in primitive arrays.
+ * <p>
+ * Vertices are sorted by frame, then by ID, so that vertex indices follow
+ * time. Edges are directed forward in time: the source of an edge always has a
+ * smaller index than its target. Edges are sorted by source then by target,
+ * and the edges of a vertex are accessed in compressed sparse row (CSR)
+ * fashion, with one index range for outgoing edges and one for incoming
+ * edges, both ordered by time. An edge takes 20 bytes, and a vertex 24 bytes
+ * plus the object reference.
+ * <p>
+ * Instances are created with a {@link Builder}. The graph can be viewed as a
+ * JGraphT graph with {@link #asGraph()}, or copied into the
+ * {@link SimpleWeightedGraph} expected by the rest of TrackMate with
+ * {@link #toSimpleWeightedGraph()}.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ *
+ * @param <T>
+ *            the type of the vertices.
+ */
+public class CompactTrackGraph< T extends TrackableObject< T >>
+{
+
+	private final Object[] vertices;
+
+	private final int[] vertexFrames;
+
+	private final int[] vertexIDs;
+
+	private final int[] edgeSources;
+
+	private final int[] edgeTargets;
+
+	private final double[] edgeWeights;
+
+	/**
+	 * The outgoing edges of vertex <code>v</code> are the edges from
+	 * <code>outStart[v]</code> (included) to <code>outStart[v+1]</code>
+	 * (excluded).
+	 */
+	private final int[] outStart;
+
+	/**
+	 * The incoming edges of vertex <code>v</code> are the edges stored in
+	 * {@link #inEdges} from <code>inStart[v]</code> (included) to
+	 * <code>inStart[v+1]</code> (excluded).
+	 */
+	private final int[] inStart;
+
+	private final int[] inEdges;
+
+	private CompactTrackGraph( final Object[] vertices, final int[] vertexFrames, final int[] vertexIDs, final int[] edgeSources, final int[] edgeTargets, final double[] edgeWeights, final int[] outStart, final int[] inStart, final int[] inEdges )
+	{
+		this.vertices = vertices;
+		this.vertexFrames = vertexFrames;
+		this.vertexIDs = vertexIDs;
+		this.edgeSources = edgeSources;
+		this.edgeTargets = edgeTargets;
+		this.edgeWeights = edgeWeights;
+		this.outStart = outStart;
+		this.inStart = inStart;
+		this.inEdges = inEdges;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	public int vertexCount()
+	{
+		return vertices.length;
+	}
+
+	public int edgeCount()
+	{
+		return edgeSources.length;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	public T getVertex( final int v )
+	{
+		return ( T ) vertices[ v ];
+	}
+
+	/**
+	 * Returns the index of the specified vertex, found by binary search on its
+	 * frame and ID.
+	 *
+	 * @param vertex
+	 *            the vertex to search.
+	 * @return its index, or -1 if it is not in this graph.
+	 */
+	public int indexOf( final T vertex )
+	{
+		final int frame = vertex.frame();
+		final int id = vertex.ID();
+		int low = 0;
+		int high = vertices.length - 1;
+		while ( low <= high )
+		{
+			final int mid = ( low + high ) >>> 1;
+			final int c = compare( vertexFrames[ mid ], vertexIDs[ mid ], frame, id );
+			if ( c < 0 )
+			{
+				low = mid + 1;
+			}
+			else if ( c > 0 )
+			{
+				high = mid - 1;
+			}
+			else
+			{
+				return vertices[ mid ] == vertex ? mid : -1;
+			}
+		}
+		return -1;
+	}
+
+	public int getEdgeSource( final int e )
+	{
+		return edgeSources[ e ];
+	}
+
+	public int getEdgeTarget( final int e )
+	{
+		return edgeTargets[ e ];
+	}
+
+	public double getEdgeWeight( final int e )
+	{
+		return edgeWeights[ e ];
+	}
+
+	public int outDegreeOf( final int v )
+	{
+		return outStart[ v + 1 ] - outStart[ v ];
+	}
+
+	/**
+	 * Returns the <code>k</code>th outgoing edge of a vertex. Outgoing edges
+	 * are sorted by target index.
+	 *
+	 * @param v
+	 *            the vertex index.
+	 * @param k
+	 *            the edge rank, smaller than {@link #outDegreeOf(int)}.
+	 * @return the edge index.
+	 */
+	public int outgoingEdge( final int v, final int k )
+	{
+		return outStart[ v ] + k;
+	}
+
+	public int inDegreeOf( final int v )
+	{
+		return inStart[ v + 1 ] - inStart[ v ];
+	}
+
+	/**
+	 * Returns the <code>k</code>th incoming edge of a vertex. Incoming edges
+	 * are sorted by source index.
+	 *
+	 * @param v
+	 *            the vertex index.
+	 * @param k
+	 *            the edge rank, smaller than {@link #inDegreeOf(int)}.
+	 * @return the edge index.
+	 */
+	public int incomingEdge( final int v, final int k )
+	{
+		return inEdges[ inStart[ v ] + k ];
+	}
+
+	/**
+	 * Returns the edge going from a vertex to another one.
+	 *
+	 * @param source
+	 *            the source vertex index.
+	 * @param target
+	 *            the target vertex index.
+	 * @return the edge index, or -1 if there is no such edge.
+	 */
+	public int getEdge( final int source, final int target )
+	{
+		final int e = Arrays.binarySearch( edgeTargets, outStart[ source ], outStart[ source + 1 ], target );
+		return e < 0 ? -1 : e;
+	}
+
+	/**
+	 * Returns a read-only JGraphT view of this graph, where edges are
+	 * represented by their index.
+	 *
+	 * @return a new adapter.
+	 */
+	public CompactTrackGraphAdapter< T > asGraph()
+	{
+		return new CompactTrackGraphAdapter< T >( this );
+	}
+
+	/**
+	 * Copies this graph in a new {@link SimpleWeightedGraph}. Vertices and
+	 * edges are added in index order.
+	 *
+	 * @return a new graph.
+	 */
+	public SimpleWeightedGraph< T, DefaultWeightedEdge > toSimpleWeightedGraph()
+	{
+		final SimpleWeightedGraph< T, DefaultWeightedEdge > graph = new SimpleWeightedGraph< T, DefaultWeightedEdge >( DefaultWeightedEdge.class );
+		for ( int v = 0; v < vertices.length; v++ )
+		{
+			graph.addVertex( getVertex( v ) );
+		}
+		for ( int e = 0; e < edgeSources.length; e++ )
+		{
+			final DefaultWeightedEdge edge = graph.addEdge( getVertex( edgeSources[ e ] ), getVertex( edgeTargets[ e ] ) );
+			graph.setEdgeWeight( edge, edgeWeights[ e ] );
+		}
+		return graph;
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString() + ": " + vertices.length + " vertices, " + edgeSources.length + " edges.";
+	}
+
+	private static final int compare( final int frame1, final int id1, final int frame2, final int id2 )
+	{
+		if ( frame1 != frame2 ) { return frame1 < frame2 ? -1 : 1; }
+		return id1 < id2 ? -1 : ( id1 == id2 ? 0 : 1 );
+	}
+
+	/*
+	 * INNER CLASSES
+	 */
+
+	/**
+	 * Accumulates vertices and edges, and builds a {@link CompactTrackGraph}
+	 * from them. Edges can be added in any order and direction. As for a
+	 * {@link SimpleWeightedGraph}, adding an edge between two vertices that
+	 * are already linked has no effect.
+	 * <p>
+	 * Vertices are identified by their frame and ID, which must not change
+	 * until the graph is built.
+	 *
+	 * @param <T>
+	 *            the type of the vertices.
+	 */
+	public static class Builder< T extends TrackableObject< T >>
+	{
+
+		private Object[] vertices;
+
+		private int nVertices;
+
+		private Object[] sources;
+
+		private Object[] targets;
+
+		private double[] weights;
+
+		private int nEdges;
+
+		public Builder()
+		{
+			this( 16 );
+		}
+
+		/**
+		 * Creates a builder with room for the specified number of edges.
+		 *
+		 * @param edgeCapacity
+		 *            the initial edge capacity.
+		 */
+		public Builder( final int edgeCapacity )
+		{
+			final int capacity = Math.max( 1, edgeCapacity );
+			this.vertices = new Object[ 16 ];
+			this.sources = new Object[ capacity ];
+			this.targets = new Object[ capacity ];
+			this.weights = new double[ capacity ];
+		}
+
+		/**
+		 * Adds a vertex. Vertices that are the endpoint of an edge need not be
+		 * added separately.
+		 *
+		 * @param vertex
+		 *            the vertex.
+		 */
+		public void addVertex( final T vertex )
+		{
+			if ( nVertices == vertices.length )
+			{
+				vertices = Arrays.copyOf( vertices, 2 * nVertices );
+			}
+			vertices[ nVertices++ ] = vertex;
+		}
+
+		/**
+		 * Adds an edge.
+		 *
+		 * @param source
+		 *            the first vertex.
+		 * @param target
+		 *            the second vertex.
+		 * @param weight
+		 *            the edge weight.
+		 * @throws IllegalArgumentException
+		 *             if source and target are the same vertex.
+		 */
+		public void addEdge( final T source, final T target, final double weight )
+		{
+			if ( source == target ) { throw new IllegalArgumentException( "Loops are not allowed." ); }
+			if ( nEdges == sources.length )
+			{
+				final int capacity = 2 * nEdges;
+				sources = Arrays.copyOf( sources, capacity );
+				targets = Arrays.copyOf( targets, capacity );
+				weights = Arrays.copyOf( weights, capacity );
+			}
+			sources[ nEdges ] = source;
+			targets[ nEdges ] = target;
+			weights[ nEdges ] = weight;
+			nEdges++;
+		}
+
+		/**
+		 * Builds the graph.
+		 *
+		 * @return a new {@link CompactTrackGraph}.
+		 */
+		public CompactTrackGraph< T > build()
+		{
+			/*
+			 * Collect and sort distinct vertices.
+			 */
+
+			final Object[] all = new Object[ nVertices + 2 * nEdges ];
+			System.arraycopy( vertices, 0, all, 0, nVertices );
+			System.arraycopy( sources, 0, all, nVertices, nEdges );
+			System.arraycopy( targets, 0, all, nVertices + nEdges, nEdges );
+			Arrays.sort( all, new Comparator< Object >()
+			{
+				@SuppressWarnings( "unchecked" )
+				@Override
+				public int compare( final Object o1, final Object o2 )
+				{
+					final T t1 = ( T ) o1;
+					final T t2 = ( T ) o2;
+					return CompactTrackGraph.compare( t1.frame(), t1.ID(), t2.frame(), t2.ID() );
+				}
+			} );
+
+			int nv = 0;
+			for ( int i = 0; i < all.length; i++ )
+			{
+				if ( nv == 0 || all[ i ] != all[ nv - 1 ] )
+				{
+					all[ nv++ ] = all[ i ];
+				}
+			}
+			final Object[] vertexArray = Arrays.copyOf( all, nv );
+			final int[] vertexFrames = new int[ nv ];
+			final int[] vertexIDs = new int[ nv ];
+			for ( int v = 0; v < nv; v++ )
+			{
+				@SuppressWarnings( "unchecked" )
+				final T vertex = ( T ) vertexArray[ v ];
+				vertexFrames[ v ] = vertex.frame();
+				vertexIDs[ v ] = vertex.ID();
+				if ( v > 0 && vertexFrames[ v ] == vertexFrames[ v - 1 ] && vertexIDs[ v ] == vertexIDs[ v - 1 ] ) { throw new IllegalArgumentException( "Two different vertices have the same frame and ID: " + vertex + " and " + vertexArray[ v - 1 ] + "." ); }
+			}
+
+			final CompactTrackGraph< T > index = new CompactTrackGraph< T >( vertexArray, vertexFrames, vertexIDs, null, null, null, null, null, null );
+
+			/*
+			 * Edges from earlier to later vertex, counting-sorted by source.
+			 */
+
+			final int[] src = new int[ nEdges ];
+			final int[] tgt = new int[ nEdges ];
+			final int[] outStart = new int[ nv + 1 ];
+			for ( int e = 0; e < nEdges; e++ )
+			{
+				@SuppressWarnings( "unchecked" )
+				final int s = index.indexOf( ( T ) sources[ e ] );
+				@SuppressWarnings( "unchecked" )
+				final int t = index.indexOf( ( T ) targets[ e ] );
+				src[ e ] = Math.min( s, t );
+				tgt[ e ] = Math.max( s, t );
+				outStart[ src[ e ] + 1 ]++;
+			}
+			for ( int v = 0; v < nv; v++ )
+			{
+				outStart[ v + 1 ] += outStart[ v ];
+			}
+
+			final int[] sortedTargets = new int[ nEdges ];
+			final double[] sortedWeights = new double[ nEdges ];
+			final int[] next = Arrays.copyOf( outStart, nv );
+			for ( int e = 0; e < nEdges; e++ )
+			{
+				final int k = next[ src[ e ] ]++;
+				sortedTargets[ k ] = tgt[ e ];
+				sortedWeights[ k ] = weights[ e ];
+			}
+
+			/*
+			 * Sort the few edges of each source by target, keeping insertion
+			 * order for duplicates, and only keep the first duplicate.
+			 */
+
+			final int[] edgeSources = new int[ nEdges ];
+			final int[] edgeTargets = new int[ nEdges ];
+			final double[] edgeWeights = new double[ nEdges ];
+			int ne = 0;
+			for ( int v = 0; v < nv; v++ )
+			{
+				final int start = outStart[ v ];
+				final int end = outStart[ v + 1 ];
+				for ( int k = start + 1; k < end; k++ )
+				{
+					final int t = sortedTargets[ k ];
+					final double w = sortedWeights[ k ];
+					int l = k - 1;
+					while ( l >= start && sortedTargets[ l ] > t )
+					{
+						sortedTargets[ l + 1 ] = sortedTargets[ l ];
+						sortedWeights[ l + 1 ] = sortedWeights[ l ];
+						l--;
+					}
+					sortedTargets[ l + 1 ] = t;
+					sortedWeights[ l + 1 ] = w;
+				}
+
+				outStart[ v ] = ne;
+				for ( int k = start; k < end; k++ )
+				{
+					if ( k > start && sortedTargets[ k ] == sortedTargets[ k - 1 ] )
+					{
+						continue;
+					}
+					edgeSources[ ne ] = v;
+					edgeTargets[ ne ] = sortedTargets[ k ];
+					edgeWeights[ ne ] = sortedWeights[ k ];
+					ne++;
+				}
+			}
+			outStart[ nv ] = ne;
+
+			/*
+			 * Incoming edges, counting-sorted by target. Edges are visited by
+			 * increasing source, so the incoming edges of a vertex are sorted
+			 * by source.
+			 */
+
+			final int[] inStart = new int[ nv + 1 ];
+			for ( int e = 0; e < ne; e++ )
+			{
+				inStart[ edgeTargets[ e ] + 1 ]++;
+			}
+			for ( int v = 0; v < nv; v++ )
+			{
+				inStart[ v + 1 ] += inStart[ v ];
+			}
+			final int[] inEdges = new int[ ne ];
+			System.arraycopy( inStart, 0, next, 0, nv );
+			for ( int e = 0; e < ne; e++ )
+			{
+				inEdges[ next[ edgeTargets[ e ] ]++ ] = e;
+			}
+
+			return new CompactTrackGraph< T >( vertexArray, vertexFrames, vertexIDs,
+					Arrays.copyOf( edgeSources, ne ), Arrays.copyOf( edgeTargets, ne ), Arrays.copyOf( edgeWeights, ne ),
+					outStart, inStart, inEdges );
+		}
+	}
+}
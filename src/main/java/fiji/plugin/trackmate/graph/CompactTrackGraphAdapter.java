@@ -0,0 +1,392 @@
+package fiji.plugin.trackmate.graph;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.EdgeFactory;
+import org.jgrapht.WeightedGraph;
+import org.jgrapht.graph.AbstractGraph;
+
+import fiji.plugin.trackmate.tracking.TrackableObject;
+
+/**
+ * A read-only JGraphT view of a {@link CompactTrackGraph}.
+ * <p>
+ * Edges are represented by their {@link Integer} index in the compact graph,
+ * and are directed forward in time. The view does not copy the graph, and
+ * only allocates when iterating or boxing edge indices. All methods that
+ * would modify the graph throw an {@link UnsupportedOperationException}.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ *
+ * @param <T>
+ *            the type of the vertices.
+ */
+public class CompactTrackGraphAdapter< T extends TrackableObject< T >> extends AbstractGraph< T, Integer > implements DirectedGraph< T, Integer >, WeightedGraph< T, Integer >
+{
+
+	private static final String READ_ONLY = "This graph is read-only.";
+
+	private final CompactTrackGraph< T > graph;
+
+	public CompactTrackGraphAdapter( final CompactTrackGraph< T > graph )
+	{
+		this.graph = graph;
+	}
+
+	/**
+	 * Returns the compact graph viewed by this adapter.
+	 *
+	 * @return the compact graph.
+	 */
+	public CompactTrackGraph< T > getCompactGraph()
+	{
+		return graph;
+	}
+
+	/*
+	 * QUERIES
+	 */
+
+	@Override
+	public Set< Integer > getAllEdges( final T sourceVertex, final T targetVertex )
+	{
+		final int s = graph.indexOf( sourceVertex );
+		final int t = graph.indexOf( targetVertex );
+		if ( s < 0 || t < 0 ) { return null; }
+		final int e = graph.getEdge( s, t );
+		if ( e < 0 ) { return Collections.emptySet(); }
+		return Collections.singleton( Integer.valueOf( e ) );
+	}
+
+	@Override
+	public Integer getEdge( final T sourceVertex, final T targetVertex )
+	{
+		final int s = graph.indexOf( sourceVertex );
+		final int t = graph.indexOf( targetVertex );
+		if ( s < 0 || t < 0 ) { return null; }
+		final int e = graph.getEdge( s, t );
+		return e < 0 ? null : Integer.valueOf( e );
+	}
+
+	@Override
+	public EdgeFactory< T, Integer > getEdgeFactory()
+	{
+		return null;
+	}
+
+	@Override
+	public boolean containsEdge( final Integer e )
+	{
+		return null != e && e.intValue() >= 0 && e.intValue() < graph.edgeCount();
+	}
+
+	@Override
+	public boolean containsVertex( final T v )
+	{
+		return graph.indexOf( v ) >= 0;
+	}
+
+	@Override
+	public Set< Integer > edgeSet()
+	{
+		return new IndexSet( 0, graph.edgeCount() );
+	}
+
+	@Override
+	public Set< Integer > edgesOf( final T vertex )
+	{
+		final int v = vertexIndex( vertex );
+		final Set< Integer > incoming = new IncomingEdgeSet( v );
+		final Set< Integer > outgoing = new IndexSet( graph.outgoingEdge( v, 0 ), graph.outgoingEdge( v, graph.outDegreeOf( v ) ) );
+		return new AbstractSet< Integer >()
+		{
+			@Override
+			public Iterator< Integer > iterator()
+			{
+				final Iterator< Integer > in = incoming.iterator();
+				final Iterator< Integer > out = outgoing.iterator();
+				return new ReadOnlyIterator< Integer >()
+				{
+					@Override
+					public boolean hasNext()
+					{
+						return in.hasNext() || out.hasNext();
+					}
+
+					@Override
+					public Integer next()
+					{
+						return in.hasNext() ? in.next() : out.next();
+					}
+				};
+			}
+
+			@Override
+			public int size()
+			{
+				return incoming.size() + outgoing.size();
+			}
+
+			@Override
+			public boolean contains( final Object o )
+			{
+				return incoming.contains( o ) || outgoing.contains( o );
+			}
+		};
+	}
+
+	@Override
+	public Set< T > vertexSet()
+	{
+		return new AbstractSet< T >()
+		{
+			@Override
+			public Iterator< T > iterator()
+			{
+				return new ReadOnlyIterator< T >()
+				{
+					private int v = 0;
+
+					@Override
+					public boolean hasNext()
+					{
+						return v < graph.vertexCount();
+					}
+
+					@Override
+					public T next()
+					{
+						if ( !hasNext() ) { throw new NoSuchElementException(); }
+						return graph.getVertex( v++ );
+					}
+				};
+			}
+
+			@Override
+			public int size()
+			{
+				return graph.vertexCount();
+			}
+
+			@SuppressWarnings( "unchecked" )
+			@Override
+			public boolean contains( final Object o )
+			{
+				return o instanceof TrackableObject && graph.indexOf( ( T ) o ) >= 0;
+			}
+		};
+	}
+
+	@Override
+	public T getEdgeSource( final Integer e )
+	{
+		return graph.getVertex( graph.getEdgeSource( e.intValue() ) );
+	}
+
+	@Override
+	public T getEdgeTarget( final Integer e )
+	{
+		return graph.getVertex( graph.getEdgeTarget( e.intValue() ) );
+	}
+
+	@Override
+	public double getEdgeWeight( final Integer e )
+	{
+		return graph.getEdgeWeight( e.intValue() );
+	}
+
+	@Override
+	public int inDegreeOf( final T vertex )
+	{
+		return graph.inDegreeOf( vertexIndex( vertex ) );
+	}
+
+	@Override
+	public Set< Integer > incomingEdgesOf( final T vertex )
+	{
+		return new IncomingEdgeSet( vertexIndex( vertex ) );
+	}
+
+	@Override
+	public int outDegreeOf( final T vertex )
+	{
+		return graph.outDegreeOf( vertexIndex( vertex ) );
+	}
+
+	@Override
+	public Set< Integer > outgoingEdgesOf( final T vertex )
+	{
+		final int v = vertexIndex( vertex );
+		return new IndexSet( graph.outgoingEdge( v, 0 ), graph.outgoingEdge( v, graph.outDegreeOf( v ) ) );
+	}
+
+	private int vertexIndex( final T vertex )
+	{
+		final int v = graph.indexOf( vertex );
+		if ( v < 0 ) { throw new IllegalArgumentException( "No such vertex in graph: " + vertex ); }
+		return v;
+	}
+
+	/*
+	 * MODIFICATIONS
+	 */
+
+	@Override
+	public Integer addEdge( final T sourceVertex, final T targetVertex )
+	{
+		throw new UnsupportedOperationException( READ_ONLY );
+	}
+
+	@Override
+	public boolean addEdge( final T sourceVertex, final T targetVertex, final Integer e )
+	{
+		throw new UnsupportedOperationException( READ_ONLY );
+	}
+
+	@Override
+	public boolean addVertex( final T v )
+	{
+		throw new UnsupportedOperationException( READ_ONLY );
+	}
+
+	@Override
+	public Integer removeEdge( final T sourceVertex, final T targetVertex )
+	{
+		throw new UnsupportedOperationException( READ_ONLY );
+	}
+
+	@Override
+	public boolean removeEdge( final Integer e )
+	{
+		throw new UnsupportedOperationException( READ_ONLY );
+	}
+
+	@Override
+	public boolean removeVertex( final T v )
+	{
+		throw new UnsupportedOperationException( READ_ONLY );
+	}
+
+	@Override
+	public void setEdgeWeight( final Integer e, final double weight )
+	{
+		throw new UnsupportedOperationException( READ_ONLY );
+	}
+
+	/*
+	 * INNER CLASSES
+	 */
+
+	private static abstract class ReadOnlyIterator< E > implements Iterator< E >
+	{
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException( READ_ONLY );
+		}
+	}
+
+	/**
+	 * The set of the edge indices from <code>start</code> (included) to
+	 * <code>end</code> (excluded).
+	 */
+	private static final class IndexSet extends AbstractSet< Integer >
+	{
+		private final int start;
+
+		private final int end;
+
+		private IndexSet( final int start, final int end )
+		{
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public Iterator< Integer > iterator()
+		{
+			return new ReadOnlyIterator< Integer >()
+			{
+				private int e = start;
+
+				@Override
+				public boolean hasNext()
+				{
+					return e < end;
+				}
+
+				@Override
+				public Integer next()
+				{
+					if ( !hasNext() ) { throw new NoSuchElementException(); }
+					return Integer.valueOf( e++ );
+				}
+			};
+		}
+
+		@Override
+		public int size()
+		{
+			return end - start;
+		}
+
+		@Override
+		public boolean contains( final Object o )
+		{
+			if ( !( o instanceof Integer ) ) { return false; }
+			final int e = ( ( Integer ) o ).intValue();
+			return e >= start && e < end;
+		}
+	}
+
+	private final class IncomingEdgeSet extends AbstractSet< Integer >
+	{
+		private final int v;
+
+		private IncomingEdgeSet( final int v )
+		{
+			this.v = v;
+		}
+
+		@Override
+		public Iterator< Integer > iterator()
+		{
+			return new ReadOnlyIterator< Integer >()
+			{
+				private int k = 0;
+
+				@Override
+				public boolean hasNext()
+				{
+					return k < graph.inDegreeOf( v );
+				}
+
+				@Override
+				public Integer next()
+				{
+					if ( !hasNext() ) { throw new NoSuchElementException(); }
+					return Integer.valueOf( graph.incomingEdge( v, k++ ) );
+				}
+			};
+		}
+
+		@Override
+		public int size()
+		{
+			return graph.inDegreeOf( v );
+		}
+
+		@Override
+		public boolean contains( final Object o )
+		{
+			if ( !( o instanceof Integer ) ) { return false; }
+			final int e = ( ( Integer ) o ).intValue();
+			return e >= 0 && e < graph.edgeCount() && graph.getEdgeTarget( e ) == v;
+		}
+	}
+}
@@ -1,10 +1,18 @@
 package fiji.plugin.trackmate.tracking.kalman;
 
-import Jama.Matrix;
-
 /**
  * A Kalman filter that deals with a single particle motion in 3D with a
  * constant velocity vector.
+ * <p>
+ * The evolution matrix links position evolution and velocity through
+ * <code><b>x</b>(k+1) = <b>x</b>(k) + <b>v</b> × dt</code>, with
+ * <code>dt = 1</code> frame, and only the position is measured. Because the
+ * initial state covariance, the process noise and the measurement noise are
+ * the same along X, Y and Z, the 3 axes are independent and share the same
+ * 2×2 position-velocity covariance. The filter therefore stores this
+ * covariance as 3 scalars and runs the prediction and update steps in closed
+ * form, without allocating any matrix. See {@link CVMKalmanFilterArray} to run
+ * many filters in a single loop.
  *
  * @author Jean-Yves Tinevez - 2014
  *
@@ -13,39 +21,43 @@ public class CVMKalmanFilter
 {
 
 	/**
-	 * The evolution matrix, or state transition matrix. In our case, it is the
-	 * matrix that links position evolution and velocity through
-	 * <code><b>x</b>(k+1) = <b>x</b>(k) + <b>v</b> × dt</code>. We assume
-	 * <code><b>v</b></code> is constant and measured in unit of frames, so
-	 * <code>dt = 1</code>.
+	 * The variance of the position on one axis, in the <i>a posteriori</i>
+	 * (after update) or <i>a priori</i> (after prediction) error covariance
+	 * matrix.
 	 */
-	private final Matrix A;
+	private double pp;
 
 	/**
-	 * The <i>a posteriori</i> error covariance matrix, measure the accuracy of
-	 * the state estimate.
+	 * The covariance between position and velocity on one axis.
 	 */
-	private Matrix P;
+	private double pv;
 
 	/**
-	 * Covariance matrix of the process noise. Determine how noisy the process
-	 * is.
+	 * The variance of the velocity on one axis.
 	 */
-	private final Matrix Q;
+	private double vv;
 
 	/**
-	 * Covariance matrix of the observation noise. Determine how noisy our
-	 * measurements are.
+	 * Variance of the process noise on position.
 	 */
-	private final Matrix R;
+	private final double qp;
 
-	/** Current state. */
-	private Matrix X;
+	/**
+	 * Variance of the process noise on velocity.
+	 */
+	private final double qv;
+
+	/**
+	 * Variance of the observation noise. Determine how noisy our measurements
+	 * are.
+	 */
+	private final double r;
 
-	private final Matrix H;
+	/** Current state. */
+	private final double[] X = new double[ 6 ];
 
 	/** Prediction. */
-	private Matrix Xp;
+	private final double[] Xp = new double[ 6 ];
 
 	/**
 	 * Number of occlusions (no measurements) that happened so far.
@@ -83,30 +95,19 @@ public class CVMKalmanFilter
 	public CVMKalmanFilter( final double[] X0, final double initStateCovariance, final double positionProcessStd, final double velocityProcessStd, final double positionMeasurementStd )
 	{
 		// Initial state
-		X = new Matrix( X0, 6 );
-
-		// Evolution matrix
-		A = Matrix.identity( 6, 6 );
-		for ( int i = 0; i < 3; i++ )
-		{
-			A.set( i, 3 + i, 1 );
-		}
-
-		// Measurement matrix
-		H = Matrix.identity( 3, 6 );
+		System.arraycopy( X0, 0, X, 0, 6 );
 
 		// State covariance
-		P = Matrix.identity( 6, 6 ).times( initStateCovariance );
+		pp = initStateCovariance;
+		pv = 0d;
+		vv = initStateCovariance;
 
 		// Process covariance
-		Q = Matrix.identity( 6, 6 );
-		for ( int i = 0; i < 3; i++ )
-		{
-			Q.set( i, i, positionProcessStd * positionProcessStd );
-			Q.set( 3 + i, 3 + i, velocityProcessStd * velocityProcessStd );
-		}
+		qp = positionProcessStd * positionProcessStd;
+		qv = velocityProcessStd * velocityProcessStd;
 
-		R = Matrix.identity( 3, 3 ).times( positionMeasurementStd * positionMeasurementStd );
+		// Measurement covariance
+		r = positionMeasurementStd * positionMeasurementStd;
 	}
 
 	/**
@@ -116,13 +117,36 @@ public class CVMKalmanFilter
 	 * @return a new <code>double[]</code> of 6 elements containing the
 	 *         predicted state: <code>x, y, z, vx, vy, vz</code> with velocity
 	 *         in <code>length/frame</code> units.
-	 *
+	 * @see #predict(double[])
 	 */
 	public double[] predict()
 	{
-		Xp = A.times( X );
-		P = A.times( P.times( A.transpose() ) ).plus( Q );
-		return Xp.getColumnPackedCopy();
+		final double[] out = new double[ 6 ];
+		predict( out );
+		return out;
+	}
+
+	/**
+	 * Runs the prediction step of the Kalman filter and writes the state
+	 * predicted by the evolution process in the specified array.
+	 *
+	 * @param out
+	 *            a <code>double[]</code> of at least 6 elements, in which to
+	 *            write the predicted state: <code>x, y, z, vx, vy, vz</code>
+	 *            with velocity in <code>length/frame</code> units.
+	 */
+	public void predict( final double[] out )
+	{
+		for ( int d = 0; d < 3; d++ )
+		{
+			Xp[ d ] = X[ d ] + X[ 3 + d ];
+			Xp[ 3 + d ] = X[ 3 + d ];
+		}
+		// P = A P A' + Q
+		pp = pp + 2 * pv + vv + qp;
+		pv = pv + vv;
+		vv = vv + qv;
+		System.arraycopy( Xp, 0, out, 0, 6 );
 	}
 
 	/**
@@ -142,20 +166,62 @@ public class CVMKalmanFilter
 		{
 			// Occlusion.
 			nOcclusion++;
-			X = Xp;
+			System.arraycopy( Xp, 0, X, 0, 6 );
 		}
 		else
 		{
-			final Matrix XM = new Matrix( Xm, 3 );
-			final Matrix TEMP = H.times( P.times( H.transpose() ) ).plus( R );
-			final Matrix K = P.times( H.transpose() ).times( TEMP.inverse() );
-			// State
-			X = Xp.plus( K.times( XM.minus( H.times( Xp ) ) ) );
-			// Covariance
-			P = ( Matrix.identity( 6, 6 ).minus( K.times( H ) ) ).times( P );
+			update( Xm[ 0 ], Xm[ 1 ], Xm[ 2 ] );
 		}
 	}
 
+	/**
+	 * Runs the update step of the Kalman filter based on the specified
+	 * measured position.
+	 *
+	 * @param x
+	 *            the measured X position.
+	 * @param y
+	 *            the measured Y position.
+	 * @param z
+	 *            the measured Z position.
+	 */
+	public void update( final double x, final double y, final double z )
+	{
+		// Kalman gain K = P H' (H P H' + R)^-1, same for all axes.
+		final double s = pp + r;
+		final double kp = pp / s;
+		final double kv = pv / s;
+
+		// State
+		final double ix = x - Xp[ 0 ];
+		final double iy = y - Xp[ 1 ];
+		final double iz = z - Xp[ 2 ];
+		X[ 0 ] = Xp[ 0 ] + kp * ix;
+		X[ 1 ] = Xp[ 1 ] + kp * iy;
+		X[ 2 ] = Xp[ 2 ] + kp * iz;
+		X[ 3 ] = Xp[ 3 ] + kv * ix;
+		X[ 4 ] = Xp[ 4 ] + kv * iy;
+		X[ 5 ] = Xp[ 5 ] + kv * iz;
+
+		// Covariance P = (I - K H) P
+		vv = vv - kv * pv;
+		pv = ( 1 - kp ) * pv;
+		pp = ( 1 - kp ) * pp;
+	}
+
+	/**
+	 * Returns the variance of the innovation, that is of the difference between
+	 * a measured position and the predicted one, along each axis. This is the
+	 * diagonal of <code>H P H' + R</code>. After a prediction, it can be used
+	 * to compute the Mahalanobis distance of a measurement to the prediction.
+	 *
+	 * @return the innovation variance.
+	 */
+	public double getInnovationVariance()
+	{
+		return pp + r;
+	}
+
 	/**
 	 * Return the root mean square error on position estimated through the state
 	 * covariance matrix.
@@ -164,7 +230,7 @@ public class CVMKalmanFilter
 	 */
 	public double getPositionError()
 	{
-		return Math.sqrt( ( P.get( 0, 0 ) + P.get( 1, 1 ) + P.get( 2, 2 ) ) / 3d );
+		return Math.sqrt( pp );
 	}
 
 	/**
@@ -176,7 +242,7 @@ public class CVMKalmanFilter
 	 */
 	public double getVelocityError()
 	{
-		return Math.sqrt( ( P.get( 3, 3 ) + P.get( 4, 4 ) + P.get( 5, 5 ) ) / 3d );
+		return Math.sqrt( vv );
 	}
 
 	/**
@@ -0,0 +1,397 @@
+package fiji.plugin.trackmate.tracking.kalman;
+
+import java.util.Arrays;
+
+/**
+ * A collection of constant velocity Kalman filters, stored as a structure of
+ * arrays so that all the active filters can be predicted and updated in a
+ * single loop over primitive arrays.
+ * <p>
+ * Each filter behaves exactly like a {@link CVMKalmanFilter}, and is
+ * identified by its slot index, returned when it is added. All filters share
+ * the same process and measurement noise. Slots of removed filters are reused
+ * by the next filters added, and the arrays grow as needed.
+ * <p>
+ * This class is not thread-safe, but distinct slots may be predicted and
+ * updated concurrently.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ */
+public class CVMKalmanFilterArray implements KalmanFilterArray
+{
+
+	/** Current state, one array per component: x, y, z, vx, vy, vz. */
+	private final double[][] X = new double[ 6 ][];
+
+	/** Prediction, one array per component. */
+	private final double[][] Xp = new double[ 6 ][];
+
+	/** Position variance, shared by all axes. */
+	private double[] pp;
+
+	/** Position-velocity covariance, shared by all axes. */
+	private double[] pv;
+
+	/** Velocity variance, shared by all axes. */
+	private double[] vv;
+
+	private int[] nOcclusion;
+
+	private boolean[] active;
+
+	/** Stack of free slots below {@link #nSlots}. */
+	private int[] freeSlots;
+
+	private int nFree;
+
+	/** Number of slots ever used. */
+	private int nSlots;
+
+	private final double qp;
+
+	private final double qv;
+
+	private final double r;
+
+	/**
+	 * Creates a new, empty, array of Kalman filters.
+	 *
+	 * @param initialCapacity
+	 *            the number of filters to allocate room for.
+	 * @param positionProcessStd
+	 *            the std of the additive white gaussian noise affecting the
+	 *            <b>position</b> evolution.
+	 * @param velocityProcessStd
+	 *            the std of the additive white gaussian noise affecting the
+	 *            <b>velocity</b> evolution, in units of
+	 *            <code>length/frame</code>.
+	 * @param positionMeasurementStd
+	 *            the std of the additive white gaussian noise affecting the
+	 *            position <b>measurement</b>.
+	 * @see CVMKalmanFilter#CVMKalmanFilter(double[], double, double, double,
+	 *      double)
+	 */
+	public CVMKalmanFilterArray( final int initialCapacity, final double positionProcessStd, final double velocityProcessStd, final double positionMeasurementStd )
+	{
+		this.qp = positionProcessStd * positionProcessStd;
+		this.qv = velocityProcessStd * velocityProcessStd;
+		this.r = positionMeasurementStd * positionMeasurementStd;
+		allocate( Math.max( 1, initialCapacity ) );
+	}
+
+	/**
+	 * Adds a new filter with the specified initial state.
+	 *
+	 * @param X0
+	 *            initial state estimate, as a 6 elements <code>double[]</code>
+	 *            array with <code>x0, y0, z0, vx0, vy0, vz0</code>.
+	 * @param initStateCovariance
+	 *            the initial state covariance.
+	 * @return the slot index of the new filter.
+	 */
+	@Override
+	public int add( final double[] X0, final double initStateCovariance )
+	{
+		final int k;
+		if ( nFree > 0 )
+		{
+			k = freeSlots[ --nFree ];
+		}
+		else
+		{
+			if ( nSlots == active.length )
+			{
+				allocate( 2 * active.length );
+			}
+			k = nSlots++;
+		}
+		for ( int c = 0; c < 6; c++ )
+		{
+			X[ c ][ k ] = X0[ c ];
+			Xp[ c ][ k ] = X0[ c ];
+		}
+		pp[ k ] = initStateCovariance;
+		pv[ k ] = 0d;
+		vv[ k ] = initStateCovariance;
+		nOcclusion[ k ] = 0;
+		active[ k ] = true;
+		return k;
+	}
+
+	/**
+	 * Removes the filter at the specified slot. The slot may be reused by the
+	 * next filter added.
+	 *
+	 * @param k
+	 *            the slot index.
+	 */
+	@Override
+	public void remove( final int k )
+	{
+		if ( !active[ k ] ) { return; }
+		active[ k ] = false;
+		freeSlots[ nFree++ ] = k;
+	}
+
+	/**
+	 * Returns whether there is a filter at the specified slot.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @return <code>true</code> if the slot is in use.
+	 */
+	@Override
+	public boolean isActive( final int k )
+	{
+		return k >= 0 && k < nSlots && active[ k ];
+	}
+
+	/**
+	 * Returns the number of active filters.
+	 *
+	 * @return the number of filters.
+	 */
+	@Override
+	public int size()
+	{
+		return nSlots - nFree;
+	}
+
+	/**
+	 * Returns an upper bound for the slot indices in use. Active slots are the
+	 * ones below this bound for which {@link #isActive(int)} returns
+	 * <code>true</code>.
+	 *
+	 * @return the number of slots.
+	 */
+	@Override
+	public int getNSlots()
+	{
+		return nSlots;
+	}
+
+	/**
+	 * Runs the prediction step of all the active filters.
+	 */
+	public void predictAll()
+	{
+		predict( 0, nSlots );
+	}
+
+	/**
+	 * Runs the prediction step of the active filters whose slot is in the
+	 * specified range.
+	 *
+	 * @param from
+	 *            the first slot, included.
+	 * @param to
+	 *            the last slot, excluded.
+	 */
+	@Override
+	public void predict( final int from, final int to )
+	{
+		final double[] x = X[ 0 ], y = X[ 1 ], z = X[ 2 ], vx = X[ 3 ], vy = X[ 4 ], vz = X[ 5 ];
+		final double[] xp = Xp[ 0 ], yp = Xp[ 1 ], zp = Xp[ 2 ], vxp = Xp[ 3 ], vyp = Xp[ 4 ], vzp = Xp[ 5 ];
+		for ( int k = from; k < to; k++ )
+		{
+			if ( !active[ k ] )
+			{
+				continue;
+			}
+			xp[ k ] = x[ k ] + vx[ k ];
+			yp[ k ] = y[ k ] + vy[ k ];
+			zp[ k ] = z[ k ] + vz[ k ];
+			vxp[ k ] = vx[ k ];
+			vyp[ k ] = vy[ k ];
+			vzp[ k ] = vz[ k ];
+			pp[ k ] = pp[ k ] + 2 * pv[ k ] + vv[ k ] + qp;
+			pv[ k ] = pv[ k ] + vv[ k ];
+			vv[ k ] = vv[ k ] + qv;
+		}
+	}
+
+	/**
+	 * Runs the update step of all the active filters. Measurements are given
+	 * by slot index. A <code>NaN</code> X position marks an occlusion for the
+	 * filter of this slot.
+	 *
+	 * @param mx
+	 *            the measured X positions, indexed by slot.
+	 * @param my
+	 *            the measured Y positions, indexed by slot.
+	 * @param mz
+	 *            the measured Z positions, indexed by slot.
+	 */
+	public void updateAll( final double[] mx, final double[] my, final double[] mz )
+	{
+		for ( int k = 0; k < nSlots; k++ )
+		{
+			if ( !active[ k ] )
+			{
+				continue;
+			}
+			if ( Double.isNaN( mx[ k ] ) )
+			{
+				occlude( k );
+			}
+			else
+			{
+				update( k, mx[ k ], my[ k ], mz[ k ] );
+			}
+		}
+	}
+
+	/**
+	 * Runs the update step of the filter at the specified slot, based on the
+	 * specified measured position.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @param x
+	 *            the measured X position.
+	 * @param y
+	 *            the measured Y position.
+	 * @param z
+	 *            the measured Z position.
+	 */
+	@Override
+	public void update( final int k, final double x, final double y, final double z )
+	{
+		final double s = pp[ k ] + r;
+		final double kp = pp[ k ] / s;
+		final double kv = pv[ k ] / s;
+
+		final double ix = x - Xp[ 0 ][ k ];
+		final double iy = y - Xp[ 1 ][ k ];
+		final double iz = z - Xp[ 2 ][ k ];
+		X[ 0 ][ k ] = Xp[ 0 ][ k ] + kp * ix;
+		X[ 1 ][ k ] = Xp[ 1 ][ k ] + kp * iy;
+		X[ 2 ][ k ] = Xp[ 2 ][ k ] + kp * iz;
+		X[ 3 ][ k ] = Xp[ 3 ][ k ] + kv * ix;
+		X[ 4 ][ k ] = Xp[ 4 ][ k ] + kv * iy;
+		X[ 5 ][ k ] = Xp[ 5 ][ k ] + kv * iz;
+
+		vv[ k ] = vv[ k ] - kv * pv[ k ];
+		pv[ k ] = ( 1 - kp ) * pv[ k ];
+		pp[ k ] = ( 1 - kp ) * pp[ k ];
+	}
+
+	/**
+	 * Runs the update step of the filter at the specified slot, when no
+	 * measurement could be found for it. Its state is then the predicted one.
+	 *
+	 * @param k
+	 *            the slot index.
+	 */
+	@Override
+	public void occlude( final int k )
+	{
+		nOcclusion[ k ]++;
+		for ( int c = 0; c < 6; c++ )
+		{
+			X[ c ][ k ] = Xp[ c ][ k ];
+		}
+	}
+
+	/**
+	 * Returns one component of the last predicted state of a filter.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @param c
+	 *            the component: 0, 1, 2 for the position, 3, 4, 5 for the
+	 *            velocity.
+	 * @return the predicted value.
+	 */
+	@Override
+	public double getPrediction( final int k, final int c )
+	{
+		return Xp[ c ][ k ];
+	}
+
+	/**
+	 * Returns one component of the current state of a filter.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @param c
+	 *            the component: 0, 1, 2 for the position, 3, 4, 5 for the
+	 *            velocity.
+	 * @return the current value.
+	 */
+	public double getState( final int k, final int c )
+	{
+		return X[ c ][ k ];
+	}
+
+	/**
+	 * Returns the variance of the innovation of a filter, that is of the
+	 * difference between a measured position and the predicted one, along
+	 * each axis. After a prediction, it can be used to compute the Mahalanobis
+	 * distance of a measurement to the prediction.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @return the innovation variance.
+	 * @see CVMKalmanFilter#getInnovationVariance()
+	 */
+	@Override
+	public double getInnovationVariance( final int k )
+	{
+		return pp[ k ] + r;
+	}
+
+	/**
+	 * Returns the root mean square error on position of a filter.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @return the estimated error on position.
+	 * @see CVMKalmanFilter#getPositionError()
+	 */
+	public double getPositionError( final int k )
+	{
+		return Math.sqrt( pp[ k ] );
+	}
+
+	/**
+	 * Returns the root mean square error on velocity of a filter.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @return the estimated error on velocity.
+	 * @see CVMKalmanFilter#getVelocityError()
+	 */
+	public double getVelocityError( final int k )
+	{
+		return Math.sqrt( vv[ k ] );
+	}
+
+	/**
+	 * Returns the number of occlusion events of a filter since it was added.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @return the number of occlusions.
+	 */
+	@Override
+	public int getNOcclusion( final int k )
+	{
+		return nOcclusion[ k ];
+	}
+
+	private void allocate( final int capacity )
+	{
+		for ( int c = 0; c < 6; c++ )
+		{
+			X[ c ] = null == X[ c ] ? new double[ capacity ] : Arrays.copyOf( X[ c ], capacity );
+			Xp[ c ] = null == Xp[ c ] ? new double[ capacity ] : Arrays.copyOf( Xp[ c ], capacity );
+		}
+		pp = null == pp ? new double[ capacity ] : Arrays.copyOf( pp, capacity );
+		pv = null == pv ? new double[ capacity ] : Arrays.copyOf( pv, capacity );
+		vv = null == vv ? new double[ capacity ] : Arrays.copyOf( vv, capacity );
+		nOcclusion = null == nOcclusion ? new int[ capacity ] : Arrays.copyOf( nOcclusion, capacity );
+		active = null == active ? new boolean[ capacity ] : Arrays.copyOf( active, capacity );
+		freeSlots = null == freeSlots ? new int[ capacity ] : Arrays.copyOf( freeSlots, capacity );
+	}
+}
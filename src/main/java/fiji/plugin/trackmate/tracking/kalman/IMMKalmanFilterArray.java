@@ -0,0 +1,439 @@
+package fiji.plugin.trackmate.tracking.kalman;
+
+import java.util.Arrays;
+
+/**
+ * A collection of interacting multiple model (IMM) Kalman filters, stored as a
+ * structure of arrays like {@link CVMKalmanFilterArray}.
+ * <p>
+ * Each filter runs two models of the particle motion in parallel:
+ * <ol start="0">
+ * <li>a random walk, for which the position only undergoes a gaussian noise
+ * and the velocity is 0;
+ * <li>a constant velocity model, identical to {@link CVMKalmanFilter}.
+ * </ol>
+ * The particle switches from one model to the other with a fixed probability
+ * at each frame. Before each prediction, the states of the two models are
+ * mixed according to their current probability, and after each update, the
+ * probability of each model is updated with the likelihood of the measurement
+ * under this model. The prediction returned for linking is the combination of
+ * the predictions of the two models, and its innovation variance accounts for
+ * the spread between them.
+ * <p>
+ * As in {@link CVMKalmanFilter}, each model stores a single 2×2
+ * position-velocity covariance shared by the 3 axes. The spread terms that the
+ * mixing adds to these covariances are averaged over the 3 axes so that this
+ * stays true; this approximation only affects filters whose models disagree,
+ * and is exact otherwise.
+ * <p>
+ * This class is not thread-safe, but distinct slots may be predicted and
+ * updated concurrently.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ */
+public class IMMKalmanFilterArray implements KalmanFilterArray
+{
+
+	/** Index of the random walk model. */
+	public static final int RANDOM_WALK = 0;
+
+	/** Index of the constant velocity model. */
+	public static final int CONSTANT_VELOCITY = 1;
+
+	/** State of each model, one array per component: x, y, z, vx, vy, vz. */
+	private final double[][][] X = new double[ 2 ][ 6 ][];
+
+	/** Combined prediction, one array per component. */
+	private final double[][] Xp = new double[ 6 ][];
+
+	/** Position variance of each model, shared by all axes. */
+	private final double[][] pp = new double[ 2 ][];
+
+	/** Position-velocity covariance of each model, shared by all axes. */
+	private final double[][] pv = new double[ 2 ][];
+
+	/** Velocity variance of each model, shared by all axes. */
+	private final double[][] vv = new double[ 2 ][];
+
+	/**
+	 * Probability of each model. Predicted probabilities after a prediction,
+	 * posterior probabilities after an update.
+	 */
+	private final double[][] mu = new double[ 2 ][];
+
+	/** Innovation variance of the combined prediction. */
+	private double[] s;
+
+	private int[] nOcclusion;
+
+	private boolean[] active;
+
+	/** Stack of free slots below {@link #nSlots}. */
+	private int[] freeSlots;
+
+	private int nFree;
+
+	/** Number of slots ever used. */
+	private int nSlots;
+
+	private final double qrw;
+
+	private final double qp;
+
+	private final double qv;
+
+	private final double r;
+
+	private final double switchProbability;
+
+	/**
+	 * Creates a new, empty, array of IMM Kalman filters.
+	 *
+	 * @param initialCapacity
+	 *            the number of filters to allocate room for.
+	 * @param randomWalkStd
+	 *            the std of the additive white gaussian noise affecting the
+	 *            position in the random walk model.
+	 * @param positionProcessStd
+	 *            the std of the additive white gaussian noise affecting the
+	 *            <b>position</b> evolution in the constant velocity model.
+	 * @param velocityProcessStd
+	 *            the std of the additive white gaussian noise affecting the
+	 *            <b>velocity</b> evolution in the constant velocity model, in
+	 *            units of <code>length/frame</code>.
+	 * @param positionMeasurementStd
+	 *            the std of the additive white gaussian noise affecting the
+	 *            position <b>measurement</b>.
+	 * @param switchProbability
+	 *            the probability for a particle to switch from one model to
+	 *            the other between two frames. Must be in <code>[0, 1]</code>.
+	 */
+	public IMMKalmanFilterArray( final int initialCapacity, final double randomWalkStd, final double positionProcessStd, final double velocityProcessStd, final double positionMeasurementStd, final double switchProbability )
+	{
+		this.qrw = randomWalkStd * randomWalkStd;
+		this.qp = positionProcessStd * positionProcessStd;
+		this.qv = velocityProcessStd * velocityProcessStd;
+		this.r = positionMeasurementStd * positionMeasurementStd;
+		this.switchProbability = switchProbability;
+		allocate( Math.max( 1, initialCapacity ) );
+	}
+
+	/**
+	 * Adds a new filter with the specified initial state. Both models start
+	 * with the same probability. The random walk model ignores the initial
+	 * velocity.
+	 */
+	@Override
+	public int add( final double[] X0, final double initStateCovariance )
+	{
+		final int k;
+		if ( nFree > 0 )
+		{
+			k = freeSlots[ --nFree ];
+		}
+		else
+		{
+			if ( nSlots == active.length )
+			{
+				allocate( 2 * active.length );
+			}
+			k = nSlots++;
+		}
+		for ( int c = 0; c < 6; c++ )
+		{
+			X[ RANDOM_WALK ][ c ][ k ] = c < 3 ? X0[ c ] : 0d;
+			X[ CONSTANT_VELOCITY ][ c ][ k ] = X0[ c ];
+			Xp[ c ][ k ] = X0[ c ];
+		}
+		pp[ RANDOM_WALK ][ k ] = initStateCovariance;
+		pv[ RANDOM_WALK ][ k ] = 0d;
+		vv[ RANDOM_WALK ][ k ] = 0d;
+		pp[ CONSTANT_VELOCITY ][ k ] = initStateCovariance;
+		pv[ CONSTANT_VELOCITY ][ k ] = 0d;
+		vv[ CONSTANT_VELOCITY ][ k ] = initStateCovariance;
+		mu[ RANDOM_WALK ][ k ] = 0.5d;
+		mu[ CONSTANT_VELOCITY ][ k ] = 0.5d;
+		s[ k ] = initStateCovariance + r;
+		nOcclusion[ k ] = 0;
+		active[ k ] = true;
+		return k;
+	}
+
+	@Override
+	public void remove( final int k )
+	{
+		if ( !active[ k ] ) { return; }
+		active[ k ] = false;
+		freeSlots[ nFree++ ] = k;
+	}
+
+	@Override
+	public boolean isActive( final int k )
+	{
+		return k >= 0 && k < nSlots && active[ k ];
+	}
+
+	@Override
+	public int size()
+	{
+		return nSlots - nFree;
+	}
+
+	@Override
+	public int getNSlots()
+	{
+		return nSlots;
+	}
+
+	/**
+	 * Runs the prediction step of the active filters whose slot is in the
+	 * specified range: the states of the two models are mixed, predicted
+	 * separately, then combined.
+	 */
+	@Override
+	public void predict( final int from, final int to )
+	{
+		final double ps = switchProbability;
+		// Mixed state and covariance of each model: 6 components, pp, pv, vv.
+		final double[][] mixed = new double[ 2 ][ 9 ];
+		for ( int k = from; k < to; k++ )
+		{
+			if ( !active[ k ] )
+			{
+				continue;
+			}
+
+			/*
+			 * Mixing.
+			 */
+
+			final double m0 = mu[ RANDOM_WALK ][ k ];
+			final double m1 = mu[ CONSTANT_VELOCITY ][ k ];
+			final double c0 = ( 1 - ps ) * m0 + ps * m1;
+			final double c1 = ps * m0 + ( 1 - ps ) * m1;
+			// w[ i ][ j ]: probability that the particle followed model i,
+			// given that it now follows model j.
+			final double w00 = c0 > 0 ? ( 1 - ps ) * m0 / c0 : 1d;
+			final double w10 = c0 > 0 ? ps * m1 / c0 : 0d;
+			final double w01 = c1 > 0 ? ps * m0 / c1 : 0d;
+			final double w11 = c1 > 0 ? ( 1 - ps ) * m1 / c1 : 1d;
+			mix( k, w00, w10, mixed[ RANDOM_WALK ] );
+			mix( k, w01, w11, mixed[ CONSTANT_VELOCITY ] );
+
+			/*
+			 * Prediction of each model.
+			 */
+
+			final double[] mrw = mixed[ RANDOM_WALK ];
+			for ( int c = 0; c < 3; c++ )
+			{
+				X[ RANDOM_WALK ][ c ][ k ] = mrw[ c ];
+				X[ RANDOM_WALK ][ 3 + c ][ k ] = 0d;
+			}
+			pp[ RANDOM_WALK ][ k ] = mrw[ 6 ] + qrw;
+			pv[ RANDOM_WALK ][ k ] = 0d;
+			vv[ RANDOM_WALK ][ k ] = 0d;
+
+			final double[] mcv = mixed[ CONSTANT_VELOCITY ];
+			for ( int c = 0; c < 3; c++ )
+			{
+				X[ CONSTANT_VELOCITY ][ c ][ k ] = mcv[ c ] + mcv[ 3 + c ];
+				X[ CONSTANT_VELOCITY ][ 3 + c ][ k ] = mcv[ 3 + c ];
+			}
+			pp[ CONSTANT_VELOCITY ][ k ] = mcv[ 6 ] + 2 * mcv[ 7 ] + mcv[ 8 ] + qp;
+			pv[ CONSTANT_VELOCITY ][ k ] = mcv[ 7 ] + mcv[ 8 ];
+			vv[ CONSTANT_VELOCITY ][ k ] = mcv[ 8 ] + qv;
+
+			/*
+			 * Combined prediction.
+			 */
+
+			for ( int c = 0; c < 6; c++ )
+			{
+				Xp[ c ][ k ] = c0 * X[ RANDOM_WALK ][ c ][ k ] + c1 * X[ CONSTANT_VELOCITY ][ c ][ k ];
+			}
+			double spread0 = 0d;
+			double spread1 = 0d;
+			for ( int c = 0; c < 3; c++ )
+			{
+				final double d0 = X[ RANDOM_WALK ][ c ][ k ] - Xp[ c ][ k ];
+				final double d1 = X[ CONSTANT_VELOCITY ][ c ][ k ] - Xp[ c ][ k ];
+				spread0 += d0 * d0;
+				spread1 += d1 * d1;
+			}
+			s[ k ] = c0 * ( pp[ RANDOM_WALK ][ k ] + spread0 / 3 ) + c1 * ( pp[ CONSTANT_VELOCITY ][ k ] + spread1 / 3 ) + r;
+			mu[ RANDOM_WALK ][ k ] = c0;
+			mu[ CONSTANT_VELOCITY ][ k ] = c1;
+		}
+	}
+
+	/**
+	 * Updates the state of the two models with the specified measured
+	 * position, and the model probabilities with the likelihood of this
+	 * measurement.
+	 */
+	@Override
+	public void update( final int k, final double x, final double y, final double z )
+	{
+		final double[] logLikelihood = new double[ 2 ];
+		for ( int m = 0; m < 2; m++ )
+		{
+			final double[][] Xm = X[ m ];
+			final double sm = pp[ m ][ k ] + r;
+			final double kp = pp[ m ][ k ] / sm;
+			final double kv = pv[ m ][ k ] / sm;
+
+			final double ix = x - Xm[ 0 ][ k ];
+			final double iy = y - Xm[ 1 ][ k ];
+			final double iz = z - Xm[ 2 ][ k ];
+			// Gaussian log-likelihood, up to a constant common to both models.
+			logLikelihood[ m ] = -0.5 * ( ix * ix + iy * iy + iz * iz ) / sm - 1.5 * Math.log( sm );
+
+			Xm[ 0 ][ k ] += kp * ix;
+			Xm[ 1 ][ k ] += kp * iy;
+			Xm[ 2 ][ k ] += kp * iz;
+			Xm[ 3 ][ k ] += kv * ix;
+			Xm[ 4 ][ k ] += kv * iy;
+			Xm[ 5 ][ k ] += kv * iz;
+
+			vv[ m ][ k ] = vv[ m ][ k ] - kv * pv[ m ][ k ];
+			pv[ m ][ k ] = ( 1 - kp ) * pv[ m ][ k ];
+			pp[ m ][ k ] = ( 1 - kp ) * pp[ m ][ k ];
+		}
+
+		final double max = Math.max( logLikelihood[ 0 ], logLikelihood[ 1 ] );
+		final double l0 = mu[ RANDOM_WALK ][ k ] * Math.exp( logLikelihood[ 0 ] - max );
+		final double l1 = mu[ CONSTANT_VELOCITY ][ k ] * Math.exp( logLikelihood[ 1 ] - max );
+		final double sum = l0 + l1;
+		if ( sum > 0 )
+		{
+			mu[ RANDOM_WALK ][ k ] = l0 / sum;
+			mu[ CONSTANT_VELOCITY ][ k ] = l1 / sum;
+		}
+	}
+
+	/**
+	 * Runs the update step of the filter at the specified slot, when no
+	 * measurement could be found for it. The state of each model is then the
+	 * predicted one, and so are the model probabilities.
+	 */
+	@Override
+	public void occlude( final int k )
+	{
+		nOcclusion[ k ]++;
+	}
+
+	@Override
+	public double getPrediction( final int k, final int c )
+	{
+		return Xp[ c ][ k ];
+	}
+
+	/**
+	 * Returns one component of the current state of a filter, combined over
+	 * the two models.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @param c
+	 *            the component: 0, 1, 2 for the position, 3, 4, 5 for the
+	 *            velocity.
+	 * @return the current value.
+	 */
+	public double getState( final int k, final int c )
+	{
+		return mu[ RANDOM_WALK ][ k ] * X[ RANDOM_WALK ][ c ][ k ] + mu[ CONSTANT_VELOCITY ][ k ] * X[ CONSTANT_VELOCITY ][ c ][ k ];
+	}
+
+	/**
+	 * Returns the current probability of one of the models of a filter.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @param model
+	 *            the model, {@link #RANDOM_WALK} or {@link #CONSTANT_VELOCITY}.
+	 * @return the model probability.
+	 */
+	public double getModelProbability( final int k, final int model )
+	{
+		return mu[ model ][ k ];
+	}
+
+	/**
+	 * Returns the variance of the innovation of the combined prediction of a
+	 * filter along each axis. It includes the spread between the predictions
+	 * of the two models.
+	 */
+	@Override
+	public double getInnovationVariance( final int k )
+	{
+		return s[ k ];
+	}
+
+	@Override
+	public int getNOcclusion( final int k )
+	{
+		return nOcclusion[ k ];
+	}
+
+	/**
+	 * Mixes the states and covariances of the two models of a filter with the
+	 * specified weights, and writes the 6 state components followed by pp, pv
+	 * and vv in the specified array.
+	 */
+	private void mix( final int k, final double w0, final double w1, final double[] out )
+	{
+		for ( int c = 0; c < 6; c++ )
+		{
+			out[ c ] = w0 * X[ RANDOM_WALK ][ c ][ k ] + w1 * X[ CONSTANT_VELOCITY ][ c ][ k ];
+		}
+		out[ 6 ] = 0d;
+		out[ 7 ] = 0d;
+		out[ 8 ] = 0d;
+		for ( int m = 0; m < 2; m++ )
+		{
+			final double w = m == RANDOM_WALK ? w0 : w1;
+			if ( w == 0 )
+			{
+				continue;
+			}
+			double dpp = 0d;
+			double dpv = 0d;
+			double dvv = 0d;
+			for ( int d = 0; d < 3; d++ )
+			{
+				final double dp = X[ m ][ d ][ k ] - out[ d ];
+				final double dv = X[ m ][ 3 + d ][ k ] - out[ 3 + d ];
+				dpp += dp * dp;
+				dpv += dp * dv;
+				dvv += dv * dv;
+			}
+			out[ 6 ] += w * ( pp[ m ][ k ] + dpp / 3 );
+			out[ 7 ] += w * ( pv[ m ][ k ] + dpv / 3 );
+			out[ 8 ] += w * ( vv[ m ][ k ] + dvv / 3 );
+		}
+	}
+
+	private void allocate( final int capacity )
+	{
+		for ( int m = 0; m < 2; m++ )
+		{
+			for ( int c = 0; c < 6; c++ )
+			{
+				X[ m ][ c ] = null == X[ m ][ c ] ? new double[ capacity ] : Arrays.copyOf( X[ m ][ c ], capacity );
+			}
+			pp[ m ] = null == pp[ m ] ? new double[ capacity ] : Arrays.copyOf( pp[ m ], capacity );
+			pv[ m ] = null == pv[ m ] ? new double[ capacity ] : Arrays.copyOf( pv[ m ], capacity );
+			vv[ m ] = null == vv[ m ] ? new double[ capacity ] : Arrays.copyOf( vv[ m ], capacity );
+			mu[ m ] = null == mu[ m ] ? new double[ capacity ] : Arrays.copyOf( mu[ m ], capacity );
+		}
+		for ( int c = 0; c < 6; c++ )
+		{
+			Xp[ c ] = null == Xp[ c ] ? new double[ capacity ] : Arrays.copyOf( Xp[ c ], capacity );
+		}
+		s = null == s ? new double[ capacity ] : Arrays.copyOf( s, capacity );
+		nOcclusion = null == nOcclusion ? new int[ capacity ] : Arrays.copyOf( nOcclusion, capacity );
+		active = null == active ? new boolean[ capacity ] : Arrays.copyOf( active, capacity );
+		freeSlots = null == freeSlots ? new int[ capacity ] : Arrays.copyOf( freeSlots, capacity );
+	}
+}
@@ -0,0 +1,129 @@
+package fiji.plugin.trackmate.tracking.kalman;
+
+/**
+ * Interface for collections of Kalman filters that follow single particles in
+ * 3D, stored so that many filters can be predicted and updated in a single
+ * loop. Each filter is identified by its slot index, returned when it is
+ * added. Only positions are measured.
+ * <p>
+ * Implementations are not thread-safe, but distinct slots may be predicted
+ * and updated concurrently.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ */
+public interface KalmanFilterArray
+{
+
+	/**
+	 * Adds a new filter with the specified initial state.
+	 *
+	 * @param X0
+	 *            initial state estimate, as a 6 elements <code>double[]</code>
+	 *            array with <code>x0, y0, z0, vx0, vy0, vz0</code>.
+	 * @param initStateCovariance
+	 *            the initial state covariance.
+	 * @return the slot index of the new filter.
+	 */
+	public int add( double[] X0, double initStateCovariance );
+
+	/**
+	 * Removes the filter at the specified slot. The slot may be reused by the
+	 * next filter added.
+	 *
+	 * @param k
+	 *            the slot index.
+	 */
+	public void remove( int k );
+
+	/**
+	 * Returns whether there is a filter at the specified slot.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @return <code>true</code> if the slot is in use.
+	 */
+	public boolean isActive( int k );
+
+	/**
+	 * Returns the number of active filters.
+	 *
+	 * @return the number of filters.
+	 */
+	public int size();
+
+	/**
+	 * Returns an upper bound for the slot indices in use.
+	 *
+	 * @return the number of slots.
+	 */
+	public int getNSlots();
+
+	/**
+	 * Runs the prediction step of the active filters whose slot is in the
+	 * specified range.
+	 *
+	 * @param from
+	 *            the first slot, included.
+	 * @param to
+	 *            the last slot, excluded.
+	 */
+	public void predict( int from, int to );
+
+	/**
+	 * Runs the update step of the filter at the specified slot, based on the
+	 * specified measured position.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @param x
+	 *            the measured X position.
+	 * @param y
+	 *            the measured Y position.
+	 * @param z
+	 *            the measured Z position.
+	 */
+	public void update( int k, double x, double y, double z );
+
+	/**
+	 * Runs the update step of the filter at the specified slot, when no
+	 * measurement could be found for it.
+	 *
+	 * @param k
+	 *            the slot index.
+	 */
+	public void occlude( int k );
+
+	/**
+	 * Returns one component of the last predicted state of a filter.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @param c
+	 *            the component: 0, 1, 2 for the position, 3, 4, 5 for the
+	 *            velocity.
+	 * @return the predicted value.
+	 */
+	public double getPrediction( int k, int c );
+
+	/**
+	 * Returns the variance of the innovation of a filter along each axis, that
+	 * is of the difference between a measured position and the predicted one.
+	 * After a prediction, it can be used to compute the Mahalanobis distance of
+	 * a measurement to the prediction.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @return the innovation variance.
+	 */
+	public double getInnovationVariance( int k );
+
+	/**
+	 * Returns the number of occlusion events of a filter since it was added.
+	 *
+	 * @param k
+	 *            the slot index.
+	 * @return the number of occlusions.
+	 */
+	public int getNOcclusion( int k );
+
+}
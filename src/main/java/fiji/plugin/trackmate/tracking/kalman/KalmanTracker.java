@@ -8,9 +8,15 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.imglib2.RealPoint;
 import net.imglib2.algorithm.Benchmark;
+import net.imglib2.algorithm.MultiThreaded;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
@@ -21,13 +27,37 @@ import fiji.plugin.trackmate.TrackmateConstants;
 import fiji.plugin.trackmate.tracking.DefaultTOCollection;
 import fiji.plugin.trackmate.tracking.TrackableObject;
 import fiji.plugin.trackmate.tracking.Tracker;
+import fiji.plugin.trackmate.tracking.kdtree.PrimitiveKDTree;
+import fiji.plugin.trackmate.tracking.kdtree.PrimitiveKDTree.Neighbors;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.SquareDistCostFunction;
-import fiji.plugin.trackmate.tracking.sparselap.costmatrix.JaqamanLinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.DefaultCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.ResizableDoubleArray;
 import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
 
+/**
+ * A tracker that follows particles with constant velocity Kalman filters, or
+ * optionally with interacting multiple model (IMM) filters that mix a random
+ * walk and a constant velocity model, see {@link IMMKalmanFilterArray}.
+ * <p>
+ * For each frame, the predictions of all the filters are computed in parallel.
+ * Then, the predictions are linked to the measurements while, in another
+ * thread, the costs for nucleating new filters from the orphan spots of the
+ * previous frame are computed. The nucleation problem itself is solved once
+ * the spots linked to a prediction are known, so results do not depend on the
+ * number of threads.
+ * <p>
+ * Candidate links are gated: the measurements of each frame are stored in a
+ * {@link PrimitiveKDTree}, and only the measurements within the search radius
+ * of a prediction or of an orphan spot are considered. Predictions can be
+ * further gated by the Mahalanobis distance derived from the predicted
+ * covariance of their filter, and linked with a Mahalanobis-distance cost.
+ *
+ * @param <T>
+ *            the type of objects to track.
+ */
 public class KalmanTracker< T extends TrackableObject< T >> implements Tracker< T >,
-		Benchmark
+		Benchmark, MultiThreaded
 {
 
 	private static final double ALTERNATIVE_COST_FACTOR = 1.05d;
@@ -54,6 +84,16 @@ public class KalmanTracker< T extends TrackableObject< T >> implements Tracker<
 
 	private long processingTime;
 
+	private int numThreads;
+
+	private double mahalanobisGate = Double.POSITIVE_INFINITY;
+
+	private boolean mahalanobisCost = false;
+
+	private boolean interactingMultipleModel = false;
+
+	private double modelSwitchProbability = 0.05d;
+
 	/*
 	 * CONSTRUCTOR
 	 */
@@ -73,6 +113,7 @@ public class KalmanTracker< T extends TrackableObject< T >> implements Tracker<
 		this.maxSearchRadius = maxSearchRadius;
 		this.maxFrameGap = maxFrameGap;
 		this.initialSearchRadius = initialSearchRadius;
+		setNumThreads();
 	}
 
 	/*
@@ -88,9 +129,81 @@ public class KalmanTracker< T extends TrackableObject< T >> implements Tracker<
 	@Override
 	public boolean checkInput()
 	{
+		if ( Double.isNaN( mahalanobisGate ) || mahalanobisGate <= 0 )
+		{
+			errorMessage = BASE_ERROR_MSG + "The Mahalanobis gate must be strictly positive. Got " + mahalanobisGate + ".";
+			return false;
+		}
+		if ( !( modelSwitchProbability >= 0 && modelSwitchProbability <= 1 ) )
+		{
+			errorMessage = BASE_ERROR_MSG + "The model switch probability must be in [0, 1]. Got " + modelSwitchProbability + ".";
+			return false;
+		}
 		return true;
 	}
 
+	/**
+	 * Sets the gate on the square Mahalanobis distance between a prediction
+	 * and a measurement, computed with the innovation covariance of the
+	 * filter. Measurements beyond this gate, or beyond the max search radius,
+	 * are not considered for linking. For 3D positions, a gate of 11.34
+	 * accepts 99% of the measurements that follow the filter model.
+	 *
+	 * @param mahalanobisGate
+	 *            the gate on the square Mahalanobis distance. Use
+	 *            {@link Double#POSITIVE_INFINITY} to only gate on the max
+	 *            search radius, which is the default.
+	 */
+	public void setMahalanobisGate( final double mahalanobisGate )
+	{
+		this.mahalanobisGate = mahalanobisGate;
+	}
+
+	/**
+	 * Sets whether predictions are linked to measurements with a cost equal to
+	 * their square Mahalanobis distance, instead of their square Euclidean
+	 * distance. The former favors the filters whose prediction is the most
+	 * accurate. The default is <code>false</code>.
+	 *
+	 * @param mahalanobisCost
+	 *            whether to use the Mahalanobis distance as a cost.
+	 */
+	public void setMahalanobisCost( final boolean mahalanobisCost )
+	{
+		this.mahalanobisCost = mahalanobisCost;
+	}
+
+	/**
+	 * Sets whether particles are followed with interacting multiple model
+	 * filters, that mix a random walk model and a constant velocity model,
+	 * instead of constant velocity filters. The predictions of these filters
+	 * follow particles that alternate between diffusive and directed motion,
+	 * and their innovation variance gets smaller when one model dominates,
+	 * which tightens the Mahalanobis gate. The default is <code>false</code>.
+	 *
+	 * @param interactingMultipleModel
+	 *            whether to use IMM filters.
+	 * @see #setModelSwitchProbability(double)
+	 */
+	public void setInteractingMultipleModel( final boolean interactingMultipleModel )
+	{
+		this.interactingMultipleModel = interactingMultipleModel;
+	}
+
+	/**
+	 * Sets the probability, for a particle followed by an IMM filter, to
+	 * switch from one motion model to the other between two frames. The
+	 * default is 0.05.
+	 *
+	 * @param modelSwitchProbability
+	 *            the switch probability, in <code>[0, 1]</code>.
+	 * @see #setInteractingMultipleModel(boolean)
+	 */
+	public void setModelSwitchProbability( final double modelSwitchProbability )
+	{
+		this.modelSwitchProbability = modelSwitchProbability;
+	}
+
 	@Override
 	public boolean process()
 	{
@@ -158,169 +271,317 @@ public class KalmanTracker< T extends TrackableObject< T >> implements Tracker<
 		meanSpotRadius /= orphanSpots.size();
 		final double positionMeasurementStd = meanSpotRadius / 10d;
 
-		// The master map that contains the currently active KFs.
-		final Map< CVMKalmanFilter, T > kalmanFiltersMap =
-				new HashMap< CVMKalmanFilter, T >( orphanSpots.size() );
+		// The currently active KFs, and the last spot of their track, by slot.
+		final KalmanFilterArray kalmanFilters;
+		if ( interactingMultipleModel )
+		{
+			// The random walk model gets the same noise on position.
+			kalmanFilters =
+					new IMMKalmanFilterArray( orphanSpots.size(), positionProcessStd,
+							positionProcessStd, velocityProcessStd, positionMeasurementStd,
+							modelSwitchProbability );
+		}
+		else
+		{
+			kalmanFilters =
+					new CVMKalmanFilterArray( orphanSpots.size(), positionProcessStd,
+							velocityProcessStd, positionMeasurementStd );
+		}
+		final List< T > kalmanFilterSpots = new ArrayList< T >( orphanSpots.size() );
 
-		/*
-		 * Then loop over time, starting from second frame.
-		 */
-		int p = 1;
-		for ( int frame = secondFrame; frame <= keySet.last(); frame++ )
+		final ExecutorService executor = Executors.newFixedThreadPool( numThreads );
+		try
 		{
-			p++;
+			/*
+			 * Then loop over time, starting from second frame.
+			 */
+			int p = 1;
+			for ( int frame = secondFrame; frame <= keySet.last(); frame++ )
+			{
+				p++;
 
-			// Use the spot in the next frame has measurements.
-			final List< T > measurements = generateSpotList( spots, frame );
+				// Use the spot in the next frame has measurements.
+				final List< T > measurements = generateSpotList( spots, frame );
 
-			// Predict for all Kalman filters, and use it to generate linking
-			// candidates.
-			final Map< ComparableRealPoint, CVMKalmanFilter > predictionMap =
-					new HashMap< ComparableRealPoint, CVMKalmanFilter >( kalmanFiltersMap
-							.size() );
-			for ( final CVMKalmanFilter kf : kalmanFiltersMap.keySet() )
-			{
-				final double[] X = kf.predict();
-				final ComparableRealPoint point = new ComparableRealPoint( X );
-				predictionMap.put( new ComparableRealPoint( X ), kf );
+				/*
+				 * Predict for all Kalman filters in parallel, and use it to
+				 * generate linking candidates.
+				 */
+				final int nSlots = kalmanFilters.getNSlots();
+				final int chunkSize = Math.max( 1, ( nSlots + numThreads - 1 ) / numThreads );
+				final List< Future< ? >> predictionTasks = new ArrayList< Future< ? >>();
+				for ( int from = 0; from < nSlots; from += chunkSize )
+				{
+					final int chunkStart = from;
+					final int chunkEnd = Math.min( nSlots, from + chunkSize );
+					predictionTasks.add( executor.submit( new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							kalmanFilters.predict( chunkStart, chunkEnd );
+						}
+					} ) );
+				}
+				for ( final Future< ? > task : predictionTasks )
+				{
+					task.get();
+				}
 
-			}
-			final List< ComparableRealPoint > predictions =
-					new ArrayList< ComparableRealPoint >( predictionMap.keySet() );
+				// The KF for which we could not find a measurement in the
+				// target frame. Is updated later.
+				final boolean[] childless = new boolean[ nSlots ];
+				final Map< ComparableRealPoint, Integer > predictionMap =
+						new HashMap< ComparableRealPoint, Integer >( kalmanFilters.size() );
+				for ( int k = 0; k < nSlots; k++ )
+				{
+					if ( !kalmanFilters.isActive( k ) )
+					{
+						continue;
+					}
+					final double[] X = new double[ 6 ];
+					for ( int c = 0; c < 6; c++ )
+					{
+						X[ c ] = kalmanFilters.getPrediction( k, c );
+					}
+					predictionMap.put( new ComparableRealPoint( X ), Integer.valueOf( k ) );
+					childless[ k ] = true;
+				}
+				final List< ComparableRealPoint > predictions =
+						new ArrayList< ComparableRealPoint >( predictionMap.keySet() );
 
-			// The KF for which we could not find a measurement in the target
-			// frame. Is updated later.
-			final Collection< CVMKalmanFilter > childlessKFs =
-					new HashSet< CVMKalmanFilter >( kalmanFiltersMap.keySet() );
+				/*
+				 * Find the global (in space) optimum for associating a
+				 * prediction to a measurement. At the same time, compute the
+				 * costs to nucleate new KFs from the orphans of the previous
+				 * frame.
+				 */
 
-			// Find the global (in space) optimum for associating a prediction
-			// to a measurement.
+				final PrimitiveKDTree measurementTree = new PrimitiveKDTree( measurements );
 
-			if ( !predictions.isEmpty() && !measurements.isEmpty() )
-			{
-				// Only link measurements to predictions if we have predictions.
-
-				final JaqamanLinkingCostMatrixCreator< ComparableRealPoint, T > crm =
-						new JaqamanLinkingCostMatrixCreator< ComparableRealPoint, T >(
-								predictions, measurements, CF, maxCost, ALTERNATIVE_COST_FACTOR,
-								PERCENTILE );
-				final JaqamanLinker< ComparableRealPoint, T > linker =
-						new JaqamanLinker< ComparableRealPoint, T >( crm );
-				if ( !linker.checkInput() || !linker.process() )
+				final int currentFrame = frame;
+				Future< JaqamanLinker< ComparableRealPoint, T >> kfLinking = null;
+				if ( !predictions.isEmpty() && !measurements.isEmpty() )
+				{
+					// Only link measurements to predictions if we have
+					// predictions.
+					kfLinking = executor.submit( new Callable< JaqamanLinker< ComparableRealPoint, T >>()
+					{
+						@Override
+						public JaqamanLinker< ComparableRealPoint, T > call()
+						{
+							final Candidates< ComparableRealPoint, T > candidates = new Candidates< ComparableRealPoint, T >();
+							final Neighbors neighbors = new Neighbors();
+							final double[] position = new double[ 3 ];
+							for ( final ComparableRealPoint prediction : predictions )
+							{
+								final int k = predictionMap.get( prediction ).intValue();
+								final double s = kalmanFilters.getInnovationVariance( k );
+								for ( int d = 0; d < 3; d++ )
+								{
+									position[ d ] = prediction.getDoublePosition( d );
+								}
+								measurementTree.radiusSearch( position, Math.min( maxCost, mahalanobisGate * s ), neighbors );
+								for ( int i = 0; i < neighbors.size(); i++ )
+								{
+									final T target = measurements.get( neighbors.index( i ) );
+									final double cost = CF.linkingCost( prediction, target );
+									if ( cost >= maxCost )
+									{
+										continue;
+									}
+									final double d2 = neighbors.squareDistance( i ) / s;
+									if ( d2 > mahalanobisGate )
+									{
+										continue;
+									}
+									candidates.add( prediction, target, mahalanobisCost ? d2 + Double.MIN_NORMAL : cost );
+								}
+							}
+
+							final DefaultCostMatrixCreator< ComparableRealPoint, T > crm = candidates.creatorFor( null );
+							if ( null == crm ) { return null; }
+							final JaqamanLinker< ComparableRealPoint, T > linker =
+									new JaqamanLinker< ComparableRealPoint, T >( crm );
+							if ( !linker.checkInput() || !linker.process() ) { throw new IllegalStateException(
+									"Error linking candidates in frame " + currentFrame + ": " + linker.getErrorMessage() ); }
+							return linker;
+						}
+					} );
+				}
+
+				Future< Candidates< T, T >> nucleation = null;
+				if ( !previousOrphanSpots.isEmpty() && !measurements.isEmpty() )
 				{
-					errorMessage =
-							BASE_ERROR_MSG + "Error linking candidates in frame " + frame +
-									": " + linker.getErrorMessage();
-					return false;
+					final Collection< T > sources = previousOrphanSpots;
+					nucleation = executor.submit( new Callable< Candidates< T, T >>()
+					{
+						@Override
+						public Candidates< T, T > call()
+						{
+							final Candidates< T, T > candidates = new Candidates< T, T >();
+							final Neighbors neighbors = new Neighbors();
+							final double[] position = new double[ 3 ];
+							for ( final T source : sources )
+							{
+								for ( int d = 0; d < 3; d++ )
+								{
+									position[ d ] = source.getDoublePosition( d );
+								}
+								measurementTree.radiusSearch( position, maxInitialCost, neighbors );
+								for ( int i = 0; i < neighbors.size(); i++ )
+								{
+									final T target = measurements.get( neighbors.index( i ) );
+									final double cost = nucleatingCostFunction.linkingCost( source, target );
+									if ( cost < maxInitialCost )
+									{
+										candidates.add( source, target, cost );
+									}
+								}
+							}
+							return candidates;
+						}
+					} );
 				}
-				final Map< ComparableRealPoint, T > agnts = linker.getResult();
-				final Map< ComparableRealPoint, Double > costs =
-						linker.getAssignmentCosts();
 
 				// Deal with found links.
 				orphanSpots = new HashSet< T >( measurements );
-				for ( final ComparableRealPoint cm : agnts.keySet() )
+				final JaqamanLinker< ComparableRealPoint, T > linker = null == kfLinking ? null : kfLinking.get();
+				if ( null != linker )
 				{
-					final CVMKalmanFilter kf = predictionMap.get( cm );
+					final Map< ComparableRealPoint, T > agnts = linker.getResult();
+					final Map< ComparableRealPoint, Double > costs =
+							linker.getAssignmentCosts();
 
-					// Create links for found match.
-					final T source = kalmanFiltersMap.get( kf );
-					final T target = agnts.get( cm );
+					for ( final ComparableRealPoint cm : agnts.keySet() )
+					{
+						final int k = predictionMap.get( cm ).intValue();
 
-					graph.addVertex( source );
-					graph.addVertex( target );
-					final DefaultWeightedEdge edge = graph.addEdge( source, target );
-					final double cost = costs.get( cm );
-					graph.setEdgeWeight( edge, cost );
+						// Create links for found match.
+						final T source = kalmanFilterSpots.get( k );
+						final T target = agnts.get( cm );
 
-					// Update Kalman filter
-					kf.update( toMeasurement( target ) );
+						graph.addVertex( source );
+						graph.addVertex( target );
+						final DefaultWeightedEdge edge = graph.addEdge( source, target );
+						final double cost = costs.get( cm );
+						graph.setEdgeWeight( edge, cost );
 
-					// Update Kalman track spot
-					kalmanFiltersMap.put( kf, target );
+						// Update Kalman filter
+						kalmanFilters.update( k, target.getDoublePosition( 0 ),
+								target.getDoublePosition( 1 ), target.getDoublePosition( 2 ) );
 
-					// Remove from orphan set
-					orphanSpots.remove( target );
+						// Update Kalman track spot
+						kalmanFilterSpots.set( k, target );
 
-					// Remove from childless KF set
-					childlessKFs.remove( kf );
+						// Remove from orphan set
+						orphanSpots.remove( target );
+
+						// Remove from childless KF set
+						childless[ k ] = false;
+					}
 				}
-			}
 
-			/*
-			 * Deal with orphans from the previous frame. (We deal with orphans
-			 * from previous frame only now because we want to link in priority
-			 * target spots to predictions. Nucleating new KF from nearest
-			 * neighbor only comes second.
-			 */
-			if ( !previousOrphanSpots.isEmpty() && !orphanSpots.isEmpty() )
-			{
 				/*
-				 * We now deal with orphans of the previous frame. We try to
-				 * find them a target from the list of spots that are not
-				 * already part of a link created via KF. That is: the orphan
-				 * spots of this frame.
+				 * Deal with orphans from the previous frame. (We deal with
+				 * orphans from previous frame only now because we want to link
+				 * in priority target spots to predictions. Nucleating new KF
+				 * from nearest neighbor only comes second.
 				 */
-
-				final JaqamanLinkingCostMatrixCreator< T, T > ic =
-						new JaqamanLinkingCostMatrixCreator< T, T >( previousOrphanSpots,
-								orphanSpots, nucleatingCostFunction, maxInitialCost,
-								ALTERNATIVE_COST_FACTOR, PERCENTILE );
-				final JaqamanLinker< T, T > newLinker = new JaqamanLinker< T, T >( ic );
-				if ( !newLinker.checkInput() || !newLinker.process() )
+				if ( null != nucleation && !orphanSpots.isEmpty() )
 				{
-					errorMessage =
-							BASE_ERROR_MSG + "Error linking spots from frame " + ( frame - 1 ) +
-									" to frame " + frame + ": " + newLinker.getErrorMessage();
-					return false;
+					/*
+					 * We now deal with orphans of the previous frame. We try to
+					 * find them a target from the list of spots that are not
+					 * already part of a link created via KF. That is: the
+					 * orphan spots of this frame.
+					 */
+
+					final Candidates< T, T > candidates = nucleation.get();
+					final DefaultCostMatrixCreator< T, T > ic = candidates.creatorFor( orphanSpots );
+					if ( null != ic )
+					{
+						final JaqamanLinker< T, T > newLinker = new JaqamanLinker< T, T >( ic );
+						if ( !newLinker.checkInput() || !newLinker.process() )
+						{
+							errorMessage =
+									BASE_ERROR_MSG + "Error linking spots from frame " + ( frame - 1 ) +
+											" to frame " + frame + ": " + newLinker.getErrorMessage();
+							return false;
+						}
+						final Map< T, T > newAssignments = newLinker.getResult();
+						final Map< T, Double > assignmentCosts = newLinker.getAssignmentCosts();
+
+						// Build links and new KFs from these links.
+						for ( final T source : newAssignments.keySet() )
+						{
+							final T target = newAssignments.get( source );
+
+							// Remove from orphan collection.
+							orphanSpots.remove( target );
+
+							// Derive initial state and create Kalman filter.
+							// We trust the initial state a lot.
+							final double[] XP = estimateInitialState( source, target );
+							final int k = kalmanFilters.add( XP, Double.MIN_NORMAL );
+
+							// Store filter and source
+							if ( k == kalmanFilterSpots.size() )
+							{
+								kalmanFilterSpots.add( target );
+							}
+							else
+							{
+								kalmanFilterSpots.set( k, target );
+							}
+
+							// Add edge to the graph.
+							graph.addVertex( source );
+							graph.addVertex( target );
+							final DefaultWeightedEdge edge = graph.addEdge( source, target );
+							final double cost = assignmentCosts.get( source );
+							graph.setEdgeWeight( edge, cost );
+						}
+					}
 				}
-				final Map< T, T > newAssignments = newLinker.getResult();
-				final Map< T, Double > assignmentCosts = newLinker.getAssignmentCosts();
+				previousOrphanSpots = orphanSpots;
 
-				// Build links and new KFs from these links.
-				for ( final T source : newAssignments.keySet() )
+				// Deal with childless KFs.
+				for ( int k = 0; k < nSlots; k++ )
 				{
-					final T target = newAssignments.get( source );
-
-					// Remove from orphan collection.
-					orphanSpots.remove( target );
-
-					// Derive initial state and create Kalman filter.
-					final double[] XP = estimateInitialState( source, target );
-					final CVMKalmanFilter kt =
-							new CVMKalmanFilter( XP, Double.MIN_NORMAL, positionProcessStd,
-									velocityProcessStd, positionMeasurementStd );
-					// We trust the initial state a lot.
-
-					// Store filter and source
-					kalmanFiltersMap.put( kt, target );
-
-					// Add edge to the graph.
-					graph.addVertex( source );
-					graph.addVertex( target );
-					final DefaultWeightedEdge edge = graph.addEdge( source, target );
-					final double cost = assignmentCosts.get( source );
-					graph.setEdgeWeight( edge, cost );
+					if ( !childless[ k ] )
+					{
+						continue;
+					}
+					// Echo we missed a measurement
+					kalmanFilters.occlude( k );
+
+					// We can bridge a limited number of gaps. If too much, we
+					// die. If not, we will use predicted state next time.
+					if ( kalmanFilters.getNOcclusion( k ) > maxFrameGap )
+					{
+						kalmanFilters.remove( k );
+						kalmanFilterSpots.set( k, null );
+					}
 				}
-			}
-			previousOrphanSpots = orphanSpots;
-
-			// Deal with childless KFs.
-			for ( final CVMKalmanFilter kf : childlessKFs )
-			{
-				// Echo we missed a measurement
-				kf.update( null );
 
-				// We can bridge a limited number of gaps. If too much, we die.
-				// If not, we will use predicted state next time.
-				if ( kf.getNOcclusion() > maxFrameGap )
-				{
-					kalmanFiltersMap.remove( kf );
-				}
+				final double progress = ( double ) p / keySet.size();
+				logger.setProgress( progress );
 			}
-
-			final double progress = ( double ) p / keySet.size();
-			logger.setProgress( progress );
+		}
+		catch ( final InterruptedException e )
+		{
+			errorMessage = BASE_ERROR_MSG + e.getMessage();
+			return false;
+		}
+		catch ( final ExecutionException e )
+		{
+			errorMessage = BASE_ERROR_MSG + e.getCause().getMessage();
+			return false;
+		}
+		finally
+		{
+			executor.shutdown();
 		}
 
 		final long end = System.currentTimeMillis();
@@ -348,16 +609,20 @@ public class KalmanTracker< T extends TrackableObject< T >> implements Tracker<
 
 	@Override
 	public void setNumThreads()
-	{}
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
 
 	@Override
 	public void setNumThreads( final int numThreads )
-	{}
+	{
+		this.numThreads = numThreads;
+	}
 
 	@Override
 	public int getNumThreads()
 	{
-		return 1;
+		return numThreads;
 	}
 
 	@Override
@@ -372,14 +637,6 @@ public class KalmanTracker< T extends TrackableObject< T >> implements Tracker<
 		this.logger = logger;
 	}
 
-	private final double[] toMeasurement( final T spot )
-	{
-		final double[] d =
-				new double[] { spot.getDoublePosition( 0 ), spot.getDoublePosition( 1 ),
-						spot.getDoublePosition( 2 ) };
-		return d;
-	}
-
 	private final double[] estimateInitialState( final T first, final T second )
 	{
 		final double[] xp =
@@ -403,6 +660,53 @@ public class KalmanTracker< T extends TrackableObject< T >> implements Tracker<
 		return list;
 	}
 
+	/**
+	 * Candidate links found within the search radius, with their cost.
+	 * Nucleation candidates are computed against all the spots of the current
+	 * frame, while predictions are linked to measurements, and then
+	 * restricted to the spots that were not linked to a prediction. This
+	 * gives the same cost matrix as computing the costs only for the latter.
+	 */
+	private static final class Candidates< K extends Comparable< K >, J extends Comparable< J >>
+	{
+		private final List< K > sources = new ArrayList< K >();
+
+		private final List< J > targets = new ArrayList< J >();
+
+		private final ResizableDoubleArray costs = new ResizableDoubleArray();
+
+		private void add( final K source, final J target, final double cost )
+		{
+			sources.add( source );
+			targets.add( target );
+			costs.add( cost );
+		}
+
+		/**
+		 * Returns a cost matrix creator for the candidates whose target is in
+		 * the specified collection, or all of them if it is <code>null</code>.
+		 * Returns <code>null</code> if there are no such candidates.
+		 */
+		private DefaultCostMatrixCreator< K, J > creatorFor( final Collection< J > allowedTargets )
+		{
+			final List< K > rows = new ArrayList< K >();
+			final List< J > cols = new ArrayList< J >();
+			final ResizableDoubleArray accepted = new ResizableDoubleArray();
+			for ( int i = 0; i < targets.size(); i++ )
+			{
+				if ( null == allowedTargets || allowedTargets.contains( targets.get( i ) ) )
+				{
+					rows.add( sources.get( i ) );
+					cols.add( targets.get( i ) );
+					accepted.add( costs.data[ i ] );
+				}
+			}
+			if ( rows.isEmpty() ) { return null; }
+			accepted.trimToSize();
+			return new DefaultCostMatrixCreator< K, J >( rows, cols, accepted.data, ALTERNATIVE_COST_FACTOR, PERCENTILE );
+		}
+	}
+
 	private static final class ComparableRealPoint extends RealPoint implements
 			Comparable< ComparableRealPoint >
 	{
@@ -5,14 +5,13 @@ import static fiji.plugin.trackmate.util.TMUtils.checkMapKeys;
 import static fiji.plugin.trackmate.util.TMUtils.checkParameter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import net.imglib2.KDTree;
-import net.imglib2.RealPoint;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 import net.imglib2.multithreading.SimpleMultiThreading;
 
@@ -23,6 +22,8 @@ import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.tracking.TrackableObject;
 import fiji.plugin.trackmate.tracking.TrackableObjectCollection;
 import fiji.plugin.trackmate.tracking.Tracker;
+import fiji.plugin.trackmate.tracking.kdtree.PrimitiveKDTree.Neighbors;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.ResizableDoubleArray;
 
 public class NearestNeighborTracker< T extends TrackableObject< T >> extends
 		MultiThreadedBenchmarkAlgorithm implements Tracker< T >
@@ -39,6 +40,8 @@ public class NearestNeighborTracker< T extends TrackableObject< T >> extends
 
 	protected SimpleWeightedGraph< T, DefaultWeightedEdge > graph;
 
+	private boolean greedyMatching = false;
+
 	/*
 	 * CONSTRUCTOR
 	 */
@@ -78,10 +81,24 @@ public class NearestNeighborTracker< T extends TrackableObject< T >> extends
 		final double maxDistSquare = maxLinkingDistance * maxLinkingDistance;
 
 		final TreeSet< Integer > frames = new TreeSet< Integer >( spots.keySet() );
+		final int[] frameArray = new int[ frames.size() ];
+		int index = 0;
+		for ( final Integer frame : frames )
+		{
+			frameArray[ index++ ] = frame.intValue();
+		}
+		final int nPairs = frameArray.length - 1;
+
+		/*
+		 * Threads process blocks of consecutive frame pairs, so that the
+		 * spots of the target frame of a pair are reused as the sources of the
+		 * next pair.
+		 */
+		final int blockSize = Math.max( 1, nPairs / ( 4 * numThreads ) );
 		final Thread[] threads = new Thread[ numThreads ];
 
 		// Prepare the thread array
-		final AtomicInteger ai = new AtomicInteger( frames.first() );
+		final AtomicInteger ai = new AtomicInteger( 0 );
 		final AtomicInteger progress = new AtomicInteger( 0 );
 		for ( int ithread = 0; ithread < threads.length; ithread++ )
 		{
@@ -93,82 +110,34 @@ public class NearestNeighborTracker< T extends TrackableObject< T >> extends
 				@Override
 				public void run()
 				{
+					final double[] position = new double[ 3 ];
+					final Neighbors neighbors = new Neighbors();
 
-					for ( int i = ai.getAndIncrement(); i < frames.last(); i = ai
-							.getAndIncrement() )
+					for ( int block = ai.getAndAdd( blockSize ); block < nPairs; block = ai
+							.getAndAdd( blockSize ) )
 					{
-
-						// Build frame pair
-						final int sourceFrame = i;
-						final int targetFrame = frames.higher( i );
-
-						final int nTargetSpots = spots.getNObjects( targetFrame,
-								true );
-						if ( nTargetSpots < 1 )
-						{
-							continue;
-						}
-
-						final List< RealPoint > targetCoords = new ArrayList< RealPoint >(
-								nTargetSpots );
-						final List< FlagNode< T >> targetNodes = new ArrayList< FlagNode< T >>(
-								nTargetSpots );
-						final Iterator< T > targetIt = spots.iterator(
-								targetFrame, true );
-						while ( targetIt.hasNext() )
-						{
-							final double[] coords = new double[ 3 ];
-							final T spot = targetIt.next();
-							spot.localize( coords );
-							targetCoords.add( new RealPoint( coords ) );
-							targetNodes.add( new FlagNode< T >( spot ) );
-						}
-
-						final KDTree< FlagNode< T >> tree = new KDTree< FlagNode< T >>(
-								targetNodes, targetCoords );
-						final NearestNeighborFlagSearchOnKDTree< T > search = new NearestNeighborFlagSearchOnKDTree< T >(
-								tree );
-
-						// For each spot in the source frame, find its nearest
-						// neighbor in the target frame
-						final Iterator< T > sourceIt = spots.iterator(
-								sourceFrame, true );
-						while ( sourceIt.hasNext() )
+						List< T > sources = generateSpotList( frameArray[ block ] );
+						final int blockEnd = Math.min( nPairs, block + blockSize );
+						for ( int i = block; i < blockEnd; i++ )
 						{
-							final T source = sourceIt.next();
-							final double[] coords = new double[ 3 ];
-							source.localize( coords );
-							final RealPoint sourceCoords = new RealPoint( coords );
-							search.search( sourceCoords );
-
-							final double squareDist = search
-									.getSquareDistance();
-							final FlagNode< T > targetNode = search.getSampler()
-									.get();
-
-							if ( squareDist > maxDistSquare )
-							{
-								// The closest we could find is too far. We skip
-								// this source spot and do not create a link
-								continue;
-							}
-
-							// Everything is ok. This mode is free and below max
-							// dist. We create a link
-							// and mark this node as assigned.
-
-							targetNode.setVisited( true );
-							synchronized ( graph )
+							final List< T > targets = generateSpotList( frameArray[ i + 1 ] );
+							if ( !sources.isEmpty() && !targets.isEmpty() )
 							{
-								final DefaultWeightedEdge edge = graph.addEdge(
-										source, targetNode.getValue() );
-								graph.setEdgeWeight( edge, squareDist );
+								final PrimitiveKDTree tree = new PrimitiveKDTree( targets );
+								if ( greedyMatching )
+								{
+									linkGreedy( sources, targets, tree, maxDistSquare, position, neighbors );
+								}
+								else
+								{
+									linkNearest( sources, targets, tree, maxDistSquare, position, neighbors );
+								}
 							}
+							sources = targets;
 
+							logger.setProgress( progress.incrementAndGet()
+									/ ( float ) frames.size() );
 						}
-						logger.setProgress( progress.incrementAndGet()
-								/ ( float ) frames.size() );
-
 					}
 				}
 			};
@@ -188,6 +157,195 @@ public class NearestNeighborTracker< T extends TrackableObject< T >> extends
 		return true;
 	}
 
+	/**
+	 * Sets whether links are created by globally greedy matching. In this mode,
+	 * all the source-target pairs closer than the max linking distance are
+	 * sorted by distance, and accepted in this order if neither their source
+	 * nor their target is already linked. The result does not depend on the
+	 * order in which the spots are iterated. Otherwise, which is the default,
+	 * each source in turn is linked to its nearest target not already linked.
+	 *
+	 * @param greedyMatching
+	 *            whether to use globally greedy matching.
+	 */
+	public void setGreedyMatching( final boolean greedyMatching )
+	{
+		this.greedyMatching = greedyMatching;
+	}
+
+	/**
+	 * Links each source in turn to its nearest target not already linked.
+	 */
+	private void linkNearest( final List< T > sources, final List< T > targets,
+			final PrimitiveKDTree tree, final double maxDistSquare,
+			final double[] position, final Neighbors neighbors )
+	{
+		final boolean[] linked = new boolean[ targets.size() ];
+		final int[] links = new int[ sources.size() ];
+		final double[] squareDists = new double[ sources.size() ];
+		for ( int i = 0; i < sources.size(); i++ )
+		{
+			links[ i ] = -1;
+			sources.get( i ).localize( position );
+			tree.nearestSearch( position, linked, neighbors );
+			if ( neighbors.size() == 0 || neighbors.squareDistance( 0 ) > maxDistSquare )
+			{
+				// The closest we could find is too far. We skip this source
+				// spot and do not create a link.
+				continue;
+			}
+			links[ i ] = neighbors.index( 0 );
+			squareDists[ i ] = neighbors.squareDistance( 0 );
+			linked[ links[ i ] ] = true;
+		}
+		addLinks( sources, targets, links, squareDists );
+	}
+
+	/**
+	 * Links the source-target pairs in increasing distance order, skipping the
+	 * pairs whose source or target is already linked.
+	 */
+	private void linkGreedy( final List< T > sources, final List< T > targets,
+			final PrimitiveKDTree tree, final double maxDistSquare,
+			final double[] position, final Neighbors neighbors )
+	{
+		int[] candidateSources = new int[ sources.size() ];
+		int[] candidateTargets = new int[ sources.size() ];
+		final ResizableDoubleArray candidateDists = new ResizableDoubleArray( sources.size() );
+		for ( int i = 0; i < sources.size(); i++ )
+		{
+			sources.get( i ).localize( position );
+			tree.radiusSearch( position, maxDistSquare, neighbors );
+			for ( int n = 0; n < neighbors.size(); n++ )
+			{
+				if ( candidateDists.size == candidateSources.length )
+				{
+					candidateSources = Arrays.copyOf( candidateSources, 2 * candidateSources.length );
+					candidateTargets = Arrays.copyOf( candidateTargets, 2 * candidateTargets.length );
+				}
+				candidateSources[ candidateDists.size ] = i;
+				candidateTargets[ candidateDists.size ] = neighbors.index( n );
+				candidateDists.add( neighbors.squareDistance( n ) );
+			}
+		}
+
+		final int nCandidates = candidateDists.size;
+		final int[] order = new int[ nCandidates ];
+		for ( int c = 0; c < nCandidates; c++ )
+		{
+			order[ c ] = c;
+		}
+		sortByDistance( order, candidateDists.data, 0, nCandidates - 1 );
+
+		final boolean[] linked = new boolean[ targets.size() ];
+		final int[] links = new int[ sources.size() ];
+		Arrays.fill( links, -1 );
+		final double[] squareDists = new double[ sources.size() ];
+		for ( final int c : order )
+		{
+			final int source = candidateSources[ c ];
+			final int target = candidateTargets[ c ];
+			if ( links[ source ] >= 0 || linked[ target ] )
+			{
+				continue;
+			}
+			links[ source ] = target;
+			squareDists[ source ] = candidateDists.data[ c ];
+			linked[ target ] = true;
+		}
+		addLinks( sources, targets, links, squareDists );
+	}
+
+	private void addLinks( final List< T > sources, final List< T > targets,
+			final int[] links, final double[] squareDists )
+	{
+		synchronized ( graph )
+		{
+			for ( int i = 0; i < links.length; i++ )
+			{
+				if ( links[ i ] < 0 )
+				{
+					continue;
+				}
+				final DefaultWeightedEdge edge = graph.addEdge( sources.get( i ),
+						targets.get( links[ i ] ) );
+				graph.setEdgeWeight( edge, squareDists[ i ] );
+			}
+		}
+	}
+
+	private List< T > generateSpotList( final int frame )
+	{
+		final List< T > list = new ArrayList< T >( spots.getNObjects( frame, true ) );
+		final Iterator< T > it = spots.iterator( frame, true );
+		while ( it.hasNext() )
+		{
+			list.add( it.next() );
+		}
+		return list;
+	}
+
+	/**
+	 * Sorts the candidate indices of the range <code>[left, right]</code> by
+	 * increasing distance, then by increasing index, so that the order is
+	 * fully determined.
+	 */
+	private static void sortByDistance( final int[] order, final double[] dists, int left, int right )
+	{
+		while ( right - left > 16 )
+		{
+			final int pivot = order[ ( left + right ) >>> 1 ];
+			int i = left;
+			int j = right;
+			while ( i <= j )
+			{
+				while ( before( order[ i ], pivot, dists ) )
+				{
+					i++;
+				}
+				while ( before( pivot, order[ j ], dists ) )
+				{
+					j--;
+				}
+				if ( i <= j )
+				{
+					final int tmp = order[ i ];
+					order[ i ] = order[ j ];
+					order[ j ] = tmp;
+					i++;
+					j--;
+				}
+			}
+			// Recurse on the smaller part, loop on the larger one.
+			if ( j - left < right - i )
+			{
+				sortByDistance( order, dists, left, j );
+				left = i;
+			}
+			else
+			{
+				sortByDistance( order, dists, i, right );
+				right = j;
+			}
+		}
+		for ( int i = left + 1; i <= right; i++ )
+		{
+			final int c = order[ i ];
+			int j = i - 1;
+			while ( j >= left && before( c, order[ j ], dists ) )
+			{
+				order[ j + 1 ] = order[ j ];
+				j--;
+			}
+			order[ j + 1 ] = c;
+		}
+	}
+
+	private static boolean before( final int a, final int b, final double[] dists )
+	{
+		return dists[ a ] < dists[ b ] || ( dists[ a ] == dists[ b ] && a < b );
+	}
+
 	@Override
 	public SimpleWeightedGraph< T, DefaultWeightedEdge > getResult()
 	{
@@ -0,0 +1,347 @@
+package fiji.plugin.trackmate.tracking.kdtree;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.RealLocalizable;
+
+/**
+ * A static KD-tree over a list of points, stored in primitive arrays.
+ * <p>
+ * The tree is implicit: the points are reordered so that the node of the
+ * index range <code>[lo, hi)</code> is at <code>(lo + hi) / 2</code>, with the
+ * points of its left and right sub-trees before and after it. The split
+ * dimension cycles with depth. Building the tree allocates a few arrays, and
+ * queries do not allocate, provided they are given a reusable
+ * {@link Neighbors} instance.
+ * <p>
+ * Points are identified by their index in the list the tree was built from.
+ * The tree does not keep a reference to the list nor to the points, and is
+ * not affected by later changes of their position. It is immutable and can be
+ * queried concurrently, each thread using its own {@link Neighbors}.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ */
+public class PrimitiveKDTree
+{
+
+	private final int nDims;
+
+	/** Coordinates of the points, in tree order, one array per dimension. */
+	private final double[][] coords;
+
+	/** Index in the original list of the points, in tree order. */
+	private final int[] indices;
+
+	/**
+	 * Builds a KD-tree over the specified points.
+	 *
+	 * @param points
+	 *            the points. They must all have the same number of dimensions.
+	 */
+	public PrimitiveKDTree( final List< ? extends RealLocalizable > points )
+	{
+		final int n = points.size();
+		this.nDims = n == 0 ? 1 : points.get( 0 ).numDimensions();
+		final double[][] unsorted = new double[ nDims ][ n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			final RealLocalizable point = points.get( i );
+			for ( int d = 0; d < nDims; d++ )
+			{
+				unsorted[ d ][ i ] = point.getDoublePosition( d );
+			}
+		}
+
+		this.indices = new int[ n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			indices[ i ] = i;
+		}
+		build( unsorted, 0, n, 0 );
+
+		this.coords = new double[ nDims ][ n ];
+		for ( int d = 0; d < nDims; d++ )
+		{
+			for ( int i = 0; i < n; i++ )
+			{
+				coords[ d ][ i ] = unsorted[ d ][ indices[ i ] ];
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of points in this tree.
+	 *
+	 * @return the number of points.
+	 */
+	public int size()
+	{
+		return indices.length;
+	}
+
+	public int numDimensions()
+	{
+		return nDims;
+	}
+
+	/**
+	 * Finds all the points whose square distance to the specified position is
+	 * smaller than or equal to the specified value. The neighbors are added to
+	 * the specified instance, in no particular order.
+	 *
+	 * @param position
+	 *            the query position, with at least as many elements as this
+	 *            tree has dimensions.
+	 * @param squareRadius
+	 *            the square of the search radius.
+	 * @param neighbors
+	 *            the instance in which to store the results. It is cleared
+	 *            first.
+	 */
+	public void radiusSearch( final double[] position, final double squareRadius, final Neighbors neighbors )
+	{
+		neighbors.clear();
+		radiusSearch( position, squareRadius, neighbors, 0, indices.length, 0 );
+	}
+
+	private void radiusSearch( final double[] position, final double squareRadius, final Neighbors neighbors, final int lo, final int hi, final int depth )
+	{
+		if ( lo >= hi ) { return; }
+		final int mid = ( lo + hi ) >>> 1;
+
+		double d2 = 0;
+		for ( int d = 0; d < nDims; d++ )
+		{
+			final double dx = position[ d ] - coords[ d ][ mid ];
+			d2 += dx * dx;
+		}
+		if ( d2 <= squareRadius )
+		{
+			neighbors.add( indices[ mid ], d2 );
+		}
+
+		final int dim = depth % nDims;
+		final double diff = position[ dim ] - coords[ dim ][ mid ];
+		if ( diff <= 0 )
+		{
+			radiusSearch( position, squareRadius, neighbors, lo, mid, depth + 1 );
+			if ( diff * diff <= squareRadius )
+			{
+				radiusSearch( position, squareRadius, neighbors, mid + 1, hi, depth + 1 );
+			}
+		}
+		else
+		{
+			radiusSearch( position, squareRadius, neighbors, mid + 1, hi, depth + 1 );
+			if ( diff * diff <= squareRadius )
+			{
+				radiusSearch( position, squareRadius, neighbors, lo, mid, depth + 1 );
+			}
+		}
+	}
+
+	/**
+	 * Finds the point nearest to the specified position, skipping the points
+	 * flagged as excluded. If there is such a point, it is added to the
+	 * specified instance, which otherwise stays empty.
+	 *
+	 * @param position
+	 *            the query position, with at least as many elements as this
+	 *            tree has dimensions.
+	 * @param excluded
+	 *            the points to skip, by their index in the list the tree was
+	 *            built from. Can be <code>null</code> to consider all points.
+	 * @param neighbors
+	 *            the instance in which to store the result. It is cleared
+	 *            first.
+	 */
+	public void nearestSearch( final double[] position, final boolean[] excluded, final Neighbors neighbors )
+	{
+		neighbors.clear();
+		nearestSearch( position, excluded, neighbors, 0, indices.length, 0 );
+	}
+
+	/**
+	 * Keeps the best point found so far as the single element of the
+	 * specified neighbors.
+	 */
+	private void nearestSearch( final double[] position, final boolean[] excluded, final Neighbors best, final int lo, final int hi, final int depth )
+	{
+		if ( lo >= hi ) { return; }
+		final int mid = ( lo + hi ) >>> 1;
+
+		if ( null == excluded || !excluded[ indices[ mid ] ] )
+		{
+			double d2 = 0;
+			for ( int d = 0; d < nDims; d++ )
+			{
+				final double dx = position[ d ] - coords[ d ][ mid ];
+				d2 += dx * dx;
+			}
+			if ( best.size == 0 || d2 < best.squareDistances[ 0 ] )
+			{
+				best.clear();
+				best.add( indices[ mid ], d2 );
+			}
+		}
+
+		final int dim = depth % nDims;
+		final double diff = position[ dim ] - coords[ dim ][ mid ];
+		if ( diff <= 0 )
+		{
+			nearestSearch( position, excluded, best, lo, mid, depth + 1 );
+			if ( best.size == 0 || diff * diff <= best.squareDistances[ 0 ] )
+			{
+				nearestSearch( position, excluded, best, mid + 1, hi, depth + 1 );
+			}
+		}
+		else
+		{
+			nearestSearch( position, excluded, best, mid + 1, hi, depth + 1 );
+			if ( best.size == 0 || diff * diff <= best.squareDistances[ 0 ] )
+			{
+				nearestSearch( position, excluded, best, lo, mid, depth + 1 );
+			}
+		}
+	}
+
+	/**
+	 * Reorders the indices of the range <code>[lo, hi)</code> so that the
+	 * median along the split dimension is in the middle, with smaller or equal
+	 * values before and larger or equal values after, then recurses.
+	 */
+	private void build( final double[][] unsorted, final int lo, final int hi, final int depth )
+	{
+		if ( hi - lo < 2 ) { return; }
+		final int mid = ( lo + hi ) >>> 1;
+		select( unsorted[ depth % nDims ], lo, hi - 1, mid );
+		build( unsorted, lo, mid, depth + 1 );
+		build( unsorted, mid + 1, hi, depth + 1 );
+	}
+
+	/**
+	 * Quickselect on the indices of the range <code>[left, right]</code>.
+	 */
+	private void select( final double[] values, int left, int right, final int k )
+	{
+		while ( right > left )
+		{
+			// Median of three as pivot.
+			final int m = ( left + right ) >>> 1;
+			if ( values[ indices[ m ] ] < values[ indices[ left ] ] )
+			{
+				swap( m, left );
+			}
+			if ( values[ indices[ right ] ] < values[ indices[ left ] ] )
+			{
+				swap( right, left );
+			}
+			if ( values[ indices[ right ] ] < values[ indices[ m ] ] )
+			{
+				swap( right, m );
+			}
+			final double pivot = values[ indices[ m ] ];
+
+			int i = left;
+			int j = right;
+			while ( i <= j )
+			{
+				while ( values[ indices[ i ] ] < pivot )
+				{
+					i++;
+				}
+				while ( values[ indices[ j ] ] > pivot )
+				{
+					j--;
+				}
+				if ( i <= j )
+				{
+					swap( i, j );
+					i++;
+					j--;
+				}
+			}
+			if ( k <= j )
+			{
+				right = j;
+			}
+			else if ( k >= i )
+			{
+				left = i;
+			}
+			else
+			{
+				return;
+			}
+		}
+	}
+
+	private void swap( final int i, final int j )
+	{
+		final int tmp = indices[ i ];
+		indices[ i ] = indices[ j ];
+		indices[ j ] = tmp;
+	}
+
+	/**
+	 * A reusable list of neighbors found by a search, as point indices and
+	 * square distances.
+	 */
+	public static final class Neighbors
+	{
+		private int[] indices = new int[ 16 ];
+
+		private double[] squareDistances = new double[ 16 ];
+
+		private int size;
+
+		public int size()
+		{
+			return size;
+		}
+
+		/**
+		 * Returns the index, in the list the tree was built from, of the
+		 * specified neighbor.
+		 *
+		 * @param i
+		 *            the neighbor, between 0 and {@link #size()}.
+		 * @return the point index.
+		 */
+		public int index( final int i )
+		{
+			return indices[ i ];
+		}
+
+		/**
+		 * Returns the square distance from the query position to the
+		 * specified neighbor.
+		 *
+		 * @param i
+		 *            the neighbor, between 0 and {@link #size()}.
+		 * @return the square distance.
+		 */
+		public double squareDistance( final int i )
+		{
+			return squareDistances[ i ];
+		}
+
+		public void clear()
+		{
+			size = 0;
+		}
+
+		private void add( final int index, final double squareDistance )
+		{
+			if ( size == indices.length )
+			{
+				indices = Arrays.copyOf( indices, 2 * size );
+				squareDistances = Arrays.copyOf( squareDistances, 2 * size );
+			}
+			indices[ size ] = index;
+			squareDistances[ size ] = squareDistance;
+			size++;
+		}
+	}
+}
@@ -12,6 +12,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
@@ -31,6 +32,10 @@ import fiji.plugin.trackmate.tracking.oldlap.costmatrix.TrackSegmentCostMatrixCr
 import fiji.plugin.trackmate.tracking.oldlap.hungarian.AssignmentAlgorithm;
 import fiji.plugin.trackmate.tracking.oldlap.hungarian.AssignmentProblem;
 import fiji.plugin.trackmate.tracking.oldlap.hungarian.HungarianAlgorithm;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPSolver;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPSolverFactory;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPSolverSelector;
+import fiji.plugin.trackmate.tracking.sparselap.linker.SparseCostMatrix;
 import fiji.plugin.trackmate.util.LAPUtils;
 import fiji.plugin.trackmate.util.TrackableObjectUtils;
 
@@ -197,7 +202,14 @@ public class LAPTracker< T extends TrackableObject< T >> extends
 	/** The settings map that configures this tracker. */
 	protected final Map< String, Object > settings;
 
-	private final CostCalculator< T > calculator;
+	protected final CostCalculator< T > calculator;
+
+	/**
+	 * The factory of the solvers used for the assignment problems. If
+	 * <code>null</code>, the {@link AssignmentAlgorithm} returned by
+	 * {@link #createAssignmentProblemSolver()} is used.
+	 */
+	protected LAPSolverFactory solverFactory;
 
 	/*
 	 * CONSTRUCTOR
@@ -228,6 +240,79 @@ public class LAPTracker< T extends TrackableObject< T >> extends
 		return new HungarianAlgorithm();
 	}
 
+	/**
+	 * Solves the assignment problem stated on the specified cost matrix, with
+	 * the solver factory of this tracker if one was set, and with the solver
+	 * returned by {@link #createAssignmentProblemSolver()} otherwise.
+	 * <p>
+	 * In the first case, the cost matrix is converted to a sparse one, in
+	 * which the costs not smaller than the blocking value are missing.
+	 *
+	 * @param costMatrix
+	 *            the cost matrix. It is not modified.
+	 * @param blockingValue
+	 *            the value of blocked assignments.
+	 * @return the solutions, as arrays of a row index and a column index, or
+	 *         <code>null</code> if the solver failed.
+	 * @see #setSolverFactory(LAPSolverFactory)
+	 */
+	protected int[][] solveAssignmentProblem( final double[][] costMatrix, final double blockingValue )
+	{
+		if ( null == solverFactory )
+		{
+			final AssignmentProblem problem = new AssignmentProblem( costMatrix );
+			final AssignmentAlgorithm solver = createAssignmentProblemSolver();
+			return problem.solve( solver );
+		}
+
+		final int nRows = costMatrix.length;
+		final int nCols = nRows == 0 ? 0 : costMatrix[ 0 ].length;
+		final int[] number = new int[ nRows ];
+		int cardinality = 0;
+		for ( int i = 0; i < nRows; i++ )
+		{
+			for ( int j = 0; j < nCols; j++ )
+			{
+				if ( costMatrix[ i ][ j ] < blockingValue )
+				{
+					number[ i ]++;
+				}
+			}
+			cardinality += number[ i ];
+		}
+		final double[] cc = new double[ cardinality ];
+		final int[] kk = new int[ cardinality ];
+		int index = 0;
+		for ( int i = 0; i < nRows; i++ )
+		{
+			for ( int j = 0; j < nCols; j++ )
+			{
+				final double cost = costMatrix[ i ][ j ];
+				if ( cost < blockingValue )
+				{
+					cc[ index ] = cost;
+					kk[ index ] = j;
+					index++;
+				}
+			}
+		}
+		final SparseCostMatrix cm = new SparseCostMatrix( cc, kk, number, nCols );
+
+		final LAPSolver solver = solverFactory.create( cm );
+		if ( !solver.checkInput() || !solver.process() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + solver.getErrorMessage();
+			return null;
+		}
+		final int[] x = solver.getResult();
+		final int[][] solutions = new int[ x.length ][];
+		for ( int i = 0; i < x.length; i++ )
+		{
+			solutions[ i ] = new int[] { i, x[ i ] };
+		}
+		return solutions;
+	}
+
 	/*
 	 * METHODS
 	 */
@@ -253,6 +338,23 @@ public class LAPTracker< T extends TrackableObject< T >> extends
 		return graph;
 	}
 
+	/**
+	 * Sets the factory of the solvers used for the assignment problems, for
+	 * instance a {@link LAPSolverSelector}. If <code>null</code>, the default,
+	 * the {@link AssignmentAlgorithm} returned by
+	 * {@link #createAssignmentProblemSolver()} is used.
+	 * <p>
+	 * Frame pairs are linked concurrently, so the factory must be usable from
+	 * several threads.
+	 *
+	 * @param solverFactory
+	 *            the solver factory.
+	 */
+	public void setSolverFactory( final LAPSolverFactory solverFactory )
+	{
+		this.solverFactory = solverFactory;
+	}
+
 	/**
 	 * Set the cost matrix used for step 2, linking track segments into final
 	 * tracks.
@@ -484,6 +586,7 @@ public class LAPTracker< T extends TrackableObject< T >> extends
 
 		// Solve LAP
 		final int[][] finalTrackSolutions = solveLAPForFinalTracks();
+		if ( null == finalTrackSolutions ) { return false; }
 
 		if ( DEBUG )
 		{
@@ -538,6 +641,7 @@ public class LAPTracker< T extends TrackableObject< T >> extends
 		// Prepare the thread array
 		final AtomicInteger ai = new AtomicInteger( 0 );
 		final AtomicInteger progress = new AtomicInteger( 0 );
+		final AtomicBoolean ok = new AtomicBoolean( true );
 		for ( int ithread = 0; ithread < threads.length; ithread++ )
 		{
 
@@ -602,10 +706,13 @@ public class LAPTracker< T extends TrackableObject< T >> extends
 						if ( !allBlocked )
 						{
 							// Find solution
-							final AssignmentProblem problem = new AssignmentProblem(
-									costMatrix );
-							final AssignmentAlgorithm solver = createAssignmentProblemSolver();
-							final int[][] solutions = problem.solve( solver );
+							final int[][] solutions = solveAssignmentProblem(
+									costMatrix, blockingValue );
+							if ( null == solutions )
+							{
+								ok.set( false );
+								return;
+							}
 
 							// Extend track segments using solutions: we update
 							// the graph edges
@@ -652,7 +759,7 @@ public class LAPTracker< T extends TrackableObject< T >> extends
 		SimpleMultiThreading.startAndJoin( threads );
 		logger.setProgress( 0.5f );
 		logger.setStatus( "" );
-		return true;
+		return ok.get();
 	}
 
 	/**
@@ -687,16 +794,13 @@ public class LAPTracker< T extends TrackableObject< T >> extends
 	 * Compute the optimal final track using the cost matrix
 	 * {@link LAPTracker#segmentCosts}.
 	 *
-	 * @return True if executes correctly, false otherwise.
+	 * @return the solutions, or <code>null</code> if the solver failed.
 	 */
 	public int[][] solveLAPForFinalTracks()
 	{
-		// Solve the LAP using the Hungarian Algorithm
 		logger.setStatus( "Solving for final tracks..." );
-		final AssignmentProblem problem = new AssignmentProblem( segmentCosts );
-		final AssignmentAlgorithm solver = createAssignmentProblemSolver();
-		final int[][] solutions = problem.solve( solver );
-		return solutions;
+		final double blockingValue = ( Double ) settings.get( KEY_BLOCKING_VALUE );
+		return solveAssignmentProblem( segmentCosts, blockingValue );
 	}
 
 	/**
@@ -0,0 +1,486 @@
+package fiji.plugin.trackmate.tracking.oldlap;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_MERGING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_SPLITTING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_BLOCKING_VALUE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_CUTOFF_PERCENTILE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_SPLITTING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_SPLITTING_MAX_DISTANCE;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.multithreading.SimpleMultiThreading;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.tracking.TrackableObject;
+import fiji.plugin.trackmate.tracking.TrackableObjectCollection;
+import fiji.plugin.trackmate.tracking.kdtree.PrimitiveKDTree;
+import fiji.plugin.trackmate.tracking.kdtree.PrimitiveKDTree.Neighbors;
+import fiji.plugin.trackmate.tracking.oldlap.costfunction.CostCalculator;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.DefaultCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.FrameGroupedList;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.ResizableDoubleArray;
+import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPSolverFactory;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPJV;
+import fiji.plugin.trackmate.util.TMUtils;
+
+/**
+ * A {@link LAPTracker} that builds sparse cost matrices and solves them with
+ * the {@link LAPJV} solver of the sparse LAP framework, instead of dense
+ * matrices filled with the blocking value.
+ * <p>
+ * It takes the same settings and the same {@link CostCalculator} as the
+ * {@link LAPTracker}, and computes the same costs and alternative costs as its
+ * {@link fiji.plugin.trackmate.tracking.oldlap.costfunction.GapClosingCostFunction},
+ * {@link fiji.plugin.trackmate.tracking.oldlap.costfunction.MergingCostFunction}
+ * and
+ * {@link fiji.plugin.trackmate.tracking.oldlap.costfunction.SplittingCostFunction}.
+ * Only the costs smaller than the blocking value are stored, so memory scales
+ * with the number of candidate links rather than with the square of the number
+ * of spots.
+ * <p>
+ * Frame-to-frame candidates are found with a {@link PrimitiveKDTree} within the
+ * max linking distance. This assumes that the cost calculator returns the
+ * blocking value beyond the distance cutoff it is given, as the
+ * {@link fiji.plugin.trackmate.SpotCostCalculator} does. The
+ * {@link #createFrameToFrameLinkingCostMatrix(List, List, Map)} hook is not
+ * used by this tracker.
+ * <p>
+ * In the track segment step, a segment end and a splitting middle point are
+ * distinct rows even if they are the same spot, like in the dense matrix of
+ * the {@link LAPTracker}. Rows and columns are therefore identified by their
+ * index in the dense matrix.
+ * <p>
+ * If a solver factory is set with {@link #setSolverFactory(LAPSolverFactory)},
+ * it is passed to the {@link JaqamanLinker}s. Otherwise they use their default
+ * one.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ */
+public class SparseLAPJVTracker< T extends TrackableObject< T >> extends LAPTracker< T >
+{
+
+	private final static String BASE_ERROR_MESSAGE = "SparseLAPJVTracker: ";
+
+	/**
+	 * The sparse cost matrix for track segments, with rows and columns
+	 * numbered as in the dense matrix. <code>null</code> if there are no
+	 * candidate links.
+	 */
+	private DefaultCostMatrixCreator< Integer, Integer > segmentCostCreator;
+
+	public SparseLAPJVTracker( final CostCalculator< T > calculator,
+			final TrackableObjectCollection< T > spots,
+			final Map< String, Object > settings )
+	{
+		super( calculator, spots, settings );
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public boolean solveLAPForTrackSegments()
+	{
+		final double blockingValue = ( Double ) settings.get( KEY_BLOCKING_VALUE );
+		final double maxDist = ( Double ) settings.get( KEY_LINKING_MAX_DISTANCE );
+		final double alternativeCostFactor = ( Double ) settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR );
+		@SuppressWarnings( "unchecked" )
+		final Map< String, Double > featurePenalties = ( Map< String, Double > ) settings.get( KEY_LINKING_FEATURE_PENALTIES );
+
+		// Prepare frame pairs in order, not necessarily separated by 1.
+		final ArrayList< int[] > framePairs = new ArrayList< int[] >( spots.keySet().size() );
+		final Iterator< Integer > frameIterator = spots.keySet().iterator();
+		int frame0 = frameIterator.next();
+		while ( frameIterator.hasNext() )
+		{
+			final int frame1 = frameIterator.next();
+			framePairs.add( new int[] { frame0, frame1 } );
+			frame0 = frame1;
+		}
+
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		final AtomicInteger progress = new AtomicInteger( 0 );
+		final String[] errors = new String[ threads.length ];
+		for ( int ithread = 0; ithread < threads.length; ithread++ )
+		{
+			final int threadIndex = ithread;
+			threads[ ithread ] = new Thread( "SparseLAPJVTracker track segment linking thread " + ( 1 + ithread ) + "/" + threads.length )
+			{
+				@Override
+				public void run()
+				{
+					final Neighbors neighbors = new Neighbors();
+					final double[] position = new double[ 3 ];
+					for ( int i = ai.getAndIncrement(); i < framePairs.size(); i = ai.getAndIncrement() )
+					{
+						final List< T > t0 = generateSpotList( framePairs.get( i )[ 0 ] );
+						final List< T > t1 = generateSpotList( framePairs.get( i )[ 1 ] );
+
+						// Candidate links: costs smaller than the blocking
+						// value.
+						final List< T > sources = new ArrayList< T >();
+						final List< T > targets = new ArrayList< T >();
+						final ResizableDoubleArray costs = new ResizableDoubleArray();
+						final PrimitiveKDTree tree = new PrimitiveKDTree( t1 );
+						for ( final T s0 : t0 )
+						{
+							s0.localize( position );
+							tree.radiusSearch( position, maxDist * maxDist, neighbors );
+							for ( int n = 0; n < neighbors.size(); n++ )
+							{
+								final T s1 = t1.get( neighbors.index( n ) );
+								final double cost = calculator.computeLinkingCostFor( s0, s1, maxDist, blockingValue, featurePenalties );
+								if ( cost < blockingValue )
+								{
+									sources.add( s0 );
+									targets.add( s1 );
+									costs.add( cost );
+								}
+							}
+						}
+
+						if ( !sources.isEmpty() )
+						{
+							costs.trimToSize();
+							// The alternative cost is based on the max cost, as
+							// in the LinkingCostMatrixCreator.
+							final DefaultCostMatrixCreator< T, T > creator = new DefaultCostMatrixCreator< T, T >( sources, targets, costs.data, alternativeCostFactor, 1d );
+							final JaqamanLinker< T, T > linker = new JaqamanLinker< T, T >( creator );
+							if ( null != solverFactory )
+							{
+								linker.setSolverFactory( solverFactory );
+							}
+							if ( !linker.checkInput() || !linker.process() )
+							{
+								errors[ threadIndex ] = BASE_ERROR_MESSAGE + "Linking frame " + framePairs.get( i )[ 0 ] + " to " + framePairs.get( i )[ 1 ] + ": " + linker.getErrorMessage();
+								return;
+							}
+							final Map< T, T > assignments = linker.getResult();
+							final Map< T, Double > assignmentCosts = linker.getAssignmentCosts();
+							synchronized ( graph )
+							{
+								for ( final T s0 : assignments.keySet() )
+								{
+									final DefaultWeightedEdge edge = graph.addEdge( s0, assignments.get( s0 ) );
+									graph.setEdgeWeight( edge, assignmentCosts.get( s0 ) );
+								}
+							}
+						}
+						logger.setProgress( 0.5f * progress.incrementAndGet() / framePairs.size() );
+					}
+				}
+			};
+		}
+
+		logger.setStatus( "Solving for track segments..." );
+		SimpleMultiThreading.startAndJoin( threads );
+		logger.setProgress( 0.5f );
+		logger.setStatus( "" );
+
+		for ( final String error : errors )
+		{
+			if ( null != error )
+			{
+				errorMessage = error;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the sparse cost matrix used to link track segments (step 2).
+	 * Rows are the segment ends followed by the splitting middle points, and
+	 * columns are the segment starts followed by the merging middle points.
+	 * Middle points without any candidate link are pruned, as in the
+	 * {@link fiji.plugin.trackmate.tracking.oldlap.costmatrix.TrackSegmentCostMatrixCreator}.
+	 * The matrix itself is built when solving.
+	 *
+	 * @return True if executes successfully, false otherwise.
+	 */
+	@Override
+	public boolean createTrackSegmentCostMatrix()
+	{
+		final double blockingValue = ( Double ) settings.get( KEY_BLOCKING_VALUE );
+		final boolean allowGapClosing = ( Boolean ) settings.get( KEY_ALLOW_GAP_CLOSING );
+		final boolean allowMerging = ( Boolean ) settings.get( KEY_ALLOW_TRACK_MERGING );
+		final boolean allowSplitting = ( Boolean ) settings.get( KEY_ALLOW_TRACK_SPLITTING );
+		final int frameCutoff = ( Integer ) settings.get( KEY_GAP_CLOSING_MAX_FRAME_GAP );
+		final double gcMaxDist = ( Double ) settings.get( KEY_GAP_CLOSING_MAX_DISTANCE );
+		final double mMaxDist = ( Double ) settings.get( KEY_MERGING_MAX_DISTANCE );
+		final double sMaxDist = ( Double ) settings.get( KEY_SPLITTING_MAX_DISTANCE );
+		@SuppressWarnings( "unchecked" )
+		final Map< String, Double > gcPenalties = ( Map< String, Double > ) settings.get( KEY_GAP_CLOSING_FEATURE_PENALTIES );
+		@SuppressWarnings( "unchecked" )
+		final Map< String, Double > mPenalties = ( Map< String, Double > ) settings.get( KEY_MERGING_FEATURE_PENALTIES );
+		@SuppressWarnings( "unchecked" )
+		final Map< String, Double > sPenalties = ( Map< String, Double > ) settings.get( KEY_SPLITTING_FEATURE_PENALTIES );
+		final double alternativeCostFactor = ( Double ) settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR );
+		final double cutoffPercentile = ( Double ) settings.get( KEY_CUTOFF_PERCENTILE );
+
+		final int nSegments = trackSegments.size();
+
+		// Segment starts and middle points, grouped by frame.
+		final List< T > starts = new ArrayList< T >( nSegments );
+		final Map< T, Integer > startIndices = new HashMap< T, Integer >( nSegments );
+		for ( int i = 0; i < nSegments; i++ )
+		{
+			final T start = trackSegments.get( i ).first();
+			starts.add( start );
+			startIndices.put( start, Integer.valueOf( i ) );
+		}
+		final FrameGroupedList< T > startsByFrame = new FrameGroupedList< T >( starts );
+
+		final List< T > middles = new ArrayList< T >();
+		final Map< T, Integer > middleIndices = new HashMap< T, Integer >();
+		final List< Integer > middleSegments = new ArrayList< Integer >();
+		if ( allowMerging || allowSplitting )
+		{
+			for ( int i = 0; i < nSegments; i++ )
+			{
+				final SortedSet< T > segment = trackSegments.get( i );
+				if ( segment.size() < 2 )
+				{
+					continue;
+				}
+				for ( final T middle : segment )
+				{
+					middleIndices.put( middle, Integer.valueOf( middles.size() ) );
+					middles.add( middle );
+					middleSegments.add( Integer.valueOf( i ) );
+				}
+			}
+		}
+		final FrameGroupedList< T > middlesByFrame = new FrameGroupedList< T >( middles );
+
+		/*
+		 * Candidate links. Rows and columns are first numbered with the index
+		 * of the middle points before pruning, and renumbered afterwards.
+		 */
+
+		final List< Integer > rows = new ArrayList< Integer >();
+		final List< Integer > cols = new ArrayList< Integer >();
+		final ResizableDoubleArray costs = new ResizableDoubleArray();
+		final int[] mergingMiddles = new int[ middles.size() ];
+		final int[] splittingMiddles = new int[ middles.size() ];
+
+		for ( int i = 0; i < nSegments; i++ )
+		{
+			final T end = trackSegments.get( i ).last();
+			final int endFrame = end.frame();
+
+			// Gap closing: end of segment i to start of segment j.
+			if ( allowGapClosing )
+			{
+				final int to = startsByFrame.fromFrame( endFrame + frameCutoff + 2 );
+				for ( int k = startsByFrame.fromFrame( endFrame + 1 ); k < to; k++ )
+				{
+					final T start = startsByFrame.get( k );
+					final int j = startIndices.get( start ).intValue();
+					if ( i == j )
+					{
+						continue;
+					}
+					final double cost = calculator.computeLinkingCostFor( end, start, gcMaxDist, blockingValue, gcPenalties );
+					if ( cost < blockingValue )
+					{
+						rows.add( Integer.valueOf( i ) );
+						cols.add( Integer.valueOf( j ) );
+						costs.add( cost );
+					}
+				}
+			}
+
+			// Merging: end of segment i to a middle point in the next frame.
+			if ( allowMerging )
+			{
+				final int to = middlesByFrame.fromFrame( endFrame + 2 );
+				for ( int k = middlesByFrame.fromFrame( endFrame + 1 ); k < to; k++ )
+				{
+					final T middle = middlesByFrame.get( k );
+					final int m = middleIndices.get( middle ).intValue();
+					final double cost = calculator.computeLinkingCostFor( end, middle, mMaxDist, blockingValue, mPenalties );
+					if ( cost < blockingValue )
+					{
+						rows.add( Integer.valueOf( i ) );
+						cols.add( Integer.valueOf( nSegments + m ) );
+						costs.add( cost );
+						mergingMiddles[ m ] = 1;
+					}
+				}
+			}
+		}
+
+		// Splitting: a middle point to the start of a segment in the next
+		// frame.
+		if ( allowSplitting )
+		{
+			for ( int m = 0; m < middles.size(); m++ )
+			{
+				final T middle = middles.get( m );
+				final int middleFrame = middle.frame();
+				final int to = startsByFrame.fromFrame( middleFrame + 2 );
+				for ( int k = startsByFrame.fromFrame( middleFrame + 1 ); k < to; k++ )
+				{
+					final T start = startsByFrame.get( k );
+					final int j = startIndices.get( start ).intValue();
+					if ( j == middleSegments.get( m ).intValue() )
+					{
+						continue;
+					}
+					final double cost = calculator.computeLinkingCostFor( start, middle, sMaxDist, blockingValue, sPenalties );
+					if ( cost < blockingValue )
+					{
+						rows.add( Integer.valueOf( nSegments + m ) );
+						cols.add( Integer.valueOf( j ) );
+						costs.add( cost );
+						splittingMiddles[ m ] = 1;
+					}
+				}
+			}
+		}
+
+		// Prune middle points, keeping their order.
+		mergingMiddlePoints = new ArrayList< T >();
+		splittingMiddlePoints = new ArrayList< T >();
+		for ( int m = 0; m < middles.size(); m++ )
+		{
+			if ( mergingMiddles[ m ] > 0 )
+			{
+				mergingMiddles[ m ] = mergingMiddlePoints.size();
+				mergingMiddlePoints.add( middles.get( m ) );
+			}
+			if ( splittingMiddles[ m ] > 0 )
+			{
+				splittingMiddles[ m ] = splittingMiddlePoints.size();
+				splittingMiddlePoints.add( middles.get( m ) );
+			}
+		}
+		for ( int c = 0; c < costs.size; c++ )
+		{
+			final int row = rows.get( c ).intValue();
+			if ( row >= nSegments )
+			{
+				rows.set( c, Integer.valueOf( nSegments + splittingMiddles[ row - nSegments ] ) );
+			}
+			final int col = cols.get( c ).intValue();
+			if ( col >= nSegments )
+			{
+				cols.set( c, Integer.valueOf( nSegments + mergingMiddles[ col - nSegments ] ) );
+			}
+		}
+
+		if ( costs.isEmpty() )
+		{
+			segmentCostCreator = null;
+			return true;
+		}
+
+		costs.trimToSize();
+		final double[] linkCosts = costs.data;
+		segmentCostCreator = new DefaultCostMatrixCreator< Integer, Integer >( rows, cols, linkCosts, alternativeCostFactor, cutoffPercentile )
+		{
+			/*
+			 * Same percentile as in the TrackSegmentCostMatrixCreator.
+			 */
+			@Override
+			protected double computeAlternativeCosts()
+			{
+				return alternativeCostFactor * TMUtils.getPercentile( linkCosts, cutoffPercentile );
+			}
+		};
+		return true;
+	}
+
+	@Override
+	public boolean linkTrackSegmentsToFinalTracks()
+	{
+		// Check that there are track segments.
+		if ( null == trackSegments || trackSegments.size() < 1 )
+		{
+			errorMessage = "There are no track segments to link.";
+			return false;
+		}
+
+		// No candidate link: nothing to do.
+		if ( null == segmentCostCreator ) { return true; }
+
+		logger.setStatus( "Solving for final tracks..." );
+		final JaqamanLinker< Integer, Integer > linker = new JaqamanLinker< Integer, Integer >( segmentCostCreator );
+		if ( null != solverFactory )
+		{
+			linker.setSolverFactory( solverFactory );
+		}
+		if ( !linker.checkInput() || !linker.process() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + linker.getErrorMessage();
+			return false;
+		}
+
+		final int nSegments = trackSegments.size();
+		final Map< Integer, Integer > assignments = linker.getResult();
+		final Map< Integer, Double > assignmentCosts = linker.getAssignmentCosts();
+		for ( final Integer row : assignments.keySet() )
+		{
+			final int i = row.intValue();
+			final int j = assignments.get( row ).intValue();
+
+			final T source;
+			final T target;
+			if ( i < nSegments )
+			{
+				source = trackSegments.get( i ).last();
+				if ( j < nSegments )
+				{
+					// Gap closing
+					target = trackSegments.get( j ).first();
+				}
+				else
+				{
+					// Merging
+					target = mergingMiddlePoints.get( j - nSegments );
+				}
+			}
+			else
+			{
+				// Splitting
+				source = splittingMiddlePoints.get( i - nSegments );
+				target = trackSegments.get( j ).first();
+			}
+			final DefaultWeightedEdge edge = graph.addEdge( source, target );
+			graph.setEdgeWeight( edge, assignmentCosts.get( row ) );
+		}
+		return true;
+	}
+
+	private List< T > generateSpotList( final int frame )
+	{
+		final List< T > list = new ArrayList< T >( spots.getNObjects( frame, true ) );
+		final Iterator< T > it = spots.iterator( frame, true );
+		while ( it.hasNext() )
+		{
+			list.add( it.next() );
+		}
+		return list;
+	}
+}
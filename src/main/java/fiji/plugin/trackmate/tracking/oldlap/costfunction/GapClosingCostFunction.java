@@ -6,14 +6,13 @@ import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_FEATURE
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 import net.imglib2.algorithm.OutputAlgorithm;
-import net.imglib2.multithreading.SimpleMultiThreading;
 import Jama.Matrix;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.tracking.TrackableObject;
@@ -97,69 +96,38 @@ public class GapClosingCostFunction< T extends TrackableObject< T >> extends Mul
 
 			m = new Matrix( n, n );
 
-			// Prepare threads
-			final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
-
-			// Prepare the thread array
-			final AtomicInteger ai = new AtomicInteger( 0 );
-			for ( int ithread = 0; ithread < threads.length; ithread++ )
+			// Segment ends and starts, with their frames.
+			final List< T > ends = new ArrayList< T >( n );
+			final List< T > starts = new ArrayList< T >( n );
+			final int[] endFrames = new int[ n ];
+			final int[] startFrames = new int[ n ];
+			for ( int i = 0; i < n; i++ )
 			{
+				final SortedSet< T > segment = trackSegments.get( i );
+				ends.add( segment.last() );
+				starts.add( segment.first() );
+				endFrames[ i ] = segment.last().frame();
+				startFrames[ i ] = segment.first().frame();
+			}
 
-				threads[ ithread ] = new Thread( "LAPTracker gap closing cost thread " + ( 1 + ithread ) + "/" + threads.length )
+			// Frame cutoff. A value of 1 means a gap of 1 frame. If the end spot
+			// is in frame 10, the start spot in frame 12, and if the max gap is 1
+			// then we should sought to bridge this gap (12 to 10 is a gap of 1
+			// frame).
+			final TiledCostMatrixFiller.PairCost pairCost = TiledCostMatrixFiller.pairCost( costCalculator, ends, starts, maxDist, blockingValue, featurePenalties );
+			TiledCostMatrixFiller.fill( m.getArray(), endFrames, startFrames, 1, frameCutoff + 1, blockingValue, new TiledCostMatrixFiller.PairCost()
+			{
+				@Override
+				public double cost( final int i, final int j )
 				{
-
-					@Override
-					public void run()
+					// If i and j are the same track segment, block it
+					if ( i == j )
 					{
-
-						for ( int i = ai.getAndIncrement(); i < n; i = ai.getAndIncrement() )
-						{
-
-							final SortedSet< T > seg1 = trackSegments.get( i );
-							final T end = seg1.last(); // get last Spot of seg1
-							final int endFrame = end.frame(); // we want at
-																// least tstart
-																// > tend
-
-							// Set the gap closing scores for each segment start
-							// and end pair
-							for ( int j = 0; j < n; j++ )
-							{
-
-								// If i and j are the same track segment, block
-								// it
-								if ( i == j )
-								{
-									m.set( i, j, blockingValue );
-									continue;
-								}
-
-								final SortedSet< T > seg2 = trackSegments.get( j );
-								final T start = seg2.first(); // get first Spot
-																// of seg2
-								final int startFrame = start.frame();
-
-								// Frame cutoff. A value of 1 means a gap of 1
-								// frame. If the end spot
-								// is in frame 10, the start spot in frame 12,
-								// and if the max gap is 1
-								// then we should sought to bridge this gap (12
-								// to 10 is a gap of 1 frame).
-								if ( startFrame - endFrame > ( frameCutoff + 1 ) || endFrame >= startFrame )
-								{
-									m.set( i, j, blockingValue );
-									continue;
-								}
-
-								final double cost = costCalculator.computeLinkingCostFor( end, start, maxDist, blockingValue, featurePenalties );
-								m.set( i, j, cost );
-							}
-						}
+						return blockingValue;
 					}
-				};
-			}
-
-			SimpleMultiThreading.startAndJoin( threads );
+					return pairCost.cost( i, j );
+				}
+			}, numThreads, "LAPTracker gap closing cost thread" );
 		}
 		final long end = System.currentTimeMillis();
 		processingTime = end - start;
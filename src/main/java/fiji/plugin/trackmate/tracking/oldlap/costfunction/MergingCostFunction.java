@@ -5,14 +5,13 @@ import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_BLOCKING_VALUE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_FEATURE_PENALTIES;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_MAX_DISTANCE;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 import net.imglib2.algorithm.OutputAlgorithm;
-import net.imglib2.multithreading.SimpleMultiThreading;
 import Jama.Matrix;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.tracking.TrackableObject;
@@ -99,57 +98,23 @@ public class MergingCostFunction< T extends TrackableObject< T >> extends
 
 			m = new Matrix( trackSegments.size(), middlePoints.size() );
 
-			// Prepare threads
-			final Thread[] threads = SimpleMultiThreading
-					.newThreads( numThreads );
-
-			// Prepare the thread array
-			final AtomicInteger ai = new AtomicInteger( 0 );
-			for ( int ithread = 0; ithread < threads.length; ithread++ )
+			final List< T > ends = new ArrayList< T >( trackSegments.size() );
+			final int[] endFrames = new int[ trackSegments.size() ];
+			for ( int i = 0; i < endFrames.length; i++ )
 			{
-
-				threads[ ithread ] = new Thread( "LAPTracker merging cost thread "
-						+ ( 1 + ithread ) + "/" + threads.length )
-				{
-
-					@Override
-					public void run()
-					{
-
-						for ( int i = ai.getAndIncrement(); i < trackSegments
-								.size(); i = ai.getAndIncrement() )
-						{
-							final T end = trackSegments.get( i ).last();
-
-							for ( int j = 0; j < middlePoints.size(); j++ )
-							{
-								final T middle = middlePoints.get( j );
-
-								// Frame threshold - middle Spot must be one
-								// frame ahead of the end Spot
-								final int endFrame = end.frame();
-								final int middleFrame = middle.frame();
-								// We only merge from one frame to the next one,
-								// no more
-								if ( middleFrame - endFrame != 1 )
-								{
-									m.set( i, j, blockingValue );
-									continue;
-								}
-
-								// Initial cost
-								final double cost = costCalculator
-										.computeLinkingCostFor( end, middle,
-												maxDist, blockingValue,
-												featurePenalties );
-								m.set( i, j, cost );
-							}
-						}
-					}
-				};
+				final T end = trackSegments.get( i ).last();
+				ends.add( end );
+				endFrames[ i ] = end.frame();
+			}
+			final int[] middleFrames = new int[ middlePoints.size() ];
+			for ( int j = 0; j < middleFrames.length; j++ )
+			{
+				middleFrames[ j ] = middlePoints.get( j ).frame();
 			}
 
-			SimpleMultiThreading.startAndJoin( threads );
+			// We only merge from one frame to the next one, no more: the middle
+			// spot must be one frame ahead of the end spot.
+			TiledCostMatrixFiller.fill( m.getArray(), endFrames, middleFrames, 1, 1, blockingValue, TiledCostMatrixFiller.pairCost( costCalculator, ends, middlePoints, maxDist, blockingValue, featurePenalties ), numThreads, "LAPTracker merging cost thread" );
 		}
 
 		final long end = System.currentTimeMillis();
@@ -5,14 +5,13 @@ import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_BLOCKING_VALUE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_SPLITTING_FEATURE_PENALTIES;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_SPLITTING_MAX_DISTANCE;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 import net.imglib2.algorithm.OutputAlgorithm;
-import net.imglib2.multithreading.SimpleMultiThreading;
 import Jama.Matrix;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.tracking.TrackableObject;
@@ -107,67 +106,41 @@ public class SplittingCostFunction< T extends TrackableObject< T >> extends
 		else
 		{
 
-			// Prepare threads
-			final Thread[] threads = SimpleMultiThreading
-					.newThreads( numThreads );
-
 			m = new Matrix( middlePoints.size(), trackSegments.size() );
 
-			// Prepare the thread array
-			final AtomicInteger ai = new AtomicInteger( 0 );
-			for ( int ithread = 0; ithread < threads.length; ithread++ )
+			final int[] middleFrames = new int[ middlePoints.size() ];
+			for ( int i = 0; i < middleFrames.length; i++ )
+			{
+				middleFrames[ i ] = middlePoints.get( i ).frame();
+			}
+			final List< T > starts = new ArrayList< T >( trackSegments.size() );
+			final int[] startFrames = new int[ trackSegments.size() ];
+			for ( int j = 0; j < startFrames.length; j++ )
 			{
+				final T first = trackSegments.get( j ).first();
+				starts.add( first );
+				startFrames[ j ] = first.frame();
+			}
 
-				threads[ ithread ] = new Thread(
-						"LAPTracker splitting cost thread " + ( 1 + ithread )
-								+ "/" + threads.length )
+			// Frame threshold - middle Spot must be one frame behind of the start
+			// Spot
+			// Costs are computed from the segment start to the middle spot.
+			final TiledCostMatrixFiller.PairCost pairCost = TiledCostMatrixFiller.pairCost( costCalculator, starts, middlePoints, maxDist, blockingValue, featurePenalties );
+			TiledCostMatrixFiller.fill( m.getArray(), middleFrames, startFrames, 1, 1, blockingValue, new TiledCostMatrixFiller.PairCost()
+			{
+				@Override
+				public double cost( final int i, final int j )
 				{
-
-					@Override
-					public void run()
+					final T middle = middlePoints.get( i );
+					if ( DEBUG )
+						System.out.println( "Segment " + j );
+					if ( trackSegments.get( j ).contains( middle ) )
 					{
-
-						for ( int i = ai.getAndIncrement(); i < middlePoints
-								.size(); i = ai.getAndIncrement() )
-						{
-
-							final T middle = middlePoints.get( i );
-
-							for ( int j = 0; j < trackSegments.size(); j++ )
-							{
-
-								final SortedSet< T > track = trackSegments.get( j );
-								final T start = track.first();
-
-								if ( DEBUG )
-									System.out.println( "Segment " + j );
-								if ( track.contains( middle ) )
-								{
-									m.set( i, j, blockingValue );
-									continue;
-								}
-
-								// Frame threshold - middle Spot must be one
-								// frame behind of the start Spot
-								final int startFrame = start.frame();
-								final int middleFrame = middle.frame();
-								if ( startFrame - middleFrame != 1 )
-								{
-									m.set( i, j, blockingValue );
-									continue;
-								}
-
-								final double cost = costCalculator
-										.computeLinkingCostFor( start, middle,
-												maxDist, blockingValue,
-												featurePenalties );
-								m.set( i, j, cost );
-							}
-						}
+						return blockingValue;
 					}
-				};
-			}
-			SimpleMultiThreading.startAndJoin( threads );
+					return pairCost.cost( j, i );
+				}
+			}, numThreads, "LAPTracker splitting cost thread" );
 		}
 
 		final long end = System.currentTimeMillis();
@@ -0,0 +1,378 @@
+package fiji.plugin.trackmate.tracking.oldlap.costfunction;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.multithreading.SimpleMultiThreading;
+import fiji.plugin.trackmate.SpotCostCalculator;
+import fiji.plugin.trackmate.tracking.TrackableObject;
+
+/**
+ * Fills the dense cost matrices of the legacy LAP tracker by square tiles, in
+ * parallel.
+ * <p>
+ * The gap closing, merging and splitting cost functions all compare a row
+ * object with a column object only when the frame of the column object minus
+ * the frame of the row object lies within a fixed range. Every other entry is
+ * set to the blocking value. Rows and columns are visited in frame order and
+ * grouped in tiles of {@link #TILE_SIZE} × {@link #TILE_SIZE} entries. A tile
+ * whose frame ranges cannot yield any pair within the frame range is skipped
+ * without looking at its entries, so that only the narrow band of candidate
+ * tiles along the time axis costs anything.
+ * <p>
+ * Tiles are processed one tile-row at a time. Threads grab the next tile-row
+ * from a shared counter, which balances the load when some tile-rows hold many
+ * more candidate pairs than others. Each matrix row is written by a single
+ * thread.
+ * <p>
+ * With the default {@link SpotCostCalculator}, the positions and penalized
+ * features of the row and column objects are gathered once in primitive arrays
+ * by {@link #pairCost(CostCalculator, List, List, double, double, Map)}, so
+ * that candidate pairs are evaluated without map lookups. Other calculators
+ * are called for each candidate pair.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ */
+public class TiledCostMatrixFiller
+{
+
+	/** The number of rows and columns in a tile. */
+	public static final int TILE_SIZE = 64;
+
+	/**
+	 * Interface for the cost of a single row-column pair, called only for pairs
+	 * within the frame range.
+	 */
+	public static interface PairCost
+	{
+		/**
+		 * Returns the cost of linking the object of the specified row to the
+		 * object of the specified column, or the blocking value if the link is
+		 * not allowed.
+		 *
+		 * @param row
+		 *            the row index, in the original order.
+		 * @param col
+		 *            the column index, in the original order.
+		 * @return the cost.
+		 */
+		public double cost( int row, int col );
+	}
+
+	private TiledCostMatrixFiller()
+	{}
+
+	/**
+	 * Returns the {@link PairCost} that computes
+	 * <code>calculator.computeLinkingCostFor(sources.get(i), targets.get(j), maxDist, blockingValue, featurePenalties)</code>.
+	 * <p>
+	 * If the calculator is a {@link SpotCostCalculator}, and if all the objects
+	 * have the same dimensionality and all the penalized features, their
+	 * positions and feature values are copied once in primitive arrays, and
+	 * the costs are computed from them with the same arithmetic as the
+	 * calculator. Otherwise, the calculator is called for each pair.
+	 *
+	 * @param calculator
+	 *            the cost calculator.
+	 * @param sources
+	 *            the object of each row.
+	 * @param targets
+	 *            the object of each column.
+	 * @param maxDist
+	 *            the distance cutoff.
+	 * @param blockingValue
+	 *            the value for blocked links.
+	 * @param featurePenalties
+	 *            the feature penalties.
+	 * @return a thread-safe {@link PairCost}.
+	 */
+	public static final < T extends TrackableObject< T >> PairCost pairCost( final CostCalculator< T > calculator, final List< T > sources, final List< T > targets, final double maxDist, final double blockingValue, final Map< String, Double > featurePenalties )
+	{
+		if ( null != featurePenalties && null != calculator && calculator.getClass() == SpotCostCalculator.class )
+		{
+			final String[] features = featurePenalties.keySet().toArray( new String[ featurePenalties.size() ] );
+			final double[] factors = new double[ features.length ];
+			boolean packable = true;
+			for ( int f = 0; f < features.length; f++ )
+			{
+				final Double factor = featurePenalties.get( features[ f ] );
+				if ( null == factor )
+				{
+					packable = false;
+					break;
+				}
+				factors[ f ] = factor.doubleValue();
+			}
+			if ( packable )
+			{
+				final int nDims = sources.isEmpty() ? 0 : sources.get( 0 ).numDimensions();
+				final PackedObjects rows = PackedObjects.pack( sources, nDims, features );
+				final PackedObjects cols = PackedObjects.pack( targets, nDims, features );
+				if ( null != rows && null != cols ) { return new PackedPairCost( rows, cols, factors, maxDist * maxDist, blockingValue ); }
+			}
+		}
+
+		return new PairCost()
+		{
+			@Override
+			public double cost( final int row, final int col )
+			{
+				return calculator.computeLinkingCostFor( sources.get( row ), targets.get( col ), maxDist, blockingValue, featurePenalties );
+			}
+		};
+	}
+
+	/**
+	 * Fills the specified array. After this call, the entry <code>[i][j]</code>
+	 * holds <code>pairCost.cost(i, j)</code> if
+	 * <code>minFrameGap &le; colFrames[j] - rowFrames[i] &le; maxFrameGap</code>
+	 * , and the blocking value otherwise.
+	 *
+	 * @param m
+	 *            the array to fill, as returned by
+	 *            {@link Jama.Matrix#getArray()}.
+	 * @param rowFrames
+	 *            the frame of the object of each row.
+	 * @param colFrames
+	 *            the frame of the object of each column.
+	 * @param minFrameGap
+	 *            the smallest allowed frame difference, inclusive.
+	 * @param maxFrameGap
+	 *            the largest allowed frame difference, inclusive.
+	 * @param blockingValue
+	 *            the value for blocked entries.
+	 * @param pairCost
+	 *            the cost of candidate pairs. Must be thread safe.
+	 * @param numThreads
+	 *            the number of threads to use.
+	 * @param threadName
+	 *            the base name of the threads.
+	 */
+	public static final void fill( final double[][] m, final int[] rowFrames, final int[] colFrames, final int minFrameGap, final int maxFrameGap, final double blockingValue, final PairCost pairCost, final int numThreads, final String threadName )
+	{
+		final int nRows = rowFrames.length;
+		final int nCols = colFrames.length;
+		if ( nRows == 0 )
+		{
+			return;
+		}
+
+		final int[] rowOrder = sortByFrame( rowFrames );
+		final int[] colOrder = sortByFrame( colFrames );
+		// Frames in visiting order, so that the frame range of a tile is given
+		// by its first and last element.
+		final int[] sortedRowFrames = new int[ nRows ];
+		for ( int a = 0; a < nRows; a++ )
+		{
+			sortedRowFrames[ a ] = rowFrames[ rowOrder[ a ] ];
+		}
+		final int[] sortedColFrames = new int[ nCols ];
+		for ( int b = 0; b < nCols; b++ )
+		{
+			sortedColFrames[ b ] = colFrames[ colOrder[ b ] ];
+		}
+
+		final int nRowTiles = ( nRows + TILE_SIZE - 1 ) / TILE_SIZE;
+		final int nColTiles = ( nCols + TILE_SIZE - 1 ) / TILE_SIZE;
+
+		final Thread[] threads = SimpleMultiThreading.newThreads( Math.max( 1, Math.min( numThreads, nRowTiles ) ) );
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		for ( int ithread = 0; ithread < threads.length; ithread++ )
+		{
+			threads[ ithread ] = new Thread( threadName + " " + ( 1 + ithread ) + "/" + threads.length )
+			{
+				@Override
+				public void run()
+				{
+					for ( int rt = ai.getAndIncrement(); rt < nRowTiles; rt = ai.getAndIncrement() )
+					{
+						final int a0 = rt * TILE_SIZE;
+						final int a1 = Math.min( a0 + TILE_SIZE, nRows );
+						for ( int a = a0; a < a1; a++ )
+						{
+							Arrays.fill( m[ rowOrder[ a ] ], blockingValue );
+						}
+						final int minRowFrame = sortedRowFrames[ a0 ];
+						final int maxRowFrame = sortedRowFrames[ a1 - 1 ];
+
+						for ( int ct = 0; ct < nColTiles; ct++ )
+						{
+							final int b0 = ct * TILE_SIZE;
+							final int b1 = Math.min( b0 + TILE_SIZE, nCols );
+							if ( sortedColFrames[ b1 - 1 ] - minRowFrame < minFrameGap )
+							{
+								// Column tile entirely too early.
+								continue;
+							}
+							if ( sortedColFrames[ b0 ] - maxRowFrame > maxFrameGap )
+							{
+								// This and all the next column tiles are too
+								// late.
+								break;
+							}
+
+							for ( int a = a0; a < a1; a++ )
+							{
+								final int i = rowOrder[ a ];
+								final int rowFrame = sortedRowFrames[ a ];
+								final double[] mi = m[ i ];
+								for ( int b = b0; b < b1; b++ )
+								{
+									final int dt = sortedColFrames[ b ] - rowFrame;
+									if ( dt < minFrameGap || dt > maxFrameGap )
+									{
+										continue;
+									}
+									final int j = colOrder[ b ];
+									mi[ j ] = pairCost.cost( i, j );
+								}
+							}
+						}
+					}
+				}
+			};
+		}
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+
+	/**
+	 * Returns the indices of the specified frames sorted by increasing frame,
+	 * ties broken by index.
+	 */
+	private static final int[] sortByFrame( final int[] frames )
+	{
+		final int n = frames.length;
+		int minFrame = Integer.MAX_VALUE;
+		for ( int i = 0; i < n; i++ )
+		{
+			minFrame = Math.min( minFrame, frames[ i ] );
+		}
+		final long[] keys = new long[ n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			keys[ i ] = ( ( long ) frames[ i ] - minFrame ) << 32 | i;
+		}
+		Arrays.sort( keys );
+		final int[] order = new int[ n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			order[ i ] = ( int ) keys[ i ];
+		}
+		return order;
+	}
+
+	/**
+	 * The positions and penalized feature values of a list of objects, one
+	 * object after the other.
+	 */
+	private static final class PackedObjects
+	{
+		private final int nDims;
+
+		private final double[] positions;
+
+		private final int nFeatures;
+
+		private final double[] features;
+
+		private PackedObjects( final int nDims, final double[] positions, final int nFeatures, final double[] features )
+		{
+			this.nDims = nDims;
+			this.positions = positions;
+			this.nFeatures = nFeatures;
+			this.features = features;
+		}
+
+		/**
+		 * Packs the specified objects, or returns <code>null</code> if one of
+		 * them does not have the specified dimensionality or one of the
+		 * features.
+		 */
+		private static final < T extends TrackableObject< T >> PackedObjects pack( final List< T > objects, final int nDims, final String[] featureNames )
+		{
+			final int n = objects.size();
+			final int nFeatures = featureNames.length;
+			final double[] positions = new double[ n * nDims ];
+			final double[] features = new double[ n * nFeatures ];
+			for ( int i = 0; i < n; i++ )
+			{
+				final T object = objects.get( i );
+				if ( object.numDimensions() != nDims ) { return null; }
+				for ( int d = 0; d < nDims; d++ )
+				{
+					positions[ i * nDims + d ] = object.getDoublePosition( d );
+				}
+				for ( int f = 0; f < nFeatures; f++ )
+				{
+					final Double value = object.getFeature( featureNames[ f ] );
+					if ( null == value ) { return null; }
+					features[ i * nFeatures + f ] = value.doubleValue();
+				}
+			}
+			return new PackedObjects( nDims, positions, nFeatures, features );
+		}
+	}
+
+	/**
+	 * Computes the cost of {@link SpotCostCalculator} from packed objects,
+	 * with the same operations in the same order.
+	 */
+	private static final class PackedPairCost implements PairCost
+	{
+		private final PackedObjects rows;
+
+		private final PackedObjects cols;
+
+		private final double[] factors;
+
+		private final double maxDist2;
+
+		private final double blockingValue;
+
+		private PackedPairCost( final PackedObjects rows, final PackedObjects cols, final double[] factors, final double maxDist2, final double blockingValue )
+		{
+			this.rows = rows;
+			this.cols = cols;
+			this.factors = factors;
+			this.maxDist2 = maxDist2;
+			this.blockingValue = blockingValue;
+		}
+
+		@Override
+		public double cost( final int row, final int col )
+		{
+			final int nDims = rows.nDims;
+			final double[] p0 = rows.positions;
+			final double[] p1 = cols.positions;
+			double d2 = 0d;
+			for ( int d = 0; d < nDims; d++ )
+			{
+				final double diff = p0[ row * nDims + d ] - p1[ col * nDims + d ];
+				d2 += diff * diff;
+			}
+
+			// Distance threshold
+			if ( d2 > maxDist2 ) { return blockingValue; }
+
+			final int nFeatures = rows.nFeatures;
+			final double[] f0 = rows.features;
+			final double[] f1 = cols.features;
+			double penalty = 1;
+			for ( int f = 0; f < nFeatures; f++ )
+			{
+				final double a = f0[ row * nFeatures + f ];
+				final double b = f1[ col * nFeatures + f ];
+				final double ndiff = ( a == -b ) ? 0d : Math.abs( a - b ) / ( ( a + b ) / 2 );
+				if ( Double.isNaN( ndiff ) )
+				{
+					continue;
+				}
+				penalty += factors[ f ] * 1.5 * ndiff;
+			}
+
+			return d2 * penalty * penalty;
+		}
+	}
+}
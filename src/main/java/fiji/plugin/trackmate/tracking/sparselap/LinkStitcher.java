@@ -0,0 +1,122 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fiji.plugin.trackmate.tracking.TrackableObject;
+
+/**
+ * Collects the links found by independent sub-problems whose targets overlap,
+ * and stitches them into a single assignment.
+ * <p>
+ * Each source must be linked by at most one sub-problem, but a target may be
+ * linked by several. Conflicts are resolved deterministically: links are
+ * sorted by increasing cost, then source ID and target ID, and a link is
+ * rejected if its target was already taken by a previous one. The result
+ * therefore does not depend on the order in which links are added. The
+ * rejected links can be collected, to solve the conflicts again.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ *
+ * @param <T>
+ *            the type of the objects to link.
+ */
+class LinkStitcher< T extends TrackableObject< T >>
+{
+
+	private final List< Link< T >> links = new ArrayList< Link< T >>();
+
+	void add( final T source, final T target, final double cost )
+	{
+		links.add( new Link< T >( source, target, cost ) );
+	}
+
+	void addAll( final LinkStitcher< T > other )
+	{
+		links.addAll( other.links );
+	}
+
+	/**
+	 * Stitches the links collected so far.
+	 *
+	 * @param assignment
+	 *            the map in which to put the accepted links, from source to
+	 *            target.
+	 * @param costs
+	 *            the map in which to put the cost of the accepted links.
+	 * @return the number of links rejected because of a conflict.
+	 */
+	int stitch( final Map< T, T > assignment, final Map< T, Double > costs )
+	{
+		return stitch( assignment, costs, null );
+	}
+
+	/**
+	 * Stitches the links collected so far, and collects the rejected links.
+	 *
+	 * @param assignment
+	 *            the map in which to put the accepted links, from source to
+	 *            target.
+	 * @param costs
+	 *            the map in which to put the cost of the accepted links.
+	 * @param rejected
+	 *            the map in which to put the rejected links, from source to
+	 *            target. May be <code>null</code>.
+	 * @return the number of links rejected because of a conflict.
+	 */
+	int stitch( final Map< T, T > assignment, final Map< T, Double > costs, final Map< T, T > rejected )
+	{
+		final List< Link< T >> sorted = new ArrayList< Link< T >>( links );
+		Collections.sort( sorted, new Comparator< Link< T >>()
+		{
+			@Override
+			public int compare( final Link< T > l1, final Link< T > l2 )
+			{
+				if ( l1.cost != l2.cost ) { return l1.cost < l2.cost ? -1 : 1; }
+				if ( l1.source.ID() != l2.source.ID() ) { return l1.source.ID() < l2.source.ID() ? -1 : 1; }
+				return l1.target.ID() < l2.target.ID() ? -1 : ( l1.target.ID() == l2.target.ID() ? 0 : 1 );
+			}
+		} );
+
+		int nConflicts = 0;
+		final Set< T > linkedTargets = new HashSet< T >( sorted.size() );
+		for ( final Link< T > link : sorted )
+		{
+			if ( !linkedTargets.add( link.target ) )
+			{
+				nConflicts++;
+				if ( null != rejected )
+				{
+					rejected.put( link.source, link.target );
+				}
+				continue;
+			}
+			assignment.put( link.source, link.target );
+			costs.put( link.source, Double.valueOf( link.cost ) );
+		}
+		return nConflicts;
+	}
+
+	private static final class Link< T >
+	{
+		private final T source;
+
+		private final T target;
+
+		private final double cost;
+
+		private Link( final T source, final T target, final double cost )
+		{
+			this.source = source;
+			this.target = target;
+			this.cost = cost;
+		}
+	}
+}
@@ -8,11 +8,17 @@ import static fiji.plugin.trackmate.util.TMUtils.checkMapKeys;
 import static fiji.plugin.trackmate.util.TMUtils.checkParameter;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 import net.imglib2.multithreading.SimpleMultiThreading;
@@ -21,28 +27,54 @@ import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 
 import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.graph.CompactTrackGraph;
 import fiji.plugin.trackmate.tracking.TrackableObject;
 import fiji.plugin.trackmate.tracking.TrackableObjectCollection;
 import fiji.plugin.trackmate.tracking.Tracker;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.FeaturePenaltyCostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.SquareDistCostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.CostMatrixCreator;
 import fiji.plugin.trackmate.tracking.sparselap.costmatrix.JaqamanLinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.PrecomputedCostMatrixCreator;
 import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPJV;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPJVWorkspace;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPSolverFactory;
 
 public class SparseLAPFrameToFrameTracker< T extends TrackableObject< T >> extends
 		MultiThreadedBenchmarkAlgorithm implements Tracker< T >
 {
 	private final static String BASE_ERROR_MESSAGE = "[SparseLAPFrameToFrameTracker] ";
 
+	/**
+	 * How long, in milliseconds, a pipeline stage waits for space in a full
+	 * queue before checking whether the tracking failed.
+	 */
+	private static final long QUEUE_POLL_PERIOD = 100l;
+
 	private SimpleWeightedGraph< T, DefaultWeightedEdge > graph;
 
+	private CompactTrackGraph< T > compactGraph;
+
 	private Logger logger = Logger.VOID_LOGGER;
 
 	private final TrackableObjectCollection< T > spots;
 
 	private final Map< String, Object > settings;
 
+	private boolean warmStart = false;
+
+	private int costThreads = 0;
+
+	private int solverThreads = 0;
+
+	private int queueCapacity = 0;
+
+	private double tileSize = 0;
+
+	private List< StageStatistics > stageStatistics = Collections.emptyList();
+
 	/*
 	 * CONSTRUCTOR
 	 */
@@ -59,12 +91,120 @@ public class SparseLAPFrameToFrameTracker< T extends TrackableObject< T >> exten
 	 * METHODS
 	 */
 
+	/**
+	 * Returns the resulting graph, as a JGraphT graph. It is copied from the
+	 * compact graph upon the first call.
+	 *
+	 * @see #getCompactResult()
+	 */
 	@Override
 	public SimpleWeightedGraph< T, DefaultWeightedEdge > getResult()
 	{
+		if ( null == graph && null != compactGraph )
+		{
+			graph = compactGraph.toSimpleWeightedGraph();
+		}
 		return graph;
 	}
 
+	/**
+	 * Returns the resulting graph, as a {@link CompactTrackGraph}. This avoids
+	 * creating the much larger JGraphT graph when processing many links.
+	 *
+	 * @return the compact graph.
+	 */
+	public CompactTrackGraph< T > getCompactResult()
+	{
+		return compactGraph;
+	}
+
+	/**
+	 * Sets whether the solver of a frame pair should be warm-started with the
+	 * dual prices found for the previous frame pair.
+	 * <p>
+	 * In dense time-lapse data, consecutive frame pairs yield very similar
+	 * assignment problems, and the prices of matched objects are a good
+	 * initialization for the next one. To carry them over, each thread then
+	 * processes a contiguous block of frame pairs instead of interleaving
+	 * them with other threads. The result is the same optimal assignment.
+	 *
+	 * @param warmStart
+	 *            whether to warm-start solvers. Default is <code>false</code>.
+	 */
+	public void setWarmStart( final boolean warmStart )
+	{
+		this.warmStart = warmStart;
+	}
+
+	/**
+	 * Sets whether frame pairs should be linked by a pipeline of three stages
+	 * running concurrently, instead of having each thread process a whole
+	 * frame pair at a time.
+	 * <p>
+	 * A single thread gets the spots of each frame pair, the specified number
+	 * of threads create the cost matrices, and the specified number of threads
+	 * solve them. Stages are connected by bounded queues, so that a fast stage
+	 * cannot get more than a few frame pairs ahead of the next one. This lets
+	 * the memory-bound spot extraction and cost matrix creation overlap with
+	 * the CPU-bound LAP solving, with thread budgets that can be tuned to the
+	 * relative cost of each stage. Statistics for each stage are available
+	 * after processing via {@link #getStageStatistics()}.
+	 * <p>
+	 * In pipelined mode, the number of threads set by
+	 * {@link #setNumThreads(int)} is ignored, and warm start only uses the
+	 * prices of the previous frame pair if it was solved before the current
+	 * one.
+	 *
+	 * @param costThreads
+	 *            the number of threads creating cost matrices. If smaller than
+	 *            1, the pipeline is disabled.
+	 * @param solverThreads
+	 *            the number of threads solving them. Must be at least 1 if the
+	 *            pipeline is enabled.
+	 * @param queueCapacity
+	 *            the maximal number of frame pairs waiting between two
+	 *            stages. Must be at least 1 if the pipeline is enabled.
+	 */
+	public void setPipeline( final int costThreads, final int solverThreads, final int queueCapacity )
+	{
+		this.costThreads = Math.max( 0, costThreads );
+		this.solverThreads = solverThreads;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Sets whether each frame pair should be linked by tiles, for very large
+	 * fields of view.
+	 * <p>
+	 * Space is split in tiles of the specified size, with a halo of the
+	 * maximal linking distance, that are linked in parallel by a
+	 * {@link TiledFrameLinker}. Frame pairs are then processed one after the
+	 * other, and warm start and pipeline settings are ignored. On data that is
+	 * sparse with respect to the maximal linking distance, the result is the
+	 * same as the untiled one.
+	 *
+	 * @param tileSize
+	 *            the tile size, in spatial units. It must be larger than the
+	 *            maximal linking distance. If 0 or negative, tiling is
+	 *            disabled.
+	 */
+	public void setTiling( final double tileSize )
+	{
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * Returns the statistics of each pipeline stage for the last call to
+	 * {@link #process()}, in stage order. The list is empty if the pipeline
+	 * was not enabled.
+	 *
+	 * @return the list of stage statistics.
+	 */
+	public List< StageStatistics > getStageStatistics()
+	{
+		return stageStatistics;
+	}
+
 	@Override
 	public boolean checkInput()
 	{
@@ -114,6 +254,16 @@ public class SparseLAPFrameToFrameTracker< T extends TrackableObject< T >> exten
 			errorMessage = BASE_ERROR_MESSAGE + errorHolder.toString();
 			return false;
 		}
+		if ( tileSize > 0 && tileSize <= ( Double ) settings.get( KEY_LINKING_MAX_DISTANCE ) )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The tile size must be larger than the maximal linking distance.";
+			return false;
+		}
+		if ( costThreads > 0 && ( solverThreads < 1 || queueCapacity < 1 ) )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The pipeline needs at least one solver thread and a queue capacity of at least 1.";
+			return false;
+		}
 
 		/*
 		 * Process.
@@ -151,9 +301,81 @@ public class SparseLAPFrameToFrameTracker< T extends TrackableObject< T >> exten
 		final double alternativeCostFactor = ( Double ) settings
 				.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR );
 
-		// Instantiate graph
-		graph = new SimpleWeightedGraph< T, DefaultWeightedEdge >(
-				DefaultWeightedEdge.class );
+		/*
+		 * Links found for each frame pair. Each slot is written by a single
+		 * thread, and the graph is built from them once all threads are done,
+		 * so that threads never wait on each other.
+		 */
+		final AtomicReferenceArray< Links< T >> links = new AtomicReferenceArray< Links< T >>( framePairs.size() );
+
+		final AtomicBoolean ok = new AtomicBoolean( true );
+
+		logger.setStatus( "Frame to frame linking..." );
+		if ( tileSize > 0 )
+		{
+			processTiled( framePairs, costFunction, costThreshold, alternativeCostFactor, maxDist, links, ok );
+		}
+		else if ( costThreads > 0 )
+		{
+			processPipelined( framePairs, costFunction, costThreshold, alternativeCostFactor, links, ok );
+		}
+		else
+		{
+			processFramePairs( framePairs, costFunction, costThreshold, alternativeCostFactor, links, ok );
+		}
+
+		/*
+		 * Build the graph, in frame order.
+		 */
+
+		graph = null;
+		int nLinks = 0;
+		for ( int i = 0; i < links.length(); i++ )
+		{
+			nLinks += null == links.get( i ) ? 0 : links.get( i ).size;
+		}
+		final CompactTrackGraph.Builder< T > builder = new CompactTrackGraph.Builder< T >( nLinks );
+		if ( ok.get() )
+		{
+			for ( int i = 0; i < links.length(); i++ )
+			{
+				final Links< T > frameLinks = links.get( i );
+				if ( null == frameLinks )
+				{
+					continue;
+				}
+				for ( int k = 0; k < frameLinks.size; k++ )
+				{
+					builder.addEdge( frameLinks.sources.get( k ), frameLinks.targets.get( k ), frameLinks.costs[ k ] );
+				}
+				// Release links as soon as they are in the builder.
+				links.set( i, null );
+			}
+		}
+		compactGraph = builder.build();
+
+		logger.setProgress( 1d );
+		logger.setStatus( "" );
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+
+		return ok.get();
+	}
+
+	@Override
+	public void setLogger( final Logger logger )
+	{
+		this.logger = logger;
+	}
+
+	/**
+	 * Each thread gets the spots, creates the cost matrix and solves it for
+	 * one frame pair after another.
+	 */
+	private void processFramePairs( final List< int[] > framePairs, final CostFunction< T, T > costFunction, final double costThreshold, final double alternativeCostFactor, final AtomicReferenceArray< Links< T >> links, final AtomicBoolean ok )
+	{
+		stageStatistics = Collections.emptyList();
 
 		// Prepare threads
 		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
@@ -161,7 +383,8 @@ public class SparseLAPFrameToFrameTracker< T extends TrackableObject< T >> exten
 		// Prepare the thread array
 		final AtomicInteger ai = new AtomicInteger( 0 );
 		final AtomicInteger progress = new AtomicInteger( 0 );
-		final AtomicBoolean ok = new AtomicBoolean( true );
+		// With warm start, threads process contiguous blocks of frame pairs.
+		final int blockSize = warmStart ? ( framePairs.size() + threads.length - 1 ) / threads.length : 1;
 		for ( int ithread = 0; ithread < threads.length; ithread++ )
 		{
 			threads[ ithread ] = new Thread( BASE_ERROR_MESSAGE + " thread "
@@ -170,102 +393,418 @@ public class SparseLAPFrameToFrameTracker< T extends TrackableObject< T >> exten
 				@Override
 				public void run()
 				{
-					for ( int i = ai.getAndIncrement(); i < framePairs.size(); i = ai
+					// Solver buffers reused by all the frame pairs of this
+					// thread.
+					final LAPSolverFactory solverFactory = LAPJV.factory( new LAPJVWorkspace() );
+
+					for ( int block = ai.getAndIncrement(); block * blockSize < framePairs.size(); block = ai
 							.getAndIncrement() )
 					{
-						if ( !ok.get() )
+						// Prices carried from one frame pair to the next.
+						Map< T, Double > priceHints = null;
+
+						final int end = Math.min( framePairs.size(), ( block + 1 ) * blockSize );
+						for ( int i = block * blockSize; i < end; i++ )
 						{
-							break;
-						}
+							if ( !ok.get() )
+							{
+								return;
+							}
 
-						// Get frame pairs
-						final int frame0 = framePairs.get( i )[ 0 ];
-						final int frame1 = framePairs.get( i )[ 1 ];
+							// Get frame pairs
+							final int frame0 = framePairs.get( i )[ 0 ];
+							final int frame1 = framePairs.get( i )[ 1 ];
 
-						// Get spots - we have to create a list from each
-						// content.
-						final List< T > sources = new ArrayList< T >(
-								spots.getNObjects( frame0, true ) );
-						for ( final Iterator< T > iterator = spots.iterator(
-								frame0, true ); iterator.hasNext(); )
-						{
-							sources.add( iterator.next() );
+							// Get spots - we have to create a list from each
+							// content.
+							final List< T > sources = getObjects( frame0 );
+							final List< T > targets = getObjects( frame1 );
+
+							if ( sources.isEmpty() || targets.isEmpty() )
+							{
+								priceHints = null;
+								continue;
+							}
+
+							/*
+							 * Run the linker.
+							 */
+
+							final JaqamanLinkingCostMatrixCreator< T, T > creator = new JaqamanLinkingCostMatrixCreator< T, T >(
+									sources, targets, costFunction, costThreshold,
+									alternativeCostFactor, 1d );
+							priceHints = link( i, framePairs, creator, solverFactory, priceHints, links, ok );
+							if ( !ok.get() )
+							{
+								return;
+							}
+
+							logger.setProgress( progress.incrementAndGet()
+									/ framePairs.size() );
 						}
+					}
+				}
+			};
+		}
+
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+
+	/**
+	 * Frame pairs are processed one after the other, and the tiles of each
+	 * frame pair are linked in parallel.
+	 */
+	private void processTiled( final List< int[] > framePairs, final CostFunction< T, T > costFunction, final double costThreshold, final double alternativeCostFactor, final double halo, final AtomicReferenceArray< Links< T >> links, final AtomicBoolean ok )
+	{
+		stageStatistics = Collections.emptyList();
+		for ( int i = 0; i < framePairs.size(); i++ )
+		{
+			final int frame0 = framePairs.get( i )[ 0 ];
+			final int frame1 = framePairs.get( i )[ 1 ];
+			final List< T > sources = getObjects( frame0 );
+			final List< T > targets = getObjects( frame1 );
+			if ( sources.isEmpty() || targets.isEmpty() )
+			{
+				continue;
+			}
+
+			final TiledFrameLinker< T > linker = new TiledFrameLinker< T >( sources, targets, costFunction, costThreshold, alternativeCostFactor, tileSize, halo );
+			linker.setNumThreads( numThreads );
+			if ( !linker.checkInput() || !linker.process() )
+			{
+				fail( "At frame " + frame0 + " to " + frame1 + ": " + linker.getErrorMessage(), ok );
+				return;
+			}
 
-						final List< T > targets = new ArrayList< T >(
-								spots.getNObjects( frame1, true ) );
-						for ( final Iterator< T > iterator = spots.iterator(
-								frame1, true ); iterator.hasNext(); )
+			final Map< T, T > assignment = linker.getResult();
+			final Map< T, Double > costs = linker.getAssignmentCosts();
+			final Links< T > frameLinks = new Links< T >( assignment.size() );
+			for ( final T source : assignment.keySet() )
+			{
+				frameLinks.add( source, assignment.get( source ), costs.get( source ) );
+			}
+			links.set( i, frameLinks );
+
+			logger.setProgress( ( double ) ( i + 1 ) / framePairs.size() );
+		}
+	}
+
+	/**
+	 * Runs a three-stage pipeline: a single thread gets the spots of each frame
+	 * pair, the cost threads create the cost matrices, and the solver threads
+	 * solve them. Stages communicate through bounded queues, so that each stage
+	 * can only get a few frame pairs ahead of the next one.
+	 * <p>
+	 * If a frame pair fails, or if a stage throws or is interrupted, the
+	 * tracking fails. The upstream stages then stop feeding the queues, and
+	 * the downstream ones keep draining them until they receive the signal
+	 * that there are no more tasks, so that all the threads terminate.
+	 */
+	private void processPipelined( final List< int[] > framePairs, final CostFunction< T, T > costFunction, final double costThreshold, final double alternativeCostFactor, final AtomicReferenceArray< Links< T >> links, final AtomicBoolean ok )
+	{
+		final StageStatistics extractionStats = new StageStatistics( "Spot extraction", 1 );
+		final StageStatistics costStats = new StageStatistics( "Cost matrix creation", costThreads );
+		final StageStatistics solverStats = new StageStatistics( "LAP solving", solverThreads );
+		final List< StageStatistics > stats = new ArrayList< StageStatistics >( 3 );
+		stats.add( extractionStats );
+		stats.add( costStats );
+		stats.add( solverStats );
+		stageStatistics = Collections.unmodifiableList( stats );
+
+		final BlockingQueue< FramePairTask< T >> extracted = new ArrayBlockingQueue< FramePairTask< T >>( queueCapacity );
+		final BlockingQueue< FramePairTask< T >> created = new ArrayBlockingQueue< FramePairTask< T >>( queueCapacity );
+		// Signals the threads of the next stage that there are no more tasks.
+		final FramePairTask< T > poison = new FramePairTask< T >( -1, null, null );
+
+		// Price hints of each solved frame pair, for the next one.
+		final AtomicReferenceArray< Map< T, Double >> hints = new AtomicReferenceArray< Map< T, Double >>( framePairs.size() );
+		final AtomicInteger progress = new AtomicInteger( 0 );
+		final AtomicInteger costThreadsDone = new AtomicInteger( 0 );
+
+		final Thread[] threads = new Thread[ 1 + costThreads + solverThreads ];
+
+		/*
+		 * Spot extraction.
+		 */
+
+		threads[ 0 ] = new Thread( BASE_ERROR_MESSAGE + " extraction thread" )
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					for ( int i = 0; i < framePairs.size() && ok.get(); i++ )
+					{
+						final long start = System.nanoTime();
+						final List< T > sources = getObjects( framePairs.get( i )[ 0 ] );
+						final List< T > targets = getObjects( framePairs.get( i )[ 1 ] );
+						extractionStats.itemProcessed( System.nanoTime() - start );
+
+						putUnlessFailed( extracted, new FramePairTask< T >( i, sources, targets ), "Spot extraction", ok );
+						extractionStats.queueDepth( extracted.size() );
+					}
+				}
+				catch ( final Throwable t )
+				{
+					fail( "Spot extraction failed: " + t, ok );
+				}
+				finally
+				{
+					for ( int t = 0; t < costThreads; t++ )
+					{
+						putUninterruptibly( extracted, poison );
+					}
+				}
+			}
+		};
+
+		/*
+		 * Cost matrix creation.
+		 */
+
+		for ( int ithread = 0; ithread < costThreads; ithread++ )
+		{
+			threads[ 1 + ithread ] = new Thread( BASE_ERROR_MESSAGE + " cost thread "
+					+ ( 1 + ithread ) + "/" + costThreads )
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						for ( FramePairTask< T > task = takeUninterruptibly( extracted, "Cost matrix creation", ok ); task != poison; task = takeUninterruptibly( extracted, "Cost matrix creation", ok ) )
 						{
-							targets.add( iterator.next() );
-						}
+							// Keep draining the queue after a failure.
+							if ( !ok.get() || task.sources.isEmpty() || task.targets.isEmpty() )
+							{
+								continue;
+							}
 
-						if ( sources.isEmpty() || targets.isEmpty() )
+							final int[] framePair = framePairs.get( task.index );
+							try
+							{
+								final long start = System.nanoTime();
+								final JaqamanLinkingCostMatrixCreator< T, T > creator = new JaqamanLinkingCostMatrixCreator< T, T >(
+										task.sources, task.targets, costFunction, costThreshold,
+										alternativeCostFactor, 1d );
+								if ( !creator.checkInput() || !creator.process() )
+								{
+									fail( "At frame " + framePair[ 0 ] + " to " + framePair[ 1 ] + ": " + creator.getErrorMessage(), ok );
+									continue;
+								}
+								task.creator = creator;
+								costStats.itemProcessed( System.nanoTime() - start );
+
+								putUnlessFailed( created, task, "Cost matrix creation", ok );
+								costStats.queueDepth( created.size() );
+							}
+							catch ( final Throwable t )
+							{
+								fail( "At frame " + framePair[ 0 ] + " to " + framePair[ 1 ] + ": cost matrix creation failed: " + t, ok );
+							}
+						}
+					}
+					finally
+					{
+						if ( costThreadsDone.incrementAndGet() == costThreads )
 						{
-							continue;
+							for ( int t = 0; t < solverThreads; t++ )
+							{
+								putUninterruptibly( created, poison );
+							}
 						}
+					}
+				}
+			};
+		}
 
-						/*
-						 * Run the linker.
-						 */
+		/*
+		 * LAP solving.
+		 */
 
-						final JaqamanLinkingCostMatrixCreator< T, T > creator = new JaqamanLinkingCostMatrixCreator< T, T >(
-								sources, targets, costFunction, costThreshold,
-								alternativeCostFactor, 1d );
-						final JaqamanLinker< T, T > linker = new JaqamanLinker< T, T >(
-								creator );
-						if ( !linker.checkInput() || !linker.process() )
+		for ( int ithread = 0; ithread < solverThreads; ithread++ )
+		{
+			threads[ 1 + costThreads + ithread ] = new Thread( BASE_ERROR_MESSAGE + " solver thread "
+					+ ( 1 + ithread ) + "/" + solverThreads )
+			{
+				@Override
+				public void run()
+				{
+					final LAPSolverFactory solverFactory = LAPJV.factory( new LAPJVWorkspace() );
+					for ( FramePairTask< T > task = takeUninterruptibly( created, "LAP solving", ok ); task != poison; task = takeUninterruptibly( created, "LAP solving", ok ) )
+					{
+						// Keep draining the queue after a failure.
+						if ( !ok.get() )
 						{
-							errorMessage = "At frame " + frame0 + " to "
-									+ frame1 + ": " + linker.getErrorMessage();
-							ok.set( false );
-							return;
+							continue;
 						}
 
-						/*
-						 * Update graph.
-						 */
-
-						synchronized ( graph )
+						try
 						{
-							final Map< T, Double > costs = linker
-									.getAssignmentCosts();
-							final Map< T, T > assignment = linker.getResult();
-							for ( final T source : assignment.keySet() )
+							final long start = System.nanoTime();
+							// Warm start only if the previous pair is solved.
+							final Map< T, Double > priceHints = task.index > 0 ? hints.getAndSet( task.index - 1, null ) : null;
+							final Map< T, Double > nextHints = link( task.index, framePairs,
+									new PrecomputedCostMatrixCreator< T, T >( task.creator ), solverFactory, priceHints, links, ok );
+							if ( null != nextHints )
 							{
-								final double cost = costs.get( source );
-								final T target = assignment.get( source );
-								graph.addVertex( source );
-								graph.addVertex( target );
-								final DefaultWeightedEdge edge = graph.addEdge(
-										source, target );
-								graph.setEdgeWeight( edge, cost );
+								hints.set( task.index, nextHints );
 							}
-						}
-
-						logger.setProgress( progress.incrementAndGet()
-								/ framePairs.size() );
+							solverStats.itemProcessed( System.nanoTime() - start );
 
+							logger.setProgress( ( double ) progress.incrementAndGet() / framePairs.size() );
+						}
+						catch ( final Throwable t )
+						{
+							final int[] framePair = framePairs.get( task.index );
+							fail( "At frame " + framePair[ 0 ] + " to " + framePair[ 1 ] + ": LAP solving failed: " + t, ok );
+						}
 					}
 				}
 			};
 		}
 
-		logger.setStatus( "Frame to frame linking..." );
 		SimpleMultiThreading.startAndJoin( threads );
-		logger.setProgress( 1d );
-		logger.setStatus( "" );
 
-		final long end = System.currentTimeMillis();
-		processingTime = end - start;
+		for ( final StageStatistics stat : stageStatistics )
+		{
+			logger.log( stat.toString() + "\n" );
+		}
+	}
 
-		return ok.get();
+	/**
+	 * Solves the linking problem of a frame pair and stores the links found.
+	 *
+	 * @return the prices of the matched targets to warm-start the next frame
+	 *         pair, or <code>null</code> if warm start is off or if linking
+	 *         failed.
+	 */
+	private Map< T, Double > link( final int i, final List< int[] > framePairs, final CostMatrixCreator< T, T > creator, final LAPSolverFactory solverFactory, final Map< T, Double > priceHints, final AtomicReferenceArray< Links< T >> links, final AtomicBoolean ok )
+	{
+		final JaqamanLinker< T, T > linker = new JaqamanLinker< T, T >( creator );
+		linker.setSolverFactory( solverFactory );
+		linker.setWarmStart( priceHints );
+		if ( !linker.checkInput() || !linker.process() )
+		{
+			fail( "At frame " + framePairs.get( i )[ 0 ] + " to "
+					+ framePairs.get( i )[ 1 ] + ": " + linker.getErrorMessage(), ok );
+			return null;
+		}
+
+		final Map< T, Double > costs = linker.getAssignmentCosts();
+		final Map< T, T > assignment = linker.getResult();
+
+		/*
+		 * Store links.
+		 */
+
+		final Links< T > frameLinks = new Links< T >( assignment.size() );
+		for ( final T source : assignment.keySet() )
+		{
+			frameLinks.add( source, assignment.get( source ), costs.get( source ) );
+		}
+		links.set( i, frameLinks );
+
+		/*
+		 * Matched targets pass their price to the next frame pair, where they
+		 * are sources.
+		 */
+
+		if ( !warmStart ) { return null; }
+		final Map< T, Double > prices = linker.getTargetPrices();
+		final Map< T, Double > nextHints = new HashMap< T, Double >( assignment.size() );
+		for ( final T target : assignment.values() )
+		{
+			nextHints.put( target, prices.get( target ) );
+		}
+		return nextHints;
 	}
 
-	@Override
-	public void setLogger( final Logger logger )
+	/**
+	 * Returns the objects of a frame, as a new list.
+	 */
+	private List< T > getObjects( final int frame )
 	{
-		this.logger = logger;
+		final List< T > objects = new ArrayList< T >( spots.getNObjects( frame, true ) );
+		for ( final Iterator< T > iterator = spots.iterator( frame, true ); iterator.hasNext(); )
+		{
+			objects.add( iterator.next() );
+		}
+		return objects;
+	}
+
+	/**
+	 * Records the first error message, and tells all threads to stop.
+	 */
+	private void fail( final String message, final AtomicBoolean ok )
+	{
+		if ( ok.compareAndSet( true, false ) )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + message;
+		}
+	}
+
+	/**
+	 * Puts the specified element in the queue, waiting for space to become
+	 * available as long as the tracking has not failed. After a failure, the
+	 * element is dropped, so that a stage never waits on a downstream stage
+	 * that stopped.
+	 */
+	private < E > void putUnlessFailed( final BlockingQueue< E > queue, final E element, final String stage, final AtomicBoolean ok )
+	{
+		while ( ok.get() )
+		{
+			try
+			{
+				if ( queue.offer( element, QUEUE_POLL_PERIOD, TimeUnit.MILLISECONDS ) ) { return; }
+			}
+			catch ( final InterruptedException e )
+			{
+				fail( stage + " was interrupted.", ok );
+			}
+		}
+	}
+
+	/**
+	 * Takes the next element from the queue. If the thread is interrupted,
+	 * the tracking fails, but the element is still waited for, so that the
+	 * queue keeps being drained and the threads feeding it do not block.
+	 */
+	private < E > E takeUninterruptibly( final BlockingQueue< E > queue, final String stage, final AtomicBoolean ok )
+	{
+		while ( true )
+		{
+			try
+			{
+				return queue.take();
+			}
+			catch ( final InterruptedException e )
+			{
+				fail( stage + " was interrupted.", ok );
+			}
+		}
+	}
+
+	private static final < E > void putUninterruptibly( final BlockingQueue< E > queue, final E element )
+	{
+		boolean interrupted = false;
+		while ( true )
+		{
+			try
+			{
+				queue.put( element );
+				break;
+			}
+			catch ( final InterruptedException e )
+			{
+				interrupted = true;
+			}
+		}
+		if ( interrupted )
+		{
+			Thread.currentThread().interrupt();
+		}
 	}
 
 	private static final boolean checkSettingsValidity( final Map< String, Object > settings, final StringBuilder str )
@@ -293,4 +832,54 @@ public class SparseLAPFrameToFrameTracker< T extends TrackableObject< T >> exten
 
 		return ok;
 	}
+
+	/**
+	 * A frame pair travelling through the pipeline.
+	 */
+	private static final class FramePairTask< T extends TrackableObject< T >>
+	{
+		private final int index;
+
+		private final List< T > sources;
+
+		private final List< T > targets;
+
+		private CostMatrixCreator< T, T > creator;
+
+		private FramePairTask( final int index, final List< T > sources, final List< T > targets )
+		{
+			this.index = index;
+			this.sources = sources;
+			this.targets = targets;
+		}
+	}
+
+	/**
+	 * The links found for one frame pair, stored as parallel lists of
+	 * sources, targets and costs.
+	 */
+	private static final class Links< T >
+	{
+		private final List< T > sources;
+
+		private final List< T > targets;
+
+		private final double[] costs;
+
+		private int size = 0;
+
+		private Links( final int capacity )
+		{
+			this.sources = new ArrayList< T >( capacity );
+			this.targets = new ArrayList< T >( capacity );
+			this.costs = new double[ capacity ];
+		}
+
+		private void add( final T source, final T target, final double cost )
+		{
+			sources.add( source );
+			targets.add( target );
+			costs[ size++ ] = cost;
+		}
+	}
 }
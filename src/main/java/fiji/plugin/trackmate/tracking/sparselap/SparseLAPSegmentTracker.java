@@ -9,9 +9,18 @@ import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRA
 import static fiji.plugin.trackmate.util.LAPUtils.checkFeatureMap;
 import static fiji.plugin.trackmate.util.TMUtils.checkParameter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.imglib2.algorithm.Benchmark;
+import net.imglib2.multithreading.SimpleMultiThreading;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
@@ -20,8 +29,14 @@ import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Logger.SlaveLogger;
 import fiji.plugin.trackmate.tracking.TrackableObject;
 import fiji.plugin.trackmate.tracking.Tracker;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.CostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.GraphSegmentSplitter;
 import fiji.plugin.trackmate.tracking.sparselap.costmatrix.JaqamanSegmentCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.PrecomputedCostMatrixCreator;
 import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPJV;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPJVWorkspace;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPSolverFactory;
 
 /**
  * This class tracks deals with the second step of tracking according to the LAP
@@ -71,6 +86,16 @@ public class SparseLAPSegmentTracker< T extends TrackableObject< T >> implements
 
 	private int numThreads;
 
+	private LAPSolverFactory solverFactory;
+
+	private boolean compactCostMatrix = false;
+
+	private int shardLength = 0;
+
+	private int nConflicts;
+
+	private int nRelinked;
+
 	public SparseLAPSegmentTracker(
 			final SimpleWeightedGraph< T, DefaultWeightedEdge > graph,
 			final Map< String, Object > settings )
@@ -79,6 +104,95 @@ public class SparseLAPSegmentTracker< T extends TrackableObject< T >> implements
 		this.settings = settings;
 	}
 
+	/**
+	 * Sets the factory used to instantiate the solver of the segment linking
+	 * problem. If <code>null</code>, the default, the {@link LAPJV} solver is
+	 * used, with a {@link LAPJVWorkspace} reused across the problems solved by
+	 * one thread. The same solver is used whether the problem is solved at
+	 * once or in time shards. For very large problems, a solver that
+	 * can exploit several cores such as
+	 * {@link fiji.plugin.trackmate.tracking.sparselap.linker.AuctionLAP} can
+	 * be specified.
+	 *
+	 * @param solverFactory
+	 *            the solver factory.
+	 */
+	public void setSolverFactory( final LAPSolverFactory solverFactory )
+	{
+		this.solverFactory = solverFactory;
+	}
+
+	/**
+	 * Sets whether the segment linking cost matrix is stored in compact form,
+	 * which roughly halves its memory footprint. Costs are then rounded to the
+	 * nearest <code>float</code>.
+	 *
+	 * @param compactCostMatrix
+	 *            whether to use a compact cost matrix.
+	 * @see JaqamanLinker#setCompactCostMatrix(boolean)
+	 */
+	public void setCompactCostMatrix( final boolean compactCostMatrix )
+	{
+		this.compactCostMatrix = compactCostMatrix;
+	}
+
+	/**
+	 * Sets whether segment linking should be split in time shards, so that
+	 * processing time and memory grow linearly with the movie length.
+	 * <p>
+	 * The movie is cut in consecutive shards of the specified number of
+	 * frames. Each shard is solved as an independent segment linking problem,
+	 * that contains the segment starts, ends and middle points found in the
+	 * shard and in the {@link fiji.plugin.trackmate.tracking.TrackerKeys#KEY_GAP_CLOSING_MAX_FRAME_GAP}
+	 * frames after it, so that consecutive problems overlap by at least the
+	 * maximal frame gap. Each shard only keeps the links whose source is in
+	 * the shard itself. Shards are solved in parallel, and their links are
+	 * then stitched at the shard boundaries, where a target linked by two
+	 * shards is given to the cheapest link.
+	 * <p>
+	 * The conflicts are then solved again: the sources of the rejected links
+	 * and the ones that won their targets are linked by a small segment
+	 * linking problem, with the contested targets and the targets left free
+	 * around the boundaries. The links found always form a valid assignment,
+	 * but since the alternative costs are computed per problem, they may
+	 * differ slightly from the ones of the global problem around shard
+	 * boundaries. The numbers of conflicts and of links found when solving
+	 * them again are logged, and can be retrieved with
+	 * {@link #getNConflicts()} and {@link #getNRelinked()}.
+	 *
+	 * @param shardLength
+	 *            the shard length, in frames. If 0 or negative, the global
+	 *            problem is solved.
+	 */
+	public void setTimeSharding( final int shardLength )
+	{
+		this.shardLength = shardLength;
+	}
+
+	/**
+	 * Returns the number of links rejected at shard boundaries in the last
+	 * call to {@link #process()}, because their target was already linked by
+	 * another shard. Always 0 if time sharding is off.
+	 *
+	 * @return the number of conflicts.
+	 */
+	public int getNConflicts()
+	{
+		return nConflicts;
+	}
+
+	/**
+	 * Returns the number of links found when solving the conflicts at shard
+	 * boundaries again, in the last call to {@link #process()}. They link
+	 * the sources of the rejected links and the ones that won their targets.
+	 *
+	 * @return the number of links found for the sources in conflict.
+	 */
+	public int getNRelinked()
+	{
+		return nRelinked;
+	}
+
 	@Override
 	public SimpleWeightedGraph< T, DefaultWeightedEdge > getResult()
 	{
@@ -118,22 +232,39 @@ public class SparseLAPSegmentTracker< T extends TrackableObject< T >> implements
 		 */
 
 		final long start = System.currentTimeMillis();
+		nConflicts = 0;
+		nRelinked = 0;
 
 		/*
 		 * Top-left costs.
 		 */
 
-		logger.setProgress( 0d );
-		logger.setStatus( "Creating the segment linking cost matrix..." );
-		final JaqamanSegmentCostMatrixCreator< T > costMatrixCreator =
-				new JaqamanSegmentCostMatrixCreator< T >( graph, settings );
-		final SlaveLogger jlLogger = new SlaveLogger( logger, 0, 0.9 );
-		final JaqamanLinker< T, T > linker =
-				new JaqamanLinker< T, T >( costMatrixCreator, jlLogger );
-		if ( !linker.checkInput() || !linker.process() )
+		final Map< T, T > assignment;
+		final Map< T, Double > costs;
+		if ( shardLength > 0 )
 		{
-			errorMessage = linker.getErrorMessage();
-			return false;
+			assignment = new HashMap< T, T >();
+			costs = new HashMap< T, Double >();
+			if ( !linkSharded( assignment, costs ) ) { return false; }
+		}
+		else
+		{
+			logger.setProgress( 0d );
+			logger.setStatus( "Creating the segment linking cost matrix..." );
+			final JaqamanSegmentCostMatrixCreator< T > costMatrixCreator =
+					new JaqamanSegmentCostMatrixCreator< T >( graph, settings );
+			final SlaveLogger jlLogger = new SlaveLogger( logger, 0, 0.9 );
+			final JaqamanLinker< T, T > linker =
+					new JaqamanLinker< T, T >( costMatrixCreator, jlLogger );
+			linker.setSolverFactory( createSolverFactory() );
+			linker.setCompactCostMatrix( compactCostMatrix );
+			if ( !linker.checkInput() || !linker.process() )
+			{
+				errorMessage = linker.getErrorMessage();
+				return false;
+			}
+			assignment = linker.getResult();
+			costs = linker.getAssignmentCosts();
 		}
 
 		/*
@@ -143,9 +274,6 @@ public class SparseLAPSegmentTracker< T extends TrackableObject< T >> implements
 		logger.setProgress( 0.9d );
 		logger.setStatus( "Creating links..." );
 
-		final Map< T, T > assignment = linker.getResult();
-		final Map< T, Double > costs = linker.getAssignmentCosts();
-
 		for ( final T source : assignment.keySet() )
 		{
 			final T target = assignment.get( source );
@@ -162,6 +290,293 @@ public class SparseLAPSegmentTracker< T extends TrackableObject< T >> implements
 		return true;
 	}
 
+	/**
+	 * Solves the segment linking problem shard by shard, and stitches the
+	 * results.
+	 */
+	private boolean linkSharded( final Map< T, T > assignment, final Map< T, Double > costs )
+	{
+		logger.setProgress( 0d );
+		logger.setStatus( "Splitting track segments..." );
+
+		final boolean mergingOrSplitting = ( Boolean ) settings.get( KEY_ALLOW_TRACK_MERGING ) || ( Boolean ) settings.get( KEY_ALLOW_TRACK_SPLITTING );
+		// Gap-closing links span up to the max frame gap, others 1 frame.
+		final int overlap = Math.max( 1, ( Integer ) settings.get( KEY_GAP_CLOSING_MAX_FRAME_GAP ) );
+
+		final GraphSegmentSplitter< T > splitter = new GraphSegmentSplitter< T >( graph, mergingOrSplitting );
+		final List< T > middles = new ArrayList< T >();
+		if ( mergingOrSplitting )
+		{
+			for ( final List< T > segment : splitter.getSegmentMiddles() )
+			{
+				middles.addAll( segment );
+			}
+		}
+
+		int minFrame = Integer.MAX_VALUE;
+		int maxFrame = Integer.MIN_VALUE;
+		for ( final List< T > list : Arrays.asList( splitter.getSegmentEnds(), splitter.getSegmentStarts(), middles ) )
+		{
+			for ( final T object : list )
+			{
+				minFrame = Math.min( minFrame, object.frame() );
+				maxFrame = Math.max( maxFrame, object.frame() );
+			}
+		}
+		if ( minFrame > maxFrame ) { return true; }
+
+		final int firstFrame = minFrame;
+		final int nShards = ( maxFrame - firstFrame ) / shardLength + 1;
+		final List< List< T >> ends = shard( splitter.getSegmentEnds(), nShards, firstFrame, overlap );
+		final List< List< T >> starts = shard( splitter.getSegmentStarts(), nShards, firstFrame, overlap );
+		final List< List< T >> mids = shard( middles, nShards, firstFrame, overlap );
+
+		/*
+		 * Solve shards in parallel.
+		 */
+
+		logger.setStatus( "Linking segments in " + nShards + " time shards..." );
+		@SuppressWarnings( "unchecked" )
+		final LinkStitcher< T >[] shardLinks = new LinkStitcher[ nShards ];
+		// Alternative cost of each shard, to solve boundary conflicts with.
+		final double[] alternativeCosts = new double[ nShards ];
+		Arrays.fill( alternativeCosts, Double.NaN );
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		final AtomicInteger progress = new AtomicInteger( 0 );
+		final AtomicBoolean ok = new AtomicBoolean( true );
+		final Thread[] threads = SimpleMultiThreading.newThreads( Math.max( 1, numThreads ) );
+		for ( int ithread = 0; ithread < threads.length; ithread++ )
+		{
+			threads[ ithread ] = new Thread( BASE_ERROR_MESSAGE + " thread " + ( 1 + ithread ) + "/" + threads.length )
+			{
+				@Override
+				public void run()
+				{
+					final LAPSolverFactory factory = createSolverFactory();
+					for ( int k = ai.getAndIncrement(); k < nShards; k = ai.getAndIncrement() )
+					{
+						if ( !ok.get() )
+						{
+							return;
+						}
+
+						final JaqamanSegmentCostMatrixCreator< T > creator = new JaqamanSegmentCostMatrixCreator< T >( ends.get( k ), starts.get( k ), mids.get( k ), settings );
+						creator.setNumThreads( 1 );
+						final JaqamanLinker< T, T > linker = new JaqamanLinker< T, T >( creator );
+						linker.setSolverFactory( factory );
+						linker.setCompactCostMatrix( compactCostMatrix );
+						if ( !linker.checkInput() || !linker.process() )
+						{
+							if ( ok.compareAndSet( true, false ) )
+							{
+								errorMessage = BASE_ERROR_MESSAGE + "In time shard " + k + ": " + linker.getErrorMessage();
+							}
+							return;
+						}
+						if ( !creator.getSourceList().isEmpty() )
+						{
+							alternativeCosts[ k ] = creator.getAlternativeCostForSource( creator.getSourceList().get( 0 ) );
+						}
+
+						// Only keep the links whose source is in the shard.
+						final LinkStitcher< T > links = new LinkStitcher< T >();
+						final Map< T, T > shardAssignment = linker.getResult();
+						final Map< T, Double > shardCosts = linker.getAssignmentCosts();
+						for ( final T source : shardAssignment.keySet() )
+						{
+							if ( ( source.frame() - firstFrame ) / shardLength == k )
+							{
+								links.add( source, shardAssignment.get( source ), shardCosts.get( source ).doubleValue() );
+							}
+						}
+						shardLinks[ k ] = links;
+						logger.setProgress( 0.9 * progress.incrementAndGet() / nShards );
+					}
+				}
+			};
+		}
+		SimpleMultiThreading.startAndJoin( threads );
+		if ( !ok.get() ) { return false; }
+
+		/*
+		 * Stitch shards.
+		 */
+
+		final LinkStitcher< T > stitcher = new LinkStitcher< T >();
+		for ( final LinkStitcher< T > links : shardLinks )
+		{
+			stitcher.addAll( links );
+		}
+		final Map< T, T > rejected = new HashMap< T, T >();
+		nConflicts = stitcher.stitch( assignment, costs, rejected );
+		if ( !rejected.isEmpty() )
+		{
+			logger.setStatus( "Solving " + nConflicts + " conflicts at shard boundaries..." );
+			if ( !relink( rejected, splitter, middles, overlap, firstFrame, alternativeCosts, assignment, costs ) ) { return false; }
+		}
+		logger.log( "Time-sharded segment linking: " + nConflicts + " conflicts at shard boundaries, " + nRelinked + " links found when solving them again.\n" );
+		return true;
+	}
+
+	/**
+	 * Solves the conflicts found at shard boundaries again. The sources of the
+	 * rejected links, and the sources that won their targets, are linked by
+	 * solving a small segment linking problem, with the contested targets and
+	 * the targets left free in their frame range, extended by the overlap.
+	 * Only the links from these sources to targets not linked otherwise are
+	 * kept, so the assignment stays valid.
+	 * <p>
+	 * The alternative cost of this problem is the mean of the ones of the
+	 * shards of the sources. Computing it from the few costs of the problem
+	 * itself would accept much more expensive links than the shards do.
+	 */
+	private boolean relink( final Map< T, T > rejected, final GraphSegmentSplitter< T > splitter, final List< T > middles, final int overlap, final int firstFrame, final double[] alternativeCosts, final Map< T, T > assignment, final Map< T, Double > costs )
+	{
+		// Sources involved in a conflict, losers and winners.
+		final Set< T > contested = new HashSet< T >( rejected.values() );
+		final Set< T > sources = new HashSet< T >( rejected.keySet() );
+		for ( final T source : new ArrayList< T >( assignment.keySet() ) )
+		{
+			if ( contested.contains( assignment.get( source ) ) )
+			{
+				sources.add( source );
+				assignment.remove( source );
+				costs.remove( source );
+			}
+		}
+		final Set< T > linkedTargets = new HashSet< T >( assignment.values() );
+		final Set< T > allEnds = new HashSet< T >( splitter.getSegmentEnds() );
+
+		int minFrame = Integer.MAX_VALUE;
+		int maxFrame = Integer.MIN_VALUE;
+		final List< T > ends = new ArrayList< T >();
+		final List< T > mids = new ArrayList< T >();
+		for ( final T source : sources )
+		{
+			minFrame = Math.min( minFrame, source.frame() );
+			maxFrame = Math.max( maxFrame, source.frame() );
+			if ( allEnds.contains( source ) )
+			{
+				ends.add( source );
+			}
+			else
+			{
+				mids.add( source );
+			}
+		}
+		maxFrame += overlap;
+
+		final List< T > starts = new ArrayList< T >();
+		for ( final T target : splitter.getSegmentStarts() )
+		{
+			if ( target.frame() >= minFrame && target.frame() <= maxFrame && !linkedTargets.contains( target ) )
+			{
+				starts.add( target );
+			}
+		}
+		for ( final T target : middles )
+		{
+			if ( target.frame() >= minFrame && target.frame() <= maxFrame && !linkedTargets.contains( target ) && !sources.contains( target ) )
+			{
+				mids.add( target );
+			}
+		}
+
+		final JaqamanSegmentCostMatrixCreator< T > creator = new JaqamanSegmentCostMatrixCreator< T >( ends, starts, mids, settings );
+		creator.setNumThreads( Math.max( 1, numThreads ) );
+		if ( !creator.checkInput() || !creator.process() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "When solving conflicts at shard boundaries: " + creator.getErrorMessage();
+			return false;
+		}
+		if ( creator.getSourceList().isEmpty() ) { return true; }
+
+		final Set< Integer > shards = new HashSet< Integer >();
+		for ( final T source : sources )
+		{
+			shards.add( Integer.valueOf( ( source.frame() - firstFrame ) / shardLength ) );
+		}
+		double sum = 0;
+		int n = 0;
+		for ( final Integer shard : shards )
+		{
+			if ( !Double.isNaN( alternativeCosts[ shard.intValue() ] ) )
+			{
+				sum += alternativeCosts[ shard.intValue() ];
+				n++;
+			}
+		}
+		final double alternativeCost = n > 0 ? sum / n : creator.getAlternativeCostForSource( creator.getSourceList().get( 0 ) );
+		final CostMatrixCreator< T, T > boundaryCreator = new PrecomputedCostMatrixCreator< T, T >( creator )
+		{
+			@Override
+			public double getAlternativeCostForSource( final T source )
+			{
+				return alternativeCost;
+			}
+
+			@Override
+			public double getAlternativeCostForTarget( final T target )
+			{
+				return alternativeCost;
+			}
+		};
+
+		final JaqamanLinker< T, T > linker = new JaqamanLinker< T, T >( boundaryCreator );
+		linker.setSolverFactory( createSolverFactory() );
+		linker.setCompactCostMatrix( compactCostMatrix );
+		if ( !linker.checkInput() || !linker.process() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "When solving conflicts at shard boundaries: " + linker.getErrorMessage();
+			return false;
+		}
+
+		final Map< T, T > boundaryAssignment = linker.getResult();
+		final Map< T, Double > boundaryCosts = linker.getAssignmentCosts();
+		for ( final T source : boundaryAssignment.keySet() )
+		{
+			final T target = boundaryAssignment.get( source );
+			if ( sources.contains( source ) && !linkedTargets.contains( target ) )
+			{
+				assignment.put( source, target );
+				costs.put( source, boundaryCosts.get( source ) );
+				nRelinked++;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the solver factory to use in one thread: the one set by the
+	 * user, or a {@link LAPJV} factory with its own workspace.
+	 */
+	private LAPSolverFactory createSolverFactory()
+	{
+		return null == solverFactory ? LAPJV.factory( new LAPJVWorkspace() ) : solverFactory;
+	}
+
+	/**
+	 * Dispatches objects in the time shards whose frame range, extended by the
+	 * overlap, contains them.
+	 */
+	private List< List< T >> shard( final List< T > objects, final int nShards, final int minFrame, final int overlap )
+	{
+		final List< List< T >> shards = new ArrayList< List< T >>( nShards );
+		for ( int k = 0; k < nShards; k++ )
+		{
+			shards.add( new ArrayList< T >() );
+		}
+		for ( final T object : objects )
+		{
+			final int offset = object.frame() - minFrame;
+			for ( int k = offset / shardLength; k >= 0 && ( k + 1 ) * shardLength - 1 + overlap >= offset; k-- )
+			{
+				shards.get( k ).add( object );
+			}
+		}
+		return shards;
+	}
+
 	@Override
 	public String getErrorMessage()
 	{
@@ -0,0 +1,124 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics collected for one stage of a processing pipeline: how many items
+ * it processed, how long its threads were busy processing them, and how full
+ * the queue feeding the next stage was.
+ * <p>
+ * Instances are updated concurrently by the threads of the stage.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ */
+public class StageStatistics
+{
+
+	private final String name;
+
+	private final int nThreads;
+
+	private final AtomicInteger nItems = new AtomicInteger( 0 );
+
+	private final AtomicLong busyTime = new AtomicLong( 0 );
+
+	private final AtomicInteger maxQueueDepth = new AtomicInteger( 0 );
+
+	private final AtomicLong sumQueueDepth = new AtomicLong( 0 );
+
+	private final AtomicInteger nQueueSamples = new AtomicInteger( 0 );
+
+	public StageStatistics( final String name, final int nThreads )
+	{
+		this.name = name;
+		this.nThreads = nThreads;
+	}
+
+	/**
+	 * Records that one item was processed.
+	 *
+	 * @param nanos
+	 *            the time spent processing it, in nanoseconds.
+	 */
+	public void itemProcessed( final long nanos )
+	{
+		nItems.incrementAndGet();
+		busyTime.addAndGet( nanos );
+	}
+
+	/**
+	 * Records the depth of the output queue of this stage, sampled after an
+	 * item was put in it.
+	 *
+	 * @param depth
+	 *            the number of items in the queue.
+	 */
+	public void queueDepth( final int depth )
+	{
+		sumQueueDepth.addAndGet( depth );
+		nQueueSamples.incrementAndGet();
+		int max = maxQueueDepth.get();
+		while ( depth > max && !maxQueueDepth.compareAndSet( max, depth ) )
+		{
+			max = maxQueueDepth.get();
+		}
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public int getNThreads()
+	{
+		return nThreads;
+	}
+
+	public int getNItems()
+	{
+		return nItems.get();
+	}
+
+	/**
+	 * Returns the total time the threads of this stage spent processing items,
+	 * in milliseconds.
+	 *
+	 * @return the busy time, in ms.
+	 */
+	public long getBusyTime()
+	{
+		return busyTime.get() / 1000000;
+	}
+
+	/**
+	 * Returns the number of items processed per second of busy time of a
+	 * single thread.
+	 *
+	 * @return the per-thread throughput, in items/s.
+	 */
+	public double getThroughput()
+	{
+		final long nanos = busyTime.get();
+		if ( nanos == 0 ) { return 0; }
+		return 1e9 * nItems.get() / nanos;
+	}
+
+	public int getMaxQueueDepth()
+	{
+		return maxQueueDepth.get();
+	}
+
+	public double getMeanQueueDepth()
+	{
+		final int n = nQueueSamples.get();
+		if ( n == 0 ) { return 0; }
+		return ( double ) sumQueueDepth.get() / n;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "%s: %d threads, %d items in %d ms (%.1f items/s/thread), output queue depth mean %.1f max %d.", name, nThreads, getNItems(), getBusyTime(), getThroughput(), getMeanQueueDepth(), getMaxQueueDepth() );
+	}
+}
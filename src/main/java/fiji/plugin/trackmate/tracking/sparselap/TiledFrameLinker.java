@@ -0,0 +1,505 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
+import net.imglib2.algorithm.OutputAlgorithm;
+import net.imglib2.multithreading.SimpleMultiThreading;
+import fiji.plugin.trackmate.tracking.TrackableObject;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.CostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.JaqamanLinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.PrecomputedCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPJV;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPJVWorkspace;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPSolverFactory;
+
+/**
+ * Links two lists of objects, typically the spots of two frames, by splitting
+ * space in tiles that are linked independently.
+ * <p>
+ * Space is partitioned in a regular grid of cubic tiles (over the first 3
+ * dimensions at most). Each tile problem contains the sources and targets
+ * found in the tile, extended on each side by a halo. The halo is typically
+ * the maximal linking distance, so that a source of the tile has all its
+ * candidate targets in the problem. Tiles are solved in parallel with a
+ * {@link JaqamanLinker}, and each tile only keeps the links of the sources in
+ * its core, so that each source is linked at most once.
+ * <p>
+ * Two tiles may link a target in their overlap region to different sources.
+ * Links are then reconciled deterministically: all the links are sorted by
+ * increasing cost, then source ID and target ID, and a link is rejected if
+ * its target was already taken by a previous one. The sources of the rejected
+ * links are then linked again, in one more small problem, to the targets of
+ * their tile that are still free. The result does not depend on the number of
+ * threads nor on the order in which tiles are solved.
+ * <p>
+ * When the objects are sparse with respect to the halo, the result is the
+ * same as the one of the untiled problem. Otherwise it may differ: the
+ * alternative costs are computed per tile, and the links accepted upon
+ * reconciliation are not revised when the rejected sources are linked again.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ *
+ * @param <T>
+ *            the type of the objects to link.
+ */
+public class TiledFrameLinker< T extends TrackableObject< T >> extends MultiThreadedBenchmarkAlgorithm implements OutputAlgorithm< Map< T, T >>
+{
+
+	private static final String BASE_ERROR_MESSAGE = "[TiledFrameLinker] ";
+
+	/**
+	 * Number of bits used to store a tile index along one dimension.
+	 */
+	private static final int BITS = 21;
+
+	private static final long OFFSET = 1l << ( BITS - 1 );
+
+	private final List< T > sources;
+
+	private final List< T > targets;
+
+	private final CostFunction< T, T > costFunction;
+
+	private final double costThreshold;
+
+	private final double alternativeCostFactor;
+
+	private final double tileSize;
+
+	private final double halo;
+
+	private Map< T, T > assignments;
+
+	private Map< T, Double > costs;
+
+	private int nTiles;
+
+	private int nConflicts;
+
+	private int nRelinked;
+
+	/**
+	 * Creates a new tiled linker.
+	 *
+	 * @param sources
+	 *            the source objects.
+	 * @param targets
+	 *            the target objects.
+	 * @param costFunction
+	 *            the cost function to link a source to a target.
+	 * @param costThreshold
+	 *            the cost threshold above which linking is forbidden.
+	 * @param alternativeCostFactor
+	 *            the Jaqaman et al. 2008 alternative cost factor.
+	 * @param tileSize
+	 *            the size of a tile, in spatial units. Must be larger than the
+	 *            halo.
+	 * @param halo
+	 *            the size of the halo added on each side of a tile. Should be
+	 *            at least the maximal linking distance.
+	 */
+	public TiledFrameLinker( final List< T > sources, final List< T > targets, final CostFunction< T, T > costFunction, final double costThreshold, final double alternativeCostFactor, final double tileSize, final double halo )
+	{
+		this.sources = sources;
+		this.targets = targets;
+		this.costFunction = costFunction;
+		this.costThreshold = costThreshold;
+		this.alternativeCostFactor = alternativeCostFactor;
+		this.tileSize = tileSize;
+		this.halo = halo;
+	}
+
+	/**
+	 * Returns the resulting assignments, as a map from sources to their
+	 * target.
+	 *
+	 * @return the assignment map.
+	 */
+	@Override
+	public Map< T, T > getResult()
+	{
+		return assignments;
+	}
+
+	/**
+	 * Returns the costs of the resulting assignments, as a map from sources to
+	 * their cost.
+	 *
+	 * @return the cost map.
+	 */
+	public Map< T, Double > getAssignmentCosts()
+	{
+		return costs;
+	}
+
+	/**
+	 * Returns the number of non-empty tiles solved in the last call to
+	 * {@link #process()}.
+	 *
+	 * @return the number of tiles.
+	 */
+	public int getNTiles()
+	{
+		return nTiles;
+	}
+
+	/**
+	 * Returns the number of links rejected upon reconciliation in the last
+	 * call to {@link #process()}, because their target was already linked by
+	 * another tile.
+	 *
+	 * @return the number of conflicts.
+	 */
+	public int getNConflicts()
+	{
+		return nConflicts;
+	}
+
+	/**
+	 * Returns the number of sources of rejected links that were linked to
+	 * another target in the last call to {@link #process()}.
+	 *
+	 * @return the number of links found when solving the conflicts again.
+	 */
+	public int getNRelinked()
+	{
+		return nRelinked;
+	}
+
+	@Override
+	public boolean checkInput()
+	{
+		if ( null == sources || null == targets )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The source or target list is null.";
+			return false;
+		}
+		if ( halo < 0 )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The halo must be positive or 0. Got " + halo + ".";
+			return false;
+		}
+		if ( tileSize <= halo )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The tile size (" + tileSize + ") must be larger than the halo (" + halo + ").";
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+
+		assignments = new HashMap< T, T >();
+		costs = new HashMap< T, Double >();
+		nTiles = 0;
+		nConflicts = 0;
+		nRelinked = 0;
+		if ( sources.isEmpty() || targets.isEmpty() )
+		{
+			processingTime = System.currentTimeMillis() - start;
+			return true;
+		}
+
+		/*
+		 * Dispatch objects in tiles, sorted by key.
+		 */
+
+		final TreeMap< Long, Tile< T >> tileMap = new TreeMap< Long, Tile< T >>();
+		for ( final T source : sources )
+		{
+			for ( final long key : tilesOf( source ) )
+			{
+				getTile( tileMap, key ).sources.add( source );
+			}
+		}
+		for ( final T target : targets )
+		{
+			for ( final long key : tilesOf( target ) )
+			{
+				getTile( tileMap, key ).targets.add( target );
+			}
+		}
+		final List< Tile< T >> tiles = new ArrayList< Tile< T >>( tileMap.size() );
+		for ( final Tile< T > tile : tileMap.values() )
+		{
+			if ( !tile.sources.isEmpty() && !tile.targets.isEmpty() )
+			{
+				tiles.add( tile );
+			}
+		}
+		nTiles = tiles.size();
+
+		/*
+		 * Solve tiles.
+		 */
+
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		final AtomicBoolean ok = new AtomicBoolean( true );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		for ( int ithread = 0; ithread < threads.length; ithread++ )
+		{
+			threads[ ithread ] = new Thread( BASE_ERROR_MESSAGE + " thread " + ( 1 + ithread ) + "/" + threads.length )
+			{
+				@Override
+				public void run()
+				{
+					final LAPSolverFactory solverFactory = LAPJV.factory( new LAPJVWorkspace() );
+					for ( int i = ai.getAndIncrement(); i < tiles.size(); i = ai.getAndIncrement() )
+					{
+						if ( !ok.get() )
+						{
+							return;
+						}
+						final Tile< T > tile = tiles.get( i );
+						final JaqamanLinkingCostMatrixCreator< T, T > creator = new JaqamanLinkingCostMatrixCreator< T, T >(
+								tile.sources, tile.targets, costFunction, costThreshold, alternativeCostFactor, 1d );
+						final JaqamanLinker< T, T > linker = new JaqamanLinker< T, T >( creator );
+						linker.setSolverFactory( solverFactory );
+						if ( !linker.checkInput() || !linker.process() )
+						{
+							if ( ok.compareAndSet( true, false ) )
+							{
+								errorMessage = BASE_ERROR_MESSAGE + linker.getErrorMessage();
+							}
+							return;
+						}
+
+						tile.alternativeCost = creator.getAlternativeCostForSource( tile.sources.get( 0 ) );
+
+						// Only keep the links of the sources in the core.
+						final Map< T, T > assignment = linker.getResult();
+						final Map< T, Double > assignmentCosts = linker.getAssignmentCosts();
+						for ( final T source : assignment.keySet() )
+						{
+							if ( coreTileOf( source ) == tile.key )
+							{
+								tile.links.add( source, assignment.get( source ), assignmentCosts.get( source ).doubleValue() );
+							}
+						}
+					}
+				}
+			};
+		}
+		SimpleMultiThreading.startAndJoin( threads );
+		if ( !ok.get() ) { return false; }
+
+		/*
+		 * Reconcile links in overlap regions.
+		 */
+
+		final LinkStitcher< T > stitcher = new LinkStitcher< T >();
+		for ( final Tile< T > tile : tiles )
+		{
+			stitcher.addAll( tile.links );
+		}
+		final Map< T, T > rejected = new HashMap< T, T >();
+		nConflicts = stitcher.stitch( assignments, costs, rejected );
+		if ( !rejected.isEmpty() && !relink( rejected.keySet(), tileMap ) ) { return false; }
+
+		processingTime = System.currentTimeMillis() - start;
+		return true;
+	}
+
+	/**
+	 * Links the specified sources, whose link was rejected upon
+	 * reconciliation, to the targets of their core tile that are still free.
+	 * The alternative cost is the mean of the alternative costs of these
+	 * tiles, so that links are accepted as they would have been in the tiles.
+	 */
+	private boolean relink( final Set< T > rejectedSources, final Map< Long, Tile< T >> tileMap )
+	{
+		final Set< T > linkedTargets = new HashSet< T >( assignments.values() );
+		final List< T > relinkSources = new ArrayList< T >( rejectedSources.size() );
+		final Set< T > freeTargets = new HashSet< T >();
+		final Set< Long > keys = new HashSet< Long >();
+		double sum = 0;
+		int n = 0;
+		for ( final T source : sources )
+		{
+			if ( !rejectedSources.contains( source ) )
+			{
+				continue;
+			}
+			relinkSources.add( source );
+			final Tile< T > tile = tileMap.get( Long.valueOf( coreTileOf( source ) ) );
+			if ( !keys.add( Long.valueOf( tile.key ) ) )
+			{
+				continue;
+			}
+			for ( final T target : tile.targets )
+			{
+				if ( !linkedTargets.contains( target ) )
+				{
+					freeTargets.add( target );
+				}
+			}
+			if ( !Double.isNaN( tile.alternativeCost ) )
+			{
+				sum += tile.alternativeCost;
+				n++;
+			}
+		}
+		if ( freeTargets.isEmpty() || n == 0 ) { return true; }
+
+		// Keep the targets in the order of the input list, to be deterministic.
+		final List< T > relinkTargets = new ArrayList< T >( freeTargets.size() );
+		for ( final T target : targets )
+		{
+			if ( freeTargets.contains( target ) )
+			{
+				relinkTargets.add( target );
+			}
+		}
+
+		final JaqamanLinkingCostMatrixCreator< T, T > creator = new JaqamanLinkingCostMatrixCreator< T, T >(
+				relinkSources, relinkTargets, costFunction, costThreshold, alternativeCostFactor, 1d );
+		if ( !creator.checkInput() || !creator.process() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "When solving conflicts between tiles: " + creator.getErrorMessage();
+			return false;
+		}
+		if ( creator.getSourceList().isEmpty() ) { return true; }
+
+		final double alternativeCost = sum / n;
+		final CostMatrixCreator< T, T > conflictCreator = new PrecomputedCostMatrixCreator< T, T >( creator )
+		{
+			@Override
+			public double getAlternativeCostForSource( final T source )
+			{
+				return alternativeCost;
+			}
+
+			@Override
+			public double getAlternativeCostForTarget( final T target )
+			{
+				return alternativeCost;
+			}
+		};
+		final JaqamanLinker< T, T > linker = new JaqamanLinker< T, T >( conflictCreator );
+		linker.setSolverFactory( LAPJV.factory( new LAPJVWorkspace() ) );
+		if ( !linker.checkInput() || !linker.process() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "When solving conflicts between tiles: " + linker.getErrorMessage();
+			return false;
+		}
+
+		final Map< T, T > assignment = linker.getResult();
+		final Map< T, Double > assignmentCosts = linker.getAssignmentCosts();
+		for ( final T source : assignment.keySet() )
+		{
+			assignments.put( source, assignment.get( source ) );
+			costs.put( source, assignmentCosts.get( source ) );
+			nRelinked++;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the key of the tile whose core contains the specified object.
+	 */
+	private long coreTileOf( final T object )
+	{
+		final int nDims = Math.min( 3, object.numDimensions() );
+		long key = 0;
+		for ( int d = 0; d < 3; d++ )
+		{
+			final long index = d < nDims ? tileIndex( object.getDoublePosition( d ) ) : 0;
+			key = ( key << BITS ) | ( index + OFFSET );
+		}
+		return key;
+	}
+
+	/**
+	 * Returns the keys of all the tiles whose core extended by the halo
+	 * contains the specified object.
+	 */
+	private long[] tilesOf( final T object )
+	{
+		final int nDims = Math.min( 3, object.numDimensions() );
+		final long[] min = new long[ 3 ];
+		final long[] max = new long[ 3 ];
+		int n = 1;
+		for ( int d = 0; d < nDims; d++ )
+		{
+			final double pos = object.getDoublePosition( d );
+			min[ d ] = tileIndex( pos - halo );
+			max[ d ] = tileIndex( pos + halo );
+			n *= ( int ) ( max[ d ] - min[ d ] + 1 );
+		}
+
+		final long[] keys = new long[ n ];
+		int k = 0;
+		for ( long x = min[ 0 ]; x <= max[ 0 ]; x++ )
+		{
+			for ( long y = min[ 1 ]; y <= max[ 1 ]; y++ )
+			{
+				for ( long z = min[ 2 ]; z <= max[ 2 ]; z++ )
+				{
+					keys[ k++ ] = ( ( ( x + OFFSET ) << BITS | ( y + OFFSET ) ) << BITS ) | ( z + OFFSET );
+				}
+			}
+		}
+		return keys;
+	}
+
+	private long tileIndex( final double pos )
+	{
+		final long index = ( long ) Math.floor( pos / tileSize );
+		return Math.max( -OFFSET, Math.min( OFFSET - 1, index ) );
+	}
+
+	private static final < T extends TrackableObject< T >> Tile< T > getTile( final Map< Long, Tile< T >> tileMap, final long key )
+	{
+		Tile< T > tile = tileMap.get( Long.valueOf( key ) );
+		if ( null == tile )
+		{
+			tile = new Tile< T >( key );
+			tileMap.put( Long.valueOf( key ), tile );
+		}
+		return tile;
+	}
+
+	/*
+	 * INNER CLASSES
+	 */
+
+	private static final class Tile< T extends TrackableObject< T >>
+	{
+		private final long key;
+
+		private final List< T > sources = new ArrayList< T >();
+
+		private final List< T > targets = new ArrayList< T >();
+
+		/**
+		 * The links of the core sources, written by the thread that solved
+		 * this tile.
+		 */
+		private final LinkStitcher< T > links = new LinkStitcher< T >();
+
+		/**
+		 * The alternative cost of the tile problem, written by the thread
+		 * that solved this tile. <code>NaN</code> if it has no candidate link.
+		 */
+		private double alternativeCost = Double.NaN;
+
+		private Tile( final long key )
+		{
+			this.key = key;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package fiji.plugin.trackmate.tracking.sparselap.costfunction;
+
+import java.util.List;
+
+/**
+ * Interface for cost functions that can compute the costs to link one source
+ * to a whole block of targets at once.
+ * <p>
+ * The targets are first extracted into a {@link TargetBlock}, that stores the
+ * data the cost function needs in primitive arrays, one array per coordinate
+ * or feature. The costs of each source are then computed by simple loops over
+ * these arrays, which avoids calling the cost function and looking up the
+ * target data for each candidate pair.
+ * <p>
+ * Implementations must return the same costs as
+ * {@link #linkingCost(Object, Object)}.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ *
+ * @param <K>
+ *            the type of the sources.
+ * @param <J>
+ *            the type of the targets.
+ */
+public interface BatchCostFunction< K, J > extends CostFunction< K, J >
+{
+
+	/**
+	 * Extracts the data of the specified targets needed by this cost function.
+	 *
+	 * @param targets
+	 *            the targets.
+	 * @return a new {@link TargetBlock}.
+	 */
+	public TargetBlock prepareTargets( List< J > targets );
+
+	/**
+	 * Computes the costs to link a source to each target of a block.
+	 *
+	 * @param source
+	 *            the source object.
+	 * @param targets
+	 *            the block of targets, as prepared by
+	 *            {@link #prepareTargets(List)}.
+	 * @param costs
+	 *            the array in which to write the costs, with at least
+	 *            {@link TargetBlock#size()} elements. The cost to link to the
+	 *            target <code>j</code> of the block is written in
+	 *            <code>costs[j]</code>.
+	 */
+	public void linkingCosts( K source, TargetBlock targets, double[] costs );
+
+}
@@ -1,5 +1,7 @@
 package fiji.plugin.trackmate.tracking.sparselap.costfunction;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import fiji.plugin.trackmate.FeatureHolder;
@@ -35,7 +37,7 @@ import fiji.plugin.trackmate.util.TrackableObjectUtils;
  *
  */
 public class FeaturePenaltyCostFunction< T extends TrackableObject< T > & FeatureHolder >
-		implements CostFunction< T, T >
+		implements BatchCostFunction< T, T >
 {
 
 	private final Map< String, Double > featurePenalties;
@@ -65,4 +67,61 @@ public class FeaturePenaltyCostFunction< T extends TrackableObject< T > & Featur
 
 		return d2 * penalty * penalty;
 	}
+
+	/**
+	 * Stores the positions of the targets and the value of each penalized
+	 * feature, in the iteration order of the penalty map.
+	 */
+	@Override
+	public TargetBlock prepareTargets( final List< T > targets )
+	{
+		final double[][] features = new double[ featurePenalties.size() ][ targets.size() ];
+		int f = 0;
+		for ( final String feature : featurePenalties.keySet() )
+		{
+			final double[] column = features[ f++ ];
+			for ( int j = 0; j < targets.size(); j++ )
+			{
+				column[ j ] = targets.get( j ).getFeature( feature ).doubleValue();
+			}
+		}
+		return new TargetBlock( targets.size(), SquareDistCostFunction.extractPositions( targets ), features );
+	}
+
+	/**
+	 * Penalties are accumulated feature by feature in the scratch array of the
+	 * block, in the same order and with the same operations as in
+	 * {@link #linkingCost(TrackableObject, TrackableObject)}, so that results
+	 * are identical.
+	 */
+	@Override
+	public void linkingCosts( final T source, final TargetBlock targets, final double[] costs )
+	{
+		final int n = targets.size;
+		SquareDistCostFunction.squareDistances( source, targets, costs );
+
+		final double[] penalty = targets.scratch;
+		Arrays.fill( penalty, 0, n, 1d );
+		int f = 0;
+		for ( final String feature : featurePenalties.keySet() )
+		{
+			final double a = source.getFeature( feature ).doubleValue();
+			final double factor = featurePenalties.get( feature ) * 1.5;
+			final double[] column = targets.features[ f++ ];
+			for ( int j = 0; j < n; j++ )
+			{
+				final double b = column[ j ];
+				final double ndiff = ( a == -b ) ? 0d : Math.abs( a - b ) / ( ( a + b ) / 2 );
+				if ( !Double.isNaN( ndiff ) )
+				{
+					penalty[ j ] += factor * ndiff;
+				}
+			}
+		}
+
+		for ( int j = 0; j < n; j++ )
+		{
+			costs[ j ] = costs[ j ] * penalty[ j ] * penalty[ j ];
+		}
+	}
 }
@@ -1,5 +1,8 @@
 package fiji.plugin.trackmate.tracking.sparselap.costfunction;
 
+import java.util.Arrays;
+import java.util.List;
+
 import fiji.plugin.trackmate.tracking.TrackableObject;
 import fiji.plugin.trackmate.util.TrackableObjectUtils;
 
@@ -11,7 +14,7 @@ import fiji.plugin.trackmate.util.TrackableObjectUtils;
  *
  */
 public class SquareDistCostFunction< T extends TrackableObject< T >> implements
-		CostFunction< T, T >
+		BatchCostFunction< T, T >
 {
 
 	@Override
@@ -20,4 +23,57 @@ public class SquareDistCostFunction< T extends TrackableObject< T >> implements
 		return TrackableObjectUtils.squareDistanceTo( source, target );
 	}
 
+	@Override
+	public TargetBlock prepareTargets( final List< T > targets )
+	{
+		return new TargetBlock( targets.size(), extractPositions( targets ), new double[ 0 ][] );
+	}
+
+	@Override
+	public void linkingCosts( final T source, final TargetBlock targets, final double[] costs )
+	{
+		squareDistances( source, targets, costs );
+	}
+
+	/**
+	 * Extracts the positions of the specified targets, one array per
+	 * dimension.
+	 */
+	static final < T extends TrackableObject< T >> double[][] extractPositions( final List< T > targets )
+	{
+		final int nDims = targets.isEmpty() ? 0 : targets.get( 0 ).numDimensions();
+		final double[][] positions = new double[ nDims ][ targets.size() ];
+		for ( int j = 0; j < targets.size(); j++ )
+		{
+			final T target = targets.get( j );
+			for ( int d = 0; d < nDims; d++ )
+			{
+				positions[ d ][ j ] = target.getDoublePosition( d );
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Writes the square distances from the source to each target of the block
+	 * in the specified array. Summation is done in the same order as in
+	 * {@link TrackableObjectUtils#squareDistanceTo(TrackableObject, TrackableObject)}
+	 * so that results are identical.
+	 */
+	static final < T extends TrackableObject< T >> void squareDistances( final T source, final TargetBlock targets, final double[] costs )
+	{
+		final int n = targets.size;
+		Arrays.fill( costs, 0, n, 0d );
+		for ( int d = 0; d < targets.positions.length; d++ )
+		{
+			final double s = source.getDoublePosition( d );
+			final double[] p = targets.positions[ d ];
+			for ( int j = 0; j < n; j++ )
+			{
+				final double dx = s - p[ j ];
+				costs[ j ] += dx * dx;
+			}
+		}
+	}
+
 }
@@ -0,0 +1,57 @@
+package fiji.plugin.trackmate.tracking.sparselap.costfunction;
+
+/**
+ * A block of targets whose data is stored in primitive arrays, for the
+ * evaluation of a {@link BatchCostFunction}.
+ * <p>
+ * Data is stored column-wise: each coordinate and each feature is stored in
+ * its own array, with one element per target. The arrays are accessible via
+ * <code>default</code> visibility.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ */
+public class TargetBlock
+{
+
+	/**
+	 * The number of targets in the block.
+	 */
+	final int size;
+
+	/**
+	 * The target positions, such that <code>positions[d][j]</code> is the
+	 * position of target <code>j</code> along dimension <code>d</code>.
+	 */
+	final double[][] positions;
+
+	/**
+	 * The target feature values, such that <code>features[f][j]</code> is the
+	 * value of the feature <code>f</code> for target <code>j</code>. The order
+	 * of features is specific to the cost function that built the block.
+	 */
+	final double[][] features;
+
+	/**
+	 * A scratch array with one element per target, that cost functions can
+	 * use to store intermediate results.
+	 */
+	final double[] scratch;
+
+	TargetBlock( final int size, final double[][] positions, final double[][] features )
+	{
+		this.size = size;
+		this.positions = positions;
+		this.features = features;
+		this.scratch = new double[ size ];
+	}
+
+	/**
+	 * Returns the number of targets in this block.
+	 *
+	 * @return the number of targets.
+	 */
+	public int size()
+	{
+		return size;
+	}
+}
@@ -0,0 +1,123 @@
+package fiji.plugin.trackmate.tracking.sparselap.costmatrix;
+
+import java.util.Collection;
+
+import fiji.plugin.trackmate.tracking.TrackableObject;
+
+/**
+ * An immutable list of objects grouped by frame.
+ * <p>
+ * Objects are sorted by increasing frame with a counting sort, keeping their
+ * original order within a frame. Frames and group offsets are stored in
+ * primitive arrays, so that the objects of a range of frames can be found in
+ * constant time, for instance to only iterate over the candidate targets of a
+ * source that are within the allowed frame interval.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ *
+ * @param <T>
+ *            the type of objects.
+ */
+public class FrameGroupedList< T extends TrackableObject< T >>
+{
+
+	private final Object[] objects;
+
+	private final int[] frames;
+
+	private final int minFrame;
+
+	/**
+	 * <code>offsets[f - minFrame]</code> is the index of the first object
+	 * whose frame is larger than or equal to <code>f</code>.
+	 */
+	private final int[] offsets;
+
+	public FrameGroupedList( final Collection< T > objects )
+	{
+		final int n = objects.size();
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		final int[] unsortedFrames = new int[ n ];
+		int i = 0;
+		for ( final T object : objects )
+		{
+			final int frame = object.frame();
+			unsortedFrames[ i++ ] = frame;
+			min = Math.min( min, frame );
+			max = Math.max( max, frame );
+		}
+		if ( n == 0 )
+		{
+			min = 0;
+			max = -1;
+		}
+
+		this.minFrame = min;
+		this.offsets = new int[ max - min + 2 ];
+		for ( int k = 0; k < n; k++ )
+		{
+			offsets[ unsortedFrames[ k ] - min + 1 ]++;
+		}
+		for ( int f = 1; f < offsets.length; f++ )
+		{
+			offsets[ f ] += offsets[ f - 1 ];
+		}
+
+		this.objects = new Object[ n ];
+		this.frames = new int[ n ];
+		final int[] next = new int[ offsets.length ];
+		System.arraycopy( offsets, 0, next, 0, offsets.length );
+		i = 0;
+		for ( final T object : objects )
+		{
+			final int k = next[ unsortedFrames[ i ] - min ]++;
+			this.objects[ k ] = object;
+			this.frames[ k ] = unsortedFrames[ i ];
+			i++;
+		}
+	}
+
+	public int size()
+	{
+		return objects.length;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	public T get( final int k )
+	{
+		return ( T ) objects[ k ];
+	}
+
+	/**
+	 * Returns the frame of the object at the specified index, as it was when
+	 * this list was built.
+	 *
+	 * @param k
+	 *            the object index.
+	 * @return its frame.
+	 */
+	public int frame( final int k )
+	{
+		return frames[ k ];
+	}
+
+	/**
+	 * Returns the index of the first object whose frame is larger than or
+	 * equal to the specified frame. The objects of frames <code>f1</code> to
+	 * <code>f2</code> (included) are therefore the ones with indices from
+	 * <code>fromFrame(f1)</code> (included) to <code>fromFrame(f2 + 1)</code>
+	 * (excluded).
+	 *
+	 * @param frame
+	 *            the frame.
+	 * @return an index between 0 and {@link #size()}, included.
+	 */
+	public int fromFrame( final int frame )
+	{
+		final long f = ( long ) frame - minFrame;
+		if ( f <= 0 ) { return 0; }
+		if ( f >= offsets.length ) { return objects.length; }
+		return offsets[ ( int ) f ];
+	}
+}
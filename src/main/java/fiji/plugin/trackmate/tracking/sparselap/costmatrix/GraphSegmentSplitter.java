@@ -6,6 +6,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 
+import org.jgrapht.Graphs;
 import org.jgrapht.UndirectedGraph;
 import org.jgrapht.alg.ConnectivityInspector;
 import org.jgrapht.graph.DefaultWeightedEdge;
@@ -13,6 +14,24 @@ import org.jgrapht.graph.DefaultWeightedEdge;
 import fiji.plugin.trackmate.tracking.TrackableObject;
 import fiji.plugin.trackmate.util.TrackableObjectUtils;
 
+/**
+ * Splits a graph made of track segments into the first object, the last
+ * object and the middle objects of each segment.
+ * <p>
+ * A graph produced by frame-to-frame linking is made of linear segments, that
+ * are directed in time: each object has at most one predecessor, in an earlier
+ * frame, and at most one successor, in a later frame. In that case, each
+ * segment is walked from its first object by following successors, which gives
+ * its objects already sorted by frame, in time linear in the number of objects
+ * and edges. If the graph contains a branching, or an edge between two
+ * objects of the same frame, segments are found as connected components and
+ * sorted by frame, like before.
+ * <p>
+ * Segments made of a single object are ignored. Segment starts, ends and
+ * middle points are also made available grouped by frame, as
+ * {@link FrameGroupedList}s, so that candidates within a frame interval can be
+ * retrieved without scanning all of them.
+ */
 public class GraphSegmentSplitter< T extends TrackableObject< T >>
 {
 	private final List< T > segmentStarts;
@@ -21,27 +40,129 @@ public class GraphSegmentSplitter< T extends TrackableObject< T >>
 
 	private final List< List< T >> segmentMiddles;
 
+	private final boolean findMiddlePoints;
+
+	private FrameGroupedList< T > segmentStartsByFrame;
+
+	private FrameGroupedList< T > segmentEndsByFrame;
+
+	private FrameGroupedList< T > segmentMiddlesByFrame;
+
 	public GraphSegmentSplitter(
 			final UndirectedGraph< T, DefaultWeightedEdge > graph,
 			final boolean findMiddlePoints )
 	{
-		final ConnectivityInspector< T, DefaultWeightedEdge > connectivity = new ConnectivityInspector< T, DefaultWeightedEdge >(
-				graph );
-		final List< Set< T >> connectedSets = connectivity.connectedSets();
-		final Comparator< TrackableObject< ? >> framecomparator = TrackableObjectUtils
-				.frameComparator();
-
-		segmentStarts = new ArrayList< T >( connectedSets.size() );
-		segmentEnds = new ArrayList< T >( connectedSets.size() );
+		this.findMiddlePoints = findMiddlePoints;
+		segmentStarts = new ArrayList< T >();
+		segmentEnds = new ArrayList< T >();
 		if ( findMiddlePoints )
 		{
-			segmentMiddles = new ArrayList< List< T >>( connectedSets.size() );
+			segmentMiddles = new ArrayList< List< T >>();
 		}
 		else
 		{
 			segmentMiddles = Collections.emptyList();
 		}
 
+		if ( !walkSegments( graph ) )
+		{
+			segmentStarts.clear();
+			segmentEnds.clear();
+			if ( findMiddlePoints )
+			{
+				segmentMiddles.clear();
+			}
+			splitConnectedSets( graph );
+		}
+	}
+
+	/**
+	 * Walks each time-directed segment from its first object. Returns
+	 * <code>false</code> as soon as a vertex that does not belong to a linear
+	 * time-directed segment is found.
+	 */
+	private boolean walkSegments( final UndirectedGraph< T, DefaultWeightedEdge > graph )
+	{
+		for ( final T vertex : graph.vertexSet() )
+		{
+			final Set< DefaultWeightedEdge > edges = graph.edgesOf( vertex );
+			if ( edges.size() > 2 ) { return false; }
+
+			final int frame = vertex.frame();
+			boolean hasPredecessor = false;
+			T successor = null;
+			for ( final DefaultWeightedEdge edge : edges )
+			{
+				final T neighbor = Graphs.getOppositeVertex( graph, edge, vertex );
+				final int neighborFrame = neighbor.frame();
+				if ( neighborFrame < frame && !hasPredecessor )
+				{
+					hasPredecessor = true;
+				}
+				else if ( neighborFrame > frame && null == successor )
+				{
+					successor = neighbor;
+				}
+				else
+				{
+					return false;
+				}
+			}
+
+			/*
+			 * Only walk from segment starts, and skip single objects. Vertices
+			 * met during the walk are checked when the outer loop reaches them.
+			 */
+			if ( hasPredecessor || null == successor )
+			{
+				continue;
+			}
+
+			final List< T > middles = findMiddlePoints ? new ArrayList< T >() : null;
+			T previous = vertex;
+			T current = successor;
+			while ( true )
+			{
+				T next = null;
+				for ( final DefaultWeightedEdge edge : graph.edgesOf( current ) )
+				{
+					final T neighbor = Graphs.getOppositeVertex( graph, edge, current );
+					if ( neighbor != previous && neighbor.frame() > current.frame() )
+					{
+						next = neighbor;
+						break;
+					}
+				}
+				if ( null == next )
+				{
+					break;
+				}
+				if ( findMiddlePoints )
+				{
+					middles.add( current );
+				}
+				previous = current;
+				current = next;
+			}
+
+			segmentStarts.add( vertex );
+			segmentEnds.add( current );
+			if ( findMiddlePoints )
+			{
+				segmentMiddles.add( middles );
+			}
+		}
+		return true;
+	}
+
+	private void splitConnectedSets( final UndirectedGraph< T, DefaultWeightedEdge > graph )
+	{
+		final ConnectivityInspector< T, DefaultWeightedEdge > connectivity = new ConnectivityInspector< T, DefaultWeightedEdge >(
+				graph );
+		final List< Set< T >> connectedSets = connectivity.connectedSets();
+		final Comparator< TrackableObject< ? >> framecomparator = TrackableObjectUtils
+				.frameComparator();
+
 		for ( final Set< T > set : connectedSets )
 		{
 			if ( set.size() < 2 )
@@ -76,4 +197,52 @@ public class GraphSegmentSplitter< T extends TrackableObject< T >>
 		return segmentStarts;
 	}
 
+	/**
+	 * Returns the last object of each segment, grouped by frame.
+	 *
+	 * @return the grouped list, built on first call.
+	 */
+	public FrameGroupedList< T > getSegmentEndsByFrame()
+	{
+		if ( null == segmentEndsByFrame )
+		{
+			segmentEndsByFrame = new FrameGroupedList< T >( segmentEnds );
+		}
+		return segmentEndsByFrame;
+	}
+
+	/**
+	 * Returns the first object of each segment, grouped by frame.
+	 *
+	 * @return the grouped list, built on first call.
+	 */
+	public FrameGroupedList< T > getSegmentStartsByFrame()
+	{
+		if ( null == segmentStartsByFrame )
+		{
+			segmentStartsByFrame = new FrameGroupedList< T >( segmentStarts );
+		}
+		return segmentStartsByFrame;
+	}
+
+	/**
+	 * Returns the middle objects of all segments, grouped by frame. Empty if
+	 * middle points were not requested.
+	 *
+	 * @return the grouped list, built on first call.
+	 */
+	public FrameGroupedList< T > getSegmentMiddlesByFrame()
+	{
+		if ( null == segmentMiddlesByFrame )
+		{
+			final List< T > allMiddles = new ArrayList< T >();
+			for ( final List< T > middles : segmentMiddles )
+			{
+				allMiddles.addAll( middles );
+			}
+			segmentMiddlesByFrame = new FrameGroupedList< T >( allMiddles );
+		}
+		return segmentMiddlesByFrame;
+	}
+
 }
@@ -4,13 +4,19 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.BatchCostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.TargetBlock;
 import fiji.plugin.trackmate.tracking.sparselap.linker.SparseCostMatrix;
 
 /**
  * A {@link CostMatrixCreator} that can generate a cost matrix from a list of
  * sources, a list of targets and a {@link CostFunction} that can generate a
  * cost for any combination.
+ * <p>
+ * If the cost function is a {@link BatchCostFunction}, the targets are
+ * extracted once in a {@link TargetBlock}, and the costs of each source to all
+ * the targets are computed in one call.
  *
  * @author Jean-Yves Tinevez - 2014
  *
@@ -81,17 +87,47 @@ public class JaqamanLinkingCostMatrixCreator< K extends Comparable< K >, J exten
 		final List< J > accTargets = new ArrayList< J >();
 		final ResizableDoubleArray costs = new ResizableDoubleArray();
 
-		for ( final K source : sources )
+		if ( costFunction instanceof BatchCostFunction )
 		{
+			@SuppressWarnings( "unchecked" )
+			final BatchCostFunction< K, J > batchCostFunction = ( BatchCostFunction< K, J > ) costFunction;
+			final List< J > targetArray = new ArrayList< J >();
 			for ( final J target : targets )
 			{
+				targetArray.add( target );
+			}
+			final TargetBlock block = batchCostFunction.prepareTargets( targetArray );
+			final double[] sourceCosts = new double[ targetArray.size() ];
 
-				final double cost = costFunction.linkingCost( source, target );
-				if ( cost < costThreshold )
+			for ( final K source : sources )
+			{
+				batchCostFunction.linkingCosts( source, block, sourceCosts );
+				for ( int j = 0; j < sourceCosts.length; j++ )
+				{
+					final double cost = sourceCosts[ j ];
+					if ( cost < costThreshold )
+					{
+						accSources.add( source );
+						accTargets.add( targetArray.get( j ) );
+						costs.add( cost );
+					}
+				}
+			}
+		}
+		else
+		{
+			for ( final K source : sources )
+			{
+				for ( final J target : targets )
 				{
-					accSources.add( source );
-					accTargets.add( target );
-					costs.add( cost );
+
+					final double cost = costFunction.linkingCost( source, target );
+					if ( cost < costThreshold )
+					{
+						accSources.add( source );
+						accTargets.add( target );
+						costs.add( cost );
+					}
 				}
 			}
 		}
@@ -78,6 +78,12 @@ public class JaqamanSegmentCostMatrixCreator< T extends TrackableObject< T >>
 
 	private int numThreads;
 
+	private final List< T > segmentEnds;
+
+	private final List< T > segmentStarts;
+
+	private final List< T > segmentMiddles;
+
 	/**
 	 * Instantiates a cost matrix creator for the top-left quadrant of the
 	 * segment linking cost matrix.
@@ -88,6 +94,39 @@ public class JaqamanSegmentCostMatrixCreator< T extends TrackableObject< T >>
 	{
 		this.graph = graph;
 		this.settings = settings;
+		this.segmentEnds = null;
+		this.segmentStarts = null;
+		this.segmentMiddles = null;
+		setNumThreads();
+	}
+
+	/**
+	 * Instantiates a cost matrix creator for the top-left quadrant of the
+	 * segment linking cost matrix, from segments that have already been
+	 * extracted, for instance by a {@link GraphSegmentSplitter}. This allows
+	 * generating the cost matrix for a subset of the segments only.
+	 *
+	 * @param segmentEnds
+	 *            the last object of each segment.
+	 * @param segmentStarts
+	 *            the first object of each segment.
+	 * @param segmentMiddles
+	 *            the objects in the middle of segments, for merging and
+	 *            splitting. Ignored if they are not allowed.
+	 * @param settings
+	 *            the settings map.
+	 */
+	public JaqamanSegmentCostMatrixCreator(
+			final List< T > segmentEnds,
+			final List< T > segmentStarts,
+			final List< T > segmentMiddles,
+			final Map< String, Object > settings )
+	{
+		this.graph = null;
+		this.settings = settings;
+		this.segmentEnds = segmentEnds;
+		this.segmentStarts = segmentStarts;
+		this.segmentMiddles = segmentMiddles;
 		setNumThreads();
 	}
 
@@ -178,31 +217,31 @@ public class JaqamanSegmentCostMatrixCreator< T extends TrackableObject< T >>
 
 		final boolean mergingOrSplitting = allowMerging || allowSplitting;
 
-		final GraphSegmentSplitter< T > segmentSplitter =
-				new GraphSegmentSplitter< T >( graph, mergingOrSplitting );
-		final List< T > segmentEnds = segmentSplitter.getSegmentEnds();
-		final List< T > segmentStarts = segmentSplitter.getSegmentStarts();
-
-		/*
-		 * Generate all middle points list. We have to sort it by the same order
-		 * we will sort the unique list of targets, otherwise the SCM will
-		 * complains it does not receive columns in the right order.
-		 */
-		final List< T > allMiddles;
-		if ( mergingOrSplitting )
+		final List< T > segmentEnds;
+		final FrameGroupedList< T > segmentStarts;
+		final FrameGroupedList< T > allMiddles;
+		if ( null == graph )
 		{
-			final List< List< T >> segmentMiddles = segmentSplitter.getSegmentMiddles();
-			allMiddles = new ArrayList< T >();
-			for ( final List< T > segment : segmentMiddles )
-			{
-				allMiddles.addAll( segment );
-			}
+			segmentEnds = this.segmentEnds;
+			segmentStarts = new FrameGroupedList< T >( this.segmentStarts );
+			allMiddles = new FrameGroupedList< T >( mergingOrSplitting ? this.segmentMiddles : Collections.< T > emptyList() );
 		}
 		else
 		{
-			allMiddles = Collections.emptyList();
+			final GraphSegmentSplitter< T > segmentSplitter =
+					new GraphSegmentSplitter< T >( graph, mergingOrSplitting );
+			segmentEnds = segmentSplitter.getSegmentEnds();
+			segmentStarts = segmentSplitter.getSegmentStartsByFrame();
+			allMiddles = segmentSplitter.getSegmentMiddlesByFrame();
 		}
 
+		/*
+		 * Candidate targets are grouped by frame, so we only iterate over the
+		 * ones within the allowed frame interval of each source. Targets are
+		 * sorted later by the DefaultCostMatrixCreator, so the order in which
+		 * they are found does not matter.
+		 */
+
 		final Object lock = new Object();
 
 		/*
@@ -237,17 +276,11 @@ public class JaqamanSegmentCostMatrixCreator< T extends TrackableObject< T >>
 
 					if ( allowGapClosing )
 					{
-						for ( final T target : segmentStarts )
+						// Frame interval must be within user specification.
+						final int end = segmentStarts.fromFrame( sourceFrame + maxFrameInterval + 1 );
+						for ( int k = segmentStarts.fromFrame( sourceFrame + 1 ); k < end; k++ )
 						{
-							// Check frame interval, must be within user
-							// specification.
-							final int targetFrame =
-									target.getFeature( TrackmateConstants.FRAME ).intValue();
-							final int tdiff = targetFrame - sourceFrame;
-							if ( tdiff < 1 || tdiff > maxFrameInterval )
-							{
-								continue;
-							}
+							final T target = segmentStarts.get( k );
 
 							// Check max distance
 							final double cost = gcCostFunction.linkingCost( source, target );
@@ -271,16 +304,11 @@ public class JaqamanSegmentCostMatrixCreator< T extends TrackableObject< T >>
 
 					if ( allowMerging )
 					{
-						for ( final T target : allMiddles )
+						// Frame interval must be 1.
+						final int end = allMiddles.fromFrame( sourceFrame + 2 );
+						for ( int k = allMiddles.fromFrame( sourceFrame + 1 ); k < end; k++ )
 						{
-							// Check frame interval, must be 1.
-							final int targetFrame =
-									target.getFeature( TrackmateConstants.FRAME ).intValue();
-							final int tdiff = targetFrame - sourceFrame;
-							if ( tdiff != 1 )
-							{
-								continue;
-							}
+							final T target = allMiddles.get( k );
 
 							// Check max distance
 							final double cost = mCostFunction.linkingCost( source, target );
@@ -318,9 +346,9 @@ public class JaqamanSegmentCostMatrixCreator< T extends TrackableObject< T >>
 		{
 			final ExecutorService executorS =
 					Executors.newFixedThreadPool( numThreads );
-			for ( final T source : allMiddles )
+			for ( int i = 0; i < allMiddles.size(); i++ )
 			{
-
+				final T source = allMiddles.get( i );
 				executorS.submit( new Runnable()
 				{
 
@@ -329,17 +357,11 @@ public class JaqamanSegmentCostMatrixCreator< T extends TrackableObject< T >>
 					{
 						final int sourceFrame =
 								source.getFeature( TrackmateConstants.FRAME ).intValue();
-						for ( final T target : segmentStarts )
+						// Frame interval must be 1.
+						final int end = segmentStarts.fromFrame( sourceFrame + 2 );
+						for ( int k = segmentStarts.fromFrame( sourceFrame + 1 ); k < end; k++ )
 						{
-							// Check frame interval, must be 1.
-							final int targetFrame =
-									target.getFeature( TrackmateConstants.FRAME ).intValue();
-							final int tdiff = targetFrame - sourceFrame;
-
-							if ( tdiff != 1 )
-							{
-								continue;
-							}
+							final T target = segmentStarts.get( k );
 
 							// Check max distance
 							final double cost = sCostFunction.linkingCost( source, target );
@@ -0,0 +1,92 @@
+package fiji.plugin.trackmate.tracking.sparselap.costmatrix;
+
+import java.util.List;
+
+import fiji.plugin.trackmate.tracking.sparselap.linker.SparseCostMatrix;
+
+/**
+ * A {@link CostMatrixCreator} that wraps another creator which has already
+ * been successfully processed. Its {@link #checkInput()} and
+ * {@link #process()} methods do nothing, and all results are taken from the
+ * wrapped creator.
+ * <p>
+ * This allows generating a cost matrix in one thread, and using it in a linker
+ * running in another thread without computing it again.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ *
+ * @param <K>
+ * @param <J>
+ */
+public class PrecomputedCostMatrixCreator< K extends Comparable< K >, J extends Comparable< J >> implements CostMatrixCreator< K, J >
+{
+
+	private final CostMatrixCreator< K, J > creator;
+
+	/**
+	 * Wraps the specified cost matrix creator.
+	 *
+	 * @param creator
+	 *            the creator, on which {@link #checkInput()} and
+	 *            {@link #process()} must already have been called successfully.
+	 */
+	public PrecomputedCostMatrixCreator( final CostMatrixCreator< K, J > creator )
+	{
+		this.creator = creator;
+	}
+
+	@Override
+	public boolean checkInput()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean process()
+	{
+		return true;
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return creator.getErrorMessage();
+	}
+
+	@Override
+	public SparseCostMatrix getResult()
+	{
+		return creator.getResult();
+	}
+
+	@Override
+	public long getProcessingTime()
+	{
+		return creator.getProcessingTime();
+	}
+
+	@Override
+	public List< K > getSourceList()
+	{
+		return creator.getSourceList();
+	}
+
+	@Override
+	public List< J > getTargetList()
+	{
+		return creator.getTargetList();
+	}
+
+	@Override
+	public double getAlternativeCostForSource( final K source )
+	{
+		return creator.getAlternativeCostForSource( source );
+	}
+
+	@Override
+	public double getAlternativeCostForTarget( final J target )
+	{
+		return creator.getAlternativeCostForTarget( target );
+	}
+
+}
@@ -0,0 +1,723 @@
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.algorithm.MultiThreaded;
+
+/**
+ * Implements the auction algorithm of Bertsekas for linear assignment
+ * problems, with epsilon-scaling, tailored for sparse cost matrices.
+ * <p>
+ * Unassigned rows bid for their cheapest column, raising its price by the
+ * difference with their second cheapest column plus <code>epsilon</code>, and
+ * evicting its previous owner. Bidding is repeated with decreasing
+ * <code>epsilon</code> until it is small enough for the solution to be
+ * optimal.
+ * <p>
+ * Contrary to the augmentation phase of {@link LAPJV}, bidding can be done in
+ * parallel. When many rows are unassigned, their bids are computed
+ * concurrently against the same prices and resolved afterwards, the highest
+ * bid winning (Jacobi bidding). When only a few rows are left, each bid is
+ * applied as soon as it is computed (Gauss-Seidel bidding), which requires
+ * fewer iterations.
+ * <p>
+ * The total cost of the solution found is within the specified precision of
+ * the optimal one. In particular, if all the costs are integers, the default
+ * precision ensures the solution is optimal. This solver only accepts square
+ * cost matrices that admit at least one complete assignment, which is always
+ * the case for the matrices built by the {@link JaqamanLinker}.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ * @see <code>Bertsekas. The auction algorithm: A distributed relaxation method
+ *      for the assignment problem. Annals of Operations Research (1988) vol. 14
+ *      pp. 105-123</code>
+ */
+public class AuctionLAP implements LAPSolver, MultiThreaded
+{
+
+	private static final String BASE_ERROR_MESSAGE = "[AuctionLAP] ";
+
+	/**
+	 * The factor by which <code>epsilon</code> is divided between two scaling
+	 * phases.
+	 */
+	private static final double SCALING_FACTOR = 5.;
+
+	/**
+	 * The number of unassigned rows per thread below which bids are not
+	 * computed in parallel.
+	 */
+	private static final int MIN_BIDDERS_PER_THREAD = 256;
+
+	/**
+	 * How long, in seconds, the idle threads of the pool shared by the
+	 * solvers of a factory are kept alive.
+	 */
+	private static final long SHARED_POOL_KEEP_ALIVE = 10l;
+
+	private int[] output;
+
+	private String errorMessage;
+
+	private long processingTime;
+
+	private final SparseCostMatrixAccess cm;
+
+	private final double precision;
+
+	private int numThreads;
+
+	private double[] initialPrices;
+
+	private int[] initialAssignment;
+
+	private double[] prices;
+
+	private ExecutorService executorService;
+
+	/**
+	 * Instantiates a new auction algorithm for the specified sparse cost
+	 * matrix.
+	 *
+	 * @param cm
+	 *            the cost matrix of the linear assignment problem to solve.
+	 * @param precision
+	 *            the maximal difference between the total cost of the solution
+	 *            found and the optimal one.
+	 */
+	public AuctionLAP( final SparseCostMatrixAccess cm, final double precision )
+	{
+		this.cm = cm;
+		this.precision = precision;
+		setNumThreads();
+	}
+
+	/**
+	 * Instantiates a new auction algorithm for the specified sparse cost
+	 * matrix, with a default precision. It is 1 if all the costs are integers,
+	 * so that the solution is optimal, and one millionth of the largest cost
+	 * otherwise.
+	 *
+	 * @param cm
+	 *            the cost matrix of the linear assignment problem to solve.
+	 */
+	public AuctionLAP( final SparseCostMatrixAccess cm )
+	{
+		this( cm, Double.NaN );
+	}
+
+	/**
+	 * Returns a factory that instantiates this solver with the default
+	 * precision.
+	 * <p>
+	 * All the solvers created by the factory bid on the threads of a single
+	 * pool, owned by the factory, instead of starting new threads at each
+	 * solve. The pool threads are daemon threads, and they terminate after a
+	 * few seconds without bidding.
+	 *
+	 * @param numThreads
+	 *            the number of threads to use for bidding.
+	 * @return a new {@link LAPSolverFactory}.
+	 */
+	public static LAPSolverFactory factory( final int numThreads )
+	{
+		final ExecutorService executor;
+		if ( numThreads > 1 )
+		{
+			final ThreadPoolExecutor pool = new ThreadPoolExecutor( numThreads, numThreads, SHARED_POOL_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue< Runnable >(), new ThreadFactory()
+			{
+				private int index = 0;
+
+				@Override
+				public synchronized Thread newThread( final Runnable r )
+				{
+					final Thread thread = new Thread( r, "AuctionLAP-" + ( index++ ) );
+					thread.setDaemon( true );
+					return thread;
+				}
+			} );
+			pool.allowCoreThreadTimeOut( true );
+			executor = pool;
+		}
+		else
+		{
+			executor = null;
+		}
+		return factory( executor, numThreads );
+	}
+
+	/**
+	 * Returns a factory that instantiates this solver with the default
+	 * precision, and that bids on the threads of the specified executor. The
+	 * executor is not shut down by the solvers.
+	 *
+	 * @param executor
+	 *            the executor to run the bids on. If <code>null</code>, each
+	 *            solver creates its own threads.
+	 * @param numThreads
+	 *            the number of concurrent bidding tasks.
+	 * @return a new {@link LAPSolverFactory}.
+	 */
+	public static LAPSolverFactory factory( final ExecutorService executor, final int numThreads )
+	{
+		return new LAPSolverFactory()
+		{
+			@Override
+			public LAPSolver create( final SparseCostMatrixAccess cm )
+			{
+				final AuctionLAP solver = new AuctionLAP( cm );
+				solver.setNumThreads( numThreads );
+				solver.setExecutorService( executor );
+				return solver;
+			}
+
+			@Override
+			public boolean isSparse()
+			{
+				return true;
+			}
+
+			@Override
+			public boolean supportsWarmStart()
+			{
+				return true;
+			}
+
+			@Override
+			public boolean isMultiThreaded()
+			{
+				return numThreads > 1;
+			}
+		};
+	}
+
+	/**
+	 * Specifies a starting point for the next call to {@link #process()}.
+	 * <p>
+	 * The specified prices are used as initial prices, and the bidding starts
+	 * with a small <code>epsilon</code> to preserve them. The specified row
+	 * assignments are kept if they are consistent with these prices.
+	 * <code>NaN</code> prices, and prices far out of the scale of the costs,
+	 * are initialized by column reduction.
+	 */
+	@Override
+	public void setWarmStart( final double[] columnPrices, final int[] rowAssignment )
+	{
+		this.initialPrices = columnPrices;
+		this.initialAssignment = rowAssignment;
+	}
+
+	/**
+	 * Sets the executor to run the parallel bids on. It is not shut down by
+	 * this solver. If <code>null</code>, which is the default, a thread pool
+	 * is created and shut down at each call to {@link #process()}.
+	 *
+	 * @param executorService
+	 *            the executor.
+	 */
+	public void setExecutorService( final ExecutorService executorService )
+	{
+		this.executorService = executorService;
+	}
+
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+
+		final int n = cm.getNRows();
+		final int[] x = new int[ n ];
+		final int[] y = new int[ n ];
+		/*
+		 * We store the opposite of the dual variables, so that the row i is
+		 * attracted by the column j minimizing c(i,j) + p[j].
+		 */
+		final double[] p = new double[ n ];
+
+		if ( n == 0 )
+		{
+			output = x;
+			prices = p;
+			processingTime = System.currentTimeMillis() - start;
+			return true;
+		}
+
+		double minCost = Double.POSITIVE_INFINITY;
+		double maxCost = Double.NEGATIVE_INFINITY;
+		for ( int k = 0; k < cm.getCardinality(); k++ )
+		{
+			final double c = cm.cost( k );
+			if ( c < minCost )
+			{
+				minCost = c;
+			}
+			if ( c > maxCost )
+			{
+				maxCost = c;
+			}
+		}
+		final double range = maxCost - minCost;
+		final double epsilonMin = getPrecision() / ( n + 1 );
+
+		/*
+		 * Initial prices.
+		 */
+
+		/*
+		 * Warm prices far out of the cost scale are discarded: LAPJV may
+		 * leave such prices on columns it has no use for, and they would
+		 * swallow the epsilon increments.
+		 */
+		final boolean warm = null != initialPrices;
+		final boolean[] known = new boolean[ n ];
+		if ( warm )
+		{
+			final double priceBound = Math.abs( minCost ) + Math.abs( maxCost ) + ( n + 1 ) * range;
+			for ( int j = 0; j < n; j++ )
+			{
+				known[ j ] = Math.abs( initialPrices[ j ] ) <= priceBound;
+			}
+		}
+
+		Arrays.fill( p, Double.NEGATIVE_INFINITY );
+		for ( int i = 0; i < n; i++ )
+		{
+			for ( int k = cm.start( i ); k < cm.start( i ) + cm.number( i ); k++ )
+			{
+				final int j = cm.column( i, k );
+				if ( !known[ j ] && -cm.cost( k ) > p[ j ] )
+				{
+					p[ j ] = -cm.cost( k );
+				}
+			}
+		}
+		for ( int j = 0; j < n; j++ )
+		{
+			if ( known[ j ] )
+			{
+				p[ j ] = -initialPrices[ j ];
+			}
+		}
+		for ( int j = 0; j < n; j++ )
+		{
+			if ( Double.isInfinite( p[ j ] ) )
+			{
+				// Column without any cost.
+				p[ j ] = 0.;
+			}
+		}
+
+		double epsilon = Math.max( range / 2., epsilonMin );
+		if ( warm )
+		{
+			epsilon = Math.min( epsilon, Math.max( epsilonMin * SCALING_FACTOR * SCALING_FACTOR, epsilonMin ) );
+		}
+
+		final boolean parallel = numThreads > 1 && n >= 2 * MIN_BIDDERS_PER_THREAD;
+		final boolean ownExecutor = parallel && null == executorService;
+		final ExecutorService executor = ownExecutor ? Executors.newFixedThreadPool( numThreads ) : ( parallel ? executorService : null );
+		try
+		{
+			boolean firstPhase = true;
+			while ( true )
+			{
+				Arrays.fill( x, -1 );
+				Arrays.fill( y, -1 );
+				if ( firstPhase && warm && null != initialAssignment )
+				{
+					keepInitialAssignment( x, y, p, epsilon );
+				}
+
+				if ( !auction( x, y, p, epsilon, range, executor ) ) { return false; }
+
+				if ( epsilon <= epsilonMin )
+				{
+					break;
+				}
+				epsilon = Math.max( epsilon / SCALING_FACTOR, epsilonMin );
+				firstPhase = false;
+			}
+		}
+		finally
+		{
+			if ( ownExecutor )
+			{
+				executor.shutdown();
+			}
+		}
+
+		/*
+		 * Terminate and prepare outputs.
+		 */
+
+		this.output = x;
+		this.prices = new double[ n ];
+		for ( int j = 0; j < n; j++ )
+		{
+			prices[ j ] = -p[ j ];
+		}
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	/**
+	 * Keeps the initial row assignments that satisfy the
+	 * <code>epsilon</code>-complementary slackness condition with the current
+	 * prices.
+	 */
+	private void keepInitialAssignment( final int[] x, final int[] y, final double[] p, final double epsilon )
+	{
+		for ( int i = 0; i < cm.getNRows(); i++ )
+		{
+			final int j = initialAssignment[ i ];
+			if ( j < 0 || j >= cm.getNCols() || y[ j ] >= 0 )
+			{
+				continue;
+			}
+			final int kj = cm.find( i, j );
+			if ( kj < 0 )
+			{
+				continue;
+			}
+			double min = Double.POSITIVE_INFINITY;
+			for ( int k = cm.start( i ); k < cm.start( i ) + cm.number( i ); k++ )
+			{
+				final double w = cm.cost( k ) + p[ cm.column( i, k ) ];
+				if ( w < min )
+				{
+					min = w;
+				}
+			}
+			if ( cm.cost( kj ) + p[ j ] <= min + epsilon )
+			{
+				x[ i ] = j;
+				y[ j ] = i;
+			}
+		}
+	}
+
+	/**
+	 * Runs the bidding until all the rows are assigned, for one value of
+	 * <code>epsilon</code>.
+	 */
+	private boolean auction( final int[] x, final int[] y, final double[] p, final double epsilon, final double range, final ExecutorService executor )
+	{
+		final int n = cm.getNRows();
+		int[] queue = new int[ n ];
+		int[] next = new int[ n ];
+		int nq = 0;
+		for ( int i = 0; i < n; i++ )
+		{
+			if ( x[ i ] < 0 )
+			{
+				queue[ nq++ ] = i;
+			}
+		}
+
+		/*
+		 * Prices diverge if there is no complete assignment. We stop the
+		 * bidding way after what a feasible problem would require.
+		 */
+		final double pmin = min( p );
+		final double pmax = max( p );
+		final double priceLimit = pmax + ( pmax - pmin ) + 4. * ( n + 1 ) * ( range + epsilon );
+
+		final int[] bidCol = new int[ n ];
+		final double[] bidPrice = new double[ n ];
+		while ( nq > 0 )
+		{
+			if ( null != executor && nq >= numThreads * MIN_BIDDERS_PER_THREAD )
+			{
+				/*
+				 * Jacobi bidding: bids are computed in parallel against the
+				 * same prices.
+				 */
+
+				final int[] bidders = queue;
+				final int chunk = ( nq + numThreads - 1 ) / numThreads;
+				final List< Callable< Void > > tasks = new ArrayList< Callable< Void > >( numThreads );
+				for ( int from = 0; from < nq; from += chunk )
+				{
+					final int lfrom = from;
+					final int lto = Math.min( nq, from + chunk );
+					tasks.add( new Callable< Void >()
+					{
+						@Override
+						public Void call() throws Exception
+						{
+							for ( int q = lfrom; q < lto; q++ )
+							{
+								bid( bidders[ q ], p, epsilon, range, bidCol, bidPrice, q );
+							}
+							return null;
+						}
+					} );
+				}
+				try
+				{
+					final List< Future< Void > > futures = executor.invokeAll( tasks );
+					for ( final Future< Void > future : futures )
+					{
+						future.get();
+					}
+				}
+				catch ( final InterruptedException e )
+				{
+					errorMessage = BASE_ERROR_MESSAGE + "Bidding was interrupted.";
+					return false;
+				}
+				catch ( final ExecutionException e )
+				{
+					errorMessage = BASE_ERROR_MESSAGE + "Problem while bidding: " + e.getMessage();
+					return false;
+				}
+
+				// Resolve conflicts: the highest bid wins.
+				int nn = 0;
+				for ( int q = 0; q < nq; q++ )
+				{
+					final int i = queue[ q ];
+					final int j = bidCol[ q ];
+					if ( bidPrice[ q ] > p[ j ] )
+					{
+						final int previous = y[ j ];
+						if ( previous >= 0 )
+						{
+							x[ previous ] = -1;
+							next[ nn++ ] = previous;
+						}
+						x[ i ] = j;
+						y[ j ] = i;
+						p[ j ] = bidPrice[ q ];
+						if ( p[ j ] > priceLimit )
+						{
+							errorMessage = BASE_ERROR_MESSAGE + "The cost matrix does not admit a complete assignment.";
+							return false;
+						}
+					}
+					else
+					{
+						next[ nn++ ] = i;
+					}
+				}
+				final int[] tmp = queue;
+				queue = next;
+				next = tmp;
+				nq = nn;
+			}
+			else
+			{
+				/*
+				 * Gauss-Seidel bidding: each bid is applied immediately.
+				 */
+
+				final int i = queue[ --nq ];
+				bid( i, p, epsilon, range, bidCol, bidPrice, 0 );
+				final int j = bidCol[ 0 ];
+				final int previous = y[ j ];
+				if ( previous >= 0 )
+				{
+					x[ previous ] = -1;
+					queue[ nq++ ] = previous;
+				}
+				x[ i ] = j;
+				y[ j ] = i;
+				p[ j ] = bidPrice[ 0 ];
+				if ( p[ j ] > priceLimit )
+				{
+					errorMessage = BASE_ERROR_MESSAGE + "The cost matrix does not admit a complete assignment.";
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the bid of row <code>i</code> and stores it at index
+	 * <code>q</code> of the specified arrays.
+	 */
+	private void bid( final int i, final double[] p, final double epsilon, final double range, final int[] bidCol, final double[] bidPrice, final int q )
+	{
+		double w1 = Double.POSITIVE_INFINITY;
+		double w2 = Double.POSITIVE_INFINITY;
+		int j1 = -1;
+		for ( int k = cm.start( i ); k < cm.start( i ) + cm.number( i ); k++ )
+		{
+			final int j = cm.column( i, k );
+			final double w = cm.cost( k ) + p[ j ];
+			if ( w < w1 )
+			{
+				w2 = w1;
+				w1 = w;
+				j1 = j;
+			}
+			else if ( w < w2 )
+			{
+				w2 = w;
+			}
+		}
+		if ( Double.isInfinite( w2 ) )
+		{
+			// Only one column for this row.
+			w2 = w1 + range;
+		}
+		bidCol[ q ] = j1;
+		bidPrice[ q ] = p[ j1 ] + ( w2 - w1 ) + epsilon;
+	}
+
+	private double getPrecision()
+	{
+		if ( !Double.isNaN( precision ) ) { return precision; }
+
+		boolean integers = true;
+		double max = 0.;
+		for ( int k = 0; k < cm.getCardinality(); k++ )
+		{
+			final double c = cm.cost( k );
+			if ( integers && c != Math.floor( c ) )
+			{
+				integers = false;
+			}
+			if ( Math.abs( c ) > max )
+			{
+				max = Math.abs( c );
+			}
+		}
+		if ( integers ) { return 1.; }
+		return max > 0. ? 1e-6 * max : 1e-6;
+	}
+
+	private static final double min( final double[] arr )
+	{
+		double min = Double.POSITIVE_INFINITY;
+		for ( final double d : arr )
+		{
+			if ( d < min )
+			{
+				min = d;
+			}
+		}
+		return min;
+	}
+
+	private static final double max( final double[] arr )
+	{
+		double max = Double.NEGATIVE_INFINITY;
+		for ( final double d : arr )
+		{
+			if ( d > max )
+			{
+				max = d;
+			}
+		}
+		return max;
+	}
+
+	/*
+	 * ALGORITHM METHODS
+	 */
+
+	@Override
+	public boolean checkInput()
+	{
+		if ( cm.getNRows() != cm.getNCols() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "This solver only accepts square cost matrices. Found " + cm.getNRows() + " rows and " + cm.getNCols() + " columns.";
+			return false;
+		}
+		for ( int i = 0; i < cm.getNRows(); i++ )
+		{
+			if ( cm.number( i ) == 0 )
+			{
+				errorMessage = BASE_ERROR_MESSAGE + "The row " + i + " of the cost matrix has no cost. It cannot be assigned.";
+				return false;
+			}
+		}
+		if ( !Double.isNaN( precision ) && precision <= 0 )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The precision must be strictly positive. Found " + precision + ".";
+			return false;
+		}
+		if ( null != initialPrices && initialPrices.length != cm.getNCols() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The initial column prices must have one element per column. Found " + initialPrices.length + " for " + cm.getNCols() + " columns.";
+			return false;
+		}
+		if ( null != initialPrices && null != initialAssignment && initialAssignment.length != cm.getNRows() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The initial assignment must have one element per row. Found " + initialAssignment.length + " for " + cm.getNRows() + " rows.";
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	@Override
+	public long getProcessingTime()
+	{
+		return processingTime;
+	}
+
+	/**
+	 * Returns the auction results as row assignments. The row <code>i</code>
+	 * is associated to the column <code>x[i]</code> in the cost matrix.
+	 *
+	 * @return the row assignments as an <code>int[]</code> array. This array is
+	 *         re-instantiated upon calling {@link #process()}.
+	 */
+	@Override
+	public int[] getResult()
+	{
+		return output;
+	}
+
+	/**
+	 * Returns the column prices (dual variables) of the solution, following
+	 * the convention of {@link LAPJV}.
+	 *
+	 * @return the column prices as a <code>double[]</code> array. This array
+	 *         is re-instantiated upon calling {@link #process()}.
+	 */
+	@Override
+	public double[] getColumnPrices()
+	{
+		return prices;
+	}
+
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+}
@@ -0,0 +1,352 @@
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+/**
+ * A memory-efficient variant of {@link SparseCostMatrix}.
+ * <p>
+ * Costs are stored as <code>float</code>s, and column indices as 16-bit
+ * offsets to the first column of their row. With the <code>double</code> costs
+ * and <code>int</code> column indices of the {@link SparseCostMatrix}, a cost
+ * takes 12 bytes, and a row 8 bytes. Here a cost takes 6 bytes, and a row 8
+ * bytes as well. For the matrices built by the {@link JaqamanLinker}, with 2
+ * or 3 costs per row, this is about 40% less memory.
+ * <p>
+ * Rows whose columns span 65536 columns or more cannot use 16-bit offsets. The
+ * column indices of their costs are stored as <code>int</code>s, in a separate
+ * table that is only allocated if there are such rows. For the
+ * {@link JaqamanLinker} matrices, this only happens beyond 65536 objects per
+ * frame.
+ * <p>
+ * Costs are rounded to the nearest <code>float</code> upon construction, and
+ * are returned as the exact <code>double</code> value of this
+ * <code>float</code>. Two different costs may therefore become equal, but
+ * solvers see exactly the same values from one run to another, and resolve
+ * such ties deterministically, in column order.
+ * <p>
+ * This class is immutable, and is accessed through the
+ * {@link SparseCostMatrixAccess} interface.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ * @see SparseCostMatrix
+ */
+public class CompactSparseCostMatrix implements SparseCostMatrixAccess
+{
+
+	/**
+	 * The largest column offset that can be stored.
+	 */
+	private static final int MAX_OFFSET = Character.MAX_VALUE;
+
+	/**
+	 * The linear array of non-infinite costs.
+	 */
+	private final float[] cc;
+
+	/**
+	 * The offset of the column of each cost to the first column of its row.
+	 * Unused for wide rows.
+	 */
+	private final char[] offsets;
+
+	/**
+	 * For each row, the column index its offsets are relative to. For wide
+	 * rows, it is <code>-1 - w</code>, where <code>w</code> is the index of
+	 * the row in {@link #wideShift}.
+	 */
+	private final int[] base;
+
+	/**
+	 * The column indices of the costs of the wide rows, one after the other.
+	 * <code>null</code> if there are no wide rows.
+	 */
+	private final int[] wideColumns;
+
+	/**
+	 * For each wide row, what to add to the index of one of its costs in
+	 * {@link #cc} to get the index of its column in {@link #wideColumns}.
+	 */
+	private final int[] wideShift;
+
+	/**
+	 * The array of indices in {@link #cc} where each row starts. Has
+	 * <code>nRows + 1</code> elements.
+	 */
+	private final int[] start;
+
+	private final int nRows;
+
+	private final int nCols;
+
+	private final int cardinality;
+
+	/**
+	 * Instantiates a new compact sparse cost matrix. The arrays follow the
+	 * same convention as for
+	 * {@link SparseCostMatrix#SparseCostMatrix(double[], int[], int[], int)}.
+	 * The cost array is kept by this instance, the other ones are not.
+	 *
+	 * @param cc
+	 *            the cost array.
+	 * @param kk
+	 *            the column index of each cost.
+	 * @param number
+	 *            the number of element for each row.
+	 * @param nCols
+	 *            the number of columns.
+	 * @throws IllegalArgumentException
+	 *             if the cost and column arrays are not of the same size, if
+	 *             the column array is not sorted row by row, if one row or one
+	 *             column has 0 non-infinite costs, or if a cost is not finite.
+	 */
+	public CompactSparseCostMatrix( final float[] cc, final int[] kk, final int[] number, final int nCols )
+	{
+		if ( cc.length != kk.length ) { throw new IllegalArgumentException( "Cost and column indices arrays must have the same length. Found " + cc.length + " and " + kk.length + "." ); }
+		for ( int k = 0; k < cc.length; k++ )
+		{
+			if ( Float.isInfinite( cc[ k ] ) || Float.isNaN( cc[ k ] ) ) { throw new IllegalArgumentException( "All the costs must be finite floats. Found " + cc[ k ] + " at index " + k + "." ); }
+		}
+
+		this.cc = cc;
+		this.nCols = nCols;
+		this.nRows = number.length;
+		this.cardinality = cc.length;
+		this.start = new int[ nRows + 1 ];
+		for ( int i = 0; i < nRows; i++ )
+		{
+			start[ i + 1 ] = start[ i ] + number[ i ];
+		}
+
+		/*
+		 * Check columns and count wide rows.
+		 */
+
+		final boolean[] colHit = new boolean[ nCols ];
+		int nWideRows = 0;
+		int nWideCosts = 0;
+		for ( int i = 0; i < nRows; i++ )
+		{
+			if ( number[ i ] == 0 ) { throw new IllegalArgumentException( "All the rows must have at least one cost. Row " + i + " have none." ); }
+			int previousK = -1;
+			for ( int kj = start[ i ]; kj < start[ i + 1 ]; kj++ )
+			{
+				final int k = kk[ kj ];
+				if ( k >= nCols ) { throw new IllegalArgumentException( "At line " + i + ", the column indices array contains a column index (" + k + ") that is larger than or equal to the declared number of column (" + nCols + ")." ); }
+				if ( k <= previousK ) { throw new IllegalArgumentException( "The column indices array must be sorted within each row. The column elements at line " + i + " are not properly sorted." ); }
+				colHit[ k ] = true;
+				previousK = k;
+			}
+			if ( kk[ start[ i + 1 ] - 1 ] - kk[ start[ i ] ] > MAX_OFFSET )
+			{
+				nWideRows++;
+				nWideCosts += number[ i ];
+			}
+		}
+
+		for ( int j = 0; j < nCols; j++ )
+		{
+			if ( !colHit[ j ] ) { throw new IllegalArgumentException( "All the columns must have at least one cost. The column " + j + " has none." ); }
+		}
+
+		/*
+		 * Store column offsets.
+		 */
+
+		this.offsets = new char[ cardinality ];
+		this.base = new int[ nRows ];
+		this.wideColumns = nWideRows > 0 ? new int[ nWideCosts ] : null;
+		this.wideShift = new int[ nWideRows ];
+		int w = 0;
+		int wideIndex = 0;
+		for ( int i = 0; i < nRows; i++ )
+		{
+			final int first = kk[ start[ i ] ];
+			if ( kk[ start[ i + 1 ] - 1 ] - first > MAX_OFFSET )
+			{
+				base[ i ] = -1 - w;
+				wideShift[ w ] = wideIndex - start[ i ];
+				for ( int kj = start[ i ]; kj < start[ i + 1 ]; kj++ )
+				{
+					wideColumns[ wideIndex++ ] = kk[ kj ];
+				}
+				w++;
+			}
+			else
+			{
+				base[ i ] = first;
+				for ( int kj = start[ i ]; kj < start[ i + 1 ]; kj++ )
+				{
+					offsets[ kj ] = ( char ) ( kk[ kj ] - first );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Instantiates a compact copy of the specified sparse cost matrix.
+	 *
+	 * @param cm
+	 *            the matrix to copy.
+	 */
+	public CompactSparseCostMatrix( final SparseCostMatrix cm )
+	{
+		this( toFloat( cm.cc ), cm.kk, cm.number, cm.nCols );
+	}
+
+	/**
+	 * Rounds the specified costs to the nearest <code>float</code>.
+	 *
+	 * @param cc
+	 *            the costs.
+	 * @return a new <code>float[]</code> array.
+	 */
+	public static final float[] toFloat( final double[] cc )
+	{
+		final float[] fc = new float[ cc.length ];
+		for ( int k = 0; k < cc.length; k++ )
+		{
+			fc[ k ] = ( float ) cc[ k ];
+		}
+		return fc;
+	}
+
+	@Override
+	public int getNRows()
+	{
+		return nRows;
+	}
+
+	@Override
+	public int getNCols()
+	{
+		return nCols;
+	}
+
+	@Override
+	public int getCardinality()
+	{
+		return cardinality;
+	}
+
+	/**
+	 * Returns the number of rows whose columns span too many columns to be
+	 * stored as 16-bit offsets.
+	 *
+	 * @return the number of wide rows.
+	 */
+	public int getNWideRows()
+	{
+		return wideShift.length;
+	}
+
+	@Override
+	public final int start( final int i )
+	{
+		return start[ i ];
+	}
+
+	@Override
+	public final int number( final int i )
+	{
+		return start[ i + 1 ] - start[ i ];
+	}
+
+	@Override
+	public final int column( final int i, final int k )
+	{
+		final int b = base[ i ];
+		if ( b >= 0 ) { return b + offsets[ k ]; }
+		return wideColumns[ k + wideShift[ -1 - b ] ];
+	}
+
+	@Override
+	public final double cost( final int k )
+	{
+		return cc[ k ];
+	}
+
+	@Override
+	public final int find( final int i, final int j )
+	{
+		final int b = base[ i ];
+		if ( b < 0 )
+		{
+			final int shift = wideShift[ -1 - b ];
+			int low = start[ i ];
+			int high = start[ i + 1 ] - 1;
+			while ( low <= high )
+			{
+				final int mid = ( low + high ) >>> 1;
+				final int val = wideColumns[ mid + shift ];
+				if ( val < j )
+				{
+					low = mid + 1;
+				}
+				else if ( val > j )
+				{
+					high = mid - 1;
+				}
+				else
+				{
+					return mid;
+				}
+			}
+			return -1;
+		}
+
+		final int offset = j - b;
+		if ( offset < 0 || offset > MAX_OFFSET ) { return -1; }
+
+		final char key = ( char ) offset;
+		int low = start[ i ];
+		int high = start[ i + 1 ] - 1;
+		while ( low <= high )
+		{
+			final int mid = ( low + high ) >>> 1;
+			final char val = offsets[ mid ];
+			if ( val < key )
+			{
+				low = mid + 1;
+			}
+			else if ( val > key )
+			{
+				high = mid - 1;
+			}
+			else
+			{
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public double get( final int i, final int j, final double missingValue )
+	{
+		final int k = find( i, j );
+		if ( k < 0 )
+		{
+			return missingValue;
+		}
+		else
+		{
+			return cc[ k ];
+		}
+	}
+
+	@Override
+	public double totalAssignmentCost( final int[] rowAssignment )
+	{
+		double sum = 0;
+		for ( int i = 0; i < rowAssignment.length; i++ )
+		{
+			final int kj = find( i, rowAssignment[ i ] );
+			sum += cc[ kj ];
+		}
+		return sum;
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString() + "\n  " + nRows + " × " + nCols + " compact matrix with " + cardinality + " non-null elements, " + getNWideRows() + " of the rows with 32-bit column indices.";
+	}
+}
@@ -0,0 +1,222 @@
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+import java.util.Arrays;
+
+import fiji.plugin.trackmate.tracking.oldlap.hungarian.AssignmentAlgorithm;
+import fiji.plugin.trackmate.tracking.oldlap.hungarian.JonkerVolgenantAlgorithm;
+
+/**
+ * Adapts the dense solvers of the {@link AssignmentAlgorithm} family to the
+ * {@link LAPSolver} interface.
+ * <p>
+ * The sparse cost matrix is expanded to a full <code>double[][]</code> matrix,
+ * in which missing costs are set to {@link Double#MAX_VALUE}, and handed to the
+ * dense algorithm. This costs memory and time proportional to the number of
+ * rows times the number of columns, but the dense algorithms have a smaller
+ * constant than the sparse ones and win on small or dense problems.
+ * <p>
+ * The dense algorithms do not accept a starting point nor report the column
+ * prices of their solution: warm starts are ignored, and the column prices are
+ * all <code>NaN</code>. Only square cost matrices that admit at least one
+ * complete assignment are accepted.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ */
+public class DenseLAPSolver implements LAPSolver
+{
+
+	private static final String BASE_ERROR_MESSAGE = "[DenseLAPSolver] ";
+
+	private int[] output;
+
+	private String errorMessage;
+
+	private long processingTime;
+
+	private final SparseCostMatrixAccess cm;
+
+	private final AssignmentAlgorithm algorithm;
+
+	private double[] prices;
+
+	/**
+	 * Instantiates a new solver for the specified sparse cost matrix, that
+	 * delegates to the specified dense algorithm.
+	 *
+	 * @param cm
+	 *            the cost matrix of the linear assignment problem to solve.
+	 * @param algorithm
+	 *            the dense algorithm to use.
+	 */
+	public DenseLAPSolver( final SparseCostMatrixAccess cm, final AssignmentAlgorithm algorithm )
+	{
+		this.cm = cm;
+		this.algorithm = algorithm;
+	}
+
+	/**
+	 * Instantiates a new solver for the specified sparse cost matrix, that
+	 * delegates to the dense {@link JonkerVolgenantAlgorithm}.
+	 *
+	 * @param cm
+	 *            the cost matrix of the linear assignment problem to solve.
+	 */
+	public DenseLAPSolver( final SparseCostMatrixAccess cm )
+	{
+		this( cm, new JonkerVolgenantAlgorithm() );
+	}
+
+	/**
+	 * Returns a factory that instantiates this solver with the dense
+	 * {@link JonkerVolgenantAlgorithm}.
+	 *
+	 * @return a new {@link LAPSolverFactory}.
+	 */
+	public static LAPSolverFactory factory()
+	{
+		return factory( new JonkerVolgenantAlgorithm() );
+	}
+
+	/**
+	 * Returns a factory that instantiates this solver with the specified dense
+	 * algorithm. Since the algorithm instance is shared by all the solvers it
+	 * creates, the factory must only be used by one thread if the algorithm
+	 * has a state.
+	 *
+	 * @param algorithm
+	 *            the dense algorithm.
+	 * @return a new {@link LAPSolverFactory}.
+	 */
+	public static LAPSolverFactory factory( final AssignmentAlgorithm algorithm )
+	{
+		return new LAPSolverFactory()
+		{
+			@Override
+			public LAPSolver create( final SparseCostMatrixAccess cm )
+			{
+				return new DenseLAPSolver( cm, algorithm );
+			}
+
+			@Override
+			public boolean isSparse()
+			{
+				return false;
+			}
+
+			@Override
+			public boolean supportsWarmStart()
+			{
+				return false;
+			}
+
+			@Override
+			public boolean isMultiThreaded()
+			{
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Does nothing: the dense algorithms always start from scratch.
+	 */
+	@Override
+	public void setWarmStart( final double[] columnPrices, final int[] rowAssignment )
+	{}
+
+	@Override
+	public boolean checkInput()
+	{
+		if ( cm.getNRows() != cm.getNCols() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "This solver only accepts square cost matrices. Found " + cm.getNRows() + " rows and " + cm.getNCols() + " columns.";
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+
+		final int nRows = cm.getNRows();
+		final int nCols = cm.getNCols();
+		final double[][] full = new double[ nRows ][ nCols ];
+		for ( int i = 0; i < nRows; i++ )
+		{
+			final double[] row = full[ i ];
+			Arrays.fill( row, Double.MAX_VALUE );
+			for ( int k = cm.start( i ); k < cm.start( i ) + cm.number( i ); k++ )
+			{
+				row[ cm.column( i, k ) ] = cm.cost( k );
+			}
+		}
+
+		final int[][] solutions = algorithm.computeAssignments( full );
+
+		final int[] x = new int[ nRows ];
+		Arrays.fill( x, -1 );
+		for ( final int[] solution : solutions )
+		{
+			if ( solution.length == 0 )
+			{
+				continue;
+			}
+			final int i = solution[ 0 ];
+			final int j = solution[ 1 ];
+			if ( cm.find( i, j ) < 0 )
+			{
+				errorMessage = BASE_ERROR_MESSAGE + "The cost matrix does not admit a complete assignment: row " + i + " could only be assigned to a missing cost.";
+				return false;
+			}
+			x[ i ] = j;
+		}
+		for ( int i = 0; i < nRows; i++ )
+		{
+			if ( x[ i ] < 0 )
+			{
+				errorMessage = BASE_ERROR_MESSAGE + "Row " + i + " was not assigned.";
+				return false;
+			}
+		}
+		output = x;
+
+		prices = new double[ nCols ];
+		Arrays.fill( prices, Double.NaN );
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	@Override
+	public long getProcessingTime()
+	{
+		return processingTime;
+	}
+
+	@Override
+	public int[] getResult()
+	{
+		return output;
+	}
+
+	/**
+	 * Returns <code>NaN</code> for all the columns, for the dense algorithms
+	 * do not report the column prices of their solution.
+	 *
+	 * @return an array of <code>NaN</code>, one per column.
+	 */
+	@Override
+	public double[] getColumnPrices()
+	{
+		return prices;
+	}
+}
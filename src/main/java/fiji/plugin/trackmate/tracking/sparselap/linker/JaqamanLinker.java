@@ -35,6 +35,14 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 
 	private final Logger logger;
 
+	private Map< K, Double > priceHints;
+
+	private Map< J, Double > targetPrices;
+
+	private LAPSolverFactory solverFactory = LAPJV.factory();
+
+	private boolean compactCostMatrix = false;
+
 	/**
 	 * Creates a new linker for the two specified object lists.
 	 *
@@ -92,6 +100,78 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 		return costs;
 	}
 
+	/**
+	 * Returns the dual prices of the targets in the solution of the assignment
+	 * problem. They can be passed to the linker of a similar problem to
+	 * warm-start it.
+	 * <p>
+	 * It takes the shape of a map, such that if <code>target</code> is a key of
+	 * the map, its column in the cost matrix had the price
+	 * <code>price = map.get(target)</code>.
+	 *
+	 * @return the target prices.
+	 * @see #setWarmStart(Map)
+	 */
+	public Map< J, Double > getTargetPrices()
+	{
+		return targetPrices;
+	}
+
+	/**
+	 * Specifies hints to warm-start the solver, typically collected from a
+	 * similar problem solved before.
+	 * <p>
+	 * In frame-to-frame linking, the targets of a frame pair are the sources of
+	 * the next one. If a source was matched when it was a target, its dual
+	 * price is a good guess for the price of the target it will be linked to.
+	 * For each source in the map, the specified price is therefore given to its
+	 * cheapest target, which is also tentatively assigned to it. The solver
+	 * discards these guesses if they turn out to be inconsistent, so the
+	 * solution found is always optimal.
+	 *
+	 * @param priceHints
+	 *            a map from sources to the price expected for their target. If
+	 *            <code>null</code>, the solver starts from scratch.
+	 * @see #getTargetPrices()
+	 */
+	public void setWarmStart( final Map< K, Double > priceHints )
+	{
+		this.priceHints = priceHints;
+	}
+
+	/**
+	 * Sets the factory used to instantiate the solver of the assignment
+	 * problem. By default, the {@link LAPJV} solver is used.
+	 * <p>
+	 * A {@link LAPSolverSelector} can be set instead, to pick the dense or the
+	 * sparse solver depending on the cost matrix. Note that the dense solver
+	 * ignores the prices set with {@link #setWarmStart(Map)}, and reports no
+	 * target prices.
+	 *
+	 * @param solverFactory
+	 *            the solver factory.
+	 */
+	public void setSolverFactory( final LAPSolverFactory solverFactory )
+	{
+		this.solverFactory = solverFactory;
+	}
+
+	/**
+	 * Sets whether the full cost matrix is assembled as a
+	 * {@link CompactSparseCostMatrix}, with <code>float</code> costs and 16-bit
+	 * column offsets. This takes about 40% less memory, at the price
+	 * of rounding costs to the nearest <code>float</code>. It also skips the
+	 * intermediate matrices built when stitching the blocks of the full
+	 * matrix together. By default, a {@link SparseCostMatrix} is used.
+	 *
+	 * @param compactCostMatrix
+	 *            whether to use a compact cost matrix.
+	 */
+	public void setCompactCostMatrix( final boolean compactCostMatrix )
+	{
+		this.compactCostMatrix = compactCostMatrix;
+	}
+
 	@Override
 	public boolean checkInput()
 	{
@@ -123,6 +203,7 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 		{
 			assignments = Collections.emptyMap();
 			costs = Collections.emptyMap();
+			targetPrices = Collections.emptyMap();
 			final long end = System.currentTimeMillis();
 			processingTime = end - start;
 			return true;
@@ -173,20 +254,61 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 		 * extend a bit the u-track code.
 		 */
 		final double minCost = Math.min( Util.min( ccbl ), Util.min( cctr ) );
-		final SparseCostMatrix br = tl.transpose();
-		br.fillWith( minCost );
 
 		/*
 		 * Stitch them together
 		 */
-		final SparseCostMatrix full = ( tl.hcat( tr ) ).vcat( bl.hcat( br ) );
+		final SparseCostMatrixAccess full;
+		if ( compactCostMatrix )
+		{
+			full = assembleCompact( tl, cctr, ccbl, minCost );
+		}
+		else
+		{
+			final SparseCostMatrix br = tl.transpose();
+			br.fillWith( minCost );
+			full = ( tl.hcat( tr ) ).vcat( bl.hcat( br ) );
+		}
 		logger.setProgress( 0.6 );
 
 		/*
 		 * Solve the full cost matrix.
 		 */
 		logger.setStatus( "Solving the cost matrix..." );
-		final LAPJV solver = new LAPJV( full );
+		final LAPSolver solver = solverFactory.create( full );
+		if ( null != priceHints && !priceHints.isEmpty() )
+		{
+			final double[] v0 = new double[ full.getNCols() ];
+			Arrays.fill( v0, Double.NaN );
+			final int[] x0 = new int[ full.getNRows() ];
+			Arrays.fill( x0, -1 );
+			for ( int i = 0; i < nRows; i++ )
+			{
+				final Double price = priceHints.get( matrixRows.get( i ) );
+				if ( null == price )
+				{
+					continue;
+				}
+				// Cheapest target of this source.
+				int jmin = -1;
+				double cmin = Double.MAX_VALUE;
+				for ( int k = tl.start[ i ]; k < tl.start[ i ] + tl.number[ i ]; k++ )
+				{
+					if ( tl.cc[ k ] < cmin )
+					{
+						cmin = tl.cc[ k ];
+						jmin = tl.kk[ k ];
+					}
+				}
+				if ( jmin < 0 || !Double.isNaN( v0[ jmin ] ) )
+				{
+					continue;
+				}
+				v0[ jmin ] = price.doubleValue();
+				x0[ i ] = jmin;
+			}
+			solver.setWarmStart( v0, x0 );
+		}
 		if ( !solver.checkInput() || !solver.process() )
 		{
 			errorMessage = solver.getErrorMessage();
@@ -210,6 +332,18 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 			}
 		}
 
+		final double[] v = solver.getColumnPrices();
+		targetPrices = new HashMap< J, Double >( matrixCols.size() );
+		for ( int j = 0; j < matrixCols.size(); j++ )
+		{
+			// Solvers that do not support warm starts report unknown prices.
+			if ( Double.isNaN( v[ j ] ) )
+			{
+				continue;
+			}
+			targetPrices.put( matrixCols.get( j ), Double.valueOf( v[ j ] ) );
+		}
+
 		logger.setProgress( 1 );
 		logger.setStatus( "" );
 		final long end = System.currentTimeMillis();
@@ -218,6 +352,67 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 		return true;
 	}
 
+	/**
+	 * Assembles the full cost matrix <code>[[tl, tr], [bl, br]]</code>
+	 * directly in compact form, where <code>tr</code> and <code>bl</code> are
+	 * diagonal and <code>br</code> has the sparsity pattern of the transpose
+	 * of <code>tl</code>.
+	 */
+	private static final CompactSparseCostMatrix assembleCompact( final SparseCostMatrix tl, final double[] cctr, final double[] ccbl, final double minCost )
+	{
+		final int nRows = tl.nRows;
+		final int nCols = tl.nCols;
+		final int cardinality = 2 * tl.cardinality + nRows + nCols;
+		final float[] cc = new float[ cardinality ];
+		final int[] kk = new int[ cardinality ];
+		final int[] number = new int[ nRows + nCols ];
+
+		// Number of costs per row of the bottom half.
+		final int[] pos = new int[ nCols ];
+		for ( int k = 0; k < tl.cardinality; k++ )
+		{
+			pos[ tl.kk[ k ] ]++;
+		}
+
+		// Top half: tl then tr.
+		int index = 0;
+		for ( int i = 0; i < nRows; i++ )
+		{
+			for ( int k = tl.start[ i ]; k < tl.start[ i ] + tl.number[ i ]; k++ )
+			{
+				cc[ index ] = ( float ) tl.cc[ k ];
+				kk[ index ] = tl.kk[ k ];
+				index++;
+			}
+			cc[ index ] = ( float ) cctr[ i ];
+			kk[ index ] = nCols + i;
+			index++;
+			number[ i ] = tl.number[ i ] + 1;
+		}
+
+		// Bottom half: bl then br, br filled by iterating over tl rows.
+		for ( int j = 0; j < nCols; j++ )
+		{
+			number[ nRows + j ] = pos[ j ] + 1;
+			cc[ index ] = ( float ) ccbl[ j ];
+			kk[ index ] = j;
+			pos[ j ] = index + 1;
+			index += number[ nRows + j ];
+		}
+		final float fMinCost = ( float ) minCost;
+		for ( int i = 0; i < nRows; i++ )
+		{
+			for ( int k = tl.start[ i ]; k < tl.start[ i ] + tl.number[ i ]; k++ )
+			{
+				final int p = pos[ tl.kk[ k ] ]++;
+				cc[ p ] = fMinCost;
+				kk[ p ] = nCols + i;
+			}
+		}
+
+		return new CompactSparseCostMatrix( cc, kk, number, nCols + nRows );
+	}
+
 	public String resultToString()
 	{
 		if ( null == assignments ) { return "Not solved yet. Process the algorithm prior to calling this method."; }
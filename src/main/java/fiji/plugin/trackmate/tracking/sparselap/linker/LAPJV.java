@@ -6,15 +6,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import net.imglib2.algorithm.Benchmark;
-import net.imglib2.algorithm.OutputAlgorithm;
-import net.imglib2.util.Util;
-
 /**
  * Implements the Jonker-Volgenant algorithm for linear assignment problems,
  * tailored for sparse cost matrices.
  * <p>
- * We rely on the {@link SparseCostMatrix} class to represent these costs. The
+ * We rely on the {@link SparseCostMatrix} class, or on its compact variant
+ * {@link CompactSparseCostMatrix}, to represent these costs. The
  * implementation itself is an unlikely mix between:
  * <ul>
  * <li>my (JYT) limited understanding of the original Volgemant paper (
@@ -40,7 +37,7 @@ import net.imglib2.util.Util;
  * @author Johannes Schindelin
  * @see http://www.sciencedirect.com/science/article/pii/030505489600010X#
  */
-public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
+public class LAPJV implements LAPSolver
 {
 
 	private static final String BASE_ERROR_MESSAGE = "[JonkerVolgenantSparseAlgorithm] ";
@@ -51,7 +48,15 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 
 	private long processingTime;
 
-	private final SparseCostMatrix cm;
+	private final SparseCostMatrixAccess cm;
+
+	private double[] initialPrices;
+
+	private int[] initialAssignment;
+
+	private double[] prices;
+
+	private final LAPJVWorkspace workspace;
 
 	/**
 	 * Instantiates a new Jonker-Volgenant algorithm for the specified sparse
@@ -60,9 +65,129 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 	 * @param cm
 	 *            the cost matrix of the linear assignment problem to solve.
 	 */
-	public LAPJV( final SparseCostMatrix cm )
+	public LAPJV( final SparseCostMatrixAccess cm )
+	{
+		this( cm, null );
+	}
+
+	/**
+	 * Instantiates a new Jonker-Volgenant algorithm for the specified sparse
+	 * cost matrix, that uses the specified working buffers.
+	 *
+	 * @param cm
+	 *            the cost matrix of the linear assignment problem to solve.
+	 * @param workspace
+	 *            the working buffers to use. They are grown if needed. If
+	 *            <code>null</code>, new buffers are allocated for each call to
+	 *            {@link #process()}.
+	 */
+	public LAPJV( final SparseCostMatrixAccess cm, final LAPJVWorkspace workspace )
 	{
 		this.cm = cm;
+		this.workspace = workspace;
+	}
+
+	/**
+	 * Returns a factory that instantiates this solver.
+	 *
+	 * @return a new {@link LAPSolverFactory}.
+	 */
+	public static LAPSolverFactory factory()
+	{
+		return new LAPSolverFactory()
+		{
+			@Override
+			public LAPSolver create( final SparseCostMatrixAccess cm )
+			{
+				return new LAPJV( cm );
+			}
+
+			@Override
+			public boolean isSparse()
+			{
+				return true;
+			}
+
+			@Override
+			public boolean supportsWarmStart()
+			{
+				return true;
+			}
+
+			@Override
+			public boolean isMultiThreaded()
+			{
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns a factory that instantiates this solver with the specified
+	 * working buffers. Since these buffers are shared by all the solvers it
+	 * creates, the factory must only be used by one thread.
+	 *
+	 * @param workspace
+	 *            the working buffers.
+	 * @return a new {@link LAPSolverFactory}.
+	 */
+	public static LAPSolverFactory factory( final LAPJVWorkspace workspace )
+	{
+		return new LAPSolverFactory()
+		{
+			@Override
+			public LAPSolver create( final SparseCostMatrixAccess cm )
+			{
+				return new LAPJV( cm, workspace );
+			}
+
+			@Override
+			public boolean isSparse()
+			{
+				return true;
+			}
+
+			@Override
+			public boolean supportsWarmStart()
+			{
+				return true;
+			}
+
+			@Override
+			public boolean isMultiThreaded()
+			{
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Specifies a starting point for the next call to {@link #process()}, for
+	 * instance the solution of a similar, previously solved problem.
+	 * <p>
+	 * When set, the column reduction and reduction transfer steps are skipped.
+	 * The specified column prices (dual variables) are used instead, and the
+	 * specified row assignments are kept if they are consistent with these
+	 * prices, that is if the assigned column has the minimal reduced cost in
+	 * its row. Inconsistent row assignments are discarded, so that the
+	 * solution found is optimal whatever the quality of the initial guess.
+	 *
+	 * @param columnPrices
+	 *            the initial column prices, one per column of the cost matrix.
+	 *            <code>NaN</code> values specify unknown prices, which are
+	 *            initialized by column reduction. If <code>null</code>, the
+	 *            solver starts from scratch.
+	 * @param rowAssignment
+	 *            the initial partial assignment, such that row <code>i</code>
+	 *            is assigned to column <code>rowAssignment[i]</code>, or
+	 *            <code>-1</code> if it is unassigned. Can be <code>null</code>.
+	 * @see #getColumnPrices()
+	 */
+	@Override
+	public void setWarmStart( final double[] columnPrices, final int[] rowAssignment )
+	{
+		this.initialPrices = columnPrices;
+		this.initialAssignment = rowAssignment;
 	}
 
 	@Override
@@ -70,91 +195,103 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 	{
 		final long start = System.currentTimeMillis();
 
-		final int[] x = new int[ cm.nRows ];
-		final int[] y = new int[ cm.nCols ];
-		final double[] v = new double[ cm.nCols ];
+		final int nRows = cm.getNRows();
+		final int nCols = cm.getNCols();
+		final LAPJVWorkspace ws = null == workspace ? new LAPJVWorkspace() : workspace;
+		ws.ensureCapacity( nRows, nCols );
+
+		final int[] x = ws.x;
+		Arrays.fill( x, 0, nRows, 0 );
+		final int[] y = ws.y;
+		Arrays.fill( y, 0, nCols, 0 );
+		final double[] v = ws.v;
 
-		final int[] col = new int[ cm.nCols ];
-		for ( int j = 0; j < col.length; j++ )
+		final int[] col = ws.col;
+		for ( int j = 0; j < nCols; j++ )
 		{
 			col[ j ] = j;
 		}
 
-		/*
-		 * Column reduction
-		 */
-
-		Arrays.fill( v, Double.MAX_VALUE );
-		for ( int i = 0; i < cm.nRows; i++ )
+		int f = 0;
+		final int[] free = ws.free;
+		if ( null == initialPrices )
 		{
-			for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
+			/*
+			 * Column reduction
+			 */
+
+			Arrays.fill( v, 0, nCols, Double.MAX_VALUE );
+			for ( int i = 0; i < cm.getNRows(); i++ )
 			{
-				final int j = cm.kk[ k ];
-				if ( cm.cc[ k ] < v[ j ] )
+				for ( int k = cm.start( i ); k < cm.start( i ) + cm.number( i ); k++ )
 				{
-					v[ j ] = cm.cc[ k ];
-					y[ j ] = i + 1;
+					final int j = cm.column( i, k );
+					if ( cm.cost( k ) < v[ j ] )
+					{
+						v[ j ] = cm.cost( k );
+						y[ j ] = i + 1;
+					}
 				}
 			}
-		}
 
-		for ( int j = cm.nCols - 1; j >= 0; j-- )
-		{
-			final int i = y[ j ] - 1;
-			if ( x[ i ] == 0 )
-			{
-				x[ i ] = j + 1;
-			}
-			else
+			for ( int j = cm.getNCols() - 1; j >= 0; j-- )
 			{
-				if ( x[ i ] > 0 )
+				final int i = y[ j ] - 1;
+				if ( x[ i ] == 0 )
 				{
-					x[ i ] = -x[ i ];
+					x[ i ] = j + 1;
+				}
+				else
+				{
+					if ( x[ i ] > 0 )
+					{
+						x[ i ] = -x[ i ];
+					}
+					y[ j ] = 0;
 				}
-				y[ j ] = 0;
 			}
-		}
 
-		/*
-		 * Reduction transfer.
-		 */
+			/*
+			 * Reduction transfer.
+			 */
 
-		int f = 0;
-		final int[] free = new int[ cm.nRows ];
-		for ( int i = 0; i < cm.nRows; i++ )
-		{
-			if ( x[ i ] == 0 )
-			{
-				// unassigned row in free-array
-				free[ f++ ] = i;
-				continue;
-			}
-			else if ( x[ i ] < 0 )
-			{
-				// no reduction transfer possible
-				x[ i ] = -x[ i ];
-			}
-			else
+			for ( int i = 0; i < cm.getNRows(); i++ )
 			{
-				// reduction transfer from assigned row
-				final int j1 = x[ i ] - 1;
-				double min = Double.MAX_VALUE;
-				for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
+				if ( x[ i ] == 0 )
+				{
+					// unassigned row in free-array
+					free[ f++ ] = i;
+					continue;
+				}
+				else if ( x[ i ] < 0 )
+				{
+					// no reduction transfer possible
+					x[ i ] = -x[ i ];
+				}
+				else
 				{
-					final int j = cm.kk[ k ];
-					if ( j != j1 )
+					// reduction transfer from assigned row
+					final int j1 = x[ i ] - 1;
+					double min = Double.MAX_VALUE;
+					for ( int k = cm.start( i ); k < cm.start( i ) + cm.number( i ); k++ )
 					{
-						if ( cm.cc[ k ] - v[ j ] < min )
+						final int j = cm.column( i, k );
+						if ( j != j1 )
 						{
-							min = cm.cc[ k ] - v[ j ];
+							if ( cm.cost( k ) - v[ j ] < min )
+							{
+								min = cm.cost( k ) - v[ j ];
+							}
 						}
 					}
+					v[ j1 ] -= min;
 				}
-				v[ j1 ] -= min;
 			}
 		}
-
-		if ( f == 0 ) { return true; }
+		else
+		{
+			f = warmStart( x, y, v, free );
+		}
 
 		/*
 		 * Augmenting row reduction.
@@ -171,10 +308,10 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 				double v0 = Double.MAX_VALUE;
 				int j0 = 0, j1 = -1;
 				double vj = Double.MAX_VALUE;
-				for ( int kj = cm.start[ i ]; kj < cm.start[ i ] + cm.number[ i ]; kj++ )
+				for ( int kj = cm.start( i ); kj < cm.start( i ) + cm.number( i ); kj++ )
 				{
-					final int j = cm.kk[ kj ];
-					final double h = cm.cc[ kj ] - v[ j ];
+					final int j = cm.column( i, kj );
+					final double h = cm.cost( kj ) - v[ j ];
 					if ( h < vj )
 					{
 						if ( h > v0 )
@@ -225,18 +362,18 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 		 */
 
 		final int f0 = f;
-		final double[] d = new double[ cm.nCols ];
-		final int[] pred = new int[ cm.nCols ];
+		final double[] d = ws.d;
+		final int[] pred = ws.pred;
 		for ( f = 0; f < f0; f++ )
 		{
 			final int i1 = free[ f ];
 			int low = 0, up = 0;
 			// initialize d- and pred-array
-			Arrays.fill( d, Double.MAX_VALUE );
-			for ( int k = cm.start[ i1 ]; k < cm.start[ i1 ] + cm.number[ i1 ]; k++ )
+			Arrays.fill( d, 0, nCols, Double.MAX_VALUE );
+			for ( int k = cm.start( i1 ); k < cm.start( i1 ) + cm.number( i1 ); k++ )
 			{
-				final int j = cm.kk[ k ];
-				d[ j ] = cm.cc[ k ] - v[ j ];
+				final int j = cm.column( i1, k );
+				d[ j ] = cm.cost( k ) - v[ j ];
 				pred[ j ] = i1;
 			}
 			int last;
@@ -250,7 +387,7 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 				{
 					last = low;
 					min = d[ col[ up++ ] ];
-					for ( int k = up; k < cm.nCols; k++ )
+					for ( int k = up; k < cm.getNCols(); k++ )
 					{
 						j = col[ k ];
 						final double h = d[ j ];
@@ -280,23 +417,23 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 					final int j1 = col[ low++ ];
 					i = y[ j1 ] - 1;
 
-					final int kj1 = Arrays.binarySearch( cm.kk, cm.start[ i ], cm.start[ i ] + cm.number[ i ], j1 );
+					final int kj1 = cm.find( i, j1 );
 					if ( kj1 < 0 )
 					{
 						continue;
 					}
 
-					final double u1 = cm.cc[ kj1 ] - v[ j1 ] - min;
-					for ( int k = up; k < cm.nCols; k++ )
+					final double u1 = cm.cost( kj1 ) - v[ j1 ] - min;
+					for ( int k = up; k < cm.getNCols(); k++ )
 					{
 						j = col[ k ];
-						final int kj = Arrays.binarySearch( cm.kk, cm.start[ i ], cm.start[ i ] + cm.number[ i ], j );
+						final int kj = cm.find( i, j );
 						if ( kj < 0 )
 						{
 							continue;
 						}
 
-						final double h = cm.cc[ kj ] - v[ j ] - u1;
+						final double h = cm.cost( kj ) - v[ j ] - u1;
 						if ( h < d[ j ] )
 						{
 							d[ j ] = h;
@@ -340,17 +477,123 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 		 * Terminate and prepare outputs.
 		 */
 
-		this.output = new int[ x.length ];
-		for ( int i = 0; i < x.length; i++ )
+		this.output = new int[ nRows ];
+		for ( int i = 0; i < nRows; i++ )
 		{
 			output[ i ] = x[ i ] - 1;
 		}
+		this.prices = Arrays.copyOf( v, nCols );
 
 		final long end = System.currentTimeMillis();
 		processingTime = end - start;
 		return true;
 	}
 
+	/**
+	 * Initializes the column prices and the partial assignment from the warm
+	 * start values, and collects the rows that are left unassigned.
+	 *
+	 * @return the number of free rows stored in the <code>free</code> array.
+	 */
+	private int warmStart( final int[] x, final int[] y, final double[] v, final int[] free )
+	{
+		/*
+		 * Prices. Unknown ones are set by column reduction.
+		 */
+
+		Arrays.fill( v, 0, cm.getNCols(), Double.MAX_VALUE );
+		for ( int i = 0; i < cm.getNRows(); i++ )
+		{
+			for ( int k = cm.start( i ); k < cm.start( i ) + cm.number( i ); k++ )
+			{
+				final int j = cm.column( i, k );
+				if ( Double.isNaN( initialPrices[ j ] ) && cm.cost( k ) < v[ j ] )
+				{
+					v[ j ] = cm.cost( k );
+				}
+			}
+		}
+		for ( int j = 0; j < cm.getNCols(); j++ )
+		{
+			if ( !Double.isNaN( initialPrices[ j ] ) )
+			{
+				v[ j ] = initialPrices[ j ];
+			}
+		}
+
+		/*
+		 * Keep the initial assignments for which the assigned column has the
+		 * minimal reduced cost in the row. Otherwise the augmentation would not
+		 * be optimal.
+		 */
+
+		if ( null != initialAssignment )
+		{
+			for ( int i = 0; i < cm.getNRows(); i++ )
+			{
+				final int j = initialAssignment[ i ];
+				if ( j < 0 || j >= cm.getNCols() || y[ j ] != 0 )
+				{
+					continue;
+				}
+				final int kj = cm.find( i, j );
+				if ( kj < 0 )
+				{
+					continue;
+				}
+				double min = Double.MAX_VALUE;
+				for ( int k = cm.start( i ); k < cm.start( i ) + cm.number( i ); k++ )
+				{
+					final double h = cm.cost( k ) - v[ cm.column( i, k ) ];
+					if ( h < min )
+					{
+						min = h;
+					}
+				}
+				if ( cm.cost( kj ) - v[ j ] <= min )
+				{
+					x[ i ] = j + 1;
+					y[ j ] = i + 1;
+				}
+			}
+		}
+
+		/*
+		 * Remaining rows take their cheapest column if it is still free.
+		 */
+
+		int f = 0;
+		for ( int i = 0; i < cm.getNRows(); i++ )
+		{
+			if ( x[ i ] != 0 )
+			{
+				continue;
+			}
+			double min = Double.MAX_VALUE;
+			int j0 = -1;
+			for ( int k = cm.start( i ); k < cm.start( i ) + cm.number( i ); k++ )
+			{
+				final int j = cm.column( i, k );
+				final double h = cm.cost( k ) - v[ j ];
+				if ( h < min )
+				{
+					min = h;
+					j0 = j;
+				}
+			}
+			if ( j0 >= 0 && y[ j0 ] == 0 )
+			{
+				x[ i ] = j0 + 1;
+				y[ j0 ] = i + 1;
+			}
+			else
+			{
+				free[ f++ ] = i;
+			}
+		}
+		return f;
+	}
+
 	/*
 	 * ALGORITHM METHODS
 	 */
@@ -358,17 +601,31 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 	@Override
 	public boolean checkInput()
 	{
-		if ( cm.nRows > cm.nCols )
+		if ( cm.getNRows() > cm.getNCols() )
 		{
-			errorMessage = BASE_ERROR_MESSAGE + "This solver converges only if the cost matrix has more rows than column. Found " + cm.nRows + " rows and " + cm.nCols + " columns.";
+			errorMessage = BASE_ERROR_MESSAGE + "This solver converges only if the cost matrix has more rows than column. Found " + cm.getNRows() + " rows and " + cm.getNCols() + " columns.";
 			return false;
 		}
-		final double minCost = Util.min( cm.cc );
+		double minCost = Double.POSITIVE_INFINITY;
+		for ( int k = 0; k < cm.getCardinality(); k++ )
+		{
+			minCost = Math.min( minCost, cm.cost( k ) );
+		}
 		if ( minCost < 0 )
 		{
 			errorMessage = BASE_ERROR_MESSAGE + "This solver only accept positive costs. Found " + minCost + ".";
 			return false;
 		}
+		if ( null != initialPrices && initialPrices.length != cm.getNCols() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The initial column prices must have one element per column. Found " + initialPrices.length + " for " + cm.getNCols() + " columns.";
+			return false;
+		}
+		if ( null != initialPrices && null != initialAssignment && initialAssignment.length != cm.getNRows() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The initial assignment must have one element per row. Found " + initialAssignment.length + " for " + cm.getNRows() + " rows.";
+			return false;
+		}
 		return true;
 	}
 
@@ -397,6 +654,20 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 		return output;
 	}
 
+	/**
+	 * Returns the column prices (dual variables) of the solution. They can be
+	 * used to warm-start the resolution of a similar problem.
+	 *
+	 * @return the column prices as a <code>double[]</code> array. This array
+	 *         is re-instantiated upon calling {@link #process()}.
+	 * @see #setWarmStart(double[], int[])
+	 */
+	@Override
+	public double[] getColumnPrices()
+	{
+		return prices;
+	}
+
 	public String resultToString()
 	{
 		return resultToString( Collections.emptyList(), Collections.emptyList() );
@@ -406,13 +677,13 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 	{
 		if ( null == output ) { return "Not solved yet. Process the algorithm prior to calling this method."; }
 
-		final String[] colNames = new String[ cm.nCols ];
+		final String[] colNames = new String[ cm.getNCols() ];
 		// default names
 		for ( int j = 0; j < colNames.length; j++ )
 		{
 			colNames[ j ] = "" + j;
 		}
-		final String[] rowNames = new String[ cm.nRows ];
+		final String[] rowNames = new String[ cm.getNRows() ];
 		for ( int i = 0; i < rowNames.length; i++ )
 		{
 			rowNames[ i ] = "" + i;
@@ -492,7 +763,7 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 			}
 			str.append( String.format( " cost = %" + digits + ".1f\n", cost ) );
 		}
-		if ( cm.nCols > cm.nRows )
+		if ( cm.getNCols() > cm.getNRows() )
 		{
 			str.append( "Unassigned columns:\n" );
 			for ( final String ucn : unassignedColNames )
@@ -0,0 +1,75 @@
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+/**
+ * Working buffers of the {@link LAPJV} solver, that can be reused across
+ * repeated solves.
+ * <p>
+ * Buffers grow to fit the largest cost matrix solved so far, and never
+ * shrink. Reusing one instance for many small problems, as in frame-to-frame
+ * linking, therefore avoids allocating them for every solve.
+ * <p>
+ * This class is not thread-safe: an instance must only be used by one solver
+ * at a time. Typically, each worker thread holds its own.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ */
+public class LAPJVWorkspace
+{
+
+	int[] x = new int[ 0 ];
+
+	int[] free = new int[ 0 ];
+
+	int[] y = new int[ 0 ];
+
+	int[] col = new int[ 0 ];
+
+	int[] pred = new int[ 0 ];
+
+	double[] v = new double[ 0 ];
+
+	double[] d = new double[ 0 ];
+
+	/**
+	 * Grows the buffers if they are too small for a cost matrix of the
+	 * specified size. Their content is not preserved.
+	 *
+	 * @param nRows
+	 *            the number of rows of the cost matrix.
+	 * @param nCols
+	 *            the number of columns of the cost matrix.
+	 */
+	void ensureCapacity( final int nRows, final int nCols )
+	{
+		if ( x.length < nRows )
+		{
+			final int capacity = grow( x.length, nRows );
+			x = new int[ capacity ];
+			free = new int[ capacity ];
+		}
+		if ( y.length < nCols )
+		{
+			final int capacity = grow( y.length, nCols );
+			y = new int[ capacity ];
+			col = new int[ capacity ];
+			pred = new int[ capacity ];
+			v = new double[ capacity ];
+			d = new double[ capacity ];
+		}
+	}
+
+	/**
+	 * Returns the number of columns the buffers can currently accommodate.
+	 *
+	 * @return the column capacity.
+	 */
+	public int getCapacity()
+	{
+		return y.length;
+	}
+
+	private static final int grow( final int current, final int required )
+	{
+		return Math.max( required, current + ( current >> 1 ) );
+	}
+}
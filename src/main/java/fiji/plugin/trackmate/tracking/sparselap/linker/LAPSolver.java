@@ -0,0 +1,57 @@
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+import net.imglib2.algorithm.Benchmark;
+import net.imglib2.algorithm.OutputAlgorithm;
+
+/**
+ * Interface for solvers of linear assignment problems (LAP) stated on a sparse
+ * cost matrix, accessed through {@link SparseCostMatrixAccess}.
+ * <p>
+ * Solvers minimize the total assignment cost. Their result is the row
+ * assignment: the row <code>i</code> is associated to the column
+ * <code>x[i]</code> of the cost matrix. Solvers also report the column prices
+ * (dual variables) of the solution, following the convention that the reduced
+ * cost of the assignment of row <code>i</code> to column <code>j</code> is
+ * <code>c(i,j) - v[j]</code>. These prices can be used to warm-start the
+ * resolution of a similar problem, possibly by another solver.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ */
+public interface LAPSolver extends OutputAlgorithm< int[] >, Benchmark
+{
+
+	/**
+	 * Specifies a starting point for the next call to {@link #process()}, for
+	 * instance the solution of a similar, previously solved problem. The
+	 * solution found must not depend on the quality of this initial guess.
+	 *
+	 * @param columnPrices
+	 *            the initial column prices, one per column of the cost matrix.
+	 *            <code>NaN</code> values specify unknown prices. If
+	 *            <code>null</code>, the solver starts from scratch.
+	 * @param rowAssignment
+	 *            the initial partial assignment, such that row <code>i</code>
+	 *            is assigned to column <code>rowAssignment[i]</code>, or
+	 *            <code>-1</code> if it is unassigned. Can be <code>null</code>.
+	 * @see #getColumnPrices()
+	 */
+	public void setWarmStart( final double[] columnPrices, final int[] rowAssignment );
+
+	/**
+	 * Returns the column prices (dual variables) of the solution.
+	 *
+	 * @return the column prices as a <code>double[]</code> array.
+	 * @see #setWarmStart(double[], int[])
+	 */
+	public double[] getColumnPrices();
+
+	/**
+	 * Returns the row assignments. The row <code>i</code> is associated to the
+	 * column <code>x[i]</code> in the cost matrix.
+	 *
+	 * @return the row assignments as an <code>int[]</code> array.
+	 */
+	@Override
+	public int[] getResult();
+
+}
@@ -0,0 +1,53 @@
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+/**
+ * Interface for factories that instantiate a {@link LAPSolver} for a given
+ * cost matrix. They let the {@link JaqamanLinker} be configured with the
+ * solver backend to use.
+ * <p>
+ * Factories also report the capabilities of the solvers they create, so that
+ * a backend can be picked for a given problem, for instance by the
+ * {@link LAPSolverSelector}.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ */
+public interface LAPSolverFactory
+{
+
+	/**
+	 * Returns a new solver for the specified cost matrix.
+	 *
+	 * @param cm
+	 *            the cost matrix of the linear assignment problem to solve.
+	 * @return a new {@link LAPSolver}.
+	 */
+	public LAPSolver create( final SparseCostMatrixAccess cm );
+
+	/**
+	 * Returns whether the solvers created work on the sparse cost matrix
+	 * directly. The time and memory they need then scale with the number of
+	 * non-infinite costs. Otherwise, the cost matrix is expanded to a full
+	 * matrix, and they scale with the number of rows times the number of
+	 * columns.
+	 *
+	 * @return <code>true</code> if the solvers are sparse.
+	 */
+	public boolean isSparse();
+
+	/**
+	 * Returns whether the solvers created make use of the starting point
+	 * specified with {@link LAPSolver#setWarmStart(double[], int[])}, and
+	 * return meaningful column prices. Other solvers ignore the starting point.
+	 *
+	 * @return <code>true</code> if the solvers support warm starts.
+	 */
+	public boolean supportsWarmStart();
+
+	/**
+	 * Returns whether the solvers created use several threads.
+	 *
+	 * @return <code>true</code> if the solvers are multithreaded.
+	 */
+	public boolean isMultiThreaded();
+
+}
@@ -0,0 +1,206 @@
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+/**
+ * A {@link LAPSolverFactory} that picks, for each cost matrix, the solver
+ * backend expected to be the fastest, based on the size of the matrix and on
+ * its average number of costs per row.
+ * <p>
+ * It chooses between three backends:
+ * <ul>
+ * <li>an optional one, for instance the multithreaded {@link AuctionLAP}, used
+ * for matrices with many rows;</li>
+ * <li>a dense one, {@link DenseLAPSolver} by default, used for small matrices
+ * and for matrices with more than a few costs per row, as long as their full
+ * expansion fits in memory;</li>
+ * <li>a sparse one, {@link LAPJV} by default, used otherwise.</li>
+ * </ul>
+ * The default thresholds were established with the
+ * <code>LAPSolverSelectorBenchmark</code> class of the test sources, both on
+ * matrices with a random sparsity pattern and on matrices with the structure
+ * of the ones built by the {@link JaqamanLinker}. On the latter, the sparse
+ * {@link LAPJV} is only the fastest when the sources have one or two
+ * candidate targets each. The crossover depends little on the matrix size.
+ * The thresholds can be changed with the setters of this class.
+ * <p>
+ * The selector is opt-in: the {@link JaqamanLinker} uses the sparse
+ * {@link LAPJV} unless it is given a selector with
+ * {@link JaqamanLinker#setSolverFactory(LAPSolverFactory)}. The default dense
+ * backend does not support warm starts nor {@link LAPJVWorkspace} reuse, so
+ * the selector should not be used where these matter.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ */
+public class LAPSolverSelector implements LAPSolverFactory
+{
+
+	/**
+	 * Default number of rows up to which the dense solver is used whatever
+	 * the number of costs per row.
+	 */
+	public static final int DEFAULT_MAX_SMALL_SIZE = 100;
+
+	/**
+	 * Default average number of non-infinite costs per row above which the
+	 * dense solver is used.
+	 */
+	public static final double DEFAULT_MIN_DENSE_ROW_CARDINALITY = 4.;
+
+	/**
+	 * Default maximal number of elements of the full matrix for the dense
+	 * solver to be used. This caps the full matrix to 32 MB, several of which
+	 * may be allocated at once when frame pairs are linked concurrently.
+	 */
+	public static final long DEFAULT_MAX_DENSE_ELEMENTS = 2048l * 2048l;
+
+	/**
+	 * Default number of rows above which the optional solver is used, if any.
+	 */
+	public static final int DEFAULT_MIN_PARALLEL_SIZE = 500;
+
+	private final LAPSolverFactory dense;
+
+	private final LAPSolverFactory sparse;
+
+	private final LAPSolverFactory parallel;
+
+	private int maxSmallSize = DEFAULT_MAX_SMALL_SIZE;
+
+	private double minDenseRowCardinality = DEFAULT_MIN_DENSE_ROW_CARDINALITY;
+
+	private long maxDenseElements = DEFAULT_MAX_DENSE_ELEMENTS;
+
+	private int minParallelSize = DEFAULT_MIN_PARALLEL_SIZE;
+
+	/**
+	 * Creates a selector between the specified backends.
+	 *
+	 * @param dense
+	 *            the backend for small or dense matrices.
+	 * @param sparse
+	 *            the backend for large sparse matrices.
+	 * @param parallel
+	 *            the backend for matrices with many rows. If
+	 *            <code>null</code>, the dense and sparse backends are used
+	 *            for all sizes.
+	 */
+	public LAPSolverSelector( final LAPSolverFactory dense, final LAPSolverFactory sparse, final LAPSolverFactory parallel )
+	{
+		this.dense = dense;
+		this.sparse = sparse;
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Creates a selector between the dense {@link DenseLAPSolver} and the
+	 * sparse {@link LAPJV}, both single-threaded.
+	 */
+	public LAPSolverSelector()
+	{
+		this( DenseLAPSolver.factory(), LAPJV.factory(), null );
+	}
+
+	/**
+	 * Returns the backend that will be used to solve the specified cost
+	 * matrix.
+	 *
+	 * @param cm
+	 *            the cost matrix.
+	 * @return the selected {@link LAPSolverFactory}.
+	 */
+	public LAPSolverFactory select( final SparseCostMatrixAccess cm )
+	{
+		final int nRows = cm.getNRows();
+		if ( null != parallel && nRows >= minParallelSize ) { return parallel; }
+
+		final long nElements = ( long ) nRows * cm.getNCols();
+		if ( nElements <= maxDenseElements )
+		{
+			if ( nRows <= maxSmallSize ) { return dense; }
+			final double rowCardinality = ( double ) cm.getCardinality() / nRows;
+			if ( rowCardinality >= minDenseRowCardinality ) { return dense; }
+		}
+		return sparse;
+	}
+
+	@Override
+	public LAPSolver create( final SparseCostMatrixAccess cm )
+	{
+		return select( cm ).create( cm );
+	}
+
+	/**
+	 * Returns <code>true</code>: this selector accepts sparse matrices, and
+	 * only expands them when the dense backend is expected to be faster.
+	 */
+	@Override
+	public boolean isSparse()
+	{
+		return true;
+	}
+
+	/**
+	 * Returns <code>true</code> only if all the backends support warm starts.
+	 */
+	@Override
+	public boolean supportsWarmStart()
+	{
+		return dense.supportsWarmStart() && sparse.supportsWarmStart() && ( null == parallel || parallel.supportsWarmStart() );
+	}
+
+	/**
+	 * Returns <code>true</code> if one of the backends is multithreaded.
+	 */
+	@Override
+	public boolean isMultiThreaded()
+	{
+		return dense.isMultiThreaded() || sparse.isMultiThreaded() || ( null != parallel && parallel.isMultiThreaded() );
+	}
+
+	/**
+	 * Sets the number of rows up to which the dense backend is used whatever
+	 * the number of costs per row.
+	 *
+	 * @param maxSmallSize
+	 *            the number of rows.
+	 */
+	public void setMaxSmallSize( final int maxSmallSize )
+	{
+		this.maxSmallSize = maxSmallSize;
+	}
+
+	/**
+	 * Sets the average number of non-infinite costs per row above which the
+	 * dense backend is used.
+	 *
+	 * @param minDenseRowCardinality
+	 *            the average number of costs per row.
+	 */
+	public void setMinDenseRowCardinality( final double minDenseRowCardinality )
+	{
+		this.minDenseRowCardinality = minDenseRowCardinality;
+	}
+
+	/**
+	 * Sets the maximal number of elements of the full matrix for the dense
+	 * backend to be used.
+	 *
+	 * @param maxDenseElements
+	 *            the number of rows times the number of columns.
+	 */
+	public void setMaxDenseElements( final long maxDenseElements )
+	{
+		this.maxDenseElements = maxDenseElements;
+	}
+
+	/**
+	 * Sets the number of rows above which the optional backend is used, if
+	 * any.
+	 *
+	 * @param minParallelSize
+	 *            the number of rows.
+	 */
+	public void setMinParallelSize( final int minParallelSize )
+	{
+		this.minParallelSize = minParallelSize;
+	}
+}
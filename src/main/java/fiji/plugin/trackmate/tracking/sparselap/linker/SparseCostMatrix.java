@@ -28,8 +28,9 @@ import java.util.List;
  * 917-932</code>
  *
  * @author Jean-Yves Tinevez - 2014
+ * @see CompactSparseCostMatrix
  */
-public class SparseCostMatrix
+public class SparseCostMatrix implements SparseCostMatrixAccess
 {
 
 	/**
@@ -273,6 +274,7 @@ public class SparseCostMatrix
 	 *            the assignment, specified by row.
 	 * @return the total cost for this assignment.
 	 */
+	@Override
 	public double totalAssignmentCost( final int[] rowAssignment )
 	{
 		double sum = 0;
@@ -327,6 +329,7 @@ public class SparseCostMatrix
 	 *            the specified row and column.
 	 * @return the value.
 	 */
+	@Override
 	public final double get( final int i, final int j, final double missingValue )
 	{
 		final int k = Arrays.binarySearch( kk, start[ i ], start[ i ] + number[ i ], j );
@@ -350,16 +353,54 @@ public class SparseCostMatrix
 		return cc;
 	}
 
+	@Override
 	public int getNCols()
 	{
 		return nCols;
 	}
 
+	@Override
 	public int getNRows()
 	{
 		return nRows;
 	}
 
+	@Override
+	public int getCardinality()
+	{
+		return cardinality;
+	}
+
+	@Override
+	public final int start( final int i )
+	{
+		return start[ i ];
+	}
+
+	@Override
+	public final int number( final int i )
+	{
+		return number[ i ];
+	}
+
+	@Override
+	public final int column( final int i, final int k )
+	{
+		return kk[ k ];
+	}
+
+	@Override
+	public final double cost( final int k )
+	{
+		return cc[ k ];
+	}
+
+	@Override
+	public final int find( final int i, final int j )
+	{
+		return Arrays.binarySearch( kk, start[ i ], start[ i ] + number[ i ], j );
+	}
+
 	/**
 	 * Returns the vertical concatenation of this matrix with the specified one.
 	 * So that if this matrix is A and the specified matrix is B, you get
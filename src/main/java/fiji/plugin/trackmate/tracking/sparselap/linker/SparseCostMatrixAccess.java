@@ -0,0 +1,119 @@
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+/**
+ * Read access to a sparse cost matrix stored following the row compressed
+ * storage convention.
+ * <p>
+ * The non-infinite costs are stored adjacently row by row, and indexed by
+ * <code>k</code>. The costs of row <code>i</code> have indices from
+ * <code>start(i)</code> (included) to <code>start(i) + number(i)</code>
+ * (excluded), and within a row they are sorted by ascending column index.
+ * <p>
+ * This interface lets the solvers work both on the {@link SparseCostMatrix}
+ * and on its memory-efficient variant {@link CompactSparseCostMatrix}.
+ *
+ * @author Jean-Yves Tinevez - 2014
+ */
+public interface SparseCostMatrixAccess
+{
+
+	/**
+	 * Returns the number of rows in the cost matrix.
+	 *
+	 * @return the number of rows.
+	 */
+	public int getNRows();
+
+	/**
+	 * Returns the number of columns in the cost matrix.
+	 *
+	 * @return the number of columns.
+	 */
+	public int getNCols();
+
+	/**
+	 * Returns the number of non-infinite costs in the matrix.
+	 *
+	 * @return the cardinality of the matrix.
+	 */
+	public int getCardinality();
+
+	/**
+	 * Returns the index of the first cost of the specified row.
+	 *
+	 * @param i
+	 *            the row.
+	 * @return the index <code>k</code> of its first cost.
+	 */
+	public int start( final int i );
+
+	/**
+	 * Returns the number of non-infinite costs of the specified row.
+	 *
+	 * @param i
+	 *            the row.
+	 * @return the number of costs in this row.
+	 */
+	public int number( final int i );
+
+	/**
+	 * Returns the column of the cost at the specified index.
+	 *
+	 * @param i
+	 *            the row of this cost.
+	 * @param k
+	 *            the index of the cost, between <code>start(i)</code> and
+	 *            <code>start(i) + number(i)</code>.
+	 * @return the column index.
+	 */
+	public int column( final int i, final int k );
+
+	/**
+	 * Returns the cost at the specified index.
+	 *
+	 * @param k
+	 *            the index of the cost.
+	 * @return the cost value.
+	 */
+	public double cost( final int k );
+
+	/**
+	 * Searches for the index of the cost at the specified row and column.
+	 *
+	 * @param i
+	 *            the row.
+	 * @param j
+	 *            the column.
+	 * @return the index <code>k</code> of this cost, or a negative value if
+	 *         the cost is infinite (not stored).
+	 */
+	public int find( final int i, final int j );
+
+	/**
+	 * Returns the value stored by this matrix at the specified row and column.
+	 * If a value is not present in the sparse matrix, the specified missing
+	 * value is returned.
+	 *
+	 * @param i
+	 *            the row.
+	 * @param j
+	 *            the column.
+	 * @param missingValue
+	 *            what to return if the sparse matrix does not store a value at
+	 *            the specified row and column.
+	 * @return the value.
+	 */
+	public double get( final int i, final int j, final double missingValue );
+
+	/**
+	 * Computes the total cost for an assignment specified by row. It is
+	 * supposed that row <code>i</code> is assigned to column
+	 * <code>rowAssignment[i]</code>.
+	 *
+	 * @param rowAssignment
+	 *            the assignment, specified by row.
+	 * @return the total cost for this assignment.
+	 */
+	public double totalAssignmentCost( final int[] rowAssignment );
+
+}
@@ -24,7 +24,9 @@ package fiji.plugin.trackmate.util;
  *
  */
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 
 /**
  * This is an updated version with enhancements made by Daniel Migowski, Andre
@@ -132,4 +134,84 @@ public class AlphanumComparator implements Comparator< String >
 
 		return s1Length - s2Length;
 	}
+
+	/**
+	 * A string split once and for all into the chunks this comparator works
+	 * on. Comparing two keys gives the same result as comparing their strings
+	 * with {@link AlphanumComparator#compare(String, String)}, without
+	 * splitting them again at each comparison. Use it when the same strings
+	 * are compared many times, for instance when they are kept sorted.
+	 */
+	public static final class Key implements Comparable< Key >
+	{
+
+		private final String string;
+
+		private final String[] chunks;
+
+		private final boolean[] numeric;
+
+		public Key( final String string )
+		{
+			this.string = string;
+			final int length = string.length();
+			final List< String > list = new ArrayList< String >();
+			int marker = 0;
+			while ( marker < length )
+			{
+				final String chunk = instance.getChunk( string, length, marker );
+				list.add( chunk );
+				marker += chunk.length();
+			}
+			this.chunks = list.toArray( new String[ list.size() ] );
+			this.numeric = new boolean[ chunks.length ];
+			for ( int i = 0; i < chunks.length; i++ )
+			{
+				numeric[ i ] = instance.isDigit( chunks[ i ].charAt( 0 ) );
+			}
+		}
+
+		/**
+		 * Returns the string this key was built from.
+		 *
+		 * @return the string.
+		 */
+		public String getString()
+		{
+			return string;
+		}
+
+		@Override
+		public int compareTo( final Key other )
+		{
+			final int nChunks = Math.min( chunks.length, other.chunks.length );
+			for ( int k = 0; k < nChunks; k++ )
+			{
+				final String thisChunk = chunks[ k ];
+				final String thatChunk = other.chunks[ k ];
+				int result = 0;
+				if ( numeric[ k ] && other.numeric[ k ] )
+				{
+					final int thisChunkLength = thisChunk.length();
+					result = thisChunkLength - thatChunk.length();
+					if ( result == 0 )
+					{
+						for ( int i = 0; i < thisChunkLength; i++ )
+						{
+							result = thisChunk.charAt( i ) - thatChunk.charAt( i );
+							if ( result != 0 ) { return result; }
+						}
+					}
+				}
+				else
+				{
+					result = thisChunk.compareTo( thatChunk );
+				}
+
+				if ( result != 0 )
+					return result;
+			}
+			return string.length() - other.string.length();
+		}
+	}
 }
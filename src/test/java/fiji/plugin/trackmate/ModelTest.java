@@ -3,12 +3,17 @@ package fiji.plugin.trackmate;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
 import org.junit.Test;
 
 public class ModelTest
@@ -605,4 +610,277 @@ public class ModelTest
 		}
 
 	}
+
+	/**
+	 * Test that the bulk mutation methods yield the same tracks as the one by
+	 * one methods, and fire a single event.
+	 */
+	@Test
+	public void testBulkMutations()
+	{
+		final Random ran = new Random( 1l );
+		final int nSpots = 500;
+		final List< Spot > spots = new ArrayList< Spot >( nSpots );
+		for ( int i = 0; i < nSpots; i++ )
+		{
+			final Spot spot = new Spot( 0d, 0d, 0d, 1d, -1d, "S" + i );
+			spot.setFrame( i % 10 );
+			spots.add( spot );
+		}
+		// Random forest.
+		final int nEdges = 450;
+		final int[] sources = new int[ nEdges ];
+		final int[] targets = new int[ nEdges ];
+		final double[] weights = new double[ nEdges ];
+		for ( int i = 0; i < nEdges; i++ )
+		{
+			targets[ i ] = 1 + i;
+			sources[ i ] = ran.nextInt( targets[ i ] );
+			weights[ i ] = ran.nextDouble();
+		}
+
+		final Model< Spot > reference = new Model< Spot >();
+		reference.beginUpdate();
+		try
+		{
+			for ( final Spot spot : spots )
+			{
+				reference.addSpotTo( spot, spot.frame() );
+			}
+			for ( int i = 0; i < nEdges; i++ )
+			{
+				reference.addEdge( spots.get( sources[ i ] ), spots.get( targets[ i ] ), weights[ i ] );
+			}
+		}
+		finally
+		{
+			reference.endUpdate();
+		}
+
+		final Model< Spot > model = new Model< Spot >();
+		final int[] nEvents = new int[ 1 ];
+		model.addModelChangeListener( new ModelChangeListener< Spot >()
+		{
+			@Override
+			public void modelChanged( final ModelChangeEvent< Spot > event )
+			{
+				assertEquals( ModelChangeEvent.MODEL_MODIFIED, event.getEventID() );
+				nEvents[ 0 ]++;
+			}
+		} );
+		model.beginUpdate();
+		try
+		{
+			model.bulkAddSpots( spots );
+			final DefaultWeightedEdge[] edges = model.bulkAddEdges( spots, sources, targets, weights );
+			for ( int i = 0; i < nEdges; i++ )
+			{
+				assertEquals( weights[ i ], model.getTrackModel().getEdgeWeight( edges[ i ] ), 0d );
+			}
+			// Existing edges are not duplicated.
+			final DefaultWeightedEdge[] duplicates = model.bulkAddEdges( spots, new int[] { sources[ 0 ] }, new int[] { targets[ 0 ] }, new double[] { 1. } );
+			assertEquals( null, duplicates[ 0 ] );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		assertEquals( 1, nEvents[ 0 ] );
+		assertEquals( nSpots, model.getSpots().getNObjects( false ) );
+		assertEquals( reference.getTrackModel().edgeSet().size(), model.getTrackModel().edgeSet().size() );
+		assertEquals( trackPartition( reference ), trackPartition( model ) );
+
+		// Remove a third of the spots.
+		final List< Spot > toRemove = new ArrayList< Spot >();
+		for ( int i = 0; i < nSpots; i += 3 )
+		{
+			toRemove.add( spots.get( i ) );
+		}
+		reference.beginUpdate();
+		try
+		{
+			for ( final Spot spot : toRemove )
+			{
+				reference.removeSpot( spot );
+			}
+		}
+		finally
+		{
+			reference.endUpdate();
+		}
+		assertEquals( toRemove.size(), model.bulkRemoveSpots( toRemove ) );
+		assertEquals( 2, nEvents[ 0 ] );
+		assertEquals( trackPartition( reference ), trackPartition( model ) );
+		assertEquals( reference.getTrackModel().nTracks( false ), model.getTrackModel().nTracks( true ) );
+	}
+
+	/**
+	 * Test that another thread cannot edit the model while a listener reads
+	 * it, and that events are received in the order transactions closed. Also
+	 * test that a listener can edit the model itself.
+	 */
+	@Test( timeout = 30000 )
+	public void testListenersSeeNoConcurrentEdits() throws InterruptedException
+	{
+		final Model< Spot > model = new Model< Spot >();
+		final CountDownLatch listenerEntered = new CountDownLatch( 1 );
+		final CountDownLatch releaseListener = new CountDownLatch( 1 );
+		final List< Spot > received = new ArrayList< Spot >();
+		final Spot s1 = new Spot( 0d, 0d, 0d, 1d, -1d, "S1" );
+		final Spot s2 = new Spot( 0d, 0d, 0d, 1d, -1d, "S2" );
+		final Spot s3 = new Spot( 0d, 0d, 0d, 1d, -1d, "S3" );
+		final List< Integer > nSpotsSeen = new ArrayList< Integer >();
+		model.addModelChangeListener( new ModelChangeListener< Spot >()
+		{
+			@Override
+			public void modelChanged( final ModelChangeEvent< Spot > event )
+			{
+				received.addAll( event.getSpots() );
+				if ( event.getSpots().contains( s1 ) )
+				{
+					listenerEntered.countDown();
+					try
+					{
+						releaseListener.await();
+					}
+					catch ( final InterruptedException e )
+					{
+						Thread.currentThread().interrupt();
+					}
+					nSpotsSeen.add( Integer.valueOf( model.getSpots().getNObjects( false ) ) );
+
+					// Edit the model from the listener.
+					model.beginUpdate();
+					try
+					{
+						model.addSpotTo( s3, 2 );
+					}
+					finally
+					{
+						model.endUpdate();
+					}
+				}
+			}
+		} );
+
+		// This thread closes its transaction and gets stuck in the listener.
+		final Thread first = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				model.beginUpdate();
+				try
+				{
+					model.addSpotTo( s1, 0 );
+				}
+				finally
+				{
+					model.endUpdate();
+				}
+			}
+		};
+		first.start();
+		listenerEntered.await();
+
+		// This one must wait for the listener to edit the model.
+		final Thread second = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				model.beginUpdate();
+				try
+				{
+					model.addSpotTo( s2, 1 );
+					model.addEdge( s1, s2, 1 );
+				}
+				finally
+				{
+					model.endUpdate();
+				}
+			}
+		};
+		second.start();
+		second.join( 200 );
+		assertTrue( second.isAlive() );
+		assertEquals( 1, model.getSpots().getNObjects( false ) );
+		assertEquals( 1, received.size() );
+
+		releaseListener.countDown();
+		second.join();
+		first.join();
+		// The listener saw the model as it was when the first transaction
+		// closed.
+		assertEquals( Integer.valueOf( 1 ), nSpotsSeen.get( 0 ) );
+		assertEquals( 3, model.getSpots().getNObjects( false ) );
+		assertEquals( 1, model.getTrackModel().nTracks( false ) );
+		assertEquals( 3, received.size() );
+		assertEquals( s1, received.get( 0 ) );
+	}
+
+	/**
+	 * Test that the bulk setters notify listeners when the enclosing
+	 * transaction closes, and not before.
+	 */
+	@Test
+	public void testBulkSettersNotifyWhenTransactionCloses()
+	{
+		final Model< Spot > model = new Model< Spot >();
+		final List< Integer > eventIDs = new ArrayList< Integer >();
+		model.addModelChangeListener( new ModelChangeListener< Spot >()
+		{
+			@Override
+			public void modelChanged( final ModelChangeEvent< Spot > event )
+			{
+				eventIDs.add( Integer.valueOf( event.getEventID() ) );
+			}
+		} );
+
+		model.beginUpdate();
+		try
+		{
+			model.clearSpots( true );
+			model.setTracks( new SimpleWeightedGraph< Spot, DefaultWeightedEdge >( DefaultWeightedEdge.class ), true );
+			assertTrue( eventIDs.isEmpty() );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		assertEquals( 2, eventIDs.size() );
+		assertTrue( eventIDs.contains( Integer.valueOf( ModelChangeEvent.SPOTS_COMPUTED ) ) );
+		assertTrue( eventIDs.contains( Integer.valueOf( ModelChangeEvent.TRACKS_COMPUTED ) ) );
+
+		// Outside a transaction, they notify before returning.
+		model.clearTracks( true );
+		assertEquals( 3, eventIDs.size() );
+		assertEquals( Integer.valueOf( ModelChangeEvent.TRACKS_COMPUTED ), eventIDs.get( 2 ) );
+	}
+
+	/**
+	 * Returns the tracks of the specified model, as sets of spots, and checks
+	 * that the track index is coherent.
+	 */
+	private static Set< Set< Spot >> trackPartition( final Model< Spot > model )
+	{
+		final TrackModel< Spot > tm = model.getTrackModel();
+		final Set< Set< Spot >> partition = new HashSet< Set< Spot >>();
+		int nEdges = 0;
+		for ( final Integer id : tm.trackIDs( false ) )
+		{
+			for ( final Spot spot : tm.trackSpots( id ) )
+			{
+				assertEquals( id, tm.trackIDOf( spot ) );
+			}
+			for ( final DefaultWeightedEdge edge : tm.trackEdges( id ) )
+			{
+				assertEquals( id, tm.trackIDOf( edge ) );
+			}
+			nEdges += tm.trackEdges( id ).size();
+			partition.add( new HashSet< Spot >( tm.trackSpots( id ) ) );
+		}
+		assertEquals( tm.edgeSet().size(), nEdges );
+		return partition;
+	}
 }
@@ -1,17 +1,24 @@
 package fiji.plugin.trackmate;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
 import org.junit.Test;
 
+import fiji.plugin.trackmate.util.AlphanumComparator;
+
 public class TrackModelTest
 {
 
@@ -168,6 +175,293 @@ public class TrackModelTest
 		}
 	}
 
+	@Test
+	public void testBreakingTracksKeepsIDOfLargestPart()
+	{
+		// A branching track: a trunk of DEPTH spots, then 2 branches.
+		final TrackModel< Spot > model = new TrackModel< Spot >();
+		final List< Spot > trunk = new ArrayList< Spot >();
+		Spot previous = null;
+		for ( int j = 0; j < DEPTH; j++ )
+		{
+			final Spot spot = new Spot( 0d, 0d, 0d, 1d, -1d );
+			model.addSpot( spot );
+			if ( null != previous )
+			{
+				model.addEdge( previous, spot, 1 );
+			}
+			trunk.add( spot );
+			previous = spot;
+		}
+		final Spot branch1 = new Spot( 0d, 0d, 0d, 1d, -1d );
+		final Spot branch2a = new Spot( 0d, 0d, 0d, 1d, -1d );
+		final Spot branch2b = new Spot( 0d, 0d, 0d, 1d, -1d );
+		model.addSpot( branch1 );
+		model.addSpot( branch2a );
+		model.addSpot( branch2b );
+		final DefaultWeightedEdge toBranch1 = model.addEdge( previous, branch1, 1 );
+		final DefaultWeightedEdge toBranch2 = model.addEdge( previous, branch2a, 1 );
+		model.addEdge( branch2a, branch2b, 1 );
+		final Integer id = model.trackIDOf( previous );
+		model.setName( id, "Lineage" );
+
+		// Close a loop between the 2 branches: removing it must not split.
+		final DefaultWeightedEdge loop = model.addEdge( branch1, branch2b, 1 );
+		model.removeEdge( toBranch1 );
+		assertEquals( 1, model.nTracks( false ) );
+		assertEquals( id, model.trackIDOf( branch1 ) );
+		assertEquals( DEPTH + 3, model.trackSpots( id ).size() );
+		model.removeEdge( loop );
+
+		// The solitary branch is forgotten, the trunk keeps the id and name.
+		assertEquals( 1, model.nTracks( false ) );
+		assertEquals( null, model.trackIDOf( branch1 ) );
+		assertEquals( id, model.trackIDOf( branch2b ) );
+		assertEquals( "Lineage", model.name( id ) );
+		assertEquals( DEPTH + 2, model.trackSpots( id ).size() );
+		assertEquals( DEPTH + 1, model.trackEdges( id ).size() );
+
+		// The small branch gets a new id.
+		model.removeEdge( toBranch2 );
+		assertEquals( 2, model.nTracks( false ) );
+		assertEquals( id, model.trackIDOf( previous ) );
+		final Integer newID = model.trackIDOf( branch2a );
+		assertTrue( !id.equals( newID ) );
+		assertEquals( newID, model.trackIDOf( branch2b ) );
+		assertEquals( DEPTH, model.trackSpots( id ).size() );
+		assertEquals( DEPTH - 1, model.trackEdges( id ).size() );
+		assertEquals( 2, model.trackSpots( newID ).size() );
+		assertEquals( 1, model.trackEdges( newID ).size() );
+
+		// On a tie, the source part keeps the id.
+		final Spot extra = new Spot( 0d, 0d, 0d, 1d, -1d );
+		model.addSpot( extra );
+		model.addEdge( previous, extra, 1 );
+		final DefaultWeightedEdge middle = model.getEdge( trunk.get( 2 ), trunk.get( 3 ) );
+		model.removeEdge( middle );
+		assertEquals( 3, model.nTracks( false ) );
+		assertEquals( id, model.trackIDOf( trunk.get( 0 ) ) );
+		assertEquals( 3, model.trackSpots( id ).size() );
+		assertEquals( model.trackIDOf( extra ), model.trackIDOf( trunk.get( 3 ) ) );
+		assertEquals( 3, model.trackSpots( model.trackIDOf( extra ) ).size() );
+	}
+
+	@Test
+	public void testMergingTracksKeepsIDOfLargestPart()
+	{
+		final TrackModel< Spot > model = new TrackModel< Spot >();
+		final List< Spot > ends = new ArrayList< Spot >();
+		for ( int i = 0; i < 2; i++ )
+		{
+			Spot previous = null;
+			for ( int j = 0; j < DEPTH + i; j++ )
+			{
+				final Spot spot = new Spot( 0d, 0d, 0d, 1d, -1d );
+				model.addSpot( spot );
+				if ( null != previous )
+				{
+					model.addEdge( previous, spot, 1 );
+				}
+				previous = spot;
+			}
+			ends.add( previous );
+		}
+		final Integer smallID = model.trackIDOf( ends.get( 0 ) );
+		final Integer largeID = model.trackIDOf( ends.get( 1 ) );
+		final String largeName = model.name( largeID );
+
+		// Source is the small track: the large one keeps its id and name.
+		model.addEdge( ends.get( 0 ), ends.get( 1 ), 1 );
+		assertEquals( 1, model.nTracks( false ) );
+		assertEquals( largeID, model.trackIDOf( ends.get( 0 ) ) );
+		assertEquals( largeName, model.name( largeID ) );
+		assertEquals( 2 * DEPTH + 1, model.trackSpots( largeID ).size() );
+		assertEquals( 2 * DEPTH, model.trackEdges( largeID ).size() );
+		assertTrue( !model.trackIDs( false ).contains( smallID ) );
+		for ( final DefaultWeightedEdge edge : model.trackEdges( largeID ) )
+		{
+			assertEquals( largeID, model.trackIDOf( edge ) );
+		}
+		for ( final Spot spot : model.trackSpots( largeID ) )
+		{
+			assertEquals( largeID, model.trackIDOf( spot ) );
+		}
+	}
+
+	@Test
+	public void testFromTrackEdges()
+	{
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph< Spot, DefaultWeightedEdge >( DefaultWeightedEdge.class );
+		final Map< Integer, Set< DefaultWeightedEdge >> trackEdges = new HashMap< Integer, Set< DefaultWeightedEdge >>();
+		final Map< Integer, Boolean > trackVisibility = new HashMap< Integer, Boolean >();
+		final Map< Integer, String > trackNames = new HashMap< Integer, String >();
+		for ( int i = 0; i < N_TRACKS; i++ )
+		{
+			final Set< DefaultWeightedEdge > edges = new HashSet< DefaultWeightedEdge >();
+			Spot previous = null;
+			for ( int j = 0; j < DEPTH; j++ )
+			{
+				final Spot spot = new Spot( 0d, 0d, 0d, 1d, -1d );
+				graph.addVertex( spot );
+				if ( null != previous )
+				{
+					edges.add( graph.addEdge( previous, spot ) );
+				}
+				previous = spot;
+			}
+			final int id = 10 * i + 1;
+			trackEdges.put( id, edges );
+			trackVisibility.put( id, i % 2 == 0 );
+			trackNames.put( id, "Track" + id );
+		}
+
+		final TrackModel< Spot > model = new TrackModel< Spot >();
+		model.from( graph, trackEdges, trackVisibility, trackNames );
+
+		assertEquals( N_TRACKS, model.nTracks( false ) );
+		assertEquals( ( N_TRACKS + 1 ) / 2, model.nTracks( true ) );
+		for ( final Integer id : trackEdges.keySet() )
+		{
+			assertEquals( DEPTH, model.trackSpots( id ).size() );
+			assertEquals( "Track" + id, model.name( id ) );
+			for ( final DefaultWeightedEdge edge : trackEdges.get( id ) )
+			{
+				assertEquals( id, model.trackIDOf( edge ) );
+				assertEquals( id, model.trackIDOf( graph.getEdgeSource( edge ) ) );
+				assertEquals( id, model.trackIDOf( graph.getEdgeTarget( edge ) ) );
+			}
+		}
+
+		// New tracks must not reuse the ids of the loaded ones.
+		final Set< Integer > loadedIDs = new HashSet< Integer >( trackEdges.keySet() );
+		final Spot s1 = new Spot( 0d, 0d, 0d, 1d, -1d );
+		final Spot s2 = new Spot( 0d, 0d, 0d, 1d, -1d );
+		model.addSpot( s1 );
+		model.addSpot( s2 );
+		model.addEdge( s1, s2, 1 );
+		assertEquals( N_TRACKS + 1, model.nTracks( false ) );
+		assertTrue( !loadedIDs.contains( model.trackIDOf( s1 ) ) );
+	}
+
+	@Test
+	public void testFromGraph()
+	{
+		final Random ran = new Random( 3l );
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph< Spot, DefaultWeightedEdge >( DefaultWeightedEdge.class );
+		final List< Set< Spot >> components = new ArrayList< Set< Spot >>();
+		final List< Set< DefaultWeightedEdge >> componentEdges = new ArrayList< Set< DefaultWeightedEdge >>();
+		final List< Spot > lonely = new ArrayList< Spot >();
+		for ( int i = 0; i < N_TRACKS; i++ )
+		{
+			// A random tree, with branches.
+			final List< Spot > spots = new ArrayList< Spot >();
+			final Set< DefaultWeightedEdge > edges = new HashSet< DefaultWeightedEdge >();
+			final int size = 2 + ran.nextInt( 20 );
+			for ( int j = 0; j < size; j++ )
+			{
+				final Spot spot = new Spot( 0d, 0d, 0d, 1d, -1d );
+				graph.addVertex( spot );
+				if ( j > 0 )
+				{
+					edges.add( graph.addEdge( spots.get( ran.nextInt( spots.size() ) ), spot ) );
+				}
+				spots.add( spot );
+			}
+			components.add( new HashSet< Spot >( spots ) );
+			componentEdges.add( edges );
+
+			final Spot single = new Spot( 0d, 0d, 0d, 1d, -1d );
+			graph.addVertex( single );
+			lonely.add( single );
+		}
+
+		final TrackModel< Spot > model = new TrackModel< Spot >();
+		model.from( graph );
+
+		assertEquals( N_TRACKS, model.nTracks( false ) );
+		assertEquals( N_TRACKS, model.nTracks( true ) );
+		final Set< String > names = new HashSet< String >();
+		for ( int i = 0; i < N_TRACKS; i++ )
+		{
+			final Integer id = model.trackIDOf( components.get( i ).iterator().next() );
+			assertEquals( components.get( i ), model.trackSpots( id ) );
+			assertEquals( componentEdges.get( i ), model.trackEdges( id ) );
+			for ( final Spot spot : components.get( i ) )
+			{
+				assertEquals( id, model.trackIDOf( spot ) );
+			}
+			for ( final DefaultWeightedEdge edge : componentEdges.get( i ) )
+			{
+				assertEquals( id, model.trackIDOf( edge ) );
+			}
+			assertTrue( names.add( model.name( id ) ) );
+			assertNull( model.trackIDOf( lonely.get( i ) ) );
+		}
+
+		// The model can be edited afterwards.
+		final Spot s0 = components.get( 0 ).iterator().next();
+		final Spot s1 = components.get( 1 ).iterator().next();
+		model.addEdge( s0, s1, 1 );
+		assertEquals( N_TRACKS - 1, model.nTracks( false ) );
+		assertEquals( components.get( 0 ).size() + components.get( 1 ).size(), model.trackSpots( model.trackIDOf( s0 ) ).size() );
+	}
+
+	@Test
+	public void testTrackIDsSortedByName()
+	{
+		final TrackModel< Spot > model = new TrackModel< Spot >();
+		final Random ran = new Random( 2l );
+		final String[] prefixes = new String[] { "Track_", "Track_0", "a", "A1b", "", "x10y" };
+		final int nTracks = 50;
+		for ( int i = 0; i < nTracks; i++ )
+		{
+			final Spot s1 = new Spot( 0d, 0d, 0d, 1d, -1d );
+			final Spot s2 = new Spot( 0d, 0d, 0d, 1d, -1d );
+			model.addSpot( s1 );
+			model.addSpot( s2 );
+			model.addEdge( s1, s2, 1 );
+			final Integer id = model.trackIDOf( s1 );
+			model.setName( id, prefixes[ ran.nextInt( prefixes.length ) ] + ran.nextInt( 30 ) );
+			model.setVisibility( id, ran.nextBoolean() );
+		}
+
+		// Same order as sorting all the names with the alphanumeric comparator.
+		final Map< Integer, String > names = new HashMap< Integer, String >();
+		for ( final Integer id : model.unsortedTrackIDs( false ) )
+		{
+			names.put( id, model.name( id ) );
+		}
+		final List< Integer > ids = new ArrayList< Integer >( model.trackIDs( false ) );
+		assertEquals( nTracks, ids.size() );
+		for ( int i = 1; i < ids.size(); i++ )
+		{
+			final int c = AlphanumComparator.instance.compare( names.get( ids.get( i - 1 ) ), names.get( ids.get( i ) ) );
+			assertTrue( c < 0 || c == 0 && ids.get( i - 1 ) < ids.get( i ) );
+		}
+		final List< Integer > vids = new ArrayList< Integer >( model.trackIDs( true ) );
+		final List< Integer > expected = new ArrayList< Integer >();
+		for ( final Integer id : ids )
+		{
+			if ( model.isVisible( id ) )
+			{
+				expected.add( id );
+			}
+		}
+		assertEquals( expected, vids );
+
+		// Views are cached until a name or a visibility changes.
+		assertSame( model.trackIDs( false ), model.trackIDs( false ) );
+		assertSame( model.trackIDs( true ), model.trackIDs( true ) );
+		final Set< Integer > before = model.trackIDs( false );
+		final Integer last = ids.get( ids.size() - 1 );
+		final Integer first = ids.get( 0 );
+		model.setName( last, "" );
+		assertTrue( before != model.trackIDs( false ) );
+		assertEquals( last, model.trackIDs( false ).iterator().next() );
+		model.setVisibility( first, !model.isVisible( first ) );
+		assertEquals( model.isVisible( first ), model.trackIDs( true ).contains( first ) );
+	}
+
 	@Test
 	public void testVisibility()
 	{
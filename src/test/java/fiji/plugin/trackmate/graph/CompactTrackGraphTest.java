@@ -0,0 +1,136 @@
+package fiji.plugin.trackmate.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+
+public class CompactTrackGraphTest
+{
+
+	private static final Spot createSpot( final int frame )
+	{
+		final Spot spot = new Spot( 0, 0, 0, 1, -1 );
+		spot.setFrame( frame );
+		return spot;
+	}
+
+	@Test
+	public void testBuild()
+	{
+		final int nFrames = 20;
+		final int nSpots = 30;
+		final Random ran = new Random( 1l );
+		final List< List< Spot >> spots = new ArrayList< List< Spot >>( nFrames );
+		for ( int t = 0; t < nFrames; t++ )
+		{
+			final List< Spot > frameSpots = new ArrayList< Spot >( nSpots );
+			for ( int i = 0; i < nSpots; i++ )
+			{
+				frameSpots.add( createSpot( t ) );
+			}
+			spots.add( frameSpots );
+		}
+
+		// Random links, in random order and direction, with duplicates.
+		final CompactTrackGraph.Builder< Spot > builder = new CompactTrackGraph.Builder< Spot >();
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > expected = new SimpleWeightedGraph< Spot, DefaultWeightedEdge >( DefaultWeightedEdge.class );
+		final Spot isolated = createSpot( nFrames / 2 );
+		builder.addVertex( isolated );
+		expected.addVertex( isolated );
+		for ( int n = 0; n < 1000; n++ )
+		{
+			final int t = ran.nextInt( nFrames - 2 );
+			final Spot s1 = spots.get( t ).get( ran.nextInt( nSpots ) );
+			final Spot s2 = spots.get( t + 1 + ran.nextInt( 2 ) ).get( ran.nextInt( nSpots ) );
+			final double w = ran.nextDouble();
+			if ( ran.nextBoolean() )
+			{
+				builder.addEdge( s1, s2, w );
+			}
+			else
+			{
+				builder.addEdge( s2, s1, w );
+			}
+			expected.addVertex( s1 );
+			expected.addVertex( s2 );
+			final DefaultWeightedEdge edge = expected.addEdge( s1, s2 );
+			if ( null != edge )
+			{
+				expected.setEdgeWeight( edge, w );
+			}
+		}
+		final CompactTrackGraph< Spot > graph = builder.build();
+
+		assertEquals( "Unexpected number of vertices.", expected.vertexSet().size(), graph.vertexCount() );
+		assertEquals( "Unexpected number of edges.", expected.edgeSet().size(), graph.edgeCount() );
+
+		for ( int v = 0; v < graph.vertexCount(); v++ )
+		{
+			final Spot spot = graph.getVertex( v );
+			assertEquals( "Vertex cannot be found back.", v, graph.indexOf( spot ) );
+			if ( v > 0 )
+			{
+				assertTrue( "Vertices are not sorted by frame.", graph.getVertex( v - 1 ).frame() <= spot.frame() );
+			}
+
+			// Outgoing edges go forward in time, sorted by target.
+			for ( int k = 0; k < graph.outDegreeOf( v ); k++ )
+			{
+				final int e = graph.outgoingEdge( v, k );
+				assertEquals( v, graph.getEdgeSource( e ) );
+				assertTrue( "Edge is not directed forward in time.", graph.getVertex( graph.getEdgeTarget( e ) ).frame() > spot.frame() );
+				if ( k > 0 )
+				{
+					assertTrue( graph.getEdgeTarget( e ) > graph.getEdgeTarget( e - 1 ) );
+				}
+				assertEquals( e, graph.getEdge( v, graph.getEdgeTarget( e ) ) );
+			}
+			for ( int k = 0; k < graph.inDegreeOf( v ); k++ )
+			{
+				assertEquals( v, graph.getEdgeTarget( graph.incomingEdge( v, k ) ) );
+			}
+			assertEquals( "Unexpected degree.", expected.degreeOf( spot ), graph.inDegreeOf( v ) + graph.outDegreeOf( v ) );
+		}
+
+		// First duplicate wins, as for JGraphT.
+		for ( int e = 0; e < graph.edgeCount(); e++ )
+		{
+			final DefaultWeightedEdge edge = expected.getEdge( graph.getVertex( graph.getEdgeSource( e ) ), graph.getVertex( graph.getEdgeTarget( e ) ) );
+			assertEquals( "Unexpected edge weight.", expected.getEdgeWeight( edge ), graph.getEdgeWeight( e ), 0d );
+		}
+
+		// Copy.
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > copy = graph.toSimpleWeightedGraph();
+		assertEquals( expected.vertexSet(), copy.vertexSet() );
+		assertEquals( expected.edgeSet().size(), copy.edgeSet().size() );
+
+		// Adapter.
+		final CompactTrackGraphAdapter< Spot > adapter = graph.asGraph();
+		assertEquals( expected.vertexSet(), adapter.vertexSet() );
+		assertEquals( graph.edgeCount(), adapter.edgeSet().size() );
+		assertTrue( adapter.containsVertex( isolated ) );
+		assertTrue( adapter.edgesOf( isolated ).isEmpty() );
+		assertFalse( adapter.containsVertex( createSpot( 0 ) ) );
+		for ( final Spot spot : expected.vertexSet() )
+		{
+			assertEquals( expected.degreeOf( spot ), adapter.edgesOf( spot ).size() );
+			for ( final Integer e : adapter.outgoingEdgesOf( spot ) )
+			{
+				assertEquals( spot, adapter.getEdgeSource( e ) );
+				assertEquals( e, adapter.getEdge( spot, adapter.getEdgeTarget( e ) ) );
+				assertNull( adapter.getEdge( adapter.getEdgeTarget( e ), spot ) );
+			}
+		}
+	}
+}
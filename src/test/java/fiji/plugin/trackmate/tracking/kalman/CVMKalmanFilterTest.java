@@ -0,0 +1,263 @@
+package fiji.plugin.trackmate.tracking.kalman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CVMKalmanFilterTest
+{
+
+	private static final double EPSILON = 1e-9;
+
+	/*
+	 * Reference implementation with general matrices, following the textbook
+	 * Kalman filter equations.
+	 */
+
+	private static final double[][] times( final double[][] a, final double[][] b )
+	{
+		final double[][] c = new double[ a.length ][ b[ 0 ].length ];
+		for ( int i = 0; i < a.length; i++ )
+		{
+			for ( int j = 0; j < b[ 0 ].length; j++ )
+			{
+				for ( int k = 0; k < b.length; k++ )
+				{
+					c[ i ][ j ] += a[ i ][ k ] * b[ k ][ j ];
+				}
+			}
+		}
+		return c;
+	}
+
+	private static final double[][] transpose( final double[][] a )
+	{
+		final double[][] t = new double[ a[ 0 ].length ][ a.length ];
+		for ( int i = 0; i < a.length; i++ )
+		{
+			for ( int j = 0; j < a[ 0 ].length; j++ )
+			{
+				t[ j ][ i ] = a[ i ][ j ];
+			}
+		}
+		return t;
+	}
+
+	private static final double[][] plus( final double[][] a, final double[][] b, final double s )
+	{
+		final double[][] c = new double[ a.length ][ a[ 0 ].length ];
+		for ( int i = 0; i < a.length; i++ )
+		{
+			for ( int j = 0; j < a[ 0 ].length; j++ )
+			{
+				c[ i ][ j ] = a[ i ][ j ] + s * b[ i ][ j ];
+			}
+		}
+		return c;
+	}
+
+	private static final double[][] identity( final int m, final int n, final double v )
+	{
+		final double[][] a = new double[ m ][ n ];
+		for ( int i = 0; i < Math.min( m, n ); i++ )
+		{
+			a[ i ][ i ] = v;
+		}
+		return a;
+	}
+
+	private static final double[][] inverse3( final double[][] m )
+	{
+		final double det = m[ 0 ][ 0 ] * ( m[ 1 ][ 1 ] * m[ 2 ][ 2 ] - m[ 1 ][ 2 ] * m[ 2 ][ 1 ] )
+				- m[ 0 ][ 1 ] * ( m[ 1 ][ 0 ] * m[ 2 ][ 2 ] - m[ 1 ][ 2 ] * m[ 2 ][ 0 ] )
+				+ m[ 0 ][ 2 ] * ( m[ 1 ][ 0 ] * m[ 2 ][ 1 ] - m[ 1 ][ 1 ] * m[ 2 ][ 0 ] );
+		final double[][] inv = new double[ 3 ][ 3 ];
+		for ( int i = 0; i < 3; i++ )
+		{
+			for ( int j = 0; j < 3; j++ )
+			{
+				final int i1 = ( j + 1 ) % 3, i2 = ( j + 2 ) % 3, j1 = ( i + 1 ) % 3, j2 = ( i + 2 ) % 3;
+				inv[ i ][ j ] = ( m[ i1 ][ j1 ] * m[ i2 ][ j2 ] - m[ i1 ][ j2 ] * m[ i2 ][ j1 ] ) / det;
+			}
+		}
+		return inv;
+	}
+
+	private static final class ReferenceFilter
+	{
+		private final double[][] A = identity( 6, 6, 1 );
+
+		private final double[][] H = identity( 3, 6, 1 );
+
+		private final double[][] Q = new double[ 6 ][ 6 ];
+
+		private final double[][] R;
+
+		private double[][] P;
+
+		private double[][] X = new double[ 6 ][ 1 ];
+
+		private double[][] Xp;
+
+		private ReferenceFilter( final double[] X0, final double p0, final double sp, final double sv, final double sm )
+		{
+			for ( int i = 0; i < 6; i++ )
+			{
+				X[ i ][ 0 ] = X0[ i ];
+			}
+			for ( int i = 0; i < 3; i++ )
+			{
+				A[ i ][ 3 + i ] = 1;
+				Q[ i ][ i ] = sp * sp;
+				Q[ 3 + i ][ 3 + i ] = sv * sv;
+			}
+			P = identity( 6, 6, p0 );
+			R = identity( 3, 3, sm * sm );
+		}
+
+		private double[] predict()
+		{
+			Xp = times( A, X );
+			P = plus( times( A, times( P, transpose( A ) ) ), Q, 1 );
+			final double[] out = new double[ 6 ];
+			for ( int i = 0; i < 6; i++ )
+			{
+				out[ i ] = Xp[ i ][ 0 ];
+			}
+			return out;
+		}
+
+		private void update( final double[] m )
+		{
+			if ( null == m )
+			{
+				X = Xp;
+				return;
+			}
+			final double[][] M = new double[][] { { m[ 0 ] }, { m[ 1 ] }, { m[ 2 ] } };
+			final double[][] S = plus( times( H, times( P, transpose( H ) ) ), R, 1 );
+			final double[][] K = times( times( P, transpose( H ) ), inverse3( S ) );
+			X = plus( Xp, times( K, plus( M, times( H, Xp ), -1 ) ), 1 );
+			P = times( plus( identity( 6, 6, 1 ), times( K, H ), -1 ), P );
+		}
+	}
+
+	@Test
+	public void testSameAsMatrixImplementation()
+	{
+		final Random ran = new Random( 1l );
+		final double[] X0 = new double[] { 10, 20, 3, 1.5, -0.5, 0.2 };
+		final ReferenceFilter ref = new ReferenceFilter( X0, 2, 1.5, 0.7, 0.3 );
+		final CVMKalmanFilter kf = new CVMKalmanFilter( X0, 2, 1.5, 0.7, 0.3 );
+
+		final double[] truth = X0.clone();
+		for ( int t = 0; t < 50; t++ )
+		{
+			assertArrayEquals( ref.predict(), kf.predict(), EPSILON );
+			for ( int d = 0; d < 3; d++ )
+			{
+				truth[ d ] += truth[ 3 + d ];
+			}
+			final double[] m;
+			if ( t % 7 == 3 )
+			{
+				m = null;
+			}
+			else
+			{
+				m = new double[ 3 ];
+				for ( int d = 0; d < 3; d++ )
+				{
+					m[ d ] = truth[ d ] + 0.3 * ran.nextGaussian();
+				}
+			}
+			ref.update( m );
+			kf.update( m );
+			assertEquals( Math.sqrt( ( ref.P[ 0 ][ 0 ] + ref.P[ 1 ][ 1 ] + ref.P[ 2 ][ 2 ] ) / 3 ), kf.getPositionError(), EPSILON );
+			assertEquals( Math.sqrt( ( ref.P[ 3 ][ 3 ] + ref.P[ 4 ][ 4 ] + ref.P[ 5 ][ 5 ] ) / 3 ), kf.getVelocityError(), EPSILON );
+		}
+		assertEquals( 7, kf.getNOcclusion() );
+	}
+
+	@Test
+	public void testArraySameAsSingleFilters()
+	{
+		final Random ran = new Random( 2l );
+		final int n = 50;
+		final CVMKalmanFilter[] filters = new CVMKalmanFilter[ n ];
+		final int[] slots = new int[ n ];
+		final CVMKalmanFilterArray array = new CVMKalmanFilterArray( 4, 1.2, 0.8, 0.1 );
+		for ( int i = 0; i < n; i++ )
+		{
+			final double[] X0 = new double[ 6 ];
+			for ( int c = 0; c < 6; c++ )
+			{
+				X0[ c ] = 10 * ran.nextGaussian();
+			}
+			filters[ i ] = new CVMKalmanFilter( X0, 1e-2, 1.2, 0.8, 0.1 );
+			slots[ i ] = array.add( X0, 1e-2 );
+		}
+		assertEquals( n, array.size() );
+
+		final double[] predicted = new double[ 6 ];
+		for ( int t = 0; t < 20; t++ )
+		{
+			array.predictAll();
+			final double[] mx = new double[ array.getNSlots() ];
+			final double[] my = new double[ array.getNSlots() ];
+			final double[] mz = new double[ array.getNSlots() ];
+			for ( int i = 0; i < n; i++ )
+			{
+				filters[ i ].predict( predicted );
+				for ( int c = 0; c < 6; c++ )
+				{
+					assertEquals( predicted[ c ], array.getPrediction( slots[ i ], c ), EPSILON );
+				}
+				if ( ran.nextDouble() < 0.2 )
+				{
+					filters[ i ].update( null );
+					mx[ slots[ i ] ] = Double.NaN;
+				}
+				else
+				{
+					final double[] m = new double[] { predicted[ 0 ] + ran.nextGaussian(), predicted[ 1 ] + ran.nextGaussian(), predicted[ 2 ] + ran.nextGaussian() };
+					filters[ i ].update( m );
+					mx[ slots[ i ] ] = m[ 0 ];
+					my[ slots[ i ] ] = m[ 1 ];
+					mz[ slots[ i ] ] = m[ 2 ];
+				}
+			}
+			array.updateAll( mx, my, mz );
+			for ( int i = 0; i < n; i++ )
+			{
+				assertEquals( filters[ i ].getPositionError(), array.getPositionError( slots[ i ] ), EPSILON );
+				assertEquals( filters[ i ].getVelocityError(), array.getVelocityError( slots[ i ] ), EPSILON );
+				assertEquals( filters[ i ].getNOcclusion(), array.getNOcclusion( slots[ i ] ) );
+			}
+		}
+	}
+
+	@Test
+	public void testArraySlotReuse()
+	{
+		final CVMKalmanFilterArray array = new CVMKalmanFilterArray( 1, 1, 1, 1 );
+		final int a = array.add( new double[ 6 ], 1 );
+		final int b = array.add( new double[ 6 ], 1 );
+		final int c = array.add( new double[ 6 ], 1 );
+		assertEquals( 3, array.size() );
+		array.remove( b );
+		assertEquals( 2, array.size() );
+		assertEquals( false, array.isActive( b ) );
+		final int d = array.add( new double[] { 1, 2, 3, 4, 5, 6 }, 1 );
+		assertEquals( b, d );
+		assertEquals( 3, array.getNSlots() );
+		assertEquals( 3, array.size() );
+		assertEquals( true, array.isActive( a ) && array.isActive( c ) && array.isActive( d ) );
+		array.predictAll();
+		assertEquals( 5d, array.getPrediction( d, 0 ), 0d );
+		assertEquals( 0, array.getNOcclusion( d ) );
+	}
+}
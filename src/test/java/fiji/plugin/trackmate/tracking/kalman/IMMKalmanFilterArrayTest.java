@@ -0,0 +1,84 @@
+package fiji.plugin.trackmate.tracking.kalman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IMMKalmanFilterArrayTest
+{
+
+	@Test
+	public void testDirectedMotion()
+	{
+		final IMMKalmanFilterArray filters = new IMMKalmanFilterArray( 1, 1d, 1d, 1d, 0.1d, 0.05d );
+		final int k = filters.add( new double[] { 0, 0, 0, 2, -1, 0.5 }, 1e-2 );
+		for ( int t = 1; t <= 30; t++ )
+		{
+			filters.predict( 0, 1 );
+			filters.update( k, 2 * t, -t, 0.5 * t );
+		}
+		assertTrue( filters.getModelProbability( k, IMMKalmanFilterArray.CONSTANT_VELOCITY ) > 0.9 );
+		assertEquals( 1d, filters.getModelProbability( k, IMMKalmanFilterArray.RANDOM_WALK ) + filters.getModelProbability( k, IMMKalmanFilterArray.CONSTANT_VELOCITY ), 1e-12 );
+
+		filters.predict( 0, 1 );
+		assertEquals( 62d, filters.getPrediction( k, 0 ), 0.5 );
+		assertEquals( -31d, filters.getPrediction( k, 1 ), 0.5 );
+		assertEquals( 15.5d, filters.getPrediction( k, 2 ), 0.5 );
+	}
+
+	@Test
+	public void testDiffusiveMotion()
+	{
+		final Random ran = new Random( 1l );
+		final IMMKalmanFilterArray filters = new IMMKalmanFilterArray( 1, 1d, 1d, 1d, 0.1d, 0.05d );
+		final int k = filters.add( new double[] { 0, 0, 0, 0, 0, 0 }, 1e-2 );
+		final double[] pos = new double[ 3 ];
+		double meanRandomWalkProbability = 0d;
+		final int nFrames = 200;
+		for ( int t = 1; t <= nFrames; t++ )
+		{
+			for ( int d = 0; d < 3; d++ )
+			{
+				pos[ d ] += ran.nextGaussian();
+			}
+			filters.predict( 0, 1 );
+			filters.update( k, pos[ 0 ], pos[ 1 ], pos[ 2 ] );
+			meanRandomWalkProbability += filters.getModelProbability( k, IMMKalmanFilterArray.RANDOM_WALK ) / nFrames;
+		}
+		assertTrue( meanRandomWalkProbability > 0.5 );
+	}
+
+	@Test
+	public void testOcclusion()
+	{
+		final IMMKalmanFilterArray filters = new IMMKalmanFilterArray( 1, 1d, 1d, 1d, 0.1d, 0.05d );
+		final int k = filters.add( new double[] { 0, 0, 0, 1, 0, 0 }, 1e-2 );
+		filters.predict( 0, 1 );
+		final double s = filters.getInnovationVariance( k );
+		final double x = filters.getPrediction( k, 0 );
+		filters.occlude( k );
+		assertEquals( 1, filters.getNOcclusion( k ) );
+		assertEquals( x, filters.getState( k, 0 ), 1e-12 );
+
+		// Uncertainty grows without measurements.
+		filters.predict( 0, 1 );
+		assertTrue( filters.getInnovationVariance( k ) > s );
+	}
+
+	@Test
+	public void testSlotReuse()
+	{
+		final IMMKalmanFilterArray filters = new IMMKalmanFilterArray( 1, 1d, 1d, 1d, 0.1d, 0.05d );
+		final int k0 = filters.add( new double[ 6 ], 1e-2 );
+		final int k1 = filters.add( new double[ 6 ], 1e-2 );
+		assertEquals( 2, filters.size() );
+		filters.remove( k0 );
+		assertEquals( 1, filters.size() );
+		assertTrue( !filters.isActive( k0 ) && filters.isActive( k1 ) );
+		assertEquals( k0, filters.add( new double[ 6 ], 1e-2 ) );
+		assertEquals( 2, filters.getNSlots() );
+	}
+}
@@ -0,0 +1,147 @@
+package fiji.plugin.trackmate.tracking.kalman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.DefaultTOCollection;
+
+public class KalmanTrackerTest
+{
+
+	private static final int N_TRACKS = 30;
+
+	private static final int N_FRAMES = 40;
+
+	/**
+	 * Creates well separated tracks moving with a constant velocity, with one
+	 * missing detection each.
+	 */
+	private static final List< List< Spot >> createTracks( final DefaultTOCollection< Spot > spots )
+	{
+		final Random ran = new Random( 1l );
+		final List< List< Spot >> tracks = new ArrayList< List< Spot >>( N_TRACKS );
+		for ( int i = 0; i < N_TRACKS; i++ )
+		{
+			final double vx = 2 * ran.nextDouble() - 1;
+			final double vy = 2 * ran.nextDouble() - 1;
+			final List< Spot > track = new ArrayList< Spot >( N_FRAMES );
+			for ( int t = 0; t < N_FRAMES; t++ )
+			{
+				if ( t == 10 + i % 20 )
+				{
+					continue;
+				}
+				final Spot spot = new Spot( 100 * i + t * vx, t * vy, 0d, 1d, -1d );
+				spots.add( spot, t );
+				track.add( spot );
+			}
+			tracks.add( track );
+		}
+		return tracks;
+	}
+
+	@Test
+	public void testTracking()
+	{
+		final DefaultTOCollection< Spot > spots = new DefaultTOCollection< Spot >();
+		final List< List< Spot >> tracks = createTracks( spots );
+
+		final KalmanTracker< Spot > tracker = new KalmanTracker< Spot >( spots, 5d, 2, 5d );
+		tracker.setNumThreads( 1 );
+		checkTracks( tracker, tracks );
+	}
+
+	@Test
+	public void testTrackingWithMahalanobisGateAndCost()
+	{
+		final DefaultTOCollection< Spot > spots = new DefaultTOCollection< Spot >();
+		final List< List< Spot >> tracks = createTracks( spots );
+
+		final KalmanTracker< Spot > tracker = new KalmanTracker< Spot >( spots, 5d, 2, 5d );
+		tracker.setMahalanobisGate( 11.34 );
+		tracker.setMahalanobisCost( true );
+		checkTracks( tracker, tracks );
+	}
+
+	@Test
+	public void testTrackingWithInteractingMultipleModel()
+	{
+		final DefaultTOCollection< Spot > spots = new DefaultTOCollection< Spot >();
+		final List< List< Spot >> tracks = createTracks( spots );
+
+		final KalmanTracker< Spot > tracker = new KalmanTracker< Spot >( spots, 5d, 2, 5d );
+		tracker.setInteractingMultipleModel( true );
+		tracker.setMahalanobisGate( 11.34 );
+		checkTracks( tracker, tracks );
+	}
+
+	@Test
+	public void testIllegalModelSwitchProbability()
+	{
+		final KalmanTracker< Spot > tracker = new KalmanTracker< Spot >( new DefaultTOCollection< Spot >(), 5d, 2, 5d );
+		tracker.setModelSwitchProbability( 1.5d );
+		assertFalse( tracker.checkInput() );
+	}
+
+	@Test
+	public void testIllegalMahalanobisGate()
+	{
+		final KalmanTracker< Spot > tracker = new KalmanTracker< Spot >( new DefaultTOCollection< Spot >(), 5d, 2, 5d );
+		tracker.setMahalanobisGate( 0d );
+		assertFalse( tracker.checkInput() );
+	}
+
+	private static final void checkTracks( final KalmanTracker< Spot > tracker, final List< List< Spot >> tracks )
+	{
+		assertTrue( tracker.getErrorMessage(), tracker.checkInput() && tracker.process() );
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = tracker.getResult();
+
+		int nEdges = 0;
+		for ( final List< Spot > track : tracks )
+		{
+			for ( int j = 1; j < track.size(); j++ )
+			{
+				assertNotNull( "Missing link in track at frame " + track.get( j ).frame(), graph.getEdge( track.get( j - 1 ), track.get( j ) ) );
+				nEdges++;
+			}
+		}
+		assertEquals( nEdges, graph.edgeSet().size() );
+	}
+
+	@Test
+	public void testSameResultsWithSeveralThreads()
+	{
+		final DefaultTOCollection< Spot > spots = new DefaultTOCollection< Spot >();
+		createTracks( spots );
+
+		final KalmanTracker< Spot > tracker1 = new KalmanTracker< Spot >( spots, 5d, 2, 5d );
+		tracker1.setNumThreads( 1 );
+		assertTrue( tracker1.getErrorMessage(), tracker1.process() );
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph1 = tracker1.getResult();
+
+		final KalmanTracker< Spot > tracker4 = new KalmanTracker< Spot >( spots, 5d, 2, 5d );
+		tracker4.setNumThreads( 4 );
+		assertTrue( tracker4.getErrorMessage(), tracker4.process() );
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph4 = tracker4.getResult();
+
+		assertEquals( graph1.vertexSet(), graph4.vertexSet() );
+		assertEquals( graph1.edgeSet().size(), graph4.edgeSet().size() );
+		for ( final DefaultWeightedEdge edge : graph1.edgeSet() )
+		{
+			final DefaultWeightedEdge other = graph4.getEdge( graph1.getEdgeSource( edge ), graph1.getEdgeTarget( edge ) );
+			assertNotNull( other );
+			assertEquals( graph1.getEdgeWeight( edge ), graph4.getEdgeWeight( other ), 0d );
+		}
+	}
+}
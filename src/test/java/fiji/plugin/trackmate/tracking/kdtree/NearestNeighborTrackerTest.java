@@ -0,0 +1,96 @@
+package fiji.plugin.trackmate.tracking.kdtree;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.DefaultTOCollection;
+
+public class NearestNeighborTrackerTest
+{
+
+	private static final int N_TRACKS = 50;
+
+	private static final int N_FRAMES = 30;
+
+	private static final Map< String, Object > settings( final double maxDistance )
+	{
+		final Map< String, Object > settings = new HashMap< String, Object >();
+		settings.put( KEY_LINKING_MAX_DISTANCE, Double.valueOf( maxDistance ) );
+		return settings;
+	}
+
+	@Test
+	public void testTracking()
+	{
+		final Random ran = new Random( 1l );
+		final DefaultTOCollection< Spot > spots = new DefaultTOCollection< Spot >();
+		final List< List< Spot >> tracks = new ArrayList< List< Spot >>( N_TRACKS );
+		for ( int i = 0; i < N_TRACKS; i++ )
+		{
+			final List< Spot > track = new ArrayList< Spot >( N_FRAMES );
+			final double y = 20 * ran.nextDouble();
+			for ( int t = 0; t < N_FRAMES; t++ )
+			{
+				final Spot spot = new Spot( 10 * i + ran.nextDouble(), y + ran.nextDouble(), 0d, 1d, -1d );
+				spots.add( spot, t );
+				track.add( spot );
+			}
+			tracks.add( track );
+		}
+
+		for ( final boolean greedy : new boolean[] { false, true } )
+		{
+			final NearestNeighborTracker< Spot > tracker = new NearestNeighborTracker< Spot >( spots, settings( 3d ) );
+			tracker.setGreedyMatching( greedy );
+			tracker.setNumThreads( 4 );
+			assertTrue( tracker.getErrorMessage(), tracker.checkInput() && tracker.process() );
+			final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = tracker.getResult();
+			assertEquals( N_TRACKS * ( N_FRAMES - 1 ), graph.edgeSet().size() );
+			for ( final List< Spot > track : tracks )
+			{
+				for ( int t = 1; t < N_FRAMES; t++ )
+				{
+					assertNotNull( graph.getEdge( track.get( t - 1 ), track.get( t ) ) );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testGreedyMatchingTakesClosestPairFirst()
+	{
+		final DefaultTOCollection< Spot > spots = new DefaultTOCollection< Spot >();
+		final Spot a = new Spot( 0d, 0d, 0d, 1d, -1d );
+		final Spot b = new Spot( 2d, 0d, 0d, 1d, -1d );
+		final Spot t1 = new Spot( 1.2d, 0d, 0d, 1d, -1d );
+		final Spot t2 = new Spot( 4d, 0d, 0d, 1d, -1d );
+		spots.add( a, 0 );
+		spots.add( b, 0 );
+		spots.add( t1, 1 );
+		spots.add( t2, 1 );
+
+		final NearestNeighborTracker< Spot > tracker = new NearestNeighborTracker< Spot >( spots, settings( 3d ) );
+		tracker.setGreedyMatching( true );
+		assertTrue( tracker.getErrorMessage(), tracker.checkInput() && tracker.process() );
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = tracker.getResult();
+
+		// b-t1 is the closest pair. a cannot reach t2.
+		assertEquals( 1, graph.edgeSet().size() );
+		final DefaultWeightedEdge edge = graph.getEdge( b, t1 );
+		assertNotNull( edge );
+		assertEquals( 0.64d, graph.getEdgeWeight( edge ), 1e-12 );
+	}
+}
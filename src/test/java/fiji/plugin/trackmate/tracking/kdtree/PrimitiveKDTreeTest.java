@@ -0,0 +1,130 @@
+package fiji.plugin.trackmate.tracking.kdtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.imglib2.RealPoint;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.tracking.kdtree.PrimitiveKDTree.Neighbors;
+
+public class PrimitiveKDTreeTest
+{
+
+	@Test
+	public void testRadiusSearchSameAsBruteForce()
+	{
+		final Random ran = new Random( 1l );
+		final List< RealPoint > points = new ArrayList< RealPoint >();
+		for ( int i = 0; i < 2000; i++ )
+		{
+			// Integer coordinates, to have many ties.
+			points.add( new RealPoint( ran.nextInt( 50 ), ran.nextInt( 50 ), ran.nextInt( 5 ) ) );
+		}
+		final PrimitiveKDTree tree = new PrimitiveKDTree( points );
+		assertEquals( points.size(), tree.size() );
+		assertEquals( 3, tree.numDimensions() );
+
+		final Neighbors neighbors = new Neighbors();
+		final double[] query = new double[ 3 ];
+		for ( int q = 0; q < 200; q++ )
+		{
+			for ( int d = 0; d < 3; d++ )
+			{
+				query[ d ] = 60 * ran.nextDouble() - 5;
+			}
+			final double squareRadius = 40 * ran.nextDouble();
+
+			final Map< Integer, Double > expected = new HashMap< Integer, Double >();
+			for ( int i = 0; i < points.size(); i++ )
+			{
+				double d2 = 0;
+				for ( int d = 0; d < 3; d++ )
+				{
+					final double dx = query[ d ] - points.get( i ).getDoublePosition( d );
+					d2 += dx * dx;
+				}
+				if ( d2 <= squareRadius )
+				{
+					expected.put( Integer.valueOf( i ), Double.valueOf( d2 ) );
+				}
+			}
+
+			tree.radiusSearch( query, squareRadius, neighbors );
+			assertEquals( expected.size(), neighbors.size() );
+			for ( int i = 0; i < neighbors.size(); i++ )
+			{
+				final Double d2 = expected.get( Integer.valueOf( neighbors.index( i ) ) );
+				assertTrue( null != d2 );
+				assertEquals( d2.doubleValue(), neighbors.squareDistance( i ), 0d );
+			}
+		}
+	}
+
+	@Test
+	public void testNearestSearchSameAsBruteForce()
+	{
+		final Random ran = new Random( 2l );
+		final List< RealPoint > points = new ArrayList< RealPoint >();
+		for ( int i = 0; i < 1000; i++ )
+		{
+			points.add( new RealPoint( 100 * ran.nextDouble(), 100 * ran.nextDouble(), 10 * ran.nextDouble() ) );
+		}
+		final PrimitiveKDTree tree = new PrimitiveKDTree( points );
+
+		// Exclude points as they are found, like the nearest neighbor tracker.
+		final boolean[] excluded = new boolean[ points.size() ];
+		final Neighbors neighbors = new Neighbors();
+		final double[] query = new double[ 3 ];
+		for ( int q = 0; q < points.size(); q++ )
+		{
+			for ( int d = 0; d < 3; d++ )
+			{
+				query[ d ] = 100 * ran.nextDouble();
+			}
+
+			double best = Double.POSITIVE_INFINITY;
+			for ( int i = 0; i < points.size(); i++ )
+			{
+				if ( excluded[ i ] )
+				{
+					continue;
+				}
+				double d2 = 0;
+				for ( int d = 0; d < 3; d++ )
+				{
+					final double dx = query[ d ] - points.get( i ).getDoublePosition( d );
+					d2 += dx * dx;
+				}
+				best = Math.min( best, d2 );
+			}
+
+			tree.nearestSearch( query, excluded, neighbors );
+			assertEquals( 1, neighbors.size() );
+			assertEquals( best, neighbors.squareDistance( 0 ), 0d );
+			assertTrue( !excluded[ neighbors.index( 0 ) ] );
+			excluded[ neighbors.index( 0 ) ] = true;
+		}
+
+		// All points are excluded.
+		tree.nearestSearch( query, excluded, neighbors );
+		assertEquals( 0, neighbors.size() );
+	}
+
+	@Test
+	public void testEmptyTree()
+	{
+		final PrimitiveKDTree tree = new PrimitiveKDTree( new ArrayList< RealPoint >() );
+		assertEquals( 0, tree.size() );
+		final Neighbors neighbors = new Neighbors();
+		tree.radiusSearch( new double[] { 0, 0, 0 }, 100, neighbors );
+		assertEquals( 0, neighbors.size() );
+	}
+}
@@ -0,0 +1,128 @@
+package fiji.plugin.trackmate.tracking.oldlap;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_MERGING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_SPLITTING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_SPLITTING_MAX_DISTANCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCostCalculator;
+import fiji.plugin.trackmate.tracking.DefaultTOCollection;
+import fiji.plugin.trackmate.tracking.sparselap.linker.DenseLAPSolver;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPJV;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPSolverFactory;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPSolverSelector;
+import fiji.plugin.trackmate.util.LAPUtils;
+
+public class SparseLAPJVTrackerTest
+{
+
+	/**
+	 * Random walks with missing detections, tracked with gap closing, merging
+	 * and splitting: the sparse tracker must find the same links as the dense
+	 * one.
+	 */
+	@Test
+	public void testSameResultsAsDenseTracker()
+	{
+		final DefaultTOCollection< Spot > spots = createSpots();
+		final Map< String, Object > settings = createSettings();
+
+		final FastLAPTracker< Spot > dense = new FastLAPTracker< Spot >( new SpotCostCalculator(), spots, settings );
+		assertTrue( dense.getErrorMessage(), dense.checkInput() && dense.process() );
+
+		final SparseLAPJVTracker< Spot > sparse = new SparseLAPJVTracker< Spot >( new SpotCostCalculator(), spots, settings );
+		assertTrue( sparse.getErrorMessage(), sparse.checkInput() && sparse.process() );
+
+		assertSameGraph( dense.getResult(), sparse.getResult() );
+	}
+
+	/**
+	 * The trackers must find the same links when their assignment problems
+	 * are solved through a {@link LAPSolverFactory}.
+	 */
+	@Test
+	public void testSameResultsWithSolverFactory()
+	{
+		final DefaultTOCollection< Spot > spots = createSpots();
+		final Map< String, Object > settings = createSettings();
+
+		final FastLAPTracker< Spot > reference = new FastLAPTracker< Spot >( new SpotCostCalculator(), spots, settings );
+		assertTrue( reference.getErrorMessage(), reference.checkInput() && reference.process() );
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > expected = reference.getResult();
+
+		for ( final LAPSolverFactory factory : new LAPSolverFactory[] { new LAPSolverSelector(), LAPJV.factory(), DenseLAPSolver.factory() } )
+		{
+			final FastLAPTracker< Spot > dense = new FastLAPTracker< Spot >( new SpotCostCalculator(), spots, settings );
+			dense.setSolverFactory( factory );
+			assertTrue( dense.getErrorMessage(), dense.checkInput() && dense.process() );
+			assertSameGraph( expected, dense.getResult() );
+
+			final SparseLAPJVTracker< Spot > sparse = new SparseLAPJVTracker< Spot >( new SpotCostCalculator(), spots, settings );
+			sparse.setSolverFactory( factory );
+			assertTrue( sparse.getErrorMessage(), sparse.checkInput() && sparse.process() );
+			assertSameGraph( expected, sparse.getResult() );
+		}
+	}
+
+	private static final DefaultTOCollection< Spot > createSpots()
+	{
+		final Random ran = new Random( 3l );
+		final DefaultTOCollection< Spot > spots = new DefaultTOCollection< Spot >();
+		for ( int i = 0; i < 15; i++ )
+		{
+			double x = 30 * ran.nextDouble();
+			double y = 30 * ran.nextDouble();
+			for ( int t = 0; t < 20; t++ )
+			{
+				x += ran.nextGaussian();
+				y += ran.nextGaussian();
+				if ( ran.nextDouble() < 0.1 )
+				{
+					continue;
+				}
+				spots.add( new Spot( x, y, 0d, 1d, -1d ), t );
+			}
+		}
+		spots.setVisible( true );
+		return spots;
+	}
+
+	private static final Map< String, Object > createSettings()
+	{
+		final Map< String, Object > settings = LAPUtils.getDefaultLAPSettingsMap();
+		settings.put( KEY_LINKING_MAX_DISTANCE, 3d );
+		settings.put( KEY_ALLOW_GAP_CLOSING, true );
+		settings.put( KEY_GAP_CLOSING_MAX_DISTANCE, 5d );
+		settings.put( KEY_ALLOW_TRACK_MERGING, true );
+		settings.put( KEY_MERGING_MAX_DISTANCE, 2d );
+		settings.put( KEY_ALLOW_TRACK_SPLITTING, true );
+		settings.put( KEY_SPLITTING_MAX_DISTANCE, 2d );
+		return settings;
+	}
+
+	private static final void assertSameGraph( final SimpleWeightedGraph< Spot, DefaultWeightedEdge > expected, final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph )
+	{
+		assertEquals( expected.vertexSet(), graph.vertexSet() );
+		assertEquals( expected.edgeSet().size(), graph.edgeSet().size() );
+		for ( final DefaultWeightedEdge edge : expected.edgeSet() )
+		{
+			final DefaultWeightedEdge other = graph.getEdge( expected.getEdgeSource( edge ), expected.getEdgeTarget( edge ) );
+			assertNotNull( other );
+			assertEquals( expected.getEdgeWeight( edge ), graph.getEdgeWeight( other ), 1e-9 );
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package fiji.plugin.trackmate.tracking.oldlap.costfunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCostCalculator;
+import fiji.plugin.trackmate.TrackmateConstants;
+
+public class TiledCostMatrixFillerTest
+{
+
+	private static final double BLOCKING_VALUE = Double.MAX_VALUE;
+
+	@Test
+	public void testSameAsBruteForce()
+	{
+		final Random ran = new Random( 1l );
+		final int nRows = 3 * TiledCostMatrixFiller.TILE_SIZE + 17;
+		final int nCols = 2 * TiledCostMatrixFiller.TILE_SIZE + 5;
+		final int[] rowFrames = new int[ nRows ];
+		for ( int i = 0; i < nRows; i++ )
+		{
+			rowFrames[ i ] = ran.nextInt( 50 );
+		}
+		final int[] colFrames = new int[ nCols ];
+		for ( int j = 0; j < nCols; j++ )
+		{
+			colFrames[ j ] = ran.nextInt( 50 );
+		}
+
+		final AtomicInteger nCalls = new AtomicInteger( 0 );
+		final TiledCostMatrixFiller.PairCost pairCost = new TiledCostMatrixFiller.PairCost()
+		{
+			@Override
+			public double cost( final int row, final int col )
+			{
+				nCalls.incrementAndGet();
+				return row * 1000 + col;
+			}
+		};
+
+		for ( final int numThreads : new int[] { 1, 4 } )
+		{
+			for ( final int[] range : new int[][] { { 1, 1 }, { 1, 3 }, { -2, 2 } } )
+			{
+				nCalls.set( 0 );
+				final double[][] m = new double[ nRows ][ nCols ];
+				TiledCostMatrixFiller.fill( m, rowFrames, colFrames, range[ 0 ], range[ 1 ], BLOCKING_VALUE, pairCost, numThreads, "Test thread" );
+
+				int expectedCalls = 0;
+				for ( int i = 0; i < nRows; i++ )
+				{
+					for ( int j = 0; j < nCols; j++ )
+					{
+						final int dt = colFrames[ j ] - rowFrames[ i ];
+						if ( dt >= range[ 0 ] && dt <= range[ 1 ] )
+						{
+							assertEquals( i * 1000 + j, m[ i ][ j ], 0d );
+							expectedCalls++;
+						}
+						else
+						{
+							assertEquals( BLOCKING_VALUE, m[ i ][ j ], 0d );
+						}
+					}
+				}
+				// Only pairs within the frame range are evaluated.
+				assertEquals( expectedCalls, nCalls.get() );
+			}
+		}
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		final double[][] m = new double[ 3 ][ 0 ];
+		TiledCostMatrixFiller.fill( m, new int[] { 0, 1, 2 }, new int[ 0 ], 1, 1, BLOCKING_VALUE, null, 2, "Test thread" );
+		assertEquals( 3, m.length );
+	}
+
+	@Test
+	public void testPackedSameAsCostCalculator()
+	{
+		final Random ran = new Random( 2l );
+		final List< Spot > sources = createSpots( ran, 150 );
+		final List< Spot > targets = createSpots( ran, 170 );
+		// Features that give a zero and a NaN normalized difference.
+		sources.set( 0, new Spot( 10d, 10d, 0d, 1d, 2d, "Near source" ) );
+		targets.set( 0, new Spot( 12d, 10d, 0d, 1d, -2d, "Near target" ) );
+		targets.set( 1, new Spot( 90d, 90d, 0d, 1d, 1d, "Far target" ) );
+		sources.get( 1 ).putFeature( TrackmateConstants.RADIUS, Double.valueOf( Double.NaN ) );
+
+		final Map< String, Double > featurePenalties = new HashMap< String, Double >();
+		featurePenalties.put( TrackmateConstants.QUALITY, Double.valueOf( 1d ) );
+		featurePenalties.put( TrackmateConstants.RADIUS, Double.valueOf( 0.5d ) );
+
+		final SpotCostCalculator calculator = new SpotCostCalculator();
+		final double maxDist = 30d;
+		final TiledCostMatrixFiller.PairCost pairCost = TiledCostMatrixFiller.pairCost( calculator, sources, targets, maxDist, BLOCKING_VALUE, featurePenalties );
+		int nLinkable = 0;
+		for ( int i = 0; i < sources.size(); i++ )
+		{
+			for ( int j = 0; j < targets.size(); j++ )
+			{
+				final double expected = calculator.computeLinkingCostFor( sources.get( i ), targets.get( j ), maxDist, BLOCKING_VALUE, featurePenalties );
+				assertEquals( expected, pairCost.cost( i, j ), 0d );
+				if ( expected != BLOCKING_VALUE )
+				{
+					nLinkable++;
+				}
+			}
+		}
+		assertTrue( nLinkable > 0 );
+
+		// A missing feature falls back on the cost calculator.
+		featurePenalties.put( "MISSING", Double.valueOf( 1d ) );
+		final TiledCostMatrixFiller.PairCost fallback = TiledCostMatrixFiller.pairCost( calculator, sources, targets, maxDist, BLOCKING_VALUE, featurePenalties );
+		assertEquals( BLOCKING_VALUE, fallback.cost( 0, 1 ), 0d );
+		try
+		{
+			fallback.cost( 0, 0 );
+			fail( "A missing feature must throw for linkable pairs, as the cost calculator does." );
+		}
+		catch ( final NullPointerException e )
+		{}
+	}
+
+	private static final List< Spot > createSpots( final Random ran, final int n )
+	{
+		final List< Spot > spots = new ArrayList< Spot >( n );
+		for ( int i = 0; i < n; i++ )
+		{
+			spots.add( new Spot( 100 * ran.nextDouble(), 100 * ran.nextDouble(), 10 * ran.nextDouble(), 1 + ran.nextDouble(), ran.nextDouble(), "S" + i ) );
+		}
+		return spots;
+	}
+}
@@ -0,0 +1,104 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.DefaultSpotCollection;
+import fiji.plugin.trackmate.Spot;
+
+public class SparseLAPFrameToFrameTrackerTest
+{
+
+	private static final int N_FRAMES = 40;
+
+	private static final int N_SPOTS = 10;
+
+	private static final String FEATURE = "TEST_FEATURE";
+
+	/**
+	 * Creates spots moving along parallel lines. They all have the test
+	 * feature, except the ones of the specified frame.
+	 */
+	private static final DefaultSpotCollection createSpots( final int frameWithoutFeature )
+	{
+		final DefaultSpotCollection spots = new DefaultSpotCollection();
+		for ( int t = 0; t < N_FRAMES; t++ )
+		{
+			final List< Spot > frame = new ArrayList< Spot >( N_SPOTS );
+			for ( int i = 0; i < N_SPOTS; i++ )
+			{
+				final Spot spot = new Spot( 10d * i, t, 0d, 1d, -1d );
+				if ( t != frameWithoutFeature )
+				{
+					spot.putFeature( FEATURE, Double.valueOf( i ) );
+				}
+				frame.add( spot );
+			}
+			spots.put( t, frame );
+		}
+		spots.setVisible( true );
+		return spots;
+	}
+
+	private static final Map< String, Object > createSettings()
+	{
+		final Map< String, Object > settings = new HashMap< String, Object >();
+		settings.put( KEY_LINKING_MAX_DISTANCE, 2d );
+		settings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, 1.05d );
+		final Map< String, Double > penalties = new HashMap< String, Double >();
+		penalties.put( FEATURE, 1d );
+		settings.put( KEY_LINKING_FEATURE_PENALTIES, penalties );
+		return settings;
+	}
+
+	@Test
+	public void testPipeline()
+	{
+		final SparseLAPFrameToFrameTracker< Spot > tracker = new SparseLAPFrameToFrameTracker< Spot >( createSpots( -1 ), createSettings() );
+		tracker.setPipeline( 2, 2, 1 );
+		assertTrue( tracker.getErrorMessage(), tracker.checkInput() && tracker.process() );
+		assertEquals( N_SPOTS * ( N_FRAMES - 1 ), tracker.getResult().edgeSet().size() );
+	}
+
+	/**
+	 * A cost function throwing an exception in the middle of the movie must
+	 * make the tracking fail, not hang the pipeline.
+	 */
+	@Test( timeout = 30000 )
+	public void testPipelineFailure() throws InterruptedException
+	{
+		// Missing features throw a NullPointerException in the cost function.
+		final SparseLAPFrameToFrameTracker< Spot > tracker = new SparseLAPFrameToFrameTracker< Spot >( createSpots( 5 ), createSettings() );
+		tracker.setPipeline( 1, 1, 1 );
+		assertTrue( tracker.getErrorMessage(), tracker.checkInput() );
+
+		final AtomicBoolean result = new AtomicBoolean( true );
+		final Thread thread = new Thread( "Pipeline failure test" )
+		{
+			@Override
+			public void run()
+			{
+				result.set( tracker.process() );
+			}
+		};
+		thread.start();
+		thread.join( 20000 );
+		assertFalse( "The pipeline did not terminate.", thread.isAlive() );
+		assertFalse( "The tracking should have failed.", result.get() );
+		assertNotNull( tracker.getErrorMessage() );
+		assertTrue( tracker.getErrorMessage(), tracker.getErrorMessage().contains( "failed" ) );
+	}
+}
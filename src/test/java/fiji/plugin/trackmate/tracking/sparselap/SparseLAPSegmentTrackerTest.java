@@ -0,0 +1,210 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_MERGING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_SPLITTING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_CUTOFF_PERCENTILE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_SPLITTING_MAX_DISTANCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.alg.ConnectivityInspector;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+
+public class SparseLAPSegmentTrackerTest
+{
+
+	private static final int N_TRACKS = 40;
+
+	private static final int N_FRAMES = 60;
+
+	private static final Map< String, Object > createSettings()
+	{
+		final Map< String, Object > settings = new HashMap< String, Object >();
+		settings.put( KEY_ALLOW_GAP_CLOSING, true );
+		settings.put( KEY_GAP_CLOSING_MAX_DISTANCE, 15d );
+		settings.put( KEY_GAP_CLOSING_MAX_FRAME_GAP, 2 );
+		settings.put( KEY_ALLOW_TRACK_SPLITTING, true );
+		settings.put( KEY_SPLITTING_MAX_DISTANCE, 15d );
+		settings.put( KEY_ALLOW_TRACK_MERGING, true );
+		settings.put( KEY_MERGING_MAX_DISTANCE, 15d );
+		settings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, 1.05d );
+		settings.put( KEY_CUTOFF_PERCENTILE, 0.9d );
+		return settings;
+	}
+
+	/**
+	 * Creates well separated tracks, with one missing detection every few
+	 * frames, as segments to be linked.
+	 */
+	private static final List< List< Spot >> createTracks( final Random ran )
+	{
+		return createTracks( ran, 100d );
+	}
+
+	/**
+	 * Creates tracks starting the specified distance apart, with one missing
+	 * detection every few frames, as segments to be linked.
+	 */
+	private static final List< List< Spot >> createTracks( final Random ran, final double spacing )
+	{
+		final List< List< Spot >> tracks = new ArrayList< List< Spot >>( N_TRACKS );
+		for ( int i = 0; i < N_TRACKS; i++ )
+		{
+			final List< Spot > track = new ArrayList< Spot >( N_FRAMES );
+			final double x0 = spacing * i;
+			final double y0 = 100 * ran.nextDouble();
+			final double theta = 2 * Math.PI * ran.nextDouble();
+			final double vx = Math.cos( theta );
+			final double vy = Math.sin( theta );
+			for ( int t = 0; t < N_FRAMES; t++ )
+			{
+				// Segments of at least 2 spots.
+				if ( t > 1 && t < N_FRAMES - 2 && ran.nextInt( 5 ) == 0 && null != track.get( t - 1 ) && null != track.get( t - 2 ) )
+				{
+					track.add( null );
+					continue;
+				}
+				final Spot spot = new Spot( x0 + vx * t, y0 + vy * t, 0, 1, -1 );
+				spot.setFrame( t );
+				track.add( spot );
+			}
+			tracks.add( track );
+		}
+		return tracks;
+	}
+
+	private static final SimpleWeightedGraph< Spot, DefaultWeightedEdge > createSegments( final List< List< Spot >> tracks )
+	{
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph< Spot, DefaultWeightedEdge >( DefaultWeightedEdge.class );
+		for ( final List< Spot > track : tracks )
+		{
+			Spot previous = null;
+			for ( final Spot spot : track )
+			{
+				if ( null != spot )
+				{
+					graph.addVertex( spot );
+					if ( null != previous )
+					{
+						graph.addEdge( previous, spot );
+					}
+				}
+				previous = spot;
+			}
+		}
+		return graph;
+	}
+
+	private static final Set< String > links( final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph )
+	{
+		final Set< String > links = new HashSet< String >();
+		for ( final DefaultWeightedEdge edge : graph.edgeSet() )
+		{
+			final Spot s1 = graph.getEdgeSource( edge );
+			final Spot s2 = graph.getEdgeTarget( edge );
+			links.add( Math.min( s1.ID(), s2.ID() ) + "-" + Math.max( s1.ID(), s2.ID() ) );
+		}
+		return links;
+	}
+
+	/**
+	 * Returns the edges of the specified graph that are not in the segments,
+	 * from source to target, checking that they form a valid assignment.
+	 */
+	private static final Map< Spot, Spot > newLinks( final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph, final Set< String > segmentLinks )
+	{
+		final Map< Spot, Spot > newLinks = new HashMap< Spot, Spot >();
+		final Set< Spot > targets = new HashSet< Spot >();
+		for ( final DefaultWeightedEdge edge : graph.edgeSet() )
+		{
+			final Spot s1 = graph.getEdgeSource( edge );
+			final Spot s2 = graph.getEdgeTarget( edge );
+			if ( segmentLinks.contains( Math.min( s1.ID(), s2.ID() ) + "-" + Math.max( s1.ID(), s2.ID() ) ) )
+			{
+				continue;
+			}
+			assertNull( "Source " + s1 + " is linked twice.", newLinks.put( s1, s2 ) );
+			assertTrue( "Target " + s2 + " is linked twice.", targets.add( s2 ) );
+		}
+		return newLinks;
+	}
+
+	@Test
+	public void testTimeShardingDenseBoundaries()
+	{
+		// Tracks closer than the linking distances: many candidates per gap.
+		final List< List< Spot >> tracks = createTracks( new Random( 2l ), 6d );
+		final Set< String > segmentLinks = links( createSegments( tracks ) );
+
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > global = createSegments( tracks );
+		final SparseLAPSegmentTracker< Spot > globalTracker = new SparseLAPSegmentTracker< Spot >( global, createSettings() );
+		assertTrue( globalTracker.getErrorMessage(), globalTracker.checkInput() && globalTracker.process() );
+		final Map< Spot, Spot > globalLinks = newLinks( global, segmentLinks );
+
+		int nConflicts = 0;
+		for ( final int shardLength : new int[] { 1, 3, 7 } )
+		{
+			final SimpleWeightedGraph< Spot, DefaultWeightedEdge > sharded = createSegments( tracks );
+			final SparseLAPSegmentTracker< Spot > shardedTracker = new SparseLAPSegmentTracker< Spot >( sharded, createSettings() );
+			shardedTracker.setTimeSharding( shardLength );
+			shardedTracker.setNumThreads( 2 );
+			assertTrue( shardedTracker.getErrorMessage(), shardedTracker.checkInput() && shardedTracker.process() );
+			nConflicts += shardedTracker.getNConflicts();
+
+			// Valid assignment, close to the global solution.
+			final Map< Spot, Spot > shardedLinks = newLinks( sharded, segmentLinks );
+			int nCommon = 0;
+			for ( final Spot source : shardedLinks.keySet() )
+			{
+				if ( shardedLinks.get( source ) == globalLinks.get( source ) )
+				{
+					nCommon++;
+				}
+			}
+			assertTrue( "With shards of " + shardLength + " frames, only " + nCommon + " of the " + globalLinks.size() + " global links were found.", nCommon >= 0.95 * globalLinks.size() );
+			assertTrue( "With shards of " + shardLength + " frames, " + ( shardedLinks.size() - nCommon ) + " links are not in the global solution.", shardedLinks.size() - nCommon <= 0.05 * globalLinks.size() );
+		}
+		assertTrue( "The data should yield conflicts at shard boundaries.", nConflicts > 0 );
+	}
+
+	@Test
+	public void testTimeSharding()
+	{
+		final List< List< Spot >> tracks = createTracks( new Random( 1l ) );
+
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > global = createSegments( tracks );
+		final int nSegmentEdges = global.edgeSet().size();
+		final SparseLAPSegmentTracker< Spot > globalTracker = new SparseLAPSegmentTracker< Spot >( global, createSettings() );
+		assertTrue( globalTracker.getErrorMessage(), globalTracker.checkInput() && globalTracker.process() );
+		assertTrue( "Gaps should have been closed.", global.edgeSet().size() > nSegmentEdges );
+		assertEquals( "All the tracks should have been rebuilt.", N_TRACKS, new ConnectivityInspector< Spot, DefaultWeightedEdge >( global ).connectedSets().size() );
+
+		for ( final int shardLength : new int[] { 1, 7, 20 } )
+		{
+			final SimpleWeightedGraph< Spot, DefaultWeightedEdge > sharded = createSegments( tracks );
+			final SparseLAPSegmentTracker< Spot > shardedTracker = new SparseLAPSegmentTracker< Spot >( sharded, createSettings() );
+			shardedTracker.setTimeSharding( shardLength );
+			shardedTracker.setNumThreads( 2 );
+			assertTrue( shardedTracker.getErrorMessage(), shardedTracker.checkInput() && shardedTracker.process() );
+			assertEquals( "Time-sharded linking with shards of " + shardLength + " frames should give the global solution on sparse data.", links( global ), links( sharded ) );
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.SquareDistCostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.JaqamanLinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
+
+public class TiledFrameLinkerTest
+{
+
+	private static final double MAX_DIST = 3d;
+
+	private static final double ALTERNATIVE_COST_FACTOR = 1.05d;
+
+	private final CostFunction< Spot, Spot > costFunction = new SquareDistCostFunction< Spot >();
+
+	/**
+	 * Creates the spots of two frames, the second one being displaced randomly
+	 * from the first one.
+	 */
+	private static final List< List< Spot >> createFrames( final Random ran, final int nSpots, final double width, final double spacing, final double sigma )
+	{
+		final List< Spot > sources = new ArrayList< Spot >( nSpots );
+		final List< Spot > targets = new ArrayList< Spot >( nSpots );
+		final int nPerLine = ( int ) ( width / spacing );
+		for ( int i = 0; i < nSpots; i++ )
+		{
+			final double x;
+			final double y;
+			if ( spacing > 0 )
+			{
+				// On a grid, with a small jitter.
+				x = ( i % nPerLine ) * spacing + ran.nextDouble();
+				y = ( i / nPerLine ) * spacing + ran.nextDouble();
+			}
+			else
+			{
+				x = width * ran.nextDouble();
+				y = width * ran.nextDouble();
+			}
+			sources.add( new Spot( x, y, 0, 1, -1 ) );
+			targets.add( new Spot( x + sigma * ran.nextGaussian(), y + sigma * ran.nextGaussian(), 0, 1, -1 ) );
+		}
+		final List< List< Spot >> frames = new ArrayList< List< Spot >>( 2 );
+		frames.add( sources );
+		frames.add( targets );
+		return frames;
+	}
+
+	private final Map< Spot, Spot > linkUntiled( final List< Spot > sources, final List< Spot > targets )
+	{
+		final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator = new JaqamanLinkingCostMatrixCreator< Spot, Spot >( sources, targets, costFunction, MAX_DIST * MAX_DIST, ALTERNATIVE_COST_FACTOR, 1d );
+		final JaqamanLinker< Spot, Spot > linker = new JaqamanLinker< Spot, Spot >( creator );
+		assertTrue( linker.getErrorMessage(), linker.checkInput() && linker.process() );
+		return linker.getResult();
+	}
+
+	private final TiledFrameLinker< Spot > linkTiled( final List< Spot > sources, final List< Spot > targets, final double tileSize, final int numThreads )
+	{
+		final TiledFrameLinker< Spot > linker = new TiledFrameLinker< Spot >( sources, targets, costFunction, MAX_DIST * MAX_DIST, ALTERNATIVE_COST_FACTOR, tileSize, MAX_DIST );
+		linker.setNumThreads( numThreads );
+		assertTrue( linker.getErrorMessage(), linker.checkInput() && linker.process() );
+		return linker;
+	}
+
+	@Test
+	public void testSparseIsUntiled()
+	{
+		final List< List< Spot >> frames = createFrames( new Random( 1l ), 2500, 500, 10, 0.5 );
+		final Map< Spot, Spot > expected = linkUntiled( frames.get( 0 ), frames.get( 1 ) );
+		final TiledFrameLinker< Spot > linker = linkTiled( frames.get( 0 ), frames.get( 1 ), 25, 4 );
+
+		assertTrue( "Expected several tiles.", linker.getNTiles() > 1 );
+		assertEquals( "Tiled linking should not have any conflict on sparse data.", 0, linker.getNConflicts() );
+		assertEquals( "Tiled linking should give the untiled solution on sparse data.", expected, linker.getResult() );
+	}
+
+	@Test
+	public void testDense()
+	{
+		final List< List< Spot >> frames = createFrames( new Random( 2l ), 3000, 200, 0, 1 );
+		final List< Spot > sources = frames.get( 0 );
+		final List< Spot > targets = frames.get( 1 );
+		final Map< Spot, Spot > expected = linkUntiled( sources, targets );
+		final TiledFrameLinker< Spot > linker = linkTiled( sources, targets, 20, 4 );
+		final Map< Spot, Spot > tiled = linker.getResult();
+
+		// Valid assignment.
+		assertEquals( "A target is linked twice.", tiled.size(), new HashSet< Spot >( tiled.values() ).size() );
+		for ( final Spot source : tiled.keySet() )
+		{
+			assertTrue( "Link is longer than the max distance.", costFunction.linkingCost( source, tiled.get( source ) ) < MAX_DIST * MAX_DIST );
+		}
+
+		// Close to the untiled solution.
+		int nSame = 0;
+		for ( final Spot source : expected.keySet() )
+		{
+			if ( expected.get( source ) == tiled.get( source ) )
+			{
+				nSame++;
+			}
+		}
+		assertTrue( "Tiled solution is too different from the untiled one: " + nSame + " links out of " + expected.size() + " are the same.", nSame > 0.95 * expected.size() );
+
+		// Deterministic.
+		assertEquals( "Tiled linking depends on the number of threads.", tiled, linkTiled( sources, targets, 20, 1 ).getResult() );
+	}
+
+	/**
+	 * Two tiles link their core source to the same target of their overlap.
+	 * The source that loses the conflict has a second-best target in its
+	 * tile, to which it must be linked, as in the untiled solution.
+	 */
+	@Test
+	public void testConflictRelinked()
+	{
+		// Tiles of size 10, with a halo of 3: the boundary is at x = 10.
+		final Spot a = new Spot( 5d, 0d, 0d, 1d, -1d, "A" );
+		final Spot b = new Spot( 10.4d, 0d, 0d, 1d, -1d, "B" );
+		final List< Spot > sources = new ArrayList< Spot >( 2 );
+		sources.add( a );
+		sources.add( b );
+		// Shared target, closer to A, and only seen by the tile of B.
+		final Spot t1 = new Spot( 7.5d, 0d, 0d, 1d, -1d, "T1" );
+		// Second-best target of B, further than T1.
+		final Spot t2 = new Spot( 13.35d, 0d, 0d, 1d, -1d, "T2" );
+		final List< Spot > targets = new ArrayList< Spot >( 2 );
+		targets.add( t1 );
+		targets.add( t2 );
+
+		final Map< Spot, Spot > expected = linkUntiled( sources, targets );
+		assertEquals( t1, expected.get( a ) );
+		assertEquals( t2, expected.get( b ) );
+
+		final TiledFrameLinker< Spot > linker = linkTiled( sources, targets, 10, 2 );
+		assertEquals( 1, linker.getNConflicts() );
+		assertEquals( 1, linker.getNRelinked() );
+		assertEquals( expected, linker.getResult() );
+		assertEquals( costFunction.linkingCost( b, t2 ), linker.getAssignmentCosts().get( b ).doubleValue(), 1e-9 );
+	}
+}
@@ -0,0 +1,71 @@
+package fiji.plugin.trackmate.tracking.sparselap.costfunction;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackmateConstants;
+
+public class BatchCostFunctionTest
+{
+
+	private static final List< Spot > createSpots( final Random ran, final int n )
+	{
+		final List< Spot > spots = new ArrayList< Spot >( n );
+		for ( int i = 0; i < n; i++ )
+		{
+			final Spot spot = new Spot( 100 * ran.nextDouble(), 100 * ran.nextDouble(), 100 * ran.nextDouble(), 1 + ran.nextDouble(), ran.nextDouble(), "" + i );
+			// Some spots with a null or a missing value.
+			if ( i % 7 == 0 )
+			{
+				spot.putFeature( TrackmateConstants.QUALITY, Double.valueOf( 0 ) );
+			}
+			else if ( i % 11 == 0 )
+			{
+				spot.putFeature( TrackmateConstants.QUALITY, Double.valueOf( Double.NaN ) );
+			}
+			spots.add( spot );
+		}
+		return spots;
+	}
+
+	private static final void checkSameCosts( final BatchCostFunction< Spot, Spot > costFunction, final List< Spot > sources, final List< Spot > targets )
+	{
+		final TargetBlock block = costFunction.prepareTargets( targets );
+		assertEquals( "Unexpected block size.", targets.size(), block.size() );
+		final double[] costs = new double[ targets.size() ];
+		for ( final Spot source : sources )
+		{
+			costFunction.linkingCosts( source, block, costs );
+			for ( int j = 0; j < targets.size(); j++ )
+			{
+				assertEquals( "Batch cost differs from pair cost for " + source + " -> " + targets.get( j ) + ".",
+						costFunction.linkingCost( source, targets.get( j ) ), costs[ j ], 0d );
+			}
+		}
+	}
+
+	@Test
+	public void testSquareDist()
+	{
+		final Random ran = new Random( 1l );
+		checkSameCosts( new SquareDistCostFunction< Spot >(), createSpots( ran, 50 ), createSpots( ran, 60 ) );
+	}
+
+	@Test
+	public void testFeaturePenalty()
+	{
+		final Random ran = new Random( 2l );
+		final Map< String, Double > penalties = new HashMap< String, Double >();
+		penalties.put( TrackmateConstants.QUALITY, Double.valueOf( 1 ) );
+		penalties.put( TrackmateConstants.RADIUS, Double.valueOf( 0.5 ) );
+		checkSameCosts( new FeaturePenaltyCostFunction< Spot >( penalties ), createSpots( ran, 50 ), createSpots( ran, 60 ) );
+	}
+}
@@ -0,0 +1,119 @@
+package fiji.plugin.trackmate.tracking.sparselap.costmatrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+
+public class GraphSegmentSplitterTest
+{
+
+	private static final Spot spot( final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph, final int frame )
+	{
+		final Spot spot = new Spot( frame, 0d, 0d, 1d, -1d );
+		spot.setFrame( frame );
+		graph.addVertex( spot );
+		return spot;
+	}
+
+	@Test
+	public void testLinearSegments()
+	{
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph< Spot, DefaultWeightedEdge >( DefaultWeightedEdge.class );
+
+		// Segment 1: frames 0 to 3, edges added in random order.
+		final Spot a0 = spot( graph, 0 );
+		final Spot a1 = spot( graph, 1 );
+		final Spot a2 = spot( graph, 2 );
+		final Spot a3 = spot( graph, 3 );
+		graph.addEdge( a2, a3 );
+		graph.addEdge( a0, a1 );
+		graph.addEdge( a2, a1 );
+
+		// Segment 2: frames 2 and 5.
+		final Spot b2 = spot( graph, 2 );
+		final Spot b5 = spot( graph, 5 );
+		graph.addEdge( b5, b2 );
+
+		// Lonely spot, ignored.
+		spot( graph, 4 );
+
+		final GraphSegmentSplitter< Spot > splitter = new GraphSegmentSplitter< Spot >( graph, true );
+		assertEquals( new HashSet< Spot >( Arrays.asList( a0, b2 ) ), new HashSet< Spot >( splitter.getSegmentStarts() ) );
+		assertEquals( new HashSet< Spot >( Arrays.asList( a3, b5 ) ), new HashSet< Spot >( splitter.getSegmentEnds() ) );
+		assertEquals( 2, splitter.getSegmentMiddles().size() );
+		for ( int i = 0; i < 2; i++ )
+		{
+			final List< Spot > middles = splitter.getSegmentMiddles().get( i );
+			if ( splitter.getSegmentStarts().get( i ) == a0 )
+			{
+				assertEquals( Arrays.asList( a1, a2 ), middles );
+			}
+			else
+			{
+				assertTrue( middles.isEmpty() );
+			}
+		}
+
+		final FrameGroupedList< Spot > starts = splitter.getSegmentStartsByFrame();
+		assertEquals( 2, starts.size() );
+		assertEquals( a0, starts.get( 0 ) );
+		assertEquals( b2, starts.get( 1 ) );
+		assertEquals( 0, starts.fromFrame( -10 ) );
+		assertEquals( 1, starts.fromFrame( 1 ) );
+		assertEquals( 1, starts.fromFrame( 2 ) );
+		assertEquals( 2, starts.fromFrame( 3 ) );
+		assertEquals( 2, starts.fromFrame( 100 ) );
+	}
+
+	@Test
+	public void testBranchingFallsBack()
+	{
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph< Spot, DefaultWeightedEdge >( DefaultWeightedEdge.class );
+		final Spot s0 = spot( graph, 0 );
+		final Spot s1 = spot( graph, 1 );
+		final Spot s2a = spot( graph, 2 );
+		final Spot s2b = spot( graph, 2 );
+		graph.addEdge( s0, s1 );
+		graph.addEdge( s1, s2a );
+		graph.addEdge( s1, s2b );
+
+		final GraphSegmentSplitter< Spot > splitter = new GraphSegmentSplitter< Spot >( graph, true );
+		assertEquals( Arrays.asList( s0 ), splitter.getSegmentStarts() );
+		assertEquals( 1, splitter.getSegmentEnds().size() );
+		assertEquals( 2, splitter.getSegmentEnds().get( 0 ).frame() );
+		assertEquals( 2, splitter.getSegmentMiddles().get( 0 ).size() );
+	}
+
+	@Test
+	public void testFrameGroupedListKeepsOrderWithinFrames()
+	{
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph< Spot, DefaultWeightedEdge >( DefaultWeightedEdge.class );
+		final List< Spot > spots = new ArrayList< Spot >();
+		final int[] frames = new int[] { 5, 3, 5, 7, 3, 5 };
+		for ( final int frame : frames )
+		{
+			spots.add( spot( graph, frame ) );
+		}
+
+		final FrameGroupedList< Spot > list = new FrameGroupedList< Spot >( spots );
+		final Spot[] expected = new Spot[] { spots.get( 1 ), spots.get( 4 ), spots.get( 0 ), spots.get( 2 ), spots.get( 5 ), spots.get( 3 ) };
+		for ( int k = 0; k < expected.length; k++ )
+		{
+			assertEquals( expected[ k ], list.get( k ) );
+			assertEquals( expected[ k ].frame(), list.frame( k ) );
+		}
+		assertEquals( 2, list.fromFrame( 4 ) );
+		assertEquals( 5, list.fromFrame( 6 ) );
+		assertEquals( 6, list.fromFrame( 8 ) );
+	}
+}
@@ -242,6 +242,191 @@ public class LAPJVBenchmark
 		}
 	}
 
+	public final void timeWarmStart()
+	{
+		final int nRepeats = 10;
+		final double density = 0.10d;
+		final double noise = 0.05d;
+		final Random ran = new Random();
+		seed = ran.nextInt();
+
+		final int[] sizes = generateIntLinSpaced( 100, 1000, 50 );
+
+		System.out.println( "Perturbation of " + ( 100 * noise ) + "% of the costs between two successive solves." );
+		System.out.println( "Size\tTimeCold(ms)\tTimeWarm(ms)\tFactor" );
+
+		for ( int ci = 0; ci < sizes.length; ci++ )
+		{
+			final int size = sizes[ ci ];
+			final int card = ( int ) Math.floor( size * size * density );
+			final double[] cc = new double[ card ];
+			final int[] kk = new int[ card ];
+			final int[] number = new int[ size ];
+			int index = 0;
+			for ( int i = 0; i < size; i++ )
+			{ // Row by row.
+				final int nToCreate = ( int ) Math.max( 1, ( size * density ) * ( 1 + 0.2 * ran.nextGaussian() ) );
+				final int[] cols = new int[ nToCreate ];
+				cols[ 0 ] = i; // diagonal
+				for ( int k = 1; k < cols.length; k++ )
+				{
+					cols[ k ] = ran.nextInt( size );
+				}
+				final int[] uCols = uniqueAndSort( cols );
+				for ( final int c : uCols )
+				{
+					kk[ index ] = c;
+					cc[ index ] = Math.floor( pseudoRandom( 1, 100 ) );
+					index++;
+				}
+				number[ i ] = uCols.length;
+			}
+			final int[] kk2 = Arrays.copyOf( kk, index );
+			final double[] cc2 = Arrays.copyOf( cc, index );
+
+			// The previous frame pair.
+			final SparseCostMatrix cm = new SparseCostMatrix( cc2, kk2, number, size );
+			final LAPJV previous = new LAPJV( cm );
+			previous.process();
+
+			// The current one: same structure, slightly different costs.
+			final double[] cc3 = new double[ cc2.length ];
+			for ( int k = 0; k < cc3.length; k++ )
+			{
+				cc3[ k ] = Math.max( 0, Math.floor( cc2[ k ] * ( 1 + noise * ran.nextGaussian() ) ) );
+			}
+			final SparseCostMatrix cm2 = new SparseCostMatrix( cc3, kk2, number, size );
+			System.out.print( String.format( "% 4d", size ) );
+
+			// COLD
+			long start = System.currentTimeMillis();
+			int[] coldRes = new int[ 0 ];
+			for ( int i = 0; i < nRepeats; i++ )
+			{
+				final LAPJV cold = new LAPJV( cm2 );
+				cold.process();
+				coldRes = cold.getResult();
+			}
+			long end = System.currentTimeMillis();
+			final long dt1 = end - start;
+			System.out.print( String.format( "\t%.1f", ( double ) dt1 / nRepeats ) );
+
+			// WARM
+			start = System.currentTimeMillis();
+			int[] warmRes = new int[ 0 ];
+			for ( int i = 0; i < nRepeats; i++ )
+			{
+				final LAPJV warm = new LAPJV( cm2 );
+				warm.setWarmStart( previous.getColumnPrices(), previous.getResult() );
+				warm.process();
+				warmRes = warm.getResult();
+			}
+			end = System.currentTimeMillis();
+			final long dt2 = end - start;
+
+			System.out.print( String.format( "\t\t%.1f", ( double ) dt2 / nRepeats ) );
+			System.out.print( String.format( "\t\t%.2f\n", ( double ) dt2 / dt1 ) );
+
+			// TEST
+			assertEquals( cm2.totalAssignmentCost( coldRes ), cm2.totalAssignmentCost( warmRes ), 1e-5 );
+		}
+	}
+
+	public final void timeAuction()
+	{
+		final int nRepeats = 10;
+		final double density = 0.10d;
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final Random ran = new Random();
+		seed = ran.nextInt();
+
+		final int[] sizes = generateIntLinSpaced( 100, 2000, 20 );
+
+		System.out.println( "Auction solver with 1 and " + numThreads + " threads." );
+		System.out.println( "Size\tTimeLAPJV(ms)\tTimeAuction1(ms)\tTimeAuctionN(ms)\tFactor1\tFactorN" );
+
+		for ( int ci = 0; ci < sizes.length; ci++ )
+		{
+			final int size = sizes[ ci ];
+			final int card = ( int ) Math.floor( size * size * density );
+			final double[] cc = new double[ card ];
+			final int[] kk = new int[ card ];
+			final int[] number = new int[ size ];
+			int index = 0;
+			for ( int i = 0; i < size; i++ )
+			{ // Row by row.
+				final int nToCreate = ( int ) Math.max( 1, ( size * density ) * ( 1 + 0.2 * ran.nextGaussian() ) );
+				final int[] cols = new int[ nToCreate ];
+				cols[ 0 ] = i; // diagonal
+				for ( int k = 1; k < cols.length; k++ )
+				{
+					cols[ k ] = ran.nextInt( size );
+				}
+				final int[] uCols = uniqueAndSort( cols );
+				for ( final int c : uCols )
+				{
+					kk[ index ] = c;
+					cc[ index ] = Math.floor( pseudoRandom( 1, 100 ) );
+					index++;
+				}
+				number[ i ] = uCols.length;
+			}
+			final int[] kk2 = Arrays.copyOf( kk, index );
+			final double[] cc2 = Arrays.copyOf( cc, index );
+
+			final SparseCostMatrix cm = new SparseCostMatrix( cc2, kk2, number, size );
+			System.out.print( String.format( "% 4d", size ) );
+
+			// LAPJV
+			long start = System.currentTimeMillis();
+			int[] jvRes = new int[ 0 ];
+			for ( int i = 0; i < nRepeats; i++ )
+			{
+				final LAPJV jv = new LAPJV( cm );
+				jv.process();
+				jvRes = jv.getResult();
+			}
+			long end = System.currentTimeMillis();
+			final long dt1 = end - start;
+			System.out.print( String.format( "\t%.1f", ( double ) dt1 / nRepeats ) );
+
+			// AUCTION, 1 THREAD
+			start = System.currentTimeMillis();
+			int[] auction1Res = new int[ 0 ];
+			for ( int i = 0; i < nRepeats; i++ )
+			{
+				final AuctionLAP auction = new AuctionLAP( cm );
+				auction.setNumThreads( 1 );
+				auction.process();
+				auction1Res = auction.getResult();
+			}
+			end = System.currentTimeMillis();
+			final long dt2 = end - start;
+			System.out.print( String.format( "\t\t%.1f", ( double ) dt2 / nRepeats ) );
+
+			// AUCTION, N THREADS
+			start = System.currentTimeMillis();
+			int[] auctionNRes = new int[ 0 ];
+			for ( int i = 0; i < nRepeats; i++ )
+			{
+				final AuctionLAP auction = new AuctionLAP( cm );
+				auction.setNumThreads( numThreads );
+				auction.process();
+				auctionNRes = auction.getResult();
+			}
+			end = System.currentTimeMillis();
+			final long dt3 = end - start;
+			System.out.print( String.format( "\t\t\t%.1f", ( double ) dt3 / nRepeats ) );
+
+			System.out.print( String.format( "\t\t\t%.2f", ( double ) dt2 / dt1 ) );
+			System.out.print( String.format( "\t%.2f\n", ( double ) dt3 / dt1 ) );
+
+			// TEST
+			assertEquals( cm.totalAssignmentCost( jvRes ), cm.totalAssignmentCost( auction1Res ), 1e-5 );
+			assertEquals( cm.totalAssignmentCost( jvRes ), cm.totalAssignmentCost( auctionNRes ), 1e-5 );
+		}
+	}
+
 	public static void main( final String[] args )
 	{
 		final LAPJVBenchmark benchmark = new LAPJVBenchmark();
@@ -257,5 +442,17 @@ public class LAPJVBenchmark
 		System.out.println( "------------" );
 		System.out.println();
 		benchmark.timeVaryingSize();
+
+		System.out.println( "----------" );
+		System.out.println( "Warm start" );
+		System.out.println( "----------" );
+		System.out.println();
+		benchmark.timeWarmStart();
+
+		System.out.println( "-------" );
+		System.out.println( "Auction" );
+		System.out.println( "-------" );
+		System.out.println();
+		benchmark.timeAuction();
 	}
 }
@@ -1,6 +1,7 @@
 package fiji.plugin.trackmate.tracking.sparselap.linker;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.Random;
@@ -195,4 +196,192 @@ public class LAPJVTest
 		}
 
 	}
+
+	@Test
+	public final void testWarmStart()
+	{
+		final int n = 100;
+		seed = new Random().nextInt();
+		final double[][] weights = generateMatrix( n );
+
+		final LAPJV first = new LAPJV( generateSparseMatrix( weights ) );
+		first.process();
+
+		// Perturb the problem a bit, like from one frame pair to the next.
+		final double[][] weights2 = new double[ n ][ n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			for ( int j = 0; j < n; j++ )
+			{
+				weights2[ i ][ j ] = weights[ i ][ j ] + Math.floor( pseudoRandom( 0, 10 ) );
+			}
+		}
+		final SparseCostMatrix cm2 = generateSparseMatrix( weights2 );
+
+		final LAPJV cold = new LAPJV( cm2 );
+		cold.process();
+
+		final LAPJV warm = new LAPJV( cm2 );
+		warm.setWarmStart( first.getColumnPrices(), first.getResult() );
+		assertTrue( warm.checkInput() );
+		warm.process();
+
+		assertEquals( cm2.totalAssignmentCost( cold.getResult() ), cm2.totalAssignmentCost( warm.getResult() ), 1e-5 );
+
+		// Unknown prices and no assignment must also give the optimum.
+		final double[] prices = new double[ n ];
+		Arrays.fill( prices, Double.NaN );
+		final LAPJV unknown = new LAPJV( cm2 );
+		unknown.setWarmStart( prices, null );
+		unknown.process();
+		assertEquals( cm2.totalAssignmentCost( cold.getResult() ), cm2.totalAssignmentCost( unknown.getResult() ), 1e-5 );
+	}
+
+	@Test
+	public final void testAuctionIsLAPJV()
+	{
+		final int size = 100;
+		final Random ran = new Random();
+		seed = ran.nextInt();
+
+		final int[] cardinalities = generateIntLogSpaced( 4 * size, size * size, 10 );
+
+		for ( int ci = 0; ci < cardinalities.length; ci++ )
+		{
+			final int card = cardinalities[ ci ];
+			final double density = ( double ) card / ( size * size );
+			final double[] cc = new double[ card ];
+			final int[] kk = new int[ card ];
+			final int[] number = new int[ size ];
+			int index = 0;
+			for ( int i = 0; i < size; i++ )
+			{
+				final int nToCreate = ( int ) Math.max( 1, ( size * density ) * ( 1 + 0.2 * ran.nextGaussian() ) );
+				final int[] cols = new int[ nToCreate ];
+				cols[ 0 ] = i; // diagonal
+				for ( int k = 1; k < cols.length; k++ )
+				{
+					cols[ k ] = ran.nextInt( size );
+				}
+				final int[] uCols = uniqueAndSort( cols );
+				for ( final int c : uCols )
+				{
+					kk[ index ] = c;
+					cc[ index ] = Math.floor( pseudoRandom( 1, 100 ) );
+					index++;
+				}
+				number[ i ] = uCols.length;
+			}
+			final SparseCostMatrix cm = new SparseCostMatrix( Arrays.copyOf( cc, index ), Arrays.copyOf( kk, index ), number, size );
+
+			final LAPJV jv = new LAPJV( cm );
+			jv.process();
+
+			// Integer costs: the auction must be optimal too.
+			final AuctionLAP auction = new AuctionLAP( cm );
+			assertTrue( auction.getErrorMessage(), auction.checkInput() );
+			assertTrue( auction.getErrorMessage(), auction.process() );
+			assertEquals( cm.totalAssignmentCost( jv.getResult() ), cm.totalAssignmentCost( auction.getResult() ), 1e-5 );
+
+			// Warm-started by the LAPJV solution.
+			final AuctionLAP warm = new AuctionLAP( cm );
+			warm.setWarmStart( jv.getColumnPrices(), jv.getResult() );
+			assertTrue( warm.getErrorMessage(), warm.process() );
+			assertEquals( cm.totalAssignmentCost( jv.getResult() ), cm.totalAssignmentCost( warm.getResult() ), 1e-5 );
+		}
+	}
+
+	@Test
+	public final void testAuctionParallelBidding()
+	{
+		final int n = 1000;
+		final double precision = 1e-3;
+		seed = new Random().nextInt();
+		final double[][] weights = new double[ n ][ n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			for ( int j = 0; j < n; j++ )
+			{
+				weights[ i ][ j ] = pseudoRandom( 0, 10 );
+			}
+		}
+		final SparseCostMatrix cm = generateSparseMatrix( weights );
+
+		final LAPJV jv = new LAPJV( cm );
+		jv.process();
+
+		final AuctionLAP auction = new AuctionLAP( cm, precision );
+		auction.setNumThreads( 2 );
+		assertTrue( auction.getErrorMessage(), auction.checkInput() );
+		assertTrue( auction.getErrorMessage(), auction.process() );
+
+		// Each column is assigned once.
+		assertEquals( n, uniqueAndSort( auction.getResult() ).length );
+		assertEquals( cm.totalAssignmentCost( jv.getResult() ), cm.totalAssignmentCost( auction.getResult() ), precision );
+
+		// Solvers of the same factory share its thread pool.
+		final LAPSolverFactory factory = AuctionLAP.factory( 2 );
+		for ( int r = 0; r < 2; r++ )
+		{
+			final LAPSolver solver = factory.create( cm );
+			assertTrue( solver.getErrorMessage(), solver.checkInput() && solver.process() );
+			assertEquals( n, uniqueAndSort( solver.getResult() ).length );
+			assertEquals( cm.totalAssignmentCost( jv.getResult() ), cm.totalAssignmentCost( solver.getResult() ), precision );
+		}
+	}
+
+	@Test
+	public final void testCompactIsSparse()
+	{
+		final int n = 100;
+		seed = new Random().nextInt();
+		final double[][] weights = generateMatrix( n );
+
+		final SparseCostMatrix cm = generateSparseMatrix( weights );
+		final CompactSparseCostMatrix ccm = new CompactSparseCostMatrix( cm );
+
+		final LAPJV jv = new LAPJV( cm );
+		jv.process();
+		final LAPJV cjv = new LAPJV( ccm );
+		assertTrue( cjv.getErrorMessage(), cjv.checkInput() );
+		cjv.process();
+
+		// Integer costs are exactly represented by floats.
+		assertEquals( cm.totalAssignmentCost( jv.getResult() ), ccm.totalAssignmentCost( cjv.getResult() ), 1e-5 );
+
+		// Auction on the compact matrix.
+		final AuctionLAP auction = new AuctionLAP( ccm );
+		auction.process();
+		assertEquals( cm.totalAssignmentCost( jv.getResult() ), cm.totalAssignmentCost( auction.getResult() ), 1e-5 );
+
+		// Ties are resolved the same way from one run to another.
+		final LAPJV cjv2 = new LAPJV( ccm );
+		cjv2.process();
+		assertEquals( Arrays.toString( cjv.getResult() ), Arrays.toString( cjv2.getResult() ) );
+	}
+
+	@Test
+	public final void testWorkspace()
+	{
+		seed = new Random().nextInt();
+		final LAPJVWorkspace workspace = new LAPJVWorkspace();
+
+		// Successive problems of varying sizes share the same buffers.
+		final int[] sizes = new int[] { 50, 10, 100, 30, 100 };
+		for ( final int n : sizes )
+		{
+			final SparseCostMatrix cm = generateSparseMatrix( generateMatrix( n ) );
+
+			final LAPJV fresh = new LAPJV( cm );
+			fresh.process();
+
+			final LAPJV reused = new LAPJV( cm, workspace );
+			reused.process();
+
+			assertEquals( n, reused.getResult().length );
+			assertEquals( n, reused.getColumnPrices().length );
+			assertEquals( Arrays.toString( fresh.getResult() ), Arrays.toString( reused.getResult() ) );
+		}
+		assertEquals( 100, workspace.getCapacity() );
+	}
 }
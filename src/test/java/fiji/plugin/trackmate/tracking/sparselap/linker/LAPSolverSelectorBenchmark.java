@@ -0,0 +1,206 @@
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.ResizableDoubleArray;
+
+/**
+ * Times the dense, sparse and multithreaded backends of the
+ * {@link LAPSolverSelector} over a range of sizes and densities, to establish
+ * the crossover points it uses.
+ */
+public class LAPSolverSelectorBenchmark
+{
+
+	private final Random ran = new Random( 1l );
+
+	private SparseCostMatrix generate( final int size, final double density )
+	{
+		final int[] kk = new int[ ( int ) Math.min( ( long ) size * size, 2l * size * size * density + 2 * size ) ];
+		final double[] cc = new double[ kk.length ];
+		final int[] number = new int[ size ];
+		int index = 0;
+		for ( int i = 0; i < size; i++ )
+		{
+			final int nToCreate = ( int ) Math.max( 1, ( size * density ) * ( 1 + 0.2 * ran.nextGaussian() ) );
+			final int[] cols = new int[ Math.min( nToCreate, size ) ];
+			cols[ 0 ] = i; // diagonal, so that there is a complete assignment
+			for ( int k = 1; k < cols.length; k++ )
+			{
+				cols[ k ] = ran.nextInt( size );
+			}
+			Arrays.sort( cols );
+			int n = 0;
+			for ( int k = 0; k < cols.length; k++ )
+			{
+				if ( k > 0 && cols[ k ] == cols[ k - 1 ] )
+				{
+					continue;
+				}
+				kk[ index ] = cols[ k ];
+				cc[ index ] = 1 + ran.nextInt( 100 );
+				index++;
+				n++;
+			}
+			number[ i ] = n;
+		}
+		return new SparseCostMatrix( Arrays.copyOf( cc, index ), Arrays.copyOf( kk, index ), number, size );
+	}
+
+	/**
+	 * Generates a full cost matrix with the structure of the ones built by the
+	 * {@link JaqamanLinker}, for the linking of randomly placed points to
+	 * their slightly displaced copies. Each source has on average the
+	 * specified number of candidate targets.
+	 */
+	private SparseCostMatrix generateJaqaman( final int size, final double linksPerRow )
+	{
+		final double radius = 1.;
+		final double width = Math.sqrt( Math.PI * radius * radius * size / linksPerRow );
+		final double[][] sources = new double[ size ][ 2 ];
+		final double[][] targets = new double[ size ][ 2 ];
+		for ( int i = 0; i < size; i++ )
+		{
+			sources[ i ][ 0 ] = width * ran.nextDouble();
+			sources[ i ][ 1 ] = width * ran.nextDouble();
+			targets[ i ][ 0 ] = sources[ i ][ 0 ] + 0.2 * ran.nextGaussian();
+			targets[ i ][ 1 ] = sources[ i ][ 1 ] + 0.2 * ran.nextGaussian();
+		}
+
+		final ResizableDoubleArray costs = new ResizableDoubleArray();
+		final int[] cols = new int[ size * size ];
+		final int[] number = new int[ size ];
+		double maxCost = 0.;
+		for ( int i = 0; i < size; i++ )
+		{
+			for ( int j = 0; j < size; j++ )
+			{
+				final double dx = targets[ j ][ 0 ] - sources[ i ][ 0 ];
+				final double dy = targets[ j ][ 1 ] - sources[ i ][ 1 ];
+				final double d2 = dx * dx + dy * dy;
+				if ( d2 > radius * radius )
+				{
+					continue;
+				}
+				cols[ costs.size ] = j;
+				costs.add( d2 );
+				number[ i ]++;
+				maxCost = Math.max( maxCost, d2 );
+			}
+		}
+		costs.trimToSize();
+		final SparseCostMatrix tl = new SparseCostMatrix( costs.data, Arrays.copyOf( cols, costs.size ), number, size );
+
+		final double altCost = 1.05 * maxCost;
+		final double[] ccAlt = new double[ size ];
+		Arrays.fill( ccAlt, altCost );
+		final int[] kkAlt = new int[ size ];
+		for ( int i = 0; i < size; i++ )
+		{
+			kkAlt[ i ] = i;
+		}
+		final int[] numberAlt = new int[ size ];
+		Arrays.fill( numberAlt, 1 );
+		final SparseCostMatrix tr = new SparseCostMatrix( ccAlt, kkAlt, numberAlt, size );
+		final SparseCostMatrix bl = new SparseCostMatrix( ccAlt.clone(), kkAlt.clone(), numberAlt.clone(), size );
+		final SparseCostMatrix br = tl.transpose();
+		br.fillWith( altCost );
+		return ( tl.hcat( tr ) ).vcat( bl.hcat( br ) );
+	}
+
+	private static final double time( final LAPSolverFactory factory, final SparseCostMatrix cm, final int nRepeats, final double[] totalCost )
+	{
+		final long start = System.nanoTime();
+		for ( int r = 0; r < nRepeats; r++ )
+		{
+			final LAPSolver solver = factory.create( cm );
+			if ( !solver.checkInput() || !solver.process() )
+			{
+				throw new RuntimeException( solver.getErrorMessage() );
+			}
+			totalCost[ 0 ] = cm.totalAssignmentCost( solver.getResult() );
+		}
+		final long end = System.nanoTime();
+		return ( end - start ) / 1e6 / nRepeats;
+	}
+
+	public final void timeBackends( final int[] sizes, final double[] densities, final int nRepeats, final boolean jaqaman )
+	{
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final LAPSolverFactory dense = DenseLAPSolver.factory();
+		final LAPSolverFactory sparse = LAPJV.factory();
+		final LAPSolverFactory parallel = AuctionLAP.factory( numThreads );
+		final LAPSolverSelector selector = new LAPSolverSelector();
+
+		System.out.println( "Auction solver with " + numThreads + " threads, " + nRepeats + " repetitions." );
+		System.out.println( "Size\tCosts/row\tDense(ms)\tSparse(ms)\tAuction(ms)\tFastest\tSelected" );
+		for ( final int size : sizes )
+		{
+			double crossover = Double.NaN;
+			for ( final double density : densities )
+			{
+				if ( !jaqaman && density * size < 2 )
+				{
+					continue;
+				}
+				final SparseCostMatrix cm = jaqaman ? generateJaqaman( size / 2, density ) : generate( size, density );
+				final double[] denseCost = new double[ 1 ];
+				final double[] sparseCost = new double[ 1 ];
+				final double[] auctionCost = new double[ 1 ];
+				// Warm up.
+				time( dense, cm, 1, denseCost );
+				time( sparse, cm, 1, sparseCost );
+				final double tDense = time( dense, cm, nRepeats, denseCost );
+				final double tSparse = time( sparse, cm, nRepeats, sparseCost );
+				final double tAuction = time( parallel, cm, nRepeats, auctionCost );
+				assertEquals( denseCost[ 0 ], sparseCost[ 0 ], 1e-5 );
+				assertEquals( denseCost[ 0 ], auctionCost[ 0 ], 1e-5 * Math.abs( denseCost[ 0 ] ) );
+
+				final String fastest;
+				if ( tDense <= tSparse && tDense <= tAuction )
+				{
+					fastest = "dense";
+					if ( Double.isNaN( crossover ) )
+					{
+						crossover = density;
+					}
+				}
+				else if ( tSparse <= tAuction )
+				{
+					fastest = "sparse";
+				}
+				else
+				{
+					fastest = "auction";
+				}
+				final String selected = selector.select( cm ).isSparse() ? "sparse" : "dense";
+				System.out.println( String.format( "%d\t%.2f\t\t%.2f\t\t%.2f\t\t%.2f\t\t%s\t%s", size, ( double ) cm.cardinality / size, tDense, tSparse, tAuction, fastest, selected ) );
+			}
+			System.out.println( "Size " + size + ": dense solver fastest from " + ( jaqaman ? "links per row " : "density " ) + crossover + "." );
+			System.out.println();
+		}
+	}
+
+	public static void main( final String[] args )
+	{
+		final LAPSolverSelectorBenchmark benchmark = new LAPSolverSelectorBenchmark();
+		final int[] sizes = new int[] { 50, 100, 200, 500, 1000, 2000 };
+		final double[] densities = new double[] { 0.001, 0.003, 0.01, 0.03, 0.1, 0.2, 0.3, 0.5, 1. };
+		final double[] linksPerRow = new double[] { 1, 2, 5, 10, 20, 50 };
+
+		System.out.println( "----------------------------" );
+		System.out.println( "Random sparsity pattern" );
+		System.out.println( "----------------------------" );
+		System.out.println();
+		benchmark.timeBackends( sizes, densities, 5, false );
+
+		System.out.println( "----------------------------" );
+		System.out.println( "Jaqaman linking cost matrices" );
+		System.out.println( "----------------------------" );
+		System.out.println();
+		benchmark.timeBackends( sizes, linksPerRow, 5, true );
+	}
+}
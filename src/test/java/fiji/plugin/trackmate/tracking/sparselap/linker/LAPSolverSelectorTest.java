@@ -0,0 +1,116 @@
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.tracking.oldlap.hungarian.MunkresKuhnAlgorithm;
+
+public class LAPSolverSelectorTest
+{
+
+	/**
+	 * Creates a square cost matrix with the diagonal and, on average, the
+	 * specified number of other random costs per row.
+	 */
+	private static final SparseCostMatrix generate( final int size, final int costsPerRow, final Random ran )
+	{
+		final double[] cc = new double[ size * ( costsPerRow + 1 ) ];
+		final int[] kk = new int[ cc.length ];
+		final int[] number = new int[ size ];
+		int index = 0;
+		for ( int i = 0; i < size; i++ )
+		{
+			final int[] cols = new int[ costsPerRow + 1 ];
+			cols[ 0 ] = i;
+			for ( int k = 1; k < cols.length; k++ )
+			{
+				cols[ k ] = ran.nextInt( size );
+			}
+			Arrays.sort( cols );
+			for ( int k = 0; k < cols.length; k++ )
+			{
+				if ( k > 0 && cols[ k ] == cols[ k - 1 ] )
+				{
+					continue;
+				}
+				kk[ index ] = cols[ k ];
+				cc[ index ] = 100 * ran.nextDouble();
+				index++;
+				number[ i ]++;
+			}
+		}
+		return new SparseCostMatrix( Arrays.copyOf( cc, index ), Arrays.copyOf( kk, index ), number, size );
+	}
+
+	@Test
+	public void testSelection()
+	{
+		final Random ran = new Random( 1l );
+		final LAPSolverFactory dense = DenseLAPSolver.factory();
+		final LAPSolverFactory sparse = LAPJV.factory();
+		final LAPSolverFactory parallel = AuctionLAP.factory( 2 );
+
+		final LAPSolverSelector selector = new LAPSolverSelector( dense, sparse, null );
+		assertSame( dense, selector.select( generate( 50, 1, ran ) ) );
+		assertSame( sparse, selector.select( generate( 1000, 1, ran ) ) );
+		assertSame( dense, selector.select( generate( 1000, 10, ran ) ) );
+		selector.setMaxDenseElements( 500 * 500 );
+		assertSame( sparse, selector.select( generate( 1000, 10, ran ) ) );
+
+		final LAPSolverSelector withParallel = new LAPSolverSelector( dense, sparse, parallel );
+		assertSame( dense, withParallel.select( generate( 50, 10, ran ) ) );
+		assertSame( parallel, withParallel.select( generate( 1000, 1, ran ) ) );
+		assertTrue( withParallel.isMultiThreaded() );
+		assertFalse( withParallel.supportsWarmStart() );
+	}
+
+	@Test
+	public void testSameCostsAsLAPJV()
+	{
+		final Random ran = new Random( 2l );
+		final LAPSolverFactory[] factories = new LAPSolverFactory[] { DenseLAPSolver.factory(), DenseLAPSolver.factory( new MunkresKuhnAlgorithm() ), new LAPSolverSelector() };
+		for ( final int size : new int[] { 20, 150, 400 } )
+		{
+			for ( final int costsPerRow : new int[] { 1, 3, 10 } )
+			{
+				final SparseCostMatrix cm = generate( size, costsPerRow, ran );
+				final LAPJV reference = new LAPJV( cm );
+				assertTrue( reference.getErrorMessage(), reference.checkInput() && reference.process() );
+				final double expected = cm.totalAssignmentCost( reference.getResult() );
+
+				for ( final LAPSolverFactory factory : factories )
+				{
+					final LAPSolver solver = factory.create( cm );
+					assertTrue( solver.getErrorMessage(), solver.checkInput() && solver.process() );
+					final int[] x = solver.getResult();
+					assertEquals( size, x.length );
+					for ( int i = 0; i < size; i++ )
+					{
+						assertTrue( cm.find( i, x[ i ] ) >= 0 );
+					}
+					assertEquals( expected, cm.totalAssignmentCost( x ), 1e-9 );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testDenseSolverReportsUnknownPrices()
+	{
+		final SparseCostMatrix cm = generate( 10, 3, new Random( 3l ) );
+		final DenseLAPSolver solver = new DenseLAPSolver( cm );
+		assertTrue( solver.getErrorMessage(), solver.checkInput() && solver.process() );
+		assertEquals( 10, solver.getColumnPrices().length );
+		for ( final double price : solver.getColumnPrices() )
+		{
+			assertTrue( Double.isNaN( price ) );
+		}
+	}
+}
@@ -1,6 +1,13 @@
 package fiji.plugin.trackmate.tracking.sparselap.linker;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -59,4 +66,155 @@ public class SparseCostMatrixTest
 		}
 	}
 
+	@Test
+	public void testCompact()
+	{
+		// Second row spans more than 65536 columns.
+		final int nCols = 200000;
+		final int[] kk = new int[] { 0, 3, 1, 70000, 70001, 199999, 2 };
+		final double[] cc = new double[] { 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7 };
+		final int[] number = new int[ nCols ];
+		number[ 0 ] = 2;
+		number[ 1 ] = 4;
+		number[ 2 ] = 1;
+		final int[] kk2 = new int[ kk.length + nCols - 3 ];
+		final double[] cc2 = new double[ kk2.length ];
+		System.arraycopy( kk, 0, kk2, 0, kk.length );
+		System.arraycopy( cc, 0, cc2, 0, cc.length );
+		// Diagonal for the remaining rows.
+		for ( int i = 3; i < nCols; i++ )
+		{
+			number[ i ] = 1;
+			kk2[ kk.length + i - 3 ] = i;
+			cc2[ kk.length + i - 3 ] = i;
+		}
+		final SparseCostMatrix A = new SparseCostMatrix( cc2, kk2, number, nCols );
+		final CompactSparseCostMatrix C = new CompactSparseCostMatrix( A );
+
+		assertEquals( "Bad number of rows.", A.nRows, C.getNRows() );
+		assertEquals( "Bad number of cols.", A.nCols, C.getNCols() );
+		assertEquals( "Bad cardinality.", A.cardinality, C.getCardinality() );
+		assertEquals( "Bad number of wide rows.", 1, C.getNWideRows() );
+
+		for ( int i = 0; i < 3; i++ )
+		{
+			for ( int k = A.start[ i ]; k < A.start[ i ] + A.number[ i ]; k++ )
+			{
+				assertEquals( "Bad column at row " + i + ", index " + k + ".", A.kk[ k ], C.column( i, k ) );
+				assertEquals( "Bad index at row " + i + ", col " + A.kk[ k ] + ".", k, C.find( i, A.kk[ k ] ) );
+				assertEquals( "Bad value at row " + i + ", col " + A.kk[ k ] + ".", ( float ) A.cc[ k ], C.get( i, A.kk[ k ], Double.NaN ), 0 );
+			}
+		}
+		assertTrue( "Missing value was found.", C.find( 1, 70002 ) < 0 );
+		assertTrue( "Missing value was found.", C.find( 1, 0 ) < 0 );
+		assertTrue( "Missing value was found.", C.find( 1, 135537 ) < 0 );
+		assertEquals( "Bad value at row 199999.", 199999., C.get( 199999, 199999, Double.NaN ), 0 );
+	}
+
+	@Test
+	public void testCompactMemory()
+	{
+		/*
+		 * A matrix with the structure of the ones built by the JaqamanLinker,
+		 * with 2 or 3 candidate targets per source.
+		 */
+		final int n = 10000;
+		final Random ran = new Random( 1l );
+		final double[] cc = new double[ 3 * n ];
+		final int[] kk = new int[ 3 * n ];
+		final int[] number = new int[ n ];
+		int index = 0;
+		for ( int i = 0; i < n; i++ )
+		{
+			final int[] cols = new int[] { i, Math.max( 0, i - 1 - ran.nextInt( 10 ) ), Math.min( n - 1, i + 1 + ran.nextInt( 10 ) ) };
+			Arrays.sort( cols );
+			final int nCosts = 2 + ran.nextInt( 2 );
+			for ( int k = 0; k < cols.length; k++ )
+			{
+				if ( number[ i ] == nCosts || ( k > 0 && cols[ k ] == cols[ k - 1 ] ) )
+				{
+					continue;
+				}
+				kk[ index ] = cols[ k ];
+				cc[ index ] = 1 + ran.nextInt( 100 );
+				index++;
+				number[ i ]++;
+			}
+		}
+		final SparseCostMatrix tl = new SparseCostMatrix( Arrays.copyOf( cc, index ), Arrays.copyOf( kk, index ), number, n );
+		final double[] ccAlt = new double[ n ];
+		Arrays.fill( ccAlt, 105. );
+		final int[] kkAlt = new int[ n ];
+		final int[] numberAlt = new int[ n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			kkAlt[ i ] = i;
+			numberAlt[ i ] = 1;
+		}
+		final SparseCostMatrix tr = new SparseCostMatrix( ccAlt, kkAlt, numberAlt, n );
+		final SparseCostMatrix bl = new SparseCostMatrix( ccAlt.clone(), kkAlt.clone(), numberAlt.clone(), n );
+		final SparseCostMatrix br = tl.transpose();
+		br.fillWith( 1. );
+		final SparseCostMatrix A = ( tl.hcat( tr ) ).vcat( bl.hcat( br ) );
+		final CompactSparseCostMatrix C = new CompactSparseCostMatrix( A );
+		assertEquals( "Bad number of wide rows.", 0, C.getNWideRows() );
+
+		final double sparseBytesPerCost = ( double ) arrayBytes( A ) / A.cardinality;
+		final double compactBytesPerCost = ( double ) arrayBytes( C ) / C.getCardinality();
+		// 12 bytes per cost and 8 per row, against 6 per cost and 8 per row.
+		assertEquals( "Bad sparse footprint.", 12. + 8. * A.nRows / A.cardinality, sparseBytesPerCost, 0.01 );
+		assertEquals( "Bad compact footprint.", 6. + 8. * A.nRows / A.cardinality, compactBytesPerCost, 0.01 );
+		assertTrue( "Compact matrix is not small enough: " + compactBytesPerCost + " bytes per cost against " + sparseBytesPerCost + ".", compactBytesPerCost < 0.65 * sparseBytesPerCost );
+	}
+
+	/**
+	 * Returns the number of bytes taken by the content of the array fields of
+	 * the specified object.
+	 */
+	private static final long arrayBytes( final Object o )
+	{
+		long bytes = 0;
+		for ( final Field field : o.getClass().getDeclaredFields() )
+		{
+			if ( Modifier.isStatic( field.getModifiers() ) || !field.getType().isArray() )
+			{
+				continue;
+			}
+			field.setAccessible( true );
+			final Object array;
+			try
+			{
+				array = field.get( o );
+			}
+			catch ( final IllegalAccessException e )
+			{
+				throw new RuntimeException( e );
+			}
+			if ( null == array )
+			{
+				continue;
+			}
+			final Class< ? > type = field.getType().getComponentType();
+			final int size;
+			if ( type == double.class || type == long.class )
+			{
+				size = 8;
+			}
+			else if ( type == char.class || type == short.class )
+			{
+				size = 2;
+			}
+			else if ( type == byte.class || type == boolean.class )
+			{
+				size = 1;
+			}
+			else
+			{
+				size = 4;
+			}
+			bytes += ( long ) size * Array.getLength( array );
+		}
+		return bytes;
+	}
+
 }